@@ -0,0 +1,174 @@
+package org.bvnk.slackbot.loadtest;
+
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.KeyStore;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import org.bvnk.slackbot.config.AppConfig;
+import org.bvnk.slackbot.config.AwsClientFactory;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.GetItemRequest;
+
+/**
+ * Compares a DynamoDB client built with the SDK defaults against one from {@link AwsClientFactory},
+ * with its connection opened by {@link AwsClientFactory#prewarm()}. The DynamoDB stand-in listens
+ * over TLS with a throwaway self-signed certificate, so the first call includes the TLS handshake
+ * as it would against AWS. Run one transport per JVM, so the first call is a cold one:
+ *
+ * <pre>
+ * ./gradlew awsTransportBenchmark -PbenchmarkArgs="--transport shared"
+ * ./gradlew awsTransportBenchmark -PbenchmarkArgs="--transport default"
+ * </pre>
+ *
+ * <p>Options: {@code --transport} shared or default (shared), {@code --calls} measured calls
+ * (1000), {@code --warmup} calls before measuring (200).
+ */
+public class AwsTransportBenchmark {
+  private static final String STORE_PASSWORD = "benchmark";
+
+  public static void main(String[] args) throws Exception {
+    Map<String, String> options = new HashMap<>();
+    for (int i = 0; i + 1 < args.length; i += 2) {
+      options.put(args[i].replaceFirst("^--", ""), args[i + 1]);
+    }
+
+    // Otherwise small responses wait on delayed ACKs, hiding the clients' own cost
+    System.setProperty("sun.net.httpserver.nodelay", "true");
+
+    // The clients trust the stand-in's certificate through the default trust store settings, which
+    // have to be in place before anything sets up TLS
+    Path keyStore = createKeyStore();
+    System.setProperty("javax.net.ssl.trustStore", keyStore.toString());
+    System.setProperty("javax.net.ssl.trustStorePassword", STORE_PASSWORD);
+    System.setProperty("javax.net.ssl.trustStoreType", "PKCS12");
+
+    AppConfig config = AppConfig.getInstance();
+    DynamoStub dynamo = new DynamoStub(new StageStats());
+    dynamo.start(config.getDynamoEndpointUrl(), serverContext(keyStore));
+
+    try {
+      new AwsTransportBenchmark().run(options, config);
+    } finally {
+      dynamo.stop();
+      Files.deleteIfExists(keyStore);
+    }
+    System.exit(0);
+  }
+
+  private void run(Map<String, String> options, AppConfig config) {
+    String transport = options.getOrDefault("transport", "shared");
+    int calls = Integer.parseInt(options.getOrDefault("calls", "1000"));
+    int warmup = Integer.parseInt(options.getOrDefault("warmup", "200"));
+
+    // Init: what a container does before its first event
+    long initStart = System.nanoTime();
+    DynamoDbClient client;
+    if ("default".equals(transport)) {
+      client =
+          DynamoDbClient.builder()
+              .region(Region.of(config.getAwsRegion()))
+              .endpointOverride(URI.create(config.getDynamoEndpointUrl()))
+              .build();
+    } else {
+      client = AwsClientFactory.dynamoDb();
+      AwsClientFactory.prewarm();
+    }
+    long initMicros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - initStart);
+
+    long firstStart = System.nanoTime();
+    getItem(client, config, 0);
+    long firstMicros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - firstStart);
+
+    for (int i = 0; i < warmup; i++) {
+      getItem(client, config, i);
+    }
+
+    long[] micros = new long[calls];
+    for (int i = 0; i < calls; i++) {
+      long start = System.nanoTime();
+      getItem(client, config, i);
+      micros[i] = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start);
+    }
+    Arrays.sort(micros);
+
+    System.out.printf("transport                %s%n", transport);
+    System.out.printf("init (client, warm-up)   %8d us%n", initMicros);
+    System.out.printf("first call               %8d us%n", firstMicros);
+    System.out.printf("init + first call        %8d us%n", initMicros + firstMicros);
+    System.out.printf("steady p50               %8d us%n", percentile(micros, 50));
+    System.out.printf("steady p90               %8d us%n", percentile(micros, 90));
+    System.out.printf("steady p99               %8d us%n", percentile(micros, 99));
+  }
+
+  private static void getItem(DynamoDbClient client, AppConfig config, int index) {
+    client.getItem(
+        GetItemRequest.builder()
+            .tableName(config.getDynamoTableName())
+            .key(Map.of("event_id", AttributeValue.builder().s("benchmark#" + index).build()))
+            .build());
+  }
+
+  private static long percentile(long[] sorted, double percentile) {
+    int index = (int) Math.ceil(percentile / 100.0 * sorted.length) - 1;
+    return sorted[Math.max(0, index)];
+  }
+
+  /** A self-signed certificate for localhost, made with the JDK's keytool */
+  private static Path createKeyStore() throws Exception {
+    Path keyStore = Files.createTempFile("aws-benchmark", ".p12");
+    Files.delete(keyStore); // keytool refuses to write into an empty file
+    Path keytool = Path.of(System.getProperty("java.home"), "bin", "keytool");
+    Process process =
+        new ProcessBuilder(
+                keytool.toString(),
+                "-genkeypair",
+                "-alias",
+                "stub",
+                "-keyalg",
+                "RSA",
+                "-keysize",
+                "2048",
+                "-dname",
+                "CN=localhost",
+                "-ext",
+                "SAN=dns:localhost,ip:127.0.0.1",
+                "-validity",
+                "1",
+                "-storetype",
+                "PKCS12",
+                "-keystore",
+                keyStore.toString(),
+                "-storepass",
+                STORE_PASSWORD)
+            .inheritIO()
+            .start();
+    if (process.waitFor() != 0) {
+      throw new IllegalStateException("keytool failed with exit code " + process.exitValue());
+    }
+    return keyStore;
+  }
+
+  private static SSLContext serverContext(Path keyStore) throws Exception {
+    KeyStore store = KeyStore.getInstance("PKCS12");
+    try (InputStream in = new FileInputStream(keyStore.toFile())) {
+      store.load(in, STORE_PASSWORD.toCharArray());
+    }
+    KeyManagerFactory keyManagers =
+        KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+    keyManagers.init(store, STORE_PASSWORD.toCharArray());
+
+    SSLContext context = SSLContext.getInstance("TLS");
+    context.init(keyManagers.getKeyManagers(), null, null);
+    return context;
+  }
+}
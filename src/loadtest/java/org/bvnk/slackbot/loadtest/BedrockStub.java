@@ -0,0 +1,68 @@
+package org.bvnk.slackbot.loadtest;
+
+import com.sun.net.httpserver.HttpExchange;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Stand-in for Bedrock InvokeModel. Latency follows a log-normal distribution around the median,
+ * and requests are throttled at random and whenever more than the quota are in flight.
+ */
+class BedrockStub extends StubServer {
+  private static final String REPLY =
+      "{\"content\":[{\"type\":\"text\",\"text\":\"Summary:\\n- Payouts failed on a provider"
+          + " timeout\\n- **Retry change** rolled back\\n- Incident report owned by user-U0000002"
+          + "\"}],\"stop_reason\":\"end_turn\"}";
+
+  private final long medianLatencyMillis;
+  private final double latencySigma;
+  private final double throttleRate;
+  private final int maxInFlight;
+  private final AtomicInteger inFlight = new AtomicInteger();
+
+  BedrockStub(
+      StageStats stats,
+      long medianLatencyMillis,
+      double latencySigma,
+      double throttleRate,
+      int maxInFlight) {
+    super("bedrock", stats);
+    this.medianLatencyMillis = medianLatencyMillis;
+    this.latencySigma = latencySigma;
+    this.throttleRate = throttleRate;
+    this.maxInFlight = maxInFlight;
+  }
+
+  @Override
+  protected void handle(HttpExchange exchange) throws Exception {
+    readBody(exchange);
+    String path = URLDecoder.decode(exchange.getRequestURI().getPath(), StandardCharsets.UTF_8);
+    String modelId = path.replaceAll("^/model/(.+)/invoke$", "$1");
+    stats.increment("bedrock.requests[" + modelId + "]");
+
+    int current = inFlight.incrementAndGet();
+    try {
+      ThreadLocalRandom random = ThreadLocalRandom.current();
+      if (current > maxInFlight || random.nextDouble() < throttleRate) {
+        stats.increment("bedrock.throttled[" + modelId + "]");
+        respond(
+            exchange,
+            429,
+            "{\"message\":\"Too many requests, please wait before trying again.\"}",
+            Map.of("x-amzn-ErrorType", "ThrottlingException"));
+        return;
+      }
+
+      long latency =
+          Math.round(medianLatencyMillis * Math.exp(latencySigma * random.nextGaussian()));
+      Thread.sleep(latency);
+      stats.record("bedrock.model_latency", latency);
+      respond(exchange, 200, REPLY, Map.of());
+    } finally {
+      inFlight.decrementAndGet();
+    }
+  }
+}
@@ -0,0 +1,151 @@
+package org.bvnk.slackbot.loadtest;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import org.bvnk.slackbot.config.AppConfig;
+import org.bvnk.slackbot.service.ContextSelector;
+import org.bvnk.slackbot.util.TokenEstimator;
+
+/**
+ * Compares the context sent with a free-form question when {@link ContextSelector} picks the
+ * relevant messages against sending the whole thread, on the same synthetic threads and questions.
+ * For each thread size it reports the estimated input tokens of both, and the time to build each
+ * context on the request thread. The model's own latency grows with its input, so the token counts
+ * are what the selection saves there:
+ *
+ * <pre>
+ * ./gradlew contextSelectorBenchmark
+ * ./gradlew contextSelectorBenchmark -PbenchmarkArgs="--sizes 100,1000 --budget 2000"
+ * </pre>
+ *
+ * <p>Options: {@code --sizes} messages per thread, comma-separated (20,100,400,1500), {@code
+ * --threads} distinct threads per size (50), {@code --calls} measured calls per size and path
+ * (2000), {@code --warmup} calls before measuring (1000) and {@code --budget} tokens, which
+ * defaults to CONTEXT_TOKEN_BUDGET.
+ */
+public class ContextSelectorBenchmark {
+  private static final String[] NAMES = {"Alice", "Bob", "Chen Wei", "Dana", "Emeka", "Farah"};
+  private static final String[] LINES = {
+    "Payouts to EU accounts failed on a provider timeout since %d:00 UTC.",
+    "The retry change from yesterday doubled the calls to the provider.",
+    "I'll roll back the retry change and watch the error rate.",
+    "Can someone draft the incident report by Friday?",
+    "We need to add an alert on payout latency before the next release.",
+    "Does anyone know if the provider has a status page?",
+    "Support has %d tickets open about missing payouts.",
+    "Rolled back, the error rate is down to normal levels again.",
+    "Let me check whether any payouts were sent twice during the retries.",
+    "Reconcile the affected payouts with finance tomorrow.",
+    "The dashboard for card settlements looks fine, unrelated to this.",
+    "Deploy %d of the ledger service is blocked on the schema migration.",
+    "The provider confirmed a partial outage in their EU region.",
+    "Who owns the on-call rotation for the webhook consumers this week?",
+    "Latency on the FX quotes endpoint went up to %d ms after the deploy.",
+    "Thanks everyone, that was quick.",
+  };
+  private static final String[] QUESTIONS = {
+    "did the provider confirm an outage?",
+    "why did the retry change double the calls?",
+    "what is blocking the ledger deploy?",
+    "who owns on-call for the webhook consumers?",
+    "were any payouts sent twice?",
+    "what happened to FX quote latency?",
+  };
+
+  public static void main(String[] args) {
+    Map<String, String> options = new HashMap<>();
+    for (int i = 0; i + 1 < args.length; i += 2) {
+      options.put(args[i].replaceFirst("^--", ""), args[i + 1]);
+    }
+
+    int[] sizes =
+        Arrays.stream(options.getOrDefault("sizes", "20,100,400,1500").split(","))
+            .mapToInt(size -> Integer.parseInt(size.trim()))
+            .toArray();
+    int threadCount = Integer.parseInt(options.getOrDefault("threads", "50"));
+    int calls = Integer.parseInt(options.getOrDefault("calls", "2000"));
+    int warmup = Integer.parseInt(options.getOrDefault("warmup", "1000"));
+    int budget =
+        Integer.parseInt(
+            options.getOrDefault(
+                "budget", String.valueOf(AppConfig.getInstance().getContextTokenBudget())));
+
+    ContextSelector selector = new ContextSelector();
+    System.out.printf(
+        "%-9s %-9s %8s %12s %10s %10s %10s%n",
+        "messages", "context", "calls", "avg tokens", "p50 us", "p99 us", "max us");
+
+    for (int size : sizes) {
+      Random random = new Random(42);
+      List<List<String>> threads = new ArrayList<>();
+      for (int t = 0; t < threadCount; t++) {
+        threads.add(thread(random, size));
+      }
+
+      for (int i = 0; i < warmup; i++) {
+        selector.select(threads.get(i % threadCount), QUESTIONS[i % QUESTIONS.length], budget);
+        String.join("\n\n", threads.get(i % threadCount));
+      }
+
+      long[] full = new long[calls];
+      long[] selected = new long[calls];
+      long fullTokens = 0;
+      long selectedTokens = 0;
+      for (int i = 0; i < calls; i++) {
+        List<String> thread = threads.get(i % threadCount);
+        String question = QUESTIONS[i % QUESTIONS.length];
+
+        long start = System.nanoTime();
+        String context = String.join("\n\n", thread);
+        full[i] = System.nanoTime() - start;
+        fullTokens += TokenEstimator.estimate(context);
+
+        start = System.nanoTime();
+        context = selector.select(thread, question, budget);
+        selected[i] = System.nanoTime() - start;
+        selectedTokens += TokenEstimator.estimate(context);
+      }
+
+      print(size, "full", full, fullTokens);
+      print(size, "selected", selected, selectedTokens);
+      System.out.printf(
+          "%-9s %-9s input tokens %.0f%% of full%n",
+          "", "", 100.0 * selectedTokens / Math.max(1, fullTokens));
+    }
+
+    System.out.println();
+    System.out.println(
+        "full: String.join of the thread; selected: ContextSelector.select within a budget of "
+            + budget
+            + " tokens. Threads within the budget are sent in full by both.");
+    System.exit(0);
+  }
+
+  /** A thread of formatted messages, {@code "name: text"}, as the handler passes them */
+  private static List<String> thread(Random random, int messages) {
+    List<String> thread = new ArrayList<>(messages);
+    for (int i = 0; i < messages; i++) {
+      String name = NAMES[random.nextInt(NAMES.length)];
+      String line = LINES[i == 0 ? 0 : random.nextInt(LINES.length)];
+      thread.add(name + ": " + line.replace("%d", String.valueOf(random.nextInt(400))));
+    }
+    return thread;
+  }
+
+  private static void print(int size, String context, long[] nanos, long tokens) {
+    Arrays.sort(nanos);
+    System.out.printf(
+        "%-9d %-9s %8d %12d %10d %10d %10d%n",
+        size,
+        context,
+        nanos.length,
+        tokens / nanos.length,
+        nanos[nanos.length / 2] / 1000,
+        nanos[(int) Math.ceil(nanos.length * 0.99) - 1] / 1000,
+        nanos[nanos.length - 1] / 1000);
+  }
+}
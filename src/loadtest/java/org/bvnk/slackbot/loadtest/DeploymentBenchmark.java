@@ -0,0 +1,197 @@
+package org.bvnk.slackbot.loadtest;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import software.amazon.awssdk.core.SdkBytes;
+import software.amazon.awssdk.services.lambda.LambdaClient;
+import software.amazon.awssdk.services.lambda.model.Environment;
+import software.amazon.awssdk.services.lambda.model.GetFunctionConfigurationResponse;
+import software.amazon.awssdk.services.lambda.model.InvokeResponse;
+import software.amazon.awssdk.services.lambda.model.LogType;
+import software.amazon.awssdk.services.lambda.model.PublishVersionResponse;
+
+/**
+ * Compares the deployed native function against the JVM function restored from a SnapStart
+ * snapshot, from the REPORT line Lambda writes for each invocation: duration, init or restore
+ * duration, and memory used. Unlike the other benchmarks this one runs against AWS, with the
+ * default credentials, and changes the functions' configuration to force cold starts:
+ *
+ * <pre>
+ * ./gradlew deploymentBenchmark -PbenchmarkArgs="--native my-stack-SlackBotFunctionNative-abc
+ *     --jvm my-stack-SlackBotFunctionJvm-def"
+ * </pre>
+ *
+ * <p>Each cold start updates an environment variable, which makes Lambda start new containers; for
+ * the JVM function it also publishes a version and points the alias at it, so Lambda takes a new
+ * snapshot. Publishing waits for the snapshot, which takes a minute or two per cold start.
+ *
+ * <p>Options: {@code --native} and {@code --jvm} function names (either can be left out), {@code
+ * --alias} the JVM function's alias (live), {@code --cold} cold starts per function (5), {@code
+ * --warm} warm invocations after each cold start (20), {@code --payload} a file with the event to
+ * send (a URL verification request through API Gateway, which touches no other service).
+ */
+public class DeploymentBenchmark {
+  private static final String NONCE = "BENCHMARK_NONCE";
+  private static final String DEFAULT_PAYLOAD =
+      "{\"httpMethod\":\"POST\",\"path\":\"/slack/events\",\"headers\":{},"
+          + "\"body\":\"{\\\"type\\\":\\\"url_verification\\\",\\\"challenge\\\":\\\"benchmark\\\"}\"}";
+  // Fields are tab separated, which keeps Billed Duration from matching as Duration
+  private static final Pattern REPORT_FIELD =
+      Pattern.compile("\t(Duration|Init Duration|Restore Duration|Max Memory Used): ([0-9.]+)");
+
+  private final LambdaClient lambda = LambdaClient.create();
+
+  public static void main(String[] args) throws Exception {
+    Map<String, String> options = new HashMap<>();
+    for (int i = 0; i + 1 < args.length; i += 2) {
+      options.put(args[i].replaceFirst("^--", ""), args[i + 1]);
+    }
+
+    String payload =
+        options.containsKey("payload")
+            ? Files.readString(Path.of(options.get("payload")))
+            : DEFAULT_PAYLOAD;
+    int cold = Integer.parseInt(options.getOrDefault("cold", "5"));
+    int warm = Integer.parseInt(options.getOrDefault("warm", "20"));
+
+    DeploymentBenchmark benchmark = new DeploymentBenchmark();
+    List<String[]> rows = new ArrayList<>();
+    if (options.containsKey("native")) {
+      rows.add(benchmark.run("native", options.get("native"), null, payload, cold, warm));
+    }
+    if (options.containsKey("jvm")) {
+      String alias = options.getOrDefault("alias", "live");
+      rows.add(benchmark.run("jvm-snapstart", options.get("jvm"), alias, payload, cold, warm));
+    }
+
+    System.out.printf(
+        "%n%-14s %12s %12s %12s %12s %10s%n",
+        "function", "init ms p50", "cold ms p50", "warm ms p50", "warm ms p99", "memory MB");
+    rows.forEach(row -> System.out.printf("%-14s %12s %12s %12s %12s %10s%n", (Object[]) row));
+    System.out.println();
+    System.out.println(
+        "init: Init Duration (native) or Restore Duration (SnapStart), cold: handler time of the"
+            + " first invocation, memory: highest Max Memory Used");
+    System.exit(0);
+  }
+
+  private String[] run(
+      String name, String function, String alias, String payload, int cold, int warm) {
+    List<Double> init = new ArrayList<>();
+    List<Double> coldDurations = new ArrayList<>();
+    List<Double> warmDurations = new ArrayList<>();
+    double memory = 0;
+
+    for (int i = 0; i < cold; i++) {
+      String qualifier = forceColdStart(function, alias);
+
+      Map<String, Double> report = invoke(function, qualifier, payload);
+      init.add(report.getOrDefault("Restore Duration", report.getOrDefault("Init Duration", 0.0)));
+      coldDurations.add(report.getOrDefault("Duration", 0.0));
+      memory = Math.max(memory, report.getOrDefault("Max Memory Used", 0.0));
+
+      for (int j = 0; j < warm; j++) {
+        report = invoke(function, qualifier, payload);
+        warmDurations.add(report.getOrDefault("Duration", 0.0));
+        memory = Math.max(memory, report.getOrDefault("Max Memory Used", 0.0));
+      }
+      System.out.printf(
+          "%s: cold start %d/%d, init %.1f ms, first invocation %.1f ms%n",
+          name, i + 1, cold, init.get(i), coldDurations.get(i));
+    }
+
+    return new String[] {
+      name,
+      format(percentile(init, 0.5)),
+      format(percentile(coldDurations, 0.5)),
+      format(percentile(warmDurations, 0.5)),
+      format(percentile(warmDurations, 0.99)),
+      format(memory)
+    };
+  }
+
+  /**
+   * Change the function's configuration so the next invocation starts a new container, returning
+   * the qualifier to invoke
+   */
+  private String forceColdStart(String function, String alias) {
+    GetFunctionConfigurationResponse current =
+        lambda.getFunctionConfiguration(builder -> builder.functionName(function));
+    Map<String, String> variables =
+        new HashMap<>(
+            current.environment() != null && current.environment().variables() != null
+                ? current.environment().variables()
+                : Map.of());
+    variables.put(NONCE, String.valueOf(System.nanoTime()));
+
+    lambda.updateFunctionConfiguration(
+        builder ->
+            builder
+                .functionName(function)
+                .environment(Environment.builder().variables(variables).build()));
+    lambda.waiter().waitUntilFunctionUpdatedV2(builder -> builder.functionName(function));
+
+    if (alias == null) {
+      return null;
+    }
+
+    // A new version gets a new snapshot, which is ready once the version is active
+    PublishVersionResponse version =
+        lambda.publishVersion(builder -> builder.functionName(function));
+    lambda
+        .waiter()
+        .waitUntilPublishedVersionActive(
+            builder -> builder.functionName(function).qualifier(version.version()));
+    lambda.updateAlias(
+        builder -> builder.functionName(function).name(alias).functionVersion(version.version()));
+    return alias;
+  }
+
+  private Map<String, Double> invoke(String function, String qualifier, String payload) {
+    InvokeResponse response =
+        lambda.invoke(
+            builder ->
+                builder
+                    .functionName(function)
+                    .qualifier(qualifier)
+                    .logType(LogType.TAIL)
+                    .payload(SdkBytes.fromString(payload, StandardCharsets.UTF_8)));
+    if (response.functionError() != null) {
+      throw new IllegalStateException(function + " failed: " + response.payload().asUtf8String());
+    }
+
+    String log =
+        new String(Base64.getDecoder().decode(response.logResult()), StandardCharsets.UTF_8);
+    Map<String, Double> report = new HashMap<>();
+    for (String line : log.split("\n")) {
+      if (line.startsWith("REPORT")) {
+        Matcher matcher = REPORT_FIELD.matcher(line);
+        while (matcher.find()) {
+          report.put(matcher.group(1), Double.parseDouble(matcher.group(2)));
+        }
+      }
+    }
+    return report;
+  }
+
+  private static double percentile(List<Double> values, double percentile) {
+    if (values.isEmpty()) {
+      return 0;
+    }
+    List<Double> sorted = new ArrayList<>(values);
+    sorted.sort(null);
+    return sorted.get(Math.max(0, (int) Math.ceil(sorted.size() * percentile) - 1));
+  }
+
+  private static String format(double value) {
+    return String.format("%.1f", value);
+  }
+}
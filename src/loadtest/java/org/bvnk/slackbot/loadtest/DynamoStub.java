@@ -0,0 +1,255 @@
+package org.bvnk.slackbot.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Minimal DynamoDB stand-in: keeps deduplication items and cached threads in memory and honours the
+ * conditions used to write them, returning the existing item when asked, plus the digest watermarks
+ * written and read in batches, the mention scheduler's queues and index, the summary search index
+ * and the conversations in threads. Other writes are acknowledged without being applied. Point
+ * DYNAMO_ENDPOINT_URL at DynamoDB Local instead when full semantics are needed.
+ */
+class DynamoStub extends StubServer {
+  private static final String TARGET_PREFIX = "DynamoDB_20120810.";
+  private static final String CONDITIONAL_CHECK_FAILED_TYPE =
+      "com.amazonaws.dynamodb.v20120810#ConditionalCheckFailedException";
+
+  private final ObjectMapper objectMapper = new ObjectMapper();
+  private final Map<String, JsonNode> items = new ConcurrentHashMap<>();
+  private final Map<String, String> watermarks = new ConcurrentHashMap<>();
+
+  DynamoStub(StageStats stats) {
+    super("dynamodb", stats);
+  }
+
+  @Override
+  protected void handle(HttpExchange exchange) throws Exception {
+    String target = exchange.getRequestHeaders().getFirst("X-Amz-Target");
+    String operation = target == null ? "" : target.replace(TARGET_PREFIX, "");
+    JsonNode request = objectMapper.readTree(readBody(exchange));
+    stats.increment("dynamodb." + operation);
+
+    String condition = request.path("ConditionExpression").asText();
+    String requestKey = request.path("Key").path("event_id").path("S").asText();
+    if ("PutItem".equals(operation) && condition.startsWith("attribute_not_exists")) {
+      String itemKey = request.path("Item").path("event_id").path("S").asText();
+      JsonNode existing = items.putIfAbsent(itemKey, request.path("Item"));
+      if (existing != null) {
+        conditionalCheckFailed(exchange, request, existing);
+        return;
+      }
+    } else if ("PutItem".equals(operation) && condition.startsWith("generation")) {
+      // Cached threads replace the stored one only while it has the generation they were built on
+      String itemKey = request.path("Item").path("event_id").path("S").asText();
+      String expected =
+          request.path("ExpressionAttributeValues").path(":generation").path("S").asText();
+      boolean[] replaced = {false};
+      JsonNode existing =
+          items.computeIfPresent(
+              itemKey,
+              (k, item) -> {
+                replaced[0] = expected.equals(item.path("generation").path("S").asText());
+                return replaced[0] ? request.path("Item") : item;
+              });
+      if (!replaced[0]) {
+        conditionalCheckFailed(exchange, request, existing);
+        return;
+      }
+    } else if ("UpdateItem".equals(operation) && requestKey.equals("scheduler#teams")) {
+      JsonNode updated = updateSchedulerIndex(requestKey, request);
+      if (updated == null) {
+        conditionalCheckFailed(exchange, request, items.get(requestKey));
+        return;
+      }
+      ObjectNode response = objectMapper.createObjectNode();
+      response.set("Attributes", updated);
+      respond(
+          exchange,
+          200,
+          objectMapper.writeValueAsString(response),
+          Map.of("Content-Type", "application/x-amz-json-1.0"));
+      return;
+    } else if ("UpdateItem".equals(operation) && requestKey.startsWith("scheduler#")) {
+      if (!updateListItem(requestKey, request, "inbox")) {
+        conditionalCheckFailed(exchange, request, items.get(requestKey));
+        return;
+      }
+    } else if ("UpdateItem".equals(operation) && requestKey.equals("search#summaries")) {
+      if (!updateListItem(requestKey, request, "recent")) {
+        conditionalCheckFailed(exchange, request, items.get(requestKey));
+        return;
+      }
+    } else if ("PutItem".equals(operation)
+        && request.path("Item").path("event_id").path("S").asText().startsWith("search#")) {
+      // Chunks of search index snapshots
+      items.put(request.path("Item").path("event_id").path("S").asText(), request.path("Item"));
+    } else if ("PutItem".equals(operation)
+        && request.path("Item").path("event_id").path("S").asText().startsWith("conversation#")) {
+      // Conversations in threads, replaced on every turn
+      items.put(request.path("Item").path("event_id").path("S").asText(), request.path("Item"));
+    }
+
+    String body = "{}";
+    JsonNode stored = items.get(requestKey);
+    if ("GetItem".equals(operation) && stored != null) {
+      ObjectNode response = objectMapper.createObjectNode();
+      response.set("Item", stored);
+      body = objectMapper.writeValueAsString(response);
+    } else if ("DeleteItem".equals(operation)) {
+      items.remove(requestKey);
+    } else if ("BatchWriteItem".equals(operation)) {
+      for (JsonNode table : request.path("RequestItems")) {
+        for (JsonNode write : table) {
+          JsonNode item = write.path("PutRequest").path("Item");
+          watermarks.put(
+              item.path("event_id").path("S").asText(), item.path("last_ts").path("S").asText());
+        }
+      }
+    } else if ("BatchGetItem".equals(operation)) {
+      ObjectNode response = objectMapper.createObjectNode();
+      ObjectNode responses = response.putObject("Responses");
+      request
+          .path("RequestItems")
+          .fields()
+          .forEachRemaining(
+              table -> {
+                ArrayNode items = responses.putArray(table.getKey());
+                for (JsonNode key : table.getValue().path("Keys")) {
+                  String eventId = key.path("event_id").path("S").asText();
+                  if (eventId.startsWith("search#") && this.items.containsKey(eventId)) {
+                    items.add(this.items.get(eventId));
+                  } else if (watermarks.containsKey(eventId)) {
+                    ObjectNode item = items.addObject();
+                    item.putObject("event_id").put("S", eventId);
+                    item.putObject("last_ts").put("S", watermarks.get(eventId));
+                  }
+                }
+              });
+      body = objectMapper.writeValueAsString(response);
+    }
+
+    respond(exchange, 200, body, Map.of("Content-Type", "application/x-amz-json-1.0"));
+  }
+
+  /**
+   * The mention scheduler's item, or the search index's manifest: appends to its list, and
+   * replacements of its state that drop the list entries moved into it, conditional on the state's
+   * generation
+   */
+  private boolean updateListItem(String key, JsonNode request, String listName) {
+    String expression = request.path("UpdateExpression").asText();
+    JsonNode values = request.path("ExpressionAttributeValues");
+    boolean[] applied = {true};
+    items.compute(
+        key,
+        (k, stored) -> {
+          ObjectNode item = stored != null ? stored.deepCopy() : objectMapper.createObjectNode();
+          item.putObject("event_id").put("S", key);
+          ArrayNode list =
+              item.path(listName).has("L")
+                  ? (ArrayNode) item.path(listName).path("L")
+                  : item.putObject(listName).putArray("L");
+
+          if (expression.contains("list_append")) {
+            list.addAll((ArrayNode) values.path(":entries").path("L"));
+            return item;
+          }
+
+          String generation = item.path("generation").path("S").asText(null);
+          String expected = values.path(":generation").path("S").asText(null);
+          if (expected == null ? generation != null : !expected.equals(generation)) {
+            applied[0] = false;
+            return stored;
+          }
+          item.set("generation", values.path(":new_generation"));
+          for (String field : new String[] {"state", "chunks"}) {
+            if (values.has(":" + field)) {
+              item.set(field, values.path(":" + field));
+            }
+          }
+          int moved = expression.split(listName + "\\[", -1).length - 1;
+          for (int i = 0; i < moved; i++) {
+            list.remove(0);
+          }
+          return item;
+        });
+    return applied[0];
+  }
+
+  /**
+   * The mention scheduler's index: counts of queued jobs added to, finish tags set when a job is
+   * taken, and teams removed once their count is back to zero. Returns the updated item, or null
+   * when the removal's condition fails.
+   */
+  private JsonNode updateSchedulerIndex(String key, JsonNode request) {
+    String expression = request.path("UpdateExpression").asText();
+    JsonNode names = request.path("ExpressionAttributeNames");
+    JsonNode values = request.path("ExpressionAttributeValues");
+    String pending = names.path("#pending").asText();
+    String finish = names.path("#finish").asText();
+    boolean[] applied = {true};
+    JsonNode updated =
+        items.compute(
+            key,
+            (k, stored) -> {
+              ObjectNode item =
+                  stored != null ? stored.deepCopy() : objectMapper.createObjectNode();
+              item.putObject("event_id").put("S", key);
+              long count = item.path(pending).path("N").asLong();
+
+              if (expression.startsWith("REMOVE")) {
+                boolean reset = values.has(":pending");
+                if (reset
+                    ? !item.has(pending) || count != values.path(":pending").path("N").asLong()
+                    : count > 0) {
+                  applied[0] = false;
+                  return stored;
+                }
+                item.remove(pending);
+                item.remove(finish);
+                return item;
+              }
+              if (values.has(":virtual_time")) {
+                // Conditional: virtual time only moves forward
+                if (item.has("virtual_time")
+                    && item.path("virtual_time").path("N").asDouble()
+                        > values.path(":virtual_time").path("N").asDouble()) {
+                  applied[0] = false;
+                  return stored;
+                }
+                item.set("virtual_time", values.path(":virtual_time"));
+              }
+              if (values.has(":finish")) {
+                item.set(finish, values.path(":finish"));
+              }
+              long delta = values.path(":delta").path("N").asLong();
+              item.putObject(pending).put("N", String.valueOf(count + delta));
+              return item;
+            });
+    return applied[0] ? updated : null;
+  }
+
+  private void conditionalCheckFailed(HttpExchange exchange, JsonNode request, JsonNode existing)
+      throws Exception {
+    ObjectNode error =
+        objectMapper
+            .createObjectNode()
+            .put("__type", CONDITIONAL_CHECK_FAILED_TYPE)
+            .put("message", "The conditional request failed");
+    if (existing != null
+        && "ALL_OLD".equals(request.path("ReturnValuesOnConditionCheckFailure").asText())) {
+      error.set("Item", existing);
+    }
+    respond(
+        exchange,
+        400,
+        objectMapper.writeValueAsString(error),
+        Map.of("Content-Type", "application/x-amz-json-1.0"));
+  }
+}
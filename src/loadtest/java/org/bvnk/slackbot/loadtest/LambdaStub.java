@@ -0,0 +1,59 @@
+package org.bvnk.slackbot.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.bvnk.slackbot.handler.SlackEventHandler;
+
+/**
+ * Stand-in for the Lambda Invoke API. Async invocations are acknowledged with 202 like the real
+ * service and then run in-process on a fixed pool, each pool thread acting as one warm container
+ * with its own handler instance.
+ */
+class LambdaStub extends StubServer {
+  private final ObjectMapper objectMapper = new ObjectMapper();
+  private final ExecutorService containers;
+  private final ThreadLocal<SlackEventHandler> handlers =
+      ThreadLocal.withInitial(SlackEventHandler::new);
+  private final long timeoutMillis;
+
+  LambdaStub(StageStats stats, int concurrency, long timeoutMillis) {
+    super("lambda", stats);
+    this.containers = Executors.newFixedThreadPool(concurrency);
+    this.timeoutMillis = timeoutMillis;
+  }
+
+  @Override
+  protected void handle(HttpExchange exchange) throws Exception {
+    Map<String, Object> payload = objectMapper.readValue(readBody(exchange), Map.class);
+    long queuedAt = System.nanoTime();
+    stats.increment("lambda.invocations");
+
+    containers.submit(
+        () -> {
+          stats.record("lambda.async_queue", (System.nanoTime() - queuedAt) / 1_000_000);
+          long start = System.nanoTime();
+          Object result = handlers.get().handleRequest(payload, new StubContext(timeoutMillis));
+          stats.record("worker", (System.nanoTime() - start) / 1_000_000);
+          if (result instanceof String text && text.startsWith("Error")) {
+            stats.increment("errors.worker");
+          }
+        });
+
+    respond(exchange, 202, "", Map.of());
+  }
+
+  @Override
+  public void stop() {
+    super.stop();
+    containers.shutdownNow();
+    try {
+      containers.awaitTermination(5, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
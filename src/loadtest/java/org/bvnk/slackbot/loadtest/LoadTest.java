@@ -0,0 +1,304 @@
+package org.bvnk.slackbot.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.net.URI;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.bvnk.slackbot.config.AppConfig;
+import org.bvnk.slackbot.handler.SlackEventHandler;
+import org.bvnk.slackbot.handler.SocketModeServer;
+
+/**
+ * Offline end-to-end load test. Starts local stand-ins for the Slack Web API, Bedrock, DynamoDB and
+ * the Lambda Invoke API, points the services at them through the endpoint overrides, and drives
+ * synthetic app_mention events through {@link SlackEventHandler} at a fixed rate.
+ *
+ * <p>Run with {@code ./gradlew loadTest -PloadTestArgs="--mentions 2000 --rate 100"}. Options:
+ *
+ * <ul>
+ *   <li>{@code --mentions} number of mentions to send (1000)
+ *   <li>{@code --rate} mentions per second (50)
+ *   <li>{@code --thread-size} messages per thread (200)
+ *   <li>{@code --threads} threads the mentions are spread over, so that later mentions find the
+ *       thread cached; 0 gives every mention a thread of its own (0)
+ *   <li>{@code --file-every} share a file in every Nth message of a thread, alternately a log and
+ *       an image, which are read with ATTACHMENTS_ENABLED set; 0 shares none (0)
+ *   <li>{@code --file-kb} size of each shared log (512)
+ *   <li>{@code --teams} workspaces the mentions are spread over (1)
+ *   <li>{@code --channels} channels the mentions are spread over; the first one asks for all the
+ *       summaries and the others only ask questions, to see how the scheduler shares the workers
+ *       between them (1)
+ *   <li>{@code --search-every} send every Nth mention as a {@code search} over the summaries made
+ *       so far instead; 0 sends none (0)
+ *   <li>{@code --bedrock-median-ms} median model latency (800)
+ *   <li>{@code --bedrock-sigma} spread of the log-normal model latency (0.5)
+ *   <li>{@code --bedrock-throttle-rate} share of model calls throttled at random (0.0)
+ *   <li>{@code --bedrock-max-in-flight} concurrent model calls before throttling (64)
+ *   <li>{@code --concurrency} async worker containers (64)
+ *   <li>{@code --ingress-concurrency} ingress containers (32)
+ *   <li>{@code --timeout-ms} worker invocation timeout (15000)
+ *   <li>{@code --dynamo-local} use the DynamoDB at DYNAMO_ENDPOINT_URL instead of the stub
+ *   <li>{@code --socket-mode} send the mentions over a Socket Mode stand-in to an in-process {@link
+ *       SocketModeServer}, with {@code --concurrency} workers, instead of through API Gateway and
+ *       the Lambda stub
+ *   <li>{@code --socket-max-queued} jobs waiting for a worker before the server stops reading the
+ *       socket (64)
+ *   <li>{@code --socket-refresh-every} envelopes after which the stand-in asks for a new
+ *       connection, as Slack does every few hours; 0 never does (0)
+ * </ul>
+ */
+public class LoadTest {
+  private static final String QUEUED_REPLY_PREFIX = "I'm handling a lot of requests";
+  private static final String[] ERROR_REPLY_PREFIXES = {"Sorry", "I encountered", "I couldn't"};
+  private static final long DRAIN_TIMEOUT_MILLIS = 120_000;
+
+  private final Map<String, String> options;
+  private final StageStats stats = new StageStats();
+  private final ObjectMapper objectMapper = new ObjectMapper();
+  // Start times of the mentions waiting for an answer, oldest first, by thread
+  private final Map<String, Deque<Long>> pending = new ConcurrentHashMap<>();
+  // The command asked in each thread, for end-to-end times by command
+  private final Map<String, String> commands = new ConcurrentHashMap<>();
+  private SocketModeStub socketMode;
+
+  LoadTest(Map<String, String> options) {
+    this.options = options;
+  }
+
+  public static void main(String[] args) throws Exception {
+    Map<String, String> options = new HashMap<>();
+    for (int i = 0; i < args.length; i++) {
+      if (!args[i].startsWith("--")) {
+        continue;
+      }
+      boolean hasValue = i + 1 < args.length && !args[i + 1].startsWith("--");
+      options.put(args[i].substring(2), hasValue ? args[++i] : "true");
+    }
+
+    new LoadTest(options).run();
+    System.exit(0);
+  }
+
+  private void run() throws Exception {
+    AppConfig config = AppConfig.getInstance();
+    int mentions = intOption("mentions", 1000);
+    int rate = intOption("rate", 50);
+
+    SlackApiStub slack =
+        new SlackApiStub(
+            stats,
+            intOption("thread-size", 200),
+            intOption("file-every", 0),
+            intOption("file-kb", 512) * 1024L,
+            URI.create(config.getSlackApiUrl()).resolve("/files-pri/").toString(),
+            this::onReply);
+    BedrockStub bedrock =
+        new BedrockStub(
+            stats,
+            intOption("bedrock-median-ms", 800),
+            Double.parseDouble(options.getOrDefault("bedrock-sigma", "0.5")),
+            Double.parseDouble(options.getOrDefault("bedrock-throttle-rate", "0.0")),
+            intOption("bedrock-max-in-flight", 64));
+    DynamoStub dynamo = new DynamoStub(stats);
+    LambdaStub lambda =
+        new LambdaStub(stats, intOption("concurrency", 64), intOption("timeout-ms", 15000));
+
+    slack.start(config.getSlackApiUrl());
+    bedrock.start(config.getBedrockEndpointUrl());
+    lambda.start(config.getLambdaEndpointUrl());
+    if (!options.containsKey("dynamo-local")) {
+      dynamo.start(config.getDynamoEndpointUrl());
+    }
+
+    SocketModeServer socketModeServer = null;
+    if (options.containsKey("socket-mode")) {
+      socketMode = new SocketModeStub(stats, intOption("socket-refresh-every", 0));
+      slack.setSocketModeUrl(socketMode.start());
+      socketModeServer =
+          new SocketModeServer(
+              config.getSlackApiUrl(),
+              "xapp-load-test",
+              intOption("concurrency", 64),
+              intOption("socket-max-queued", 64));
+      socketModeServer.start();
+    }
+
+    ExecutorService ingress = Executors.newFixedThreadPool(intOption("ingress-concurrency", 32));
+    ThreadLocal<SlackEventHandler> ingressHandlers =
+        ThreadLocal.withInitial(SlackEventHandler::new);
+    ScheduledExecutorService ticker = Executors.newSingleThreadScheduledExecutor();
+    AtomicInteger sent = new AtomicInteger();
+
+    System.out.printf("Sending %d mentions at %d/s%n", mentions, rate);
+    long start = System.nanoTime();
+
+    ticker.scheduleAtFixedRate(
+        () -> {
+          int index = sent.getAndIncrement();
+          if (index >= mentions) {
+            return;
+          }
+          ingress.submit(() -> sendMention(ingressHandlers.get(), index));
+        },
+        0,
+        1_000_000 / rate,
+        TimeUnit.MICROSECONDS);
+
+    while (sent.get() < mentions) {
+      Thread.sleep(100);
+    }
+    ticker.shutdownNow();
+
+    long drainUntil = System.currentTimeMillis() + DRAIN_TIMEOUT_MILLIS;
+    while (!pending.isEmpty() && System.currentTimeMillis() < drainUntil) {
+      Thread.sleep(100);
+    }
+    double elapsedSeconds = (System.nanoTime() - start) / 1e9;
+
+    long unanswered = pending.values().stream().mapToInt(Deque::size).sum();
+    long answered = mentions - unanswered;
+    System.out.println();
+    System.out.println(stats.report());
+    System.out.printf("mentions sent            %8d%n", mentions);
+    System.out.printf("mentions answered        %8d%n", answered);
+    System.out.printf("elapsed                  %8.1f s%n", elapsedSeconds);
+    System.out.printf("throughput               %8.1f answers/s%n", answered / elapsedSeconds);
+    System.out.printf("unanswered rate          %8.2f %%%n", 100.0 * unanswered / mentions);
+    System.out.printf(
+        "error reply rate         %8.2f %%%n", 100.0 * stats.count("errors.reply") / mentions);
+    System.out.printf(
+        "ingress error rate       %8.2f %%%n", 100.0 * stats.count("errors.ingress") / mentions);
+    if (socketMode != null) {
+      System.out.printf("unacknowledged envelopes %8d%n", socketMode.unacknowledged());
+    }
+
+    ingress.shutdownNow();
+    if (socketModeServer != null) {
+      socketModeServer.stop();
+      socketMode.stop();
+    }
+    slack.stop();
+    bedrock.stop();
+    dynamo.stop();
+    lambda.stop();
+  }
+
+  private void sendMention(SlackEventHandler handler, int index) {
+    int threads = intOption("threads", 0);
+    String threadTs = String.format("1800000000.%06d", threads > 0 ? index % threads : index);
+    int channels = intOption("channels", 1);
+    int channel = index % channels;
+    boolean summarize = channels > 1 ? channel == 0 && index % 3 != 2 : index % 3 == 0;
+    int searchEvery = intOption("search-every", 0);
+    boolean search = !summarize && searchEvery > 0 && index % searchEvery == searchEvery - 1;
+    String command = summarize ? "summarize" : search ? "search" : "question";
+    commands.put(threadTs, command);
+
+    try {
+      ObjectNode event = objectMapper.createObjectNode();
+      event.put("type", "event_callback");
+      event.put("team_id", "TLOADTEST" + index % intOption("teams", 1));
+      event.put("event_id", "EvLoadTest" + index);
+      event.put("event_time", System.currentTimeMillis() / 1000);
+      event
+          .putObject("event")
+          .put("type", "app_mention")
+          .put("channel", "CLOADTEST" + channel)
+          .put("user", "U0000001")
+          .put(
+              "text",
+              switch (command) {
+                case "summarize" -> "<@UBOTLOADTEST> summarize";
+                case "search" -> "<@UBOTLOADTEST> search payout provider failures";
+                default -> "<@UBOTLOADTEST> why?";
+              })
+          .put("ts", String.format("1800000001.%06d", index))
+          .put("thread_ts", threadTs);
+
+      if (socketMode != null) {
+        addPending(threadTs, System.nanoTime());
+        long start = System.nanoTime();
+        socketMode.send("EnvLoadTest" + index, event);
+        stats.record("ingress", (System.nanoTime() - start) / 1_000_000);
+        return;
+      }
+
+      Map<String, Object> request = new HashMap<>();
+      request.put("httpMethod", "POST");
+      request.put("path", "/slack/events");
+      request.put("headers", Map.of("Content-Type", "application/json"));
+      request.put("body", objectMapper.writeValueAsString(event));
+
+      addPending(threadTs, System.nanoTime());
+      long start = System.nanoTime();
+      Object response = handler.handleRequest(request, new StubContext(3000));
+      stats.record("ingress", (System.nanoTime() - start) / 1_000_000);
+
+      String status = objectMapper.convertValue(response, Map.class).get("statusCode").toString();
+      if (!"200".equals(status)) {
+        stats.increment("errors.ingress");
+        removePending(threadTs);
+      }
+    } catch (Exception e) {
+      stats.increment("errors.ingress");
+      removePending(threadTs);
+    }
+  }
+
+  private void onReply(String threadTs, String text) {
+    if (text.startsWith(QUEUED_REPLY_PREFIX)) {
+      stats.increment("replies.queued");
+      return;
+    }
+
+    Long start = threadTs == null ? null : removePending(threadTs);
+    if (start == null) {
+      return;
+    }
+    long endToEnd = (System.nanoTime() - start) / 1_000_000;
+    stats.record("end_to_end", endToEnd);
+    stats.record("end_to_end." + commands.getOrDefault(threadTs, "question"), endToEnd);
+
+    for (String prefix : ERROR_REPLY_PREFIXES) {
+      if (text.startsWith(prefix)) {
+        stats.increment("errors.reply");
+        return;
+      }
+    }
+  }
+
+  private void addPending(String threadTs, long start) {
+    pending.compute(
+        threadTs,
+        (key, starts) -> {
+          Deque<Long> updated = starts != null ? starts : new ArrayDeque<>();
+          updated.add(start);
+          return updated;
+        });
+  }
+
+  /** The start of the oldest mention waiting in the thread, taken as the one answered */
+  private Long removePending(String threadTs) {
+    Long[] start = {null};
+    pending.computeIfPresent(
+        threadTs,
+        (key, starts) -> {
+          start[0] = starts.poll();
+          return starts.isEmpty() ? null : starts;
+        });
+    return start[0];
+  }
+
+  private int intOption(String name, int defaultValue) {
+    return Integer.parseInt(options.getOrDefault(name, String.valueOf(defaultValue)));
+  }
+}
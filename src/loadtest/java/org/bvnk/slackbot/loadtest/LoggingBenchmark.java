@@ -0,0 +1,244 @@
+package org.bvnk.slackbot.loadtest;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import org.bvnk.slackbot.logging.LogContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Measures what logging costs one mention: time on the request thread, allocation, CPU across all
+ * threads and bytes written. Each backend runs in its own JVM, with stdout and stderr going to a
+ * temporary file, against the log calls of a mention with some simulated work between them:
+ *
+ * <pre>
+ * ./gradlew loggingBenchmark
+ * ./gradlew loggingBenchmark -PbenchmarkArgs="--requests 5000 --error-percent 5"
+ * </pre>
+ *
+ * <p>Backends: {@code nop} (no logging, the baseline), {@code simple} (slf4j-simple, which the bot
+ * used before), {@code json-sync}, {@code json-async} and {@code json-sampled} (async, keeping 10%
+ * of successful events). Options: {@code --requests} measured requests (2000), {@code --warmup}
+ * requests before measuring (1000), {@code --work-us} simulated work between log calls (100),
+ * {@code --error-percent} requests that log a warning with a stack trace (1), {@code --backend} to
+ * run only one.
+ */
+public class LoggingBenchmark {
+  private static final Map<String, Map<String, String>> BACKENDS = new LinkedHashMap<>();
+
+  static {
+    BACKENDS.put("nop", Map.of("slf4j.provider", "org.slf4j.helpers.NOP_FallbackServiceProvider"));
+    BACKENDS.put("simple", Map.of("slf4j.provider", "org.slf4j.simple.SimpleServiceProvider"));
+    BACKENDS.put("json-sync", Map.of("LOG_ASYNC", "false", "LOG_SAMPLE_PERCENT", "100"));
+    BACKENDS.put("json-async", Map.of("LOG_ASYNC", "true", "LOG_SAMPLE_PERCENT", "100"));
+    BACKENDS.put("json-sampled", Map.of("LOG_ASYNC", "true", "LOG_SAMPLE_PERCENT", "10"));
+  }
+
+  private static final String JSON_PROVIDER = "org.bvnk.slackbot.logging.JsonLoggingProvider";
+  private static final String TEXT =
+      "@bot can you summarise this thread, and what we agreed on for the EU payout retries?";
+
+  public static void main(String[] args) throws Exception {
+    Map<String, String> options = new HashMap<>();
+    for (int i = 0; i + 1 < args.length; i += 2) {
+      options.put(args[i].replaceFirst("^--", ""), args[i + 1]);
+    }
+
+    if (options.containsKey("run")) {
+      run(options);
+      return;
+    }
+
+    System.out.printf(
+        "%-14s %10s %10s %10s %12s %12s %10s%n",
+        "backend", "p50 ns", "p99 ns", "close ns", "alloc B", "cpu ns", "out B");
+    String only = options.get("backend");
+    for (Map.Entry<String, Map<String, String>> backend : BACKENDS.entrySet()) {
+      if (only == null || only.equals(backend.getKey())) {
+        runChild(backend.getKey(), backend.getValue(), args);
+      }
+    }
+    System.out.println();
+    System.out.println(
+        "p50/p99: time in log calls per request, close: ending the event's log scope (waits for"
+            + " the writer), alloc/cpu: whole JVM per request, out: bytes logged per request");
+  }
+
+  private static void runChild(String name, Map<String, String> settings, String[] args)
+      throws Exception {
+    String java = ProcessHandle.current().info().command().orElse("java");
+    String provider = settings.getOrDefault("slf4j.provider", JSON_PROVIDER);
+
+    List<String> command =
+        new ArrayList<>(
+            List.of(
+                java,
+                "-Dslf4j.provider=" + provider,
+                "-cp",
+                System.getProperty("java.class.path"),
+                LoggingBenchmark.class.getName()));
+    command.addAll(Arrays.asList(args));
+    command.addAll(List.of("--run", name));
+
+    ProcessBuilder builder = new ProcessBuilder(command).inheritIO();
+    settings.forEach(
+        (key, value) -> {
+          if (!key.startsWith("slf4j.")) {
+            builder.environment().put(key, value);
+          }
+        });
+    builder.start().waitFor();
+  }
+
+  private static void run(Map<String, String> options) throws Exception {
+    int requests = Integer.parseInt(options.getOrDefault("requests", "2000"));
+    int warmup = Integer.parseInt(options.getOrDefault("warmup", "1000"));
+    long workNanos =
+        TimeUnit.MICROSECONDS.toNanos(Long.parseLong(options.getOrDefault("work-us", "100")));
+    int errorPercent = Integer.parseInt(options.getOrDefault("error-percent", "1"));
+
+    // Every backend writes to the file, before any logger gets hold of stdout or stderr
+    PrintStream results = System.out;
+    File output = File.createTempFile("logging-benchmark", ".log");
+    // output.deleteOnExit();
+    PrintStream logs =
+        new PrintStream(new BufferedOutputStream(new FileOutputStream(output)), true);
+    System.setOut(logs);
+    System.setErr(logs);
+
+    Logger handlerLog = LoggerFactory.getLogger("org.bvnk.slackbot.handler.AsyncProcessorHandler");
+    Logger slackLog = LoggerFactory.getLogger("org.bvnk.slackbot.service.SlackService");
+    Logger dynamoLog = LoggerFactory.getLogger("org.bvnk.slackbot.service.DynamoService");
+    Logger bedrockLog = LoggerFactory.getLogger("org.bvnk.slackbot.service.BedrockService");
+    Request request = new Request(handlerLog, slackLog, dynamoLog, bedrockLog, workNanos);
+
+    for (int i = 0; i < warmup; i++) {
+      request.run(i, errorPercent);
+    }
+
+    long[] logNanos = new long[requests];
+    long closeNanos = 0;
+    long outputBefore = output.length();
+    long allocatedBefore = allocatedBytes();
+    long cpuBefore = processCpuNanos();
+    for (int i = 0; i < requests; i++) {
+      request.run(warmup + i, errorPercent);
+      logNanos[i] = request.logNanos;
+      closeNanos += request.closeNanos;
+    }
+    long cpu = processCpuNanos() - cpuBefore;
+    long allocated = allocatedBytes() - allocatedBefore;
+    logs.flush();
+    long written = output.length() - outputBefore;
+
+    Arrays.sort(logNanos);
+    results.printf(
+        "%-14s %10d %10d %10d %12d %12d %10d%n",
+        options.get("run"),
+        logNanos[requests / 2],
+        logNanos[(int) Math.ceil(requests * 0.99) - 1],
+        closeNanos / requests,
+        allocated / requests,
+        cpu / requests,
+        written / requests);
+    results.flush();
+    System.exit(0);
+  }
+
+  /** Bytes allocated by every thread of this JVM, including the log writer */
+  private static long allocatedBytes() {
+    return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+        .getTotalThreadAllocatedBytes();
+  }
+
+  private static long processCpuNanos() {
+    return ((com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean())
+        .getProcessCpuTime();
+  }
+
+  /** The log calls of one mention, from receiving it to posting the answer */
+  private static class Request {
+    private final Logger handlerLog;
+    private final Logger slackLog;
+    private final Logger dynamoLog;
+    private final Logger bedrockLog;
+    private final long workNanos;
+    private long logNanos;
+    private long closeNanos;
+
+    Request(
+        Logger handlerLog, Logger slackLog, Logger dynamoLog, Logger bedrockLog, long workNanos) {
+      this.handlerLog = handlerLog;
+      this.slackLog = slackLog;
+      this.dynamoLog = dynamoLog;
+      this.bedrockLog = bedrockLog;
+      this.workNanos = workNanos;
+    }
+
+    void run(int index, int errorPercent) {
+      logNanos = 0;
+      String eventId = "Ev" + index;
+      String ts = "1800000001." + index;
+      String channel = "C0000000" + index % 8;
+
+      long start = System.nanoTime();
+      LogContext.Scope scope = LogContext.start(eventId, "process_mention");
+      handlerLog.debug("Processing async event");
+      handlerLog.info("Processing mention {} in channel {}, thread {}", ts, channel, ts);
+      handlerLog.debug("Mention text: {}", LogContext.redact(TEXT));
+      logNanos += System.nanoTime() - start;
+
+      work();
+      log(() -> dynamoLog.debug("Successfully marked event {} as received", eventId));
+      work();
+      log(() -> slackLog.debug("Added reaction {} to message {}", "eyes", ts));
+      work();
+      log(() -> slackLog.debug("Retrieved {} messages from thread {}", 42, ts));
+      work();
+      log(() -> handlerLog.info("Thread has {} messages, {} characters", 42, 18_000));
+      work();
+      log(() -> bedrockLog.info("Invoking model {} with {} input tokens", "claude", 4_500));
+      work();
+      if (ThreadLocalRandom.current().nextInt(100) < errorPercent) {
+        log(
+            () ->
+                bedrockLog.warn(
+                    "Bedrock call failed, retrying", new IllegalStateException("Throttled")));
+        work();
+      }
+      log(() -> bedrockLog.info("Model answered with {} output tokens", 600));
+      work();
+      log(() -> slackLog.debug("Posted message to channel {} in thread {}", channel, ts));
+      work();
+      log(() -> slackLog.debug("Removed reaction {} from message {}", "eyes", ts));
+      log(() -> dynamoLog.debug("Updated event {} status to {}", eventId, "COMPLETED"));
+      log(() -> handlerLog.info("Processed mention {} in {} ms", ts, 2));
+
+      long closeStart = System.nanoTime();
+      scope.close();
+      closeNanos = System.nanoTime() - closeStart;
+    }
+
+    private void log(Runnable call) {
+      long start = System.nanoTime();
+      call.run();
+      logNanos += System.nanoTime() - start;
+    }
+
+    private void work() {
+      LockSupport.parkNanos(workNanos);
+    }
+  }
+}
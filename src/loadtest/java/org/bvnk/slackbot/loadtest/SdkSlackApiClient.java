@@ -0,0 +1,182 @@
+package org.bvnk.slackbot.loadtest;
+
+import com.slack.api.Slack;
+import com.slack.api.SlackConfig;
+import com.slack.api.methods.MethodsClient;
+import com.slack.api.methods.SlackApiTextResponse;
+import com.slack.api.methods.request.chat.ChatPostMessageRequest;
+import com.slack.api.methods.request.conversations.ConversationsHistoryRequest;
+import com.slack.api.methods.request.conversations.ConversationsRepliesRequest;
+import com.slack.api.methods.request.reactions.ReactionsAddRequest;
+import com.slack.api.methods.request.reactions.ReactionsRemoveRequest;
+import com.slack.api.methods.request.users.UsersInfoRequest;
+import com.slack.api.methods.response.conversations.ConversationsHistoryResponse;
+import com.slack.api.model.Message;
+import com.slack.api.model.block.LayoutBlock;
+import com.slack.api.model.block.SectionBlock;
+import com.slack.api.model.block.composition.MarkdownTextObject;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.bvnk.slackbot.service.SlackApiClient;
+import org.bvnk.slackbot.service.SlackApiException;
+
+/**
+ * The bot's Slack calls made through slack-api-client, the library the bot used before, so the
+ * benchmark can compare the two clients behind the same interface
+ */
+class SdkSlackApiClient implements SlackApiClient {
+  private final MethodsClient methods;
+
+  SdkSlackApiClient(String apiUrl, String botToken) {
+    SlackConfig config = new SlackConfig();
+    config.setMethodsEndpointUrlPrefix(apiUrl);
+    this.methods = Slack.getInstance(config).methods(botToken);
+  }
+
+  @Override
+  public String authTest() {
+    return check("auth.test", call("auth.test", () -> methods.authTest(r -> r))).getUserId();
+  }
+
+  @Override
+  public User usersInfo(String userId) {
+    com.slack.api.model.User user =
+        check(
+                "users.info",
+                call(
+                    "users.info",
+                    () -> methods.usersInfo(UsersInfoRequest.builder().user(userId).build())))
+            .getUser();
+    return user.getProfile() != null
+        ? new User(
+            user.getName(), user.getProfile().getDisplayName(), user.getProfile().getRealName())
+        : new User(user.getName(), null, null);
+  }
+
+  @Override
+  public List<Map<String, Object>> conversationsReplies(
+      String channel, String threadTs, String oldest, int limit) {
+    ConversationsRepliesRequest request =
+        ConversationsRepliesRequest.builder()
+            .channel(channel)
+            .ts(threadTs)
+            .oldest(oldest)
+            .inclusive(true)
+            .limit(limit)
+            .build();
+    List<Message> messages =
+        check(
+                "conversations.replies",
+                call("conversations.replies", () -> methods.conversationsReplies(request)))
+            .getMessages();
+    return toMaps(messages);
+  }
+
+  @Override
+  public HistoryPage conversationsHistory(String channel, String oldest, String cursor, int limit) {
+    ConversationsHistoryRequest request =
+        ConversationsHistoryRequest.builder()
+            .channel(channel)
+            .oldest(oldest)
+            .cursor(cursor)
+            .limit(limit)
+            .build();
+    ConversationsHistoryResponse response =
+        check(
+            "conversations.history",
+            call("conversations.history", () -> methods.conversationsHistory(request)));
+    String nextCursor =
+        response.getResponseMetadata() != null
+            ? response.getResponseMetadata().getNextCursor()
+            : null;
+    return new HistoryPage(
+        toMaps(response.getMessages()),
+        nextCursor == null || nextCursor.isEmpty() ? null : nextCursor);
+  }
+
+  @Override
+  public String chatPostMessage(
+      String channel, String threadTs, String text, List<String> sections) {
+    List<LayoutBlock> blocks = new ArrayList<>();
+    for (String section : sections) {
+      blocks.add(
+          SectionBlock.builder().text(MarkdownTextObject.builder().text(section).build()).build());
+    }
+    ChatPostMessageRequest request =
+        ChatPostMessageRequest.builder()
+            .channel(channel)
+            .threadTs(threadTs)
+            .blocks(blocks.isEmpty() ? null : blocks)
+            .text(text)
+            .build();
+    return check(
+            "chat.postMessage", call("chat.postMessage", () -> methods.chatPostMessage(request)))
+        .getTs();
+  }
+
+  @Override
+  public void reactionsAdd(String channel, String timestamp, String name) {
+    ReactionsAddRequest request =
+        ReactionsAddRequest.builder().channel(channel).timestamp(timestamp).name(name).build();
+    check("reactions.add", call("reactions.add", () -> methods.reactionsAdd(request)));
+  }
+
+  @Override
+  public void reactionsRemove(String channel, String timestamp, String name) {
+    ReactionsRemoveRequest request =
+        ReactionsRemoveRequest.builder().channel(channel).timestamp(timestamp).name(name).build();
+    check("reactions.remove", call("reactions.remove", () -> methods.reactionsRemove(request)));
+  }
+
+  @Override
+  public InputStream openFile(String url) {
+    // slack-api-client has no streaming download, and files aren't part of the comparison
+    throw new UnsupportedOperationException("File downloads aren't benchmarked");
+  }
+
+  private static List<Map<String, Object>> toMaps(List<Message> messages) {
+    List<Map<String, Object>> maps = new ArrayList<>();
+    if (messages == null) {
+      return maps;
+    }
+    for (Message message : messages) {
+      Map<String, Object> map = new HashMap<>();
+      map.put("user", message.getUser());
+      map.put("text", message.getText());
+      map.put("ts", message.getTs());
+      map.put("bot_id", message.getBotId());
+      map.put("subtype", message.getSubtype());
+      map.put("username", message.getUsername());
+      if (message.getBotProfile() != null && message.getBotProfile().getName() != null) {
+        map.put("bot_profile", Map.of("name", message.getBotProfile().getName()));
+      }
+      map.put("thread_ts", message.getThreadTs());
+      map.put("reply_count", message.getReplyCount());
+      map.put("latest_reply", message.getLatestReply());
+      maps.add(map);
+    }
+    return maps;
+  }
+
+  private static <T extends SlackApiTextResponse> T check(String method, T response) {
+    if (!response.isOk()) {
+      throw new SlackApiException(method, response.getError(), 0);
+    }
+    return response;
+  }
+
+  private static <T> T call(String method, SdkCall<T> call) {
+    try {
+      return call.call();
+    } catch (Exception e) {
+      throw new SlackApiException(method, e);
+    }
+  }
+
+  private interface SdkCall<T> {
+    T call() throws Exception;
+  }
+}
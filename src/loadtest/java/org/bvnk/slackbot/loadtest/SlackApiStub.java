@@ -0,0 +1,265 @@
+package org.bvnk.slackbot.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import java.io.OutputStream;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.BiConsumer;
+
+/**
+ * Stand-in for the Slack Web API methods the bot calls. Every thread has the same synthetic
+ * content, mixing chatter, repeated alerts, links and pasted stack traces. Optionally some messages
+ * share a file, alternately a log, served over GET and generated as it is sent, and an image.
+ */
+class SlackApiStub extends StubServer {
+  private static final String BOT_USER_ID = "UBOTLOADTEST";
+  private static final int HISTORY_THREADS = 200;
+  private static final String[] USERS = {"U0000001", "U0000002", "U0000003", "U0000004"};
+  private static final String[] LINES = {
+    "Payouts to EU banks are failing with a timeout from the provider",
+    "I checked the dashboard <https://grafana.example.com/d/payouts?orgId=1|payouts> :eyes:",
+    "[FIRING:1] PayoutErrorRate above 5% for payouts-service id=%d",
+    "We decided to roll back the retry change and keep 3 attempts",
+    "Can someone own the follow-up with the provider? I'll draft the incident report",
+    "Latency went up right after deploy %d, see https://deploy.example.com/runs/%d",
+    "```\njava.net.SocketTimeoutException: Read timed out\n"
+        + "\tat java.base/sun.nio.ch.NioSocketImpl.timedRead(NioSocketImpl.java:288)\n".repeat(20)
+        + "```",
+  };
+
+  private static final byte[] LOG_OK = logLines("INFO", "status=200 latency_ms=");
+  private static final byte[] LOG_FAILING =
+      logLines("ERROR", "java.net.SocketTimeoutException: Read timed out from provider, attempt ");
+
+  private final ObjectMapper objectMapper = new ObjectMapper();
+  private final ArrayNode threadMessages;
+  private final String repliesBody;
+  private final int threadSize;
+  private final int fileEvery;
+  private final long fileBytes;
+  private final String filesUrl;
+  private final BiConsumer<String, String> onPostMessage;
+  private volatile String socketModeUrl;
+
+  SlackApiStub(StageStats stats, int threadSize, BiConsumer<String, String> onPostMessage) {
+    this(stats, threadSize, 0, 0, null, onPostMessage);
+  }
+
+  /**
+   * A stand-in where every {@code fileEvery}th message of a thread shares a file, with logs of
+   * {@code fileBytes} served under {@code filesUrl}
+   */
+  SlackApiStub(
+      StageStats stats,
+      int threadSize,
+      int fileEvery,
+      long fileBytes,
+      String filesUrl,
+      BiConsumer<String, String> onPostMessage) {
+    super("slack", stats);
+    this.onPostMessage = onPostMessage;
+    this.threadSize = threadSize;
+    this.fileEvery = fileEvery;
+    this.fileBytes = fileBytes;
+    this.filesUrl = filesUrl;
+    this.threadMessages = buildThread(threadSize);
+    this.repliesBody = replies(null);
+  }
+
+  /** Where apps.connections.open sends Socket Mode clients */
+  void setSocketModeUrl(String socketModeUrl) {
+    this.socketModeUrl = socketModeUrl;
+  }
+
+  @Override
+  protected void handle(HttpExchange exchange) throws Exception {
+    String path = exchange.getRequestURI().getPath();
+    String method = path.substring(path.lastIndexOf('/') + 1);
+    String contentType = exchange.getRequestHeaders().getFirst("Content-Type");
+    String requestBody = readBody(exchange);
+    Map<String, String> params =
+        contentType != null && contentType.startsWith("application/json")
+            ? parseJson(requestBody)
+            : parseForm(requestBody);
+    stats.increment("slack." + method);
+
+    String body =
+        switch (method) {
+          case "auth.test" ->
+              "{\"ok\":true,\"user_id\":\"" + BOT_USER_ID + "\",\"team_id\":\"TLOADTEST\"}";
+          case "users.info" -> userInfo(params.getOrDefault("user", "U0"));
+          case "conversations.replies" ->
+              params.containsKey("oldest") ? replies(params.get("oldest")) : repliesBody;
+          case "conversations.history" -> history(threadSize);
+          case "chat.postMessage" -> {
+            onPostMessage.accept(params.get("thread_ts"), params.getOrDefault("text", ""));
+            yield "{\"ok\":true,\"channel\":\"" + params.get("channel") + "\",\"ts\":\"1.1\"}";
+          }
+          case "reactions.add", "reactions.remove" -> "{\"ok\":true}";
+          case "apps.connections.open" ->
+              socketModeUrl != null
+                  ? "{\"ok\":true,\"url\":\"" + socketModeUrl + "\"}"
+                  : "{\"ok\":false,\"error\":\"not_allowed_token_type\"}";
+          default -> "{\"ok\":false,\"error\":\"unknown_method\"}";
+        };
+
+    respond(exchange, 200, body, Map.of());
+  }
+
+  /** A shared log file, with a line per request and the errors towards its end */
+  @Override
+  protected void handleGet(HttpExchange exchange) throws Exception {
+    String path = exchange.getRequestURI().getPath();
+    if (!path.startsWith("/files-pri/")) {
+      super.handleGet(exchange);
+      return;
+    }
+    stats.increment("slack.files.download");
+
+    long start = System.nanoTime();
+    exchange.getResponseHeaders().set("Content-Type", "text/plain");
+    exchange.sendResponseHeaders(200, fileBytes);
+    try (OutputStream out = exchange.getResponseBody()) {
+      long written = 0;
+      while (written < fileBytes) {
+        byte[] chunk = written < fileBytes * 9 / 10 ? LOG_OK : LOG_FAILING;
+        int length = (int) Math.min(chunk.length, fileBytes - written);
+        out.write(chunk, 0, length);
+        written += length;
+      }
+    }
+    stats.record("slack.files (stub)", (System.nanoTime() - start) / 1_000_000);
+  }
+
+  /** 64 KB of whole log lines, repeated to make up a file of any size */
+  private static byte[] logLines(String level, String message) {
+    StringBuilder lines = new StringBuilder(65_536);
+    for (int i = 0; ; i++) {
+      String line =
+          String.format(
+              "2024-05-01T10:%02d:%02d.%03dZ %s payouts-service request id=%d %s%d%n",
+              i / 60_000 % 60, i / 1000 % 60, i % 1000, level, i, message, 40 + i % 50);
+      if (lines.length() + line.length() > 65_536) {
+        return lines.toString().getBytes(StandardCharsets.UTF_8);
+      }
+      lines.append(line);
+    }
+  }
+
+  private String userInfo(String userId) throws Exception {
+    ObjectNode response = objectMapper.createObjectNode().put("ok", true);
+    ObjectNode user = response.putObject("user").put("id", userId).put("name", userId);
+    user.putObject("profile").put("display_name", "user-" + userId).put("real_name", userId);
+    return objectMapper.writeValueAsString(response);
+  }
+
+  /** One page of thread parents, one thread per minute going back from now */
+  private String history(int replyCount) throws Exception {
+    long now = System.currentTimeMillis() / 1000;
+    ObjectNode response = objectMapper.createObjectNode().put("ok", true).put("has_more", false);
+    ArrayNode messages = response.putArray("messages");
+
+    for (int i = 0; i < HISTORY_THREADS; i++) {
+      messages
+          .addObject()
+          .put("type", "message")
+          .put("user", USERS[i % USERS.length])
+          .put("text", LINES[i % 2])
+          .put("ts", (now - 7200 - i) + ".000100")
+          .put("thread_ts", (now - 7200 - i) + ".000100")
+          .put("reply_count", replyCount)
+          .put("latest_reply", (now - 60L * i) + ".000200");
+    }
+    return objectMapper.writeValueAsString(response);
+  }
+
+  private ArrayNode buildThread(int threadSize) {
+    Random random = new Random(42);
+    ArrayNode messages = objectMapper.createArrayNode();
+
+    for (int i = 0; i < threadSize; i++) {
+      String line = LINES[random.nextInt(LINES.length)];
+      String text = line.contains("%d") ? line.replace("%d", String.valueOf(i)) : line;
+      ObjectNode message =
+          messages
+              .addObject()
+              .put("type", "message")
+              .put("user", USERS[random.nextInt(USERS.length)])
+              .put("text", text)
+              .put("ts", String.format("1700000000.%06d", i))
+              .put("thread_ts", "1700000000.000000");
+
+      if (fileEvery > 0 && i % fileEvery == fileEvery - 1) {
+        boolean log = i / fileEvery % 2 == 0;
+        String id = String.format("F%06d", i);
+        String name = log ? "payouts-" + i + ".log" : "dashboard-" + i + ".png";
+        String url = filesUrl + "TLOADTEST-" + id + "/" + name;
+        message
+            .putArray("files")
+            .addObject()
+            .put("id", id)
+            .put("name", name)
+            .put("mimetype", log ? "text/plain" : "image/png")
+            .put("filetype", log ? "text" : "png")
+            .put("mode", "hosted")
+            .put("size", log ? fileBytes : 250_000)
+            .put("url_private", url)
+            .put("url_private_download", url + "?download=1");
+      }
+    }
+    return messages;
+  }
+
+  /** The thread, or with oldest the parent and the replies from then on, as Slack sends them */
+  private String replies(String oldest) {
+    ObjectNode response = objectMapper.createObjectNode().put("ok", true).put("has_more", false);
+    ArrayNode messages = response.putArray("messages");
+    for (int i = 0; i < threadMessages.size(); i++) {
+      JsonNode message = threadMessages.get(i);
+      if (i == 0 || oldest == null || message.path("ts").asText().compareTo(oldest) >= 0) {
+        messages.add(message);
+      }
+    }
+
+    try {
+      return objectMapper.writeValueAsString(response);
+    } catch (Exception e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /** Top-level string fields of a JSON body, as chat.postMessage can be sent */
+  private Map<String, String> parseJson(String body) throws Exception {
+    Map<String, String> params = new HashMap<>();
+    objectMapper
+        .readTree(body)
+        .properties()
+        .forEach(
+            field -> {
+              if (field.getValue().isTextual()) {
+                params.put(field.getKey(), field.getValue().asText());
+              }
+            });
+    return params;
+  }
+
+  private Map<String, String> parseForm(String body) {
+    Map<String, String> params = new HashMap<>();
+    for (String pair : body.split("&")) {
+      int equals = pair.indexOf('=');
+      if (equals > 0) {
+        params.put(
+            URLDecoder.decode(pair.substring(0, equals), StandardCharsets.UTF_8),
+            URLDecoder.decode(pair.substring(equals + 1), StandardCharsets.UTF_8));
+      }
+    }
+    return params;
+  }
+}
@@ -0,0 +1,185 @@
+package org.bvnk.slackbot.loadtest;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.bvnk.slackbot.service.HttpSlackApiClient;
+import org.bvnk.slackbot.service.SlackApiClient;
+
+/**
+ * Compares the bot's Slack client with slack-api-client on the calls a mention makes: thread
+ * replies, user lookups, posting the answer and the reactions. The Slack stand-in runs in a child
+ * JVM, so the allocation figures only cover the client under test. Run one client per JVM, so the
+ * first-call figures reflect a cold start:
+ *
+ * <pre>
+ * ./gradlew slackClientBenchmark -PbenchmarkArgs="--client http"
+ * ./gradlew slackClientBenchmark -PbenchmarkArgs="--client sdk"
+ * </pre>
+ *
+ * <p>Options: {@code --client} http or sdk (http), {@code --calls} measured mentions (1000), {@code
+ * --warmup} mentions before measuring (500), {@code --thread-size} messages per thread (200).
+ */
+public class SlackClientBenchmark {
+  private static final String CHANNEL = "CBENCH";
+  private static final String THREAD_TS = "1700000000.000000";
+  private static final String ANSWER =
+      "*Summary*\n• The provider timed out on EU payouts\n• The retry change was rolled back\n";
+
+  public static void main(String[] args) throws Exception {
+    Map<String, String> options = new HashMap<>();
+    for (int i = 0; i + 1 < args.length; i += 2) {
+      options.put(args[i].replaceFirst("^--", ""), args[i + 1]);
+    }
+
+    String apiUrl = System.getenv().getOrDefault("SLACK_API_URL", "http://localhost:18080/api/");
+    if (options.containsKey("serve")) {
+      serve(apiUrl, Integer.parseInt(options.getOrDefault("thread-size", "200")));
+      return;
+    }
+
+    Process stub = startStub(options.getOrDefault("thread-size", "200"));
+    try {
+      new SlackClientBenchmark().run(options, apiUrl);
+    } finally {
+      stub.destroy();
+    }
+    System.exit(0);
+  }
+
+  private void run(Map<String, String> options, String apiUrl) throws Exception {
+    String clientName = options.getOrDefault("client", "http");
+    int calls = Integer.parseInt(options.getOrDefault("calls", "1000"));
+    int warmup = Integer.parseInt(options.getOrDefault("warmup", "500"));
+
+    // Cold start: building the client and making its first call, with the classes that pulls in
+    int classesBefore = ManagementFactory.getClassLoadingMXBean().getLoadedClassCount();
+    long coldStart = System.nanoTime();
+    SlackApiClient client =
+        "sdk".equals(clientName)
+            ? new SdkSlackApiClient(apiUrl, "xoxb-benchmark")
+            : new HttpSlackApiClient(apiUrl, "xoxb-benchmark");
+    client.authTest();
+    long firstCallMicros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - coldStart);
+    int classesLoaded =
+        ManagementFactory.getClassLoadingMXBean().getLoadedClassCount() - classesBefore;
+
+    for (int i = 0; i < warmup; i++) {
+      mention(client, i, null);
+    }
+
+    Map<String, Samples> samples = new LinkedHashMap<>();
+    for (int i = 0; i < calls; i++) {
+      mention(client, i, samples);
+    }
+
+    System.out.printf("client                   %s%n", clientName);
+    System.out.printf("first call (cold)        %8d us%n", firstCallMicros);
+    System.out.printf("classes loaded for it    %8d%n", classesLoaded);
+    System.out.println();
+    System.out.printf(
+        "%-24s %8s %8s %8s %8s %12s%n", "method", "calls", "p50 us", "p90 us", "p99 us", "alloc B");
+    samples.forEach(
+        (method, sample) ->
+            System.out.printf(
+                "%-24s %8d %8d %8d %8d %12d%n",
+                method,
+                sample.count(),
+                sample.percentile(50),
+                sample.percentile(90),
+                sample.percentile(99),
+                sample.allocatedPerCall()));
+  }
+
+  /** The Slack calls one mention makes, timed when samples are given */
+  private void mention(SlackApiClient client, int index, Map<String, Samples> samples) {
+    String userId = "U000000" + (index % 4 + 1);
+    measure(samples, "reactions.add", () -> client.reactionsAdd(CHANNEL, THREAD_TS, "eyes"));
+    measure(
+        samples,
+        "conversations.replies",
+        () -> client.conversationsReplies(CHANNEL, THREAD_TS, null, 1000));
+    measure(samples, "users.info", () -> client.usersInfo(userId));
+    measure(
+        samples,
+        "chat.postMessage",
+        () -> client.chatPostMessage(CHANNEL, THREAD_TS, ANSWER, List.of(ANSWER)));
+    measure(samples, "reactions.remove", () -> client.reactionsRemove(CHANNEL, THREAD_TS, "eyes"));
+  }
+
+  private void measure(Map<String, Samples> samples, String method, Runnable call) {
+    if (samples == null) {
+      call.run();
+      return;
+    }
+
+    long allocatedBefore = allocatedBytes();
+    long start = System.nanoTime();
+    call.run();
+    long micros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start);
+    samples
+        .computeIfAbsent(method, m -> new Samples())
+        .add(micros, allocatedBytes() - allocatedBefore);
+  }
+
+  /** Bytes allocated by every thread of this JVM, including the HTTP clients' own threads */
+  private static long allocatedBytes() {
+    return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+        .getTotalThreadAllocatedBytes();
+  }
+
+  private static Process startStub(String threadSize) throws Exception {
+    String java = ProcessHandle.current().info().command().orElse("java");
+    Process process =
+        new ProcessBuilder(
+                java,
+                // Otherwise small responses wait on delayed ACKs, hiding the clients' own cost
+                "-Dsun.net.httpserver.nodelay=true",
+                "-cp",
+                System.getProperty("java.class.path"),
+                SlackClientBenchmark.class.getName(),
+                "--serve",
+                "true",
+                "--thread-size",
+                threadSize)
+            .inheritIO()
+            .start();
+    Thread.sleep(1500); // Give the stand-in time to start listening
+    return process;
+  }
+
+  private static void serve(String apiUrl, int threadSize) throws Exception {
+    new SlackApiStub(new StageStats(), threadSize, (threadTs, text) -> {}).start(apiUrl);
+    Thread.currentThread().join();
+  }
+
+  private static class Samples {
+    private final List<Long> micros = new ArrayList<>();
+    private long allocated;
+
+    void add(long callMicros, long allocatedBytes) {
+      micros.add(callMicros);
+      allocated += allocatedBytes;
+    }
+
+    int count() {
+      return micros.size();
+    }
+
+    long percentile(double percentile) {
+      long[] sorted = micros.stream().mapToLong(Long::longValue).toArray();
+      Arrays.sort(sorted);
+      int index = (int) Math.ceil(percentile / 100.0 * sorted.length) - 1;
+      return sorted[Math.max(0, index)];
+    }
+
+    long allocatedPerCall() {
+      return allocated / Math.max(1, micros.size());
+    }
+  }
+}
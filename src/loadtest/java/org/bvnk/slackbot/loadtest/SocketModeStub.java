@@ -0,0 +1,307 @@
+package org.bvnk.slackbot.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Stand-in for Slack's Socket Mode endpoint: a bare WebSocket server, speaking just enough of the
+ * protocol for text frames, pings and close. Each connection is greeted with {@code hello}. Events
+ * are sent as {@code events_api} envelopes on the newest connection, and ones not acknowledged
+ * within {@link #ACK_TIMEOUT_MILLIS} are sent again, up to three times, as Slack does. Every {@code
+ * refreshEvery} envelopes the connection is asked to refresh, so reconnects happen under load.
+ */
+class SocketModeStub {
+  private static final Logger logger = LoggerFactory.getLogger(SocketModeStub.class);
+  private static final String ACCEPT_GUID = "258EAFA5-E914-47DA-95CA-C5AB0DC85B11";
+  private static final long ACK_TIMEOUT_MILLIS = 3000;
+  private static final int MAX_RETRIES = 3;
+
+  private final StageStats stats;
+  private final int refreshEvery;
+  private final ObjectMapper objectMapper = new ObjectMapper();
+  private final Map<String, Envelope> unacknowledged = new ConcurrentHashMap<>();
+  private final AtomicInteger sent = new AtomicInteger();
+  private final ScheduledExecutorService retries = Executors.newSingleThreadScheduledExecutor();
+  private ServerSocket server;
+  private volatile Connection newest;
+
+  SocketModeStub(StageStats stats, int refreshEvery) {
+    this.stats = stats;
+    this.refreshEvery = refreshEvery;
+  }
+
+  /** Start listening, returning the URL apps.connections.open should hand out */
+  String start() throws IOException {
+    server = new ServerSocket(0, 64, InetAddress.getLoopbackAddress());
+    Thread.ofVirtual().start(this::accept);
+    retries.scheduleAtFixedRate(this::retry, 500, 500, TimeUnit.MILLISECONDS);
+    return "ws://localhost:" + server.getLocalPort() + "/link";
+  }
+
+  void stop() {
+    retries.shutdownNow();
+    try {
+      server.close();
+    } catch (IOException e) {
+      // Already closed
+    }
+  }
+
+  /** Send an event callback in a new envelope, waiting for a connection when there is none */
+  void send(String envelopeId, JsonNode payload) throws Exception {
+    Envelope envelope = new Envelope(envelopeId, payload, System.nanoTime());
+    unacknowledged.put(envelopeId, envelope);
+    deliver(envelope, 0);
+
+    if (refreshEvery > 0 && sent.incrementAndGet() % refreshEvery == 0) {
+      Connection connection = newest;
+      if (connection != null) {
+        connection.sendText("{\"type\":\"disconnect\",\"reason\":\"refresh_requested\"}");
+        stats.increment("socket.refreshes");
+      }
+    }
+  }
+
+  int unacknowledged() {
+    return unacknowledged.size();
+  }
+
+  private void deliver(Envelope envelope, int retryAttempt) throws Exception {
+    ObjectNode message = objectMapper.createObjectNode();
+    message.put("envelope_id", envelope.id);
+    message.put("type", "events_api");
+    message.set("payload", envelope.payload);
+    message.put("accepts_response_payload", false);
+    message.put("retry_attempt", retryAttempt);
+    String text = objectMapper.writeValueAsString(message);
+
+    while (true) {
+      Connection connection = newest;
+      if (connection != null && connection.open) {
+        try {
+          connection.sendText(text);
+          envelope.sentAt = System.nanoTime();
+          return;
+        } catch (IOException e) {
+          connection.open = false;
+        }
+      }
+      Thread.sleep(10);
+    }
+  }
+
+  private void retry() {
+    long now = System.nanoTime();
+    for (Envelope envelope : unacknowledged.values()) {
+      if (now - envelope.sentAt < TimeUnit.MILLISECONDS.toNanos(ACK_TIMEOUT_MILLIS)) {
+        continue;
+      }
+      if (envelope.retries >= MAX_RETRIES) {
+        unacknowledged.remove(envelope.id);
+        stats.increment("socket.dropped");
+        continue;
+      }
+      envelope.retries++;
+      stats.increment("socket.retries");
+      try {
+        deliver(envelope, envelope.retries);
+      } catch (Exception e) {
+        logger.warn("Could not resend envelope {}", envelope.id, e);
+      }
+    }
+  }
+
+  private void accept() {
+    while (!server.isClosed()) {
+      try {
+        Socket socket = server.accept();
+        Thread.ofVirtual().start(() -> serve(socket));
+      } catch (IOException e) {
+        if (!server.isClosed()) {
+          logger.warn("Socket Mode stub failed to accept a connection", e);
+        }
+      }
+    }
+  }
+
+  private void serve(Socket socket) {
+    try (socket) {
+      Connection connection = handshake(socket);
+      if (connection == null) {
+        return;
+      }
+      stats.increment("socket.connections");
+      newest = connection;
+      connection.sendText("{\"type\":\"hello\",\"num_connections\":1}");
+      read(connection);
+    } catch (IOException e) {
+      // The client went away
+    }
+  }
+
+  /** Answer the HTTP upgrade request, or null when it isn't one */
+  private Connection handshake(Socket socket) throws IOException {
+    // Read byte by byte, so nothing past the headers is taken from the stream
+    InputStream in = socket.getInputStream();
+    StringBuilder headers = new StringBuilder();
+    while (headers.length() < 8192 && headers.indexOf("\r\n\r\n") < 0) {
+      int b = in.read();
+      if (b < 0) {
+        return null;
+      }
+      headers.append((char) b);
+    }
+    String key = null;
+    for (String line : headers.toString().split("\r\n")) {
+      int colon = line.indexOf(':');
+      if (colon > 0 && line.substring(0, colon).equalsIgnoreCase("Sec-WebSocket-Key")) {
+        key = line.substring(colon + 1).trim();
+      }
+    }
+    if (key == null) {
+      return null;
+    }
+
+    String accept;
+    try {
+      byte[] digest =
+          MessageDigest.getInstance("SHA-1")
+              .digest((key + ACCEPT_GUID).getBytes(StandardCharsets.US_ASCII));
+      accept = Base64.getEncoder().encodeToString(digest);
+    } catch (Exception e) {
+      throw new IllegalStateException(e);
+    }
+    OutputStream out = socket.getOutputStream();
+    out.write(
+        ("HTTP/1.1 101 Switching Protocols\r\nUpgrade: websocket\r\nConnection: Upgrade\r\n"
+                + "Sec-WebSocket-Accept: "
+                + accept
+                + "\r\n\r\n")
+            .getBytes(StandardCharsets.US_ASCII));
+    out.flush();
+    return new Connection(socket, out);
+  }
+
+  /** Read the client's frames, which are always masked, until it closes */
+  private void read(Connection connection) throws IOException {
+    DataInputStream in =
+        new DataInputStream(new BufferedInputStream(connection.socket.getInputStream()));
+    StringBuilder text = new StringBuilder();
+    while (connection.open) {
+      int first = in.readUnsignedByte();
+      int second = in.readUnsignedByte();
+      boolean fin = (first & 0x80) != 0;
+      int opcode = first & 0x0F;
+      long length = second & 0x7F;
+      if (length == 126) {
+        length = in.readUnsignedShort();
+      } else if (length == 127) {
+        length = in.readLong();
+      }
+      byte[] mask = new byte[4];
+      if ((second & 0x80) != 0) {
+        in.readFully(mask);
+      }
+      byte[] data = new byte[(int) length];
+      in.readFully(data);
+      for (int i = 0; i < data.length; i++) {
+        data[i] ^= mask[i % 4];
+      }
+
+      switch (opcode) {
+        case 0x0, 0x1 -> {
+          text.append(new String(data, StandardCharsets.UTF_8));
+          if (fin) {
+            acknowledge(text.toString());
+            text.setLength(0);
+          }
+        }
+        case 0x8 -> {
+          connection.send(0x8, data);
+          connection.open = false;
+        }
+        case 0x9 -> connection.send(0xA, data);
+        default -> {
+          // Pongs and anything else need no answer
+        }
+      }
+    }
+  }
+
+  private void acknowledge(String message) throws IOException {
+    String envelopeId = objectMapper.readTree(message).path("envelope_id").asText(null);
+    Envelope envelope = envelopeId != null ? unacknowledged.remove(envelopeId) : null;
+    if (envelope != null) {
+      stats.record("socket.ack", (System.nanoTime() - envelope.createdAt) / 1_000_000);
+    }
+  }
+
+  private static class Envelope {
+    final String id;
+    final JsonNode payload;
+    final long createdAt;
+    volatile long sentAt;
+    int retries;
+
+    Envelope(String id, JsonNode payload, long createdAt) {
+      this.id = id;
+      this.payload = payload;
+      this.createdAt = createdAt;
+      this.sentAt = createdAt;
+    }
+  }
+
+  private static class Connection {
+    final Socket socket;
+    final OutputStream out;
+    volatile boolean open = true;
+
+    Connection(Socket socket, OutputStream out) {
+      this.socket = socket;
+      this.out = out;
+    }
+
+    void sendText(String text) throws IOException {
+      send(0x1, text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** Write one unmasked frame, as servers do */
+    synchronized void send(int opcode, byte[] data) throws IOException {
+      out.write(0x80 | opcode);
+      if (data.length < 126) {
+        out.write(data.length);
+      } else if (data.length < 65536) {
+        out.write(126);
+        out.write(data.length >>> 8);
+        out.write(data.length & 0xFF);
+      } else {
+        out.write(127);
+        for (int shift = 56; shift >= 0; shift -= 8) {
+          out.write((int) ((long) data.length >>> shift) & 0xFF);
+        }
+      }
+      out.write(data);
+      out.flush();
+    }
+  }
+}
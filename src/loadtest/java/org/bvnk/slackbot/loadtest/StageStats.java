@@ -0,0 +1,68 @@
+package org.bvnk.slackbot.loadtest;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/** Latency samples and counters per pipeline stage, collected over the whole run */
+class StageStats {
+  private final Map<String, ConcurrentLinkedQueue<Long>> latencies = new ConcurrentHashMap<>();
+  private final Map<String, AtomicLong> counters = new ConcurrentHashMap<>();
+
+  public void record(String stage, long millis) {
+    latencies.computeIfAbsent(stage, k -> new ConcurrentLinkedQueue<>()).add(millis);
+  }
+
+  public void increment(String counter) {
+    counters.computeIfAbsent(counter, k -> new AtomicLong()).incrementAndGet();
+  }
+
+  public long count(String counter) {
+    AtomicLong value = counters.get(counter);
+    return value == null ? 0 : value.get();
+  }
+
+  public String report() {
+    StringBuilder report = new StringBuilder();
+    report.append(
+        String.format(
+            "%-36s %8s %8s %8s %8s %8s%n", "stage", "count", "p50 ms", "p95 ms", "p99 ms", "max"));
+
+    List<String> stages = new ArrayList<>(latencies.keySet());
+    stages.sort(String::compareTo);
+    for (String stage : stages) {
+      long[] samples = latencies.get(stage).stream().mapToLong(Long::longValue).toArray();
+      Arrays.sort(samples);
+      report.append(
+          String.format(
+              "%-36s %8d %8d %8d %8d %8d%n",
+              stage,
+              samples.length,
+              percentile(samples, 50),
+              percentile(samples, 95),
+              percentile(samples, 99),
+              samples.length == 0 ? 0 : samples[samples.length - 1]));
+    }
+
+    report.append(String.format("%n%-36s %8s%n", "counter", "value"));
+    List<String> names = new ArrayList<>(counters.keySet());
+    names.sort(String::compareTo);
+    for (String name : names) {
+      report.append(String.format("%-36s %8d%n", name, counters.get(name).get()));
+    }
+
+    return report.toString();
+  }
+
+  private long percentile(long[] sorted, double percentile) {
+    if (sorted.length == 0) {
+      return 0;
+    }
+    int index = (int) Math.ceil(percentile / 100.0 * sorted.length) - 1;
+    return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+  }
+}
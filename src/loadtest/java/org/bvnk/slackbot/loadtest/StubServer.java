@@ -0,0 +1,105 @@
+package org.bvnk.slackbot.loadtest;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import com.sun.net.httpserver.HttpsConfigurator;
+import com.sun.net.httpserver.HttpsServer;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import javax.net.ssl.SSLContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/** Base class for the local HTTP stand-ins, one JDK HTTP server per stubbed service */
+abstract class StubServer {
+  private static final Logger logger = LoggerFactory.getLogger(StubServer.class);
+
+  private final String name;
+  private HttpServer server;
+
+  protected final StageStats stats;
+
+  protected StubServer(String name, StageStats stats) {
+    this.name = name;
+    this.stats = stats;
+  }
+
+  /** Start listening on the port of the endpoint URL the services were configured with */
+  public void start(String endpointUrl) throws IOException {
+    start(endpointUrl, null);
+  }
+
+  /** Start listening, over TLS with the given context when it isn't null */
+  public void start(String endpointUrl, SSLContext sslContext) throws IOException {
+    int port = URI.create(endpointUrl).getPort();
+    InetSocketAddress address = new InetSocketAddress("localhost", port);
+    if (sslContext != null) {
+      HttpsServer httpsServer = HttpsServer.create(address, 512);
+      httpsServer.setHttpsConfigurator(new HttpsConfigurator(sslContext));
+      server = httpsServer;
+    } else {
+      server = HttpServer.create(address, 512);
+    }
+    server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+    server.createContext(
+        "/",
+        exchange -> {
+          long start = System.nanoTime();
+          try {
+            if ("GET".equals(exchange.getRequestMethod())) {
+              handleGet(exchange);
+              return;
+            }
+            handle(exchange);
+          } catch (Exception e) {
+            logger.error("{} stub failed to handle {}", name, exchange.getRequestURI(), e);
+            respond(exchange, 500, "{}", Map.of());
+          } finally {
+            exchange.close();
+          }
+          stats.record(name + " (stub)", (System.nanoTime() - start) / 1_000_000);
+        });
+    server.start();
+    logger.info("{} stub listening on port {}", name, port);
+  }
+
+  public void stop() {
+    if (server != null) {
+      server.stop(0);
+    }
+  }
+
+  protected abstract void handle(HttpExchange exchange) throws Exception;
+
+  /** GET requests, which are only connection warm-ups unless a stub serves something over them */
+  protected void handleGet(HttpExchange exchange) throws Exception {
+    // The real services answer warm-ups with an error too
+    respond(exchange, 404, "{}", Map.of());
+  }
+
+  protected String readBody(HttpExchange exchange) throws IOException {
+    try (InputStream body = exchange.getRequestBody()) {
+      return new String(body.readAllBytes(), StandardCharsets.UTF_8);
+    }
+  }
+
+  protected void respond(
+      HttpExchange exchange, int status, String body, Map<String, String> headers)
+      throws IOException {
+    byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+    exchange.getResponseHeaders().set("Content-Type", "application/json");
+    headers.forEach((key, value) -> exchange.getResponseHeaders().set(key, value));
+    exchange.sendResponseHeaders(status, bytes.length == 0 ? -1 : bytes.length);
+    if (bytes.length > 0) {
+      try (OutputStream out = exchange.getResponseBody()) {
+        out.write(bytes);
+      }
+    }
+  }
+}
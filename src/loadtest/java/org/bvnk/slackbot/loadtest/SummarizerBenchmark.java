@@ -0,0 +1,157 @@
+package org.bvnk.slackbot.loadtest;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import org.bvnk.slackbot.config.AppConfig;
+import org.bvnk.slackbot.model.Command;
+import org.bvnk.slackbot.service.BedrockService;
+import org.bvnk.slackbot.service.ExtractiveSummarizer;
+
+/**
+ * Compares the latency of answering key points and action items with {@link ExtractiveSummarizer}
+ * against asking Bedrock, on synthetic threads of a given size. The model path goes through {@link
+ * BedrockService} to the Bedrock stand-in, whose latency is log-normal around the median, as in the
+ * load test:
+ *
+ * <pre>
+ * ./gradlew summarizerBenchmark
+ * ./gradlew summarizerBenchmark -PbenchmarkArgs="--messages 50 --bedrock-median-ms 1500"
+ * </pre>
+ *
+ * <p>Options: {@code --messages} messages per thread (12), {@code --threads} distinct threads
+ * (200), {@code --calls} measured extractive calls per command (5000), {@code --warmup} calls
+ * before measuring (2000), {@code --model-calls} Bedrock calls per command (20), {@code
+ * --bedrock-median-ms} (800) and {@code --bedrock-sigma} (0.5).
+ */
+public class SummarizerBenchmark {
+  private static final String[] NAMES = {"Alice", "Bob", "Chen Wei", "Dana", "Emeka"};
+  private static final String[] LINES = {
+    "Payouts to EU accounts failed on a provider timeout since %d:00 UTC.",
+    "The retry change from yesterday doubled the calls to the provider.",
+    "I'll roll back the retry change and watch the error rate.",
+    "@%s can you draft the incident report by Friday?",
+    "We need to add an alert on payout latency before the next release.",
+    "Does anyone know if the provider has a status page?",
+    "Support has 40 tickets open about missing payouts.",
+    "Rolled back, the error rate is down to normal levels again.",
+    "Let me check whether any payouts were sent twice during the retries.",
+    "Action item: reconcile the affected payouts with finance tomorrow.",
+    "Thanks everyone, that was quick.",
+    "The provider confirmed a partial outage in their EU region.",
+  };
+
+  public static void main(String[] args) throws Exception {
+    Map<String, String> options = new HashMap<>();
+    for (int i = 0; i + 1 < args.length; i += 2) {
+      options.put(args[i].replaceFirst("^--", ""), args[i + 1]);
+    }
+
+    int messages = Integer.parseInt(options.getOrDefault("messages", "12"));
+    int threadCount = Integer.parseInt(options.getOrDefault("threads", "200"));
+    int calls = Integer.parseInt(options.getOrDefault("calls", "5000"));
+    int warmup = Integer.parseInt(options.getOrDefault("warmup", "2000"));
+    int modelCalls = Integer.parseInt(options.getOrDefault("model-calls", "20"));
+
+    List<List<String>> threads = new ArrayList<>();
+    Random random = new Random(42);
+    for (int t = 0; t < threadCount; t++) {
+      threads.add(thread(random, messages));
+    }
+
+    AppConfig config = AppConfig.getInstance();
+    StageStats stats = new StageStats();
+    BedrockStub bedrock =
+        new BedrockStub(
+            stats,
+            Long.parseLong(options.getOrDefault("bedrock-median-ms", "800")),
+            Double.parseDouble(options.getOrDefault("bedrock-sigma", "0.5")),
+            0.0,
+            Integer.MAX_VALUE);
+    DynamoStub dynamo = new DynamoStub(stats);
+    bedrock.start(config.getBedrockEndpointUrl());
+    dynamo.start(config.getDynamoEndpointUrl());
+
+    try {
+      ExtractiveSummarizer summarizer = new ExtractiveSummarizer();
+      BedrockService bedrockService = new BedrockService();
+
+      System.out.printf(
+          "%-14s %-10s %8s %12s %12s %12s%n",
+          "command", "path", "calls", "p50 us", "p99 us", "max us");
+      for (Command command : List.of(Command.KEY_POINTS, Command.ACTION_ITEMS)) {
+        String question = command == Command.KEY_POINTS ? "key points" : "action items";
+
+        for (int i = 0; i < warmup; i++) {
+          summarizer.answer(command, threads.get(i % threadCount), question);
+        }
+        long[] extractive = new long[calls];
+        int answered = 0;
+        for (int i = 0; i < calls; i++) {
+          long start = System.nanoTime();
+          String answer = summarizer.answer(command, threads.get(i % threadCount), question);
+          extractive[i] = System.nanoTime() - start;
+          if (answer != null) {
+            answered++;
+          }
+        }
+        print(command, "extractive", extractive);
+
+        long[] model = new long[modelCalls];
+        for (int i = 0; i < modelCalls; i++) {
+          String context = String.join("\n\n", threads.get(i % threadCount));
+          long start = System.nanoTime();
+          bedrockService.getResponse(context, question);
+          model[i] = System.nanoTime() - start;
+        }
+        print(command, "bedrock", model);
+
+        if (answered < calls) {
+          System.out.printf(
+              "%-14s %d of %d threads had nothing to answer with%n", "", calls - answered, calls);
+        }
+      }
+      System.out.println();
+      System.out.println(
+          "extractive: in-process, on the request thread; bedrock: the full call through"
+              + " BedrockService, including the stand-in's simulated model latency");
+    } finally {
+      bedrock.stop();
+      dynamo.stop();
+    }
+    System.exit(0);
+  }
+
+  /** A thread of formatted messages, {@code "name: text"}, as the handler passes them */
+  private static List<String> thread(Random random, int messages) {
+    List<String> thread = new ArrayList<>(messages);
+    for (int i = 0; i < messages; i++) {
+      String name = NAMES[random.nextInt(NAMES.length)];
+      String line = LINES[i == 0 ? 0 : random.nextInt(LINES.length)];
+      String text =
+          line.contains("%d")
+              ? line.replace("%d", String.valueOf(random.nextInt(24)))
+              : line.replace("%s", NAMES[random.nextInt(NAMES.length)]);
+      thread.add(name + ": " + text);
+    }
+    return thread;
+  }
+
+  private static void print(Command command, String path, long[] nanos) {
+    if (nanos.length == 0) {
+      return;
+    }
+    Arrays.sort(nanos);
+    System.out.printf(
+        "%-14s %-10s %8d %12d %12d %12d%n",
+        command,
+        path,
+        nanos.length,
+        nanos[nanos.length / 2] / 1000,
+        nanos[(int) Math.ceil(nanos.length * 0.99) - 1] / 1000,
+        nanos[nanos.length - 1] / 1000);
+  }
+}
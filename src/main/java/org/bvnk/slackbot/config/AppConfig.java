@@ -6,21 +6,199 @@ import lombok.Getter;
 public class AppConfig {
   private final String slackSigningSecret;
   private final String slackBotToken;
+  private final String slackBotTokens;
+  private final int slackClientPoolSize;
+  private final String slackAppToken;
+  private final int socketModeWorkers;
+  private final int socketModeMaxQueued;
   private final String dynamoTableName;
+  private final String eventStore;
+  private final boolean eventOutcomeWritesEnabled;
+  private final String mentionScheduler;
   private final String lambdaFunctionName;
+  private final String lambdaInvokeQualifier;
   private final String bedrockModelId;
   private final String awsRegion;
+  private final String bedrockFastModelId;
+  private final int routingFastMaxInputTokens;
+  private final long bedrockFastTimeoutMillis;
+  private final long bedrockLargeTimeoutMillis;
+  private final boolean bedrockHedgingEnabled;
+  private final String bedrockHedgeRegion;
+  private final long bedrockHedgeDelayMillis;
+  private final int bedrockMaxConcurrency;
+  private final int bedrockGlobalRequestsPerMinute;
+  private final int circuitBreakerFailureThreshold;
+  private final long circuitBreakerOpenMillis;
+  private final int queuedRetryMaxAttempts;
+  private final String slackApiUrl;
+  private final String bedrockEndpointUrl;
+  private final String dynamoEndpointUrl;
+  private final String lambdaEndpointUrl;
+  private final int awsHttpMaxConnections;
+  private final long awsConnectTimeoutMillis;
+  private final long dynamoTimeoutMillis;
+  private final long dynamoAttemptTimeoutMillis;
+  private final long lambdaInvokeTimeoutMillis;
+  private final long lambdaInvokeAttemptTimeoutMillis;
+  private final String awsPrewarmServices;
+  private final long awsPrewarmTimeoutMillis;
+  private final String logLevel;
+  private final boolean logAsync;
+  private final int logBufferSize;
+  private final int logSamplePercent;
+  private final String logSamplePercentByType;
+  private final boolean logMessageText;
+  private final boolean tracingEnabled;
+  private final int traceSamplePercent;
+  private final boolean threadCacheEnabled;
+  private final int threadCacheSize;
+  private final int threadCacheTtlHours;
+  private final boolean attachmentsEnabled;
+  private final int attachmentMaxFiles;
+  private final int attachmentConcurrency;
+  private final int attachmentMaxFileBytes;
+  private final int attachmentMaxTotalBytes;
+  private final int attachmentExcerptBytes;
+  private final long attachmentTimeoutMillis;
+  private final boolean contextSelectionEnabled;
+  private final int contextTokenBudget;
+  private final int contextTopK;
+  private final int contextNeighborWindow;
+  private final int extractiveFastPathMaxMessages;
+  private final boolean extractiveFallbackEnabled;
+  private final int extractiveMaxPoints;
+  private final boolean conversationEnabled;
+  private final int conversationMaxTurns;
+  private final int conversationTokenBudget;
+  private final int conversationSummaryTokens;
+  private final int conversationFollowUpContextTokens;
+  private final int conversationTtlHours;
+  private final boolean compactionEnabled;
+  private final String compactionStages;
+  private final int compactionBlockHeadLines;
+  private final int compactionBlockTailLines;
+  private final String digestChannels;
+  private final int digestWindowMinutes;
+  private final int digestLookbackHours;
+  private final int digestMaxThreads;
+  private final int digestConcurrency;
+  private final int digestSlackRequestsPerMinute;
+  private final String hotThreadChannels;
+  private final int hotThreadMinMessages;
+  private final int hotThreadBurstMessages;
+  private final int hotThreadBurstMinutes;
+  private final int hotThreadQuietSeconds;
+  private final int hotThreadMaxWaitMinutes;
+  private final int hotThreadSummariesPerMinute;
+  private final boolean searchEnabled;
+  private final String searchScope;
+  private final int searchTopK;
+  private final int searchMaxDocuments;
+  private final int searchSnapshotAfter;
 
   private static final AppConfig INSTANCE = new AppConfig();
 
   private AppConfig() {
     this.slackSigningSecret = getEnvOrDefault("SLACK_SIGNING_SECRET", "");
     this.slackBotToken = getEnvOrDefault("SLACK_BOT_TOKEN", "");
+    this.slackBotTokens = getEnvOrDefault("SLACK_BOT_TOKENS", "");
+    this.slackClientPoolSize = getIntEnvOrDefault("SLACK_CLIENT_POOL_SIZE", 64);
+    this.slackAppToken = getEnvOrDefault("SLACK_APP_TOKEN", "");
+    this.socketModeWorkers = getIntEnvOrDefault("SOCKET_MODE_WORKERS", 16);
+    this.socketModeMaxQueued = getIntEnvOrDefault("SOCKET_MODE_MAX_QUEUED", 64);
     this.dynamoTableName = getEnvOrDefault("DYNAMO_TABLE", "slack-event-deduplication");
+    this.eventStore = getEnvOrDefault("EVENT_STORE", "dynamodb");
+    this.eventOutcomeWritesEnabled = getBooleanEnvOrDefault("EVENT_OUTCOME_WRITES_ENABLED", true);
+    this.mentionScheduler = getEnvOrDefault("MENTION_SCHEDULER", "off");
     this.lambdaFunctionName = getEnvOrDefault("AWS_LAMBDA_FUNCTION_NAME", "");
+    // SnapStart only applies to published versions, so the JVM build invokes itself via its alias
+    this.lambdaInvokeQualifier = getEnvOrDefault("LAMBDA_INVOKE_QUALIFIER", "");
     this.bedrockModelId =
         getEnvOrDefault("BEDROCK_MODEL_ID", "anthropic.claude-3-sonnet-20240229-v1:0");
     this.awsRegion = getEnvOrDefault("AWS_REGION", "us-east-1");
+    this.bedrockFastModelId = getEnvOrDefault("BEDROCK_FAST_MODEL_ID", "");
+    this.routingFastMaxInputTokens = getIntEnvOrDefault("ROUTING_FAST_MAX_INPUT_TOKENS", 4000);
+    this.bedrockFastTimeoutMillis = getIntEnvOrDefault("BEDROCK_FAST_TIMEOUT_MS", 6000);
+    this.bedrockLargeTimeoutMillis = getIntEnvOrDefault("BEDROCK_LARGE_TIMEOUT_MS", 12000);
+    this.bedrockHedgingEnabled = getBooleanEnvOrDefault("BEDROCK_HEDGING_ENABLED", true);
+    this.bedrockHedgeRegion = getEnvOrDefault("BEDROCK_HEDGE_REGION", "");
+    this.bedrockHedgeDelayMillis = getIntEnvOrDefault("BEDROCK_HEDGE_DELAY_MS", 5000);
+    this.bedrockMaxConcurrency = getIntEnvOrDefault("BEDROCK_MAX_CONCURRENCY", 16);
+    this.bedrockGlobalRequestsPerMinute =
+        getIntEnvOrDefault("BEDROCK_GLOBAL_REQUESTS_PER_MINUTE", 0);
+    this.circuitBreakerFailureThreshold = getIntEnvOrDefault("CIRCUIT_BREAKER_FAILURES", 5);
+    this.circuitBreakerOpenMillis = getIntEnvOrDefault("CIRCUIT_BREAKER_OPEN_MS", 30000);
+    this.queuedRetryMaxAttempts = getIntEnvOrDefault("QUEUED_RETRY_MAX_ATTEMPTS", 2);
+    this.slackApiUrl = getEnvOrDefault("SLACK_API_URL", "");
+    this.bedrockEndpointUrl = getEnvOrDefault("BEDROCK_ENDPOINT_URL", "");
+    this.dynamoEndpointUrl = getEnvOrDefault("DYNAMO_ENDPOINT_URL", "");
+    this.lambdaEndpointUrl = getEnvOrDefault("LAMBDA_ENDPOINT_URL", "");
+    this.awsHttpMaxConnections = getIntEnvOrDefault("AWS_HTTP_MAX_CONNECTIONS", 64);
+    this.awsConnectTimeoutMillis = getIntEnvOrDefault("AWS_CONNECT_TIMEOUT_MS", 1000);
+    this.dynamoTimeoutMillis = getIntEnvOrDefault("DYNAMO_TIMEOUT_MS", 3000);
+    this.dynamoAttemptTimeoutMillis = getIntEnvOrDefault("DYNAMO_ATTEMPT_TIMEOUT_MS", 1000);
+    this.lambdaInvokeTimeoutMillis = getIntEnvOrDefault("LAMBDA_INVOKE_TIMEOUT_MS", 5000);
+    this.lambdaInvokeAttemptTimeoutMillis =
+        getIntEnvOrDefault("LAMBDA_INVOKE_ATTEMPT_TIMEOUT_MS", 2000);
+    this.awsPrewarmServices = getEnvOrDefault("AWS_PREWARM_SERVICES", "dynamodb,lambda,bedrock");
+    this.awsPrewarmTimeoutMillis = getIntEnvOrDefault("AWS_PREWARM_TIMEOUT_MS", 2000);
+    this.logLevel = getEnvOrDefault("LOG_LEVEL", "INFO");
+    this.logAsync = getBooleanEnvOrDefault("LOG_ASYNC", true);
+    this.logBufferSize = getIntEnvOrDefault("LOG_BUFFER_SIZE", 8192);
+    this.logSamplePercent = getIntEnvOrDefault("LOG_SAMPLE_PERCENT", 10);
+    this.logSamplePercentByType =
+        getEnvOrDefault("LOG_SAMPLE_PERCENT_BY_TYPE", "channel_digest:100");
+    this.logMessageText = getBooleanEnvOrDefault("LOG_MESSAGE_TEXT", false);
+    this.tracingEnabled = getBooleanEnvOrDefault("TRACING_ENABLED", true);
+    this.traceSamplePercent = getIntEnvOrDefault("TRACE_SAMPLE_PERCENT", 10);
+    this.threadCacheEnabled = getBooleanEnvOrDefault("THREAD_CACHE_ENABLED", true);
+    this.threadCacheSize = getIntEnvOrDefault("THREAD_CACHE_SIZE", 64);
+    this.threadCacheTtlHours = getIntEnvOrDefault("THREAD_CACHE_TTL_HOURS", 168);
+    this.attachmentsEnabled = getBooleanEnvOrDefault("ATTACHMENTS_ENABLED", false);
+    this.attachmentMaxFiles = getIntEnvOrDefault("ATTACHMENT_MAX_FILES", 5);
+    this.attachmentConcurrency = getIntEnvOrDefault("ATTACHMENT_CONCURRENCY", 4);
+    this.attachmentMaxFileBytes = getIntEnvOrDefault("ATTACHMENT_MAX_FILE_BYTES", 5_242_880);
+    this.attachmentMaxTotalBytes = getIntEnvOrDefault("ATTACHMENT_MAX_TOTAL_BYTES", 20_971_520);
+    this.attachmentExcerptBytes = getIntEnvOrDefault("ATTACHMENT_EXCERPT_BYTES", 6000);
+    this.attachmentTimeoutMillis = getIntEnvOrDefault("ATTACHMENT_TIMEOUT_MS", 5000);
+    this.contextSelectionEnabled = getBooleanEnvOrDefault("CONTEXT_SELECTION_ENABLED", true);
+    this.contextTokenBudget = getIntEnvOrDefault("CONTEXT_TOKEN_BUDGET", 6000);
+    this.contextTopK = getIntEnvOrDefault("CONTEXT_TOP_K", 8);
+    this.contextNeighborWindow = getIntEnvOrDefault("CONTEXT_NEIGHBOR_WINDOW", 1);
+    this.extractiveFastPathMaxMessages =
+        getIntEnvOrDefault("EXTRACTIVE_FAST_PATH_MAX_MESSAGES", 12);
+    this.extractiveFallbackEnabled = getBooleanEnvOrDefault("EXTRACTIVE_FALLBACK_ENABLED", true);
+    this.extractiveMaxPoints = getIntEnvOrDefault("EXTRACTIVE_MAX_POINTS", 5);
+    this.conversationEnabled = getBooleanEnvOrDefault("CONVERSATION_ENABLED", true);
+    this.conversationMaxTurns = getIntEnvOrDefault("CONVERSATION_MAX_TURNS", 4);
+    this.conversationTokenBudget = getIntEnvOrDefault("CONVERSATION_TOKEN_BUDGET", 2000);
+    this.conversationSummaryTokens = getIntEnvOrDefault("CONVERSATION_SUMMARY_TOKENS", 400);
+    this.conversationFollowUpContextTokens =
+        getIntEnvOrDefault("CONVERSATION_FOLLOW_UP_CONTEXT_TOKENS", 1500);
+    this.conversationTtlHours = getIntEnvOrDefault("CONVERSATION_TTL_HOURS", 24);
+    this.compactionEnabled = getBooleanEnvOrDefault("COMPACTION_ENABLED", true);
+    this.compactionStages = getEnvOrDefault("COMPACTION_STAGES", "dedupe,urls,emoji,blocks");
+    this.compactionBlockHeadLines = getIntEnvOrDefault("COMPACTION_BLOCK_HEAD_LINES", 10);
+    this.compactionBlockTailLines = getIntEnvOrDefault("COMPACTION_BLOCK_TAIL_LINES", 5);
+    this.digestChannels = getEnvOrDefault("DIGEST_CHANNELS", "");
+    this.digestWindowMinutes = getIntEnvOrDefault("DIGEST_WINDOW_MINUTES", 60);
+    this.digestLookbackHours = getIntEnvOrDefault("DIGEST_LOOKBACK_HOURS", 168);
+    this.digestMaxThreads = getIntEnvOrDefault("DIGEST_MAX_THREADS", 300);
+    this.digestConcurrency = getIntEnvOrDefault("DIGEST_CONCURRENCY", 4);
+    this.digestSlackRequestsPerMinute = getIntEnvOrDefault("DIGEST_SLACK_REQUESTS_PER_MINUTE", 50);
+    this.hotThreadChannels = getEnvOrDefault("HOT_THREAD_CHANNELS", "");
+    this.hotThreadMinMessages = getIntEnvOrDefault("HOT_THREAD_MIN_MESSAGES", 50);
+    this.hotThreadBurstMessages = getIntEnvOrDefault("HOT_THREAD_BURST_MESSAGES", 15);
+    this.hotThreadBurstMinutes = getIntEnvOrDefault("HOT_THREAD_BURST_MINUTES", 10);
+    this.hotThreadQuietSeconds = getIntEnvOrDefault("HOT_THREAD_QUIET_SECONDS", 30);
+    this.hotThreadMaxWaitMinutes = getIntEnvOrDefault("HOT_THREAD_MAX_WAIT_MINUTES", 10);
+    this.hotThreadSummariesPerMinute = getIntEnvOrDefault("HOT_THREAD_SUMMARIES_PER_MINUTE", 4);
+    this.searchEnabled = getBooleanEnvOrDefault("SEARCH_ENABLED", true);
+    this.searchScope = getEnvOrDefault("SEARCH_SCOPE", "channel");
+    this.searchTopK = getIntEnvOrDefault("SEARCH_TOP_K", 5);
+    this.searchMaxDocuments = getIntEnvOrDefault("SEARCH_MAX_DOCUMENTS", 5000);
+    this.searchSnapshotAfter = getIntEnvOrDefault("SEARCH_SNAPSHOT_AFTER", 25);
   }
 
   public static AppConfig getInstance() {
@@ -31,4 +209,18 @@ public class AppConfig {
     String value = System.getenv(key);
     return value != null && !value.isEmpty() ? value : defaultValue;
   }
+
+  private int getIntEnvOrDefault(String key, int defaultValue) {
+    String value = getEnvOrDefault(key, null);
+    try {
+      return value != null ? Integer.parseInt(value.trim()) : defaultValue;
+    } catch (NumberFormatException e) {
+      return defaultValue;
+    }
+  }
+
+  private boolean getBooleanEnvOrDefault(String key, boolean defaultValue) {
+    String value = getEnvOrDefault(key, null);
+    return value != null ? Boolean.parseBoolean(value.trim()) : defaultValue;
+  }
 }
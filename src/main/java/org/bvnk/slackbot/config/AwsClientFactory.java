@@ -0,0 +1,329 @@
+package org.bvnk.slackbot.config;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+import org.bvnk.slackbot.logging.Span;
+import org.bvnk.slackbot.logging.Tracing;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import software.amazon.awssdk.awscore.AwsResponse;
+import software.amazon.awssdk.core.SdkClient;
+import software.amazon.awssdk.core.client.config.ClientOverrideConfiguration;
+import software.amazon.awssdk.core.interceptor.Context;
+import software.amazon.awssdk.core.interceptor.ExecutionAttribute;
+import software.amazon.awssdk.core.interceptor.ExecutionAttributes;
+import software.amazon.awssdk.core.interceptor.ExecutionInterceptor;
+import software.amazon.awssdk.core.interceptor.SdkExecutionAttribute;
+import software.amazon.awssdk.http.ExecutableHttpRequest;
+import software.amazon.awssdk.http.HttpExecuteRequest;
+import software.amazon.awssdk.http.HttpExecuteResponse;
+import software.amazon.awssdk.http.SdkHttpClient;
+import software.amazon.awssdk.http.SdkHttpFullRequest;
+import software.amazon.awssdk.http.SdkHttpMethod;
+import software.amazon.awssdk.http.apache.ApacheHttpClient;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.bedrockruntime.BedrockRuntimeClient;
+import software.amazon.awssdk.services.bedrockruntime.BedrockRuntimeClientBuilder;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClientBuilder;
+import software.amazon.awssdk.services.lambda.LambdaClient;
+import software.amazon.awssdk.services.lambda.LambdaClientBuilder;
+
+/**
+ * Builds the AWS SDK clients, once per container, on one shared Apache HTTP client. DynamoDB,
+ * Lambda and Bedrock draw from a single connection pool with explicit timeouts, instead of each
+ * service building a default HTTP client of its own. {@link #prewarm()} opens the connections to
+ * the service endpoints during init, so the first request after a cold start doesn't pay for DNS,
+ * TCP and TLS. {@link #closeConnections()} empties the pool, before a SnapStart snapshot. Every
+ * call is recorded as a span of the current trace.
+ */
+public final class AwsClientFactory {
+  private static final Logger logger = LoggerFactory.getLogger(AwsClientFactory.class);
+  private static final long READ_TIMEOUT_MARGIN_MILLIS = 2000;
+
+  private static final ReplaceableHttpClient HTTP_CLIENT = new ReplaceableHttpClient();
+  private static final TracingInterceptor TRACING = new TracingInterceptor();
+  private static final Map<String, SdkClient> CLIENTS = new ConcurrentHashMap<>();
+  private static final AtomicBoolean prewarmed = new AtomicBoolean();
+
+  private AwsClientFactory() {}
+
+  public static DynamoDbClient dynamoDb() {
+    return (DynamoDbClient)
+        CLIENTS.computeIfAbsent(
+            "dynamodb",
+            key -> {
+              AppConfig config = AppConfig.getInstance();
+              DynamoDbClientBuilder builder =
+                  DynamoDbClient.builder()
+                      .region(Region.of(config.getAwsRegion()))
+                      .httpClient(HTTP_CLIENT)
+                      .overrideConfiguration(
+                          timeouts(
+                              config.getDynamoTimeoutMillis(),
+                              config.getDynamoAttemptTimeoutMillis()));
+              if (!config.getDynamoEndpointUrl().isEmpty()) {
+                builder.endpointOverride(URI.create(config.getDynamoEndpointUrl()));
+              }
+              return builder.build();
+            });
+  }
+
+  public static LambdaClient lambda() {
+    return (LambdaClient)
+        CLIENTS.computeIfAbsent(
+            "lambda",
+            key -> {
+              AppConfig config = AppConfig.getInstance();
+              LambdaClientBuilder builder =
+                  LambdaClient.builder()
+                      .region(Region.of(config.getAwsRegion()))
+                      .httpClient(HTTP_CLIENT)
+                      .overrideConfiguration(
+                          timeouts(
+                              config.getLambdaInvokeTimeoutMillis(),
+                              config.getLambdaInvokeAttemptTimeoutMillis()));
+              if (!config.getLambdaEndpointUrl().isEmpty()) {
+                builder.endpointOverride(URI.create(config.getLambdaEndpointUrl()));
+              }
+              return builder.build();
+            });
+  }
+
+  /** Bedrock client for a region. Call timeouts are set per request, from the model route */
+  public static BedrockRuntimeClient bedrockRuntime(String region) {
+    return (BedrockRuntimeClient)
+        CLIENTS.computeIfAbsent(
+            "bedrock@" + region,
+            key -> {
+              AppConfig config = AppConfig.getInstance();
+              BedrockRuntimeClientBuilder builder =
+                  BedrockRuntimeClient.builder()
+                      .region(Region.of(region))
+                      .httpClient(HTTP_CLIENT)
+                      .overrideConfiguration(timeouts(0, 0));
+              if (!config.getBedrockEndpointUrl().isEmpty()) {
+                builder.endpointOverride(URI.create(config.getBedrockEndpointUrl()));
+              }
+              return builder.build();
+            });
+  }
+
+  /**
+   * Open a connection to the endpoint of each service in AWS_PREWARM_SERVICES, in parallel and at
+   * most once per container. The requests are unsigned, so they need no permissions and are
+   * answered with an error, but the connection goes back to the shared pool for the first real call
+   * to use. Waits at most AWS_PREWARM_TIMEOUT_MS; a slow endpoint is left to finish in the
+   * background.
+   */
+  public static void prewarm() {
+    if (!prewarmed.compareAndSet(false, true)) {
+      return;
+    }
+
+    AppConfig config = AppConfig.getInstance();
+    List<URI> endpoints = prewarmEndpoints(config);
+    if (endpoints.isEmpty()) {
+      return;
+    }
+
+    long start = System.currentTimeMillis();
+    ExecutorService executor =
+        Executors.newFixedThreadPool(
+            endpoints.size(),
+            runnable -> {
+              Thread thread = new Thread(runnable, "aws-prewarm");
+              thread.setDaemon(true);
+              return thread;
+            });
+    try {
+      CompletableFuture.allOf(
+              endpoints.stream()
+                  .map(endpoint -> CompletableFuture.runAsync(() -> connect(endpoint), executor))
+                  .toArray(CompletableFuture[]::new))
+          .get(config.getAwsPrewarmTimeoutMillis(), TimeUnit.MILLISECONDS);
+      logger.info(
+          "Opened connections to {} AWS endpoints in {} ms",
+          endpoints.size(),
+          System.currentTimeMillis() - start);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (Exception e) {
+      logger.warn("AWS connection warm-up did not finish: {}", e.toString());
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  /**
+   * Close every pooled connection by replacing the HTTP client under the SDK clients, and allow
+   * {@link #prewarm()} to run again. Used before a SnapStart snapshot, as connections in it would
+   * be dead by the time it is restored.
+   */
+  public static void closeConnections() {
+    HTTP_CLIENT.replace();
+    prewarmed.set(false);
+  }
+
+  private static void connect(URI endpoint) {
+    SdkHttpFullRequest request =
+        SdkHttpFullRequest.builder().method(SdkHttpMethod.GET).uri(endpoint).build();
+    try {
+      HttpExecuteResponse response =
+          HTTP_CLIENT.prepareRequest(HttpExecuteRequest.builder().request(request).build()).call();
+      // Read the body to the end, otherwise the connection isn't returned to the pool
+      if (response.responseBody().isPresent()) {
+        try (InputStream body = response.responseBody().get()) {
+          body.transferTo(OutputStream.nullOutputStream());
+        }
+      }
+    } catch (Exception e) {
+      logger.warn("Could not open a connection to {}: {}", endpoint, e.toString());
+    }
+  }
+
+  private static List<URI> prewarmEndpoints(AppConfig config) {
+    Set<String> services =
+        Arrays.stream(config.getAwsPrewarmServices().split(","))
+            .map(service -> service.trim().toLowerCase())
+            .collect(Collectors.toSet());
+    String region = config.getAwsRegion();
+
+    List<URI> endpoints = new ArrayList<>();
+    if (services.contains("dynamodb")) {
+      endpoints.add(endpoint(config.getDynamoEndpointUrl(), "dynamodb", region));
+    }
+    if (services.contains("lambda")) {
+      endpoints.add(endpoint(config.getLambdaEndpointUrl(), "lambda", region));
+    }
+    if (services.contains("bedrock")) {
+      endpoints.add(endpoint(config.getBedrockEndpointUrl(), "bedrock-runtime", region));
+      if (config.isBedrockHedgingEnabled() && !config.getBedrockHedgeRegion().isEmpty()) {
+        endpoints.add(
+            endpoint(
+                config.getBedrockEndpointUrl(), "bedrock-runtime", config.getBedrockHedgeRegion()));
+      }
+    }
+    return endpoints.stream().distinct().toList();
+  }
+
+  private static URI endpoint(String endpointOverride, String service, String region) {
+    return URI.create(
+        !endpointOverride.isEmpty()
+            ? endpointOverride
+            : "https://" + service + "." + region + ".amazonaws.com");
+  }
+
+  /** Call and attempt timeouts, where 0 leaves the timeout unset, and tracing */
+  private static ClientOverrideConfiguration timeouts(long callMillis, long attemptMillis) {
+    ClientOverrideConfiguration.Builder builder =
+        ClientOverrideConfiguration.builder().addExecutionInterceptor(TRACING);
+    if (callMillis > 0) {
+      builder.apiCallTimeout(Duration.ofMillis(callMillis));
+    }
+    if (attemptMillis > 0) {
+      builder.apiCallAttemptTimeout(Duration.ofMillis(attemptMillis));
+    }
+    return builder.build();
+  }
+
+  private static SdkHttpClient buildHttpClient(AppConfig config) {
+    // The read timeout applies to every service, so it has to cover the slowest model call:
+    // InvokeModel only answers once the whole reply is generated. DynamoDB and Lambda calls are
+    // held to much less by their attempt timeouts.
+    long readTimeoutMillis =
+        Math.max(config.getBedrockLargeTimeoutMillis(), config.getBedrockFastTimeoutMillis())
+            + READ_TIMEOUT_MARGIN_MILLIS;
+    Duration connectTimeout = Duration.ofMillis(config.getAwsConnectTimeoutMillis());
+
+    return ApacheHttpClient.builder()
+        .maxConnections(config.getAwsHttpMaxConnections())
+        .connectionTimeout(connectTimeout)
+        .connectionAcquisitionTimeout(connectTimeout)
+        .socketTimeout(Duration.ofMillis(readTimeoutMillis))
+        .tcpKeepAlive(true)
+        .build();
+  }
+
+  /** The shared HTTP client, which the SDK clients keep while its Apache client is swapped out */
+  private static final class ReplaceableHttpClient implements SdkHttpClient {
+    private volatile SdkHttpClient delegate = buildHttpClient(AppConfig.getInstance());
+
+    @Override
+    public ExecutableHttpRequest prepareRequest(HttpExecuteRequest request) {
+      return delegate.prepareRequest(request);
+    }
+
+    @Override
+    public String clientName() {
+      return delegate.clientName();
+    }
+
+    @Override
+    public void close() {
+      delegate.close();
+    }
+
+    void replace() {
+      SdkHttpClient previous = delegate;
+      delegate = buildHttpClient(AppConfig.getInstance());
+      previous.close();
+    }
+  }
+
+  /**
+   * Records each SDK call as a client span, named after the service and operation as
+   * OpenTelemetry's AWS SDK instrumentation does, from before the request is marshalled until the
+   * response is parsed, retries included
+   */
+  private static final class TracingInterceptor implements ExecutionInterceptor {
+    private static final ExecutionAttribute<Span> SPAN = new ExecutionAttribute<>("TraceSpan");
+
+    @Override
+    public void beforeExecution(
+        Context.BeforeExecution context, ExecutionAttributes executionAttributes) {
+      String service = executionAttributes.getAttribute(SdkExecutionAttribute.SERVICE_NAME);
+      String operation = executionAttributes.getAttribute(SdkExecutionAttribute.OPERATION_NAME);
+      Span span = Tracing.startSpan(service + "." + operation, Span.Kind.CLIENT);
+      span.set("rpc.system", "aws-api").set("rpc.service", service).set("rpc.method", operation);
+      executionAttributes.putAttribute(SPAN, span);
+    }
+
+    @Override
+    public void afterExecution(
+        Context.AfterExecution context, ExecutionAttributes executionAttributes) {
+      Span span = executionAttributes.getAttribute(SPAN);
+      if (span == null) {
+        return;
+      }
+      span.set("http.response.status_code", context.httpResponse().statusCode());
+      if (context.response() instanceof AwsResponse response) {
+        span.set("aws.request_id", response.responseMetadata().requestId());
+      }
+      span.close();
+    }
+
+    @Override
+    public void onExecutionFailure(
+        Context.FailedExecution context, ExecutionAttributes executionAttributes) {
+      Span span = executionAttributes.getAttribute(SPAN);
+      if (span != null) {
+        span.error(context.exception()).close();
+      }
+    }
+  }
+}
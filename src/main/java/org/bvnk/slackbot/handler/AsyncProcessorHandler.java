@@ -2,60 +2,250 @@ package org.bvnk.slackbot.handler;
 
 import com.amazonaws.services.lambda.runtime.Context;
 import com.amazonaws.services.lambda.runtime.RequestHandler;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import org.bvnk.slackbot.model.SlackEvent;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import org.bvnk.slackbot.config.AppConfig;
+import org.bvnk.slackbot.logging.LogContext;
+import org.bvnk.slackbot.logging.Span;
+import org.bvnk.slackbot.logging.Tracing;
+import org.bvnk.slackbot.model.Command;
+import org.bvnk.slackbot.model.HotThreadJob;
+import org.bvnk.slackbot.model.MentionJob;
+import org.bvnk.slackbot.service.BedrockCapacityException;
 import org.bvnk.slackbot.service.BedrockService;
+import org.bvnk.slackbot.service.ContextCompactor;
+import org.bvnk.slackbot.service.ContextSelector;
+import org.bvnk.slackbot.service.ConversationService;
+import org.bvnk.slackbot.service.ConversationStore;
+import org.bvnk.slackbot.service.DigestService;
 import org.bvnk.slackbot.service.DynamoService;
+import org.bvnk.slackbot.service.EventLifecycleStore;
+import org.bvnk.slackbot.service.ExtractiveSummarizer;
+import org.bvnk.slackbot.service.HotThreadService;
+import org.bvnk.slackbot.service.LambdaInvokeService;
+import org.bvnk.slackbot.service.MentionScheduler;
+import org.bvnk.slackbot.service.SlackClientPool;
 import org.bvnk.slackbot.service.SlackService;
+import org.bvnk.slackbot.service.SummarySearchService;
+import org.bvnk.slackbot.service.ThreadCacheService;
+import org.bvnk.slackbot.util.Deadline;
+import org.bvnk.slackbot.util.MetricsEmitter;
+import org.bvnk.slackbot.util.SummaryIndex;
+import org.bvnk.slackbot.util.TokenEstimator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 public class AsyncProcessorHandler implements RequestHandler<Map<String, Object>, String> {
   private static final Logger logger = LoggerFactory.getLogger(AsyncProcessorHandler.class);
   private static final String THINKING_EMOJI = "hourglass_flowing_sand";
+  private static final long RETRY_BASE_DELAY_MILLIS = 2000;
+  private static final long RETRY_MAX_JITTER_MILLIS = 1000;
+  private static final int MAX_SCHEDULER_HANDOFFS = 3;
+  private static final String SUMMARY_QUESTION = "summarize";
+  private static final String DEGRADED_NOTE =
+      "_The AI model isn't available right now, so these are picked straight from the thread:_";
 
-  private final ObjectMapper objectMapper;
-  private final SlackService slackService;
+  private final SlackClientPool slackClientPool;
   private final BedrockService bedrockService;
   private final DynamoService dynamoService;
+  private final EventLifecycleStore eventLifecycleStore;
+  private final ContextCompactor contextCompactor;
+  private final ContextSelector contextSelector;
+  private final ExtractiveSummarizer extractiveSummarizer;
+  private final LambdaInvokeService lambdaInvokeService;
+  private final DigestService digestService;
+  private final ThreadCacheService threadCache;
+  private final HotThreadService hotThreads;
+  private final MentionScheduler mentionScheduler;
+  private final SummarySearchService summarySearch;
+  private final ConversationService conversations;
+  private final int queuedRetryMaxAttempts;
 
   public AsyncProcessorHandler() {
-    this.objectMapper = new ObjectMapper();
-    this.slackService = new SlackService();
-    this.bedrockService = new BedrockService();
     this.dynamoService = new DynamoService();
+    this.eventLifecycleStore = EventLifecycleStore.fromConfig(dynamoService);
+    this.slackClientPool = new SlackClientPool(dynamoService);
+    this.bedrockService = new BedrockService(dynamoService);
+    this.lambdaInvokeService = new LambdaInvokeService();
+    this.queuedRetryMaxAttempts = AppConfig.getInstance().getQueuedRetryMaxAttempts();
+    this.contextCompactor = new ContextCompactor();
+    this.contextSelector = new ContextSelector();
+    this.extractiveSummarizer = new ExtractiveSummarizer();
+    this.threadCache = new ThreadCacheService(dynamoService);
+    this.hotThreads = new HotThreadService(dynamoService, lambdaInvokeService);
+    this.mentionScheduler = MentionScheduler.fromConfig();
+    this.summarySearch = new SummarySearchService();
+    this.conversations = new ConversationService(ConversationStore.fromConfig());
+    this.digestService =
+        new DigestService(
+            slackClientPool, bedrockService, dynamoService, contextCompactor, summarySearch);
   }
 
   @Override
   public String handleRequest(Map<String, Object> input, Context context) {
-    logger.info("Processing async event");
+    long receivedMillis = System.currentTimeMillis();
+    String action = (String) input.get("action");
+    MentionJob job = MentionJob.ACTION.equals(action) ? MentionJob.fromPayload(input) : null;
+    // How long Lambda held the invocation before running it
+    Long asyncDelayMillis =
+        input.get("dispatched_at") instanceof Number dispatchedAt
+            ? Math.max(0, receivedMillis - dispatchedAt.longValue())
+            : null;
+    MentionScheduler.Scheduled scheduled = null;
+    if (job != null && Boolean.TRUE.equals(job.getQueued())) {
+      // This invocation answers whichever queued mention is due, which may not be its own
+      scheduled = takeScheduled(job);
+      if (scheduled == null) {
+        return "Nothing scheduled";
+      }
+      job = scheduled.getJob();
+    }
+
+    LogContext.Scope logScope =
+        LogContext.start(job != null ? job.getEventId() : correlationId(input, context), action);
+    Span span =
+        Tracing.startTrace(
+            action != null ? action : "async",
+            Span.Kind.CONSUMER,
+            job != null
+                ? job.getTraceparent()
+                : input.get("traceparent") instanceof String traceparent ? traceparent : null);
+    span.set("faas.invocation_id", context != null ? context.getAwsRequestId() : null)
+        .set("lambda.async_delay_ms", asyncDelayMillis);
+    if (scheduled != null) {
+      // A job taken from the scheduler waited there, rather than in this invocation's queue
+      span.set("scheduler.wait_ms", scheduled.getWaitMillis());
+      Tracing.recordWait("mention scheduler wait", receivedMillis - scheduled.getWaitMillis());
+    } else if (asyncDelayMillis != null) {
+      Tracing.recordWait("lambda async queue", receivedMillis - asyncDelayMillis);
+    }
+    if (asyncDelayMillis != null && action != null) {
+      MetricsEmitter.emit(
+          "AsyncInvokeDelay", asyncDelayMillis, "Milliseconds", Map.of("Action", action));
+    }
+    logger.debug("Processing async event");
 
     try {
-      String action = (String) input.get("action");
+      if (job != null) {
+        span.set("slack.event_id", job.getEventId())
+            .set("slack.event_time", job.getEventTime())
+            .set("mention.attempt", job.getAttempt());
+        if (job.getVersion() != MentionJob.VERSION) {
+          logger.warn(
+              "Dropping mention job {} of unsupported version {}",
+              job.getEventId(),
+              job.getVersion());
+          return "Unsupported mention job version";
+        }
 
-      if ("process_mention".equals(action)) {
-        Map<String, Object> eventMap = (Map<String, Object>) input.get("event");
-        SlackEvent slackEvent = objectMapper.convertValue(eventMap, SlackEvent.class);
+        if (job.getAttempt() > 0
+            && job.getNotBefore() != null
+            && !waitUntil(job.getNotBefore(), context)) {
+          // The backoff is longer than this invocation can wait for, so another one waits out the
+          // rest instead of answering early
+          try {
+            lambdaInvokeService.invokeAsync(job);
+            logger.info("Passed {} on to wait out its backoff", job.getEventId());
+            return "Deferred";
+          } catch (Exception e) {
+            logger.warn("Could not pass {} on, answering it early", job.getEventId(), e);
+          }
+        }
 
-        processMention(slackEvent);
+        processMention(job, scheduled, asyncDelayMillis, context);
+      } else if (HotThreadJob.ACTION.equals(action)) {
+        processHotThread(HotThreadJob.fromPayload(input), context);
+      } else if (HotThreadService.SWEEP_ACTION.equals(action)) {
+        hotThreads.sweep();
+      } else if ("channel_digest".equals(action)) {
+        processDigest(input, context);
       }
 
       return "Success";
 
     } catch (Exception e) {
       logger.error("Error processing async event", e);
+      span.error(e);
       return "Error: " + e.getMessage();
+    } finally {
+      eventLifecycleStore.flush();
+      span.close();
+      logScope.close();
     }
   }
 
-  private void processMention(SlackEvent slackEvent) {
-    SlackEvent.Event event = slackEvent.getEvent();
-    String channel = event.getChannel();
-    String threadTs = event.getThreadTs();
-    String messageTs = event.getTs();
-    String eventId = slackEvent.getEventId();
+  /**
+   * Mentions keep the Slack event ID, so their lines match those of the request that queued them.
+   * Other actions use the invocation's request ID.
+   */
+  private static String correlationId(Map<String, Object> input, Context context) {
+    if (input.get("event_id") instanceof String eventId) {
+      return eventId;
+    }
+    return context != null ? context.getAwsRequestId() : null;
+  }
+
+  /**
+   * Take the next job from the scheduler. When the scheduler can't be reached, the invocation is
+   * passed on to another worker, so every queued job still has one; after a few of those it answers
+   * its own job, which is then also left in the queue and may be answered twice.
+   */
+  private MentionScheduler.Scheduled takeScheduled(MentionJob job) {
+    try {
+      MentionScheduler.Scheduled scheduled = mentionScheduler.next();
+      if (scheduled != null) {
+        Map<String, String> dimensions = Map.of("Scheduler", "mentions");
+        MetricsEmitter.emit(
+            "MentionQueueWait", scheduled.getWaitMillis(), "Milliseconds", dimensions);
+        MetricsEmitter.emit("MentionQueueDepth", scheduled.getQueueDepth(), "Count", dimensions);
+      }
+      return scheduled;
+    } catch (Exception e) {
+      int handoffs = job.getHandoffs() != null ? job.getHandoffs() : 0;
+      if (handoffs < MAX_SCHEDULER_HANDOFFS) {
+        try {
+          lambdaInvokeService.invokeAsync(job.toBuilder().handoffs(handoffs + 1).build());
+          logger.warn("Could not take a scheduled mention, passed {} on", job.getEventId(), e);
+          return null;
+        } catch (Exception invokeError) {
+          logger.warn("Could not pass {} on", job.getEventId(), invokeError);
+        }
+      }
+      logger.warn("Could not take a scheduled mention, answering {}", job.getEventId(), e);
+      return new MentionScheduler.Scheduled(job, 0, -1);
+    }
+  }
+
+  private void processMention(
+      MentionJob job,
+      MentionScheduler.Scheduled scheduled,
+      Long asyncDelayMillis,
+      Context context) {
+    String channel = job.getChannel();
+    String threadTs = job.getThreadTs();
+    String messageTs = job.getTs();
+    String eventId = job.getEventId();
+    int attempt = job.getAttempt();
+    SlackService slackService = slackClientPool.forTeam(job.getTeamId());
+
+    // Everything below has to finish before the Lambda times out, including posting the reply
+    Deadline deadline = Deadline.fromContext(context);
+    long startMillis = System.currentTimeMillis();
+    Map<String, Object> outcome = new HashMap<>();
+    outcome.put("attempt", attempt);
+    if (scheduled != null) {
+      outcome.put("queue_wait_ms", scheduled.getWaitMillis());
+    }
+    if (asyncDelayMillis != null) {
+      outcome.put("async_delay_ms", asyncDelayMillis);
+    }
 
     try {
       // Add thinking reaction
@@ -64,25 +254,112 @@ public class AsyncProcessorHandler implements RequestHandler<Map<String, Object>
       // Get bot user ID to filter out bot's own messages
       String botUserId = slackService.getBotUserId();
 
-      logger.info("Processing event {}", event);
-
-      // Get thread messages
-      List<Map<String, Object>> threadMessages = slackService.getThreadMessages(channel, threadTs);
+      logger.info("Processing mention {} in channel {}, thread {}", messageTs, channel, threadTs);
+      logger.debug("Mention text: {}", LogContext.redact(job.getText()));
 
       // Parse the user's question using the improved extraction method
-      String userQuestion = slackService.extractQuestionFromMention(event.getText());
+      String userQuestion = slackService.extractQuestionFromMention(job.getText());
 
       // Check for special commands
-      String response = handleSpecialCommands(userQuestion);
+      Command command = Command.fromQuestion(userQuestion);
+      String response = handleSpecialCommands(command);
+      outcome.put("command", command.name());
+
+      // Searches are answered from the summaries of other threads, without reading this one
+      if (command == Command.SEARCH) {
+        response = answerSearch(job, userQuestion, deadline, outcome);
+      }
 
       if (response == null) {
-        // Format thread context for Bedrock using the improved formatting
-        // Pass the trigger message timestamp to exclude it from context
-        String threadContext =
-            slackService.formatThreadMessagesForAI(threadMessages, botUserId, messageTs);
+        // Get thread messages, only fetching and formatting those not cached yet
+        ThreadCacheService.ThreadContent thread =
+            threadCache.getThread(slackService, channel, threadTs);
+        outcome.put("thread_messages", thread.getMessages().size());
+
+        // Earlier questions in the thread and their answers, which the bot's own messages in the
+        // thread context leave out
+        ConversationService.Conversation conversation = conversations.get(channel, threadTs);
+        Consumer<String> recordTurn =
+            answer -> conversations.record(channel, threadTs, conversation, userQuestion, answer);
+
+        // Busy threads may have been summarized in the background since their last reply
+        if (command == Command.SUMMARIZE) {
+          response =
+              hotThreads.getSummary(channel, threadTs, thread.latestTs(botUserId, messageTs));
+          outcome.put("summary_cached", response != null ? 1 : 0);
+          if (response != null) {
+            recordTurn.accept(response);
+          }
+        }
+
+        if (response == null) {
+          // Format thread context for Bedrock using the improved formatting
+          // Pass the trigger message timestamp to exclude it from context
+          ContextCompactor.Result compacted =
+              contextCompactor.compact(
+                  thread.format(botUserId, messageTs), thread.automated(botUserId, messageTs));
+          List<String> formattedMessages = compacted.getMessages();
+          outcome.put("thread_tokens", compacted.getTokensBefore());
+          outcome.put("compacted_tokens", compacted.getTokensAfter());
+          outcome.put("folded_messages", compacted.getFoldedMessages());
 
-        // Get AI response from Bedrock
-        response = bedrockService.getResponse(threadContext, userQuestion);
+          // Key points and action items of short threads are picked out of the thread locally
+          if (extractiveSummarizer.answersFast(command, formattedMessages.size())) {
+            response = extractiveSummarizer.answer(command, formattedMessages, userQuestion);
+            if (response != null) {
+              outcome.put("answered_by", "extractive");
+              recordTurn.accept(response);
+            }
+          }
+
+          if (response == null) {
+            // Free-form questions only need the relevant part of the thread, and follow-ups even
+            // less, since the earlier turns are sent with them. Commands such as summarize need
+            // all of it, and are answered afresh.
+            boolean followUp =
+                command == Command.QUESTION && conversations.isFollowUp(conversation, userQuestion);
+            ConversationService.Conversation priorTurns =
+                command == Command.QUESTION ? conversation : ConversationService.Conversation.EMPTY;
+            String threadContext =
+                followUp
+                    ? contextSelector.select(
+                        formattedMessages,
+                        conversations.followUpQuery(conversation, userQuestion),
+                        conversations.getFollowUpContextTokens())
+                    : command == Command.QUESTION
+                        ? contextSelector.select(formattedMessages, userQuestion)
+                        : String.join("\n\n", formattedMessages);
+            outcome.put("context_tokens", TokenEstimator.estimate(threadContext));
+            outcome.put("follow_up", followUp ? 1 : 0);
+            outcome.put("conversation_turns", priorTurns.getTurns().size());
+
+            // Get AI response from Bedrock, keeping new summaries for search, and answering from
+            // the thread itself when Bedrock fails
+            Supplier<String> fallback =
+                () -> degradedAnswer(command, formattedMessages, userQuestion, outcome);
+            try {
+              response =
+                  bedrockService.getResponse(
+                      threadContext,
+                      userQuestion,
+                      priorTurns,
+                      deadline,
+                      answer -> {
+                        if (command == Command.SUMMARIZE) {
+                          summarySearch.record(job.getTeamId(), channel, threadTs, answer);
+                        }
+                        recordTurn.accept(answer);
+                      },
+                      fallback);
+            } catch (BedrockCapacityException e) {
+              // Once the retries are used up, a degraded answer beats none
+              response = attempt >= queuedRetryMaxAttempts ? fallback.get() : null;
+              if (response == null) {
+                throw e;
+              }
+            }
+          }
+        }
       }
 
       // Post response to thread
@@ -92,7 +369,14 @@ public class AsyncProcessorHandler implements RequestHandler<Map<String, Object>
       slackService.removeReaction(channel, messageTs, THINKING_EMOJI);
 
       // Update event status
-      dynamoService.updateEventStatus(eventId, "completed");
+      recordOutcome(job, "completed", outcome, startMillis);
+
+    } catch (BedrockCapacityException e) {
+      logger.warn("Bedrock has no capacity for event {}: {}", eventId, e.getMessage());
+      if (!handleNoCapacity(slackService, job)) {
+        outcome.put("error", "no_capacity");
+        recordOutcome(job, "error", outcome, startMillis);
+      }
 
     } catch (Exception e) {
       logger.error("Error processing mention", e);
@@ -108,19 +392,245 @@ public class AsyncProcessorHandler implements RequestHandler<Map<String, Object>
         logger.error("Failed to post error message", ex);
       }
 
-      dynamoService.updateEventStatus(eventId, "error");
+      outcome.put("error", e.getClass().getSimpleName());
+      recordOutcome(job, "error", outcome, startMillis);
+    }
+  }
+
+  /**
+   * Answer from the thread's own sentences when Bedrock can't, marked as such, or null when that is
+   * off or finds nothing
+   */
+  private String degradedAnswer(
+      Command command, List<String> messages, String question, Map<String, Object> outcome) {
+    if (!extractiveSummarizer.isFallbackEnabled()) {
+      return null;
+    }
+    String answer = extractiveSummarizer.answer(command, messages, question);
+    if (answer == null) {
+      return null;
+    }
+    outcome.put("answered_by", "extractive_fallback");
+    return DEGRADED_NOTE + "\n\n" + answer;
+  }
+
+  /**
+   * Record the outcome of a mention along with how long it took, both in this invocation and since
+   * Slack sent the event, on the same write as the status
+   */
+  private void recordOutcome(
+      MentionJob job, String status, Map<String, Object> fields, long startMillis) {
+    long now = System.currentTimeMillis();
+    fields.put("duration_ms", now - startMillis);
+    if (job.getEventTime() != null) {
+      fields.put("end_to_end_ms", now - job.getEventTime() * 1000);
+    }
+    eventLifecycleStore.recordOutcome(job.getEventId(), status, fields);
+  }
+
+  /**
+   * Summarize a hot thread the sweep found quiet. The summary is stored for the next {@code
+   * summarize} in the thread rather than posted.
+   */
+  private void processHotThread(HotThreadJob job, Context context) {
+    long startMillis = System.currentTimeMillis();
+    try {
+      SlackService slackService = slackClientPool.forTeam(job.getTeamId());
+      String botUserId = slackService.getBotUserId();
+      ThreadCacheService.ThreadContent thread =
+          threadCache.getThread(slackService, job.getChannel(), job.getThreadTs());
+
+      String latestTs = thread.latestTs(botUserId, null);
+      if (latestTs == null
+          || hotThreads.getSummary(job.getChannel(), job.getThreadTs(), latestTs) != null) {
+        return;
+      }
+
+      String threadContext =
+          String.join(
+              "\n\n",
+              contextCompactor
+                  .compact(thread.format(botUserId, null), thread.automated(botUserId, null))
+                  .getMessages());
+      String summary =
+          bedrockService.complete(threadContext, SUMMARY_QUESTION, Deadline.fromContext(context));
+      if (summary != null) {
+        hotThreads.putSummary(job.getChannel(), job.getThreadTs(), latestTs, summary);
+        summarySearch.record(job.getTeamId(), job.getChannel(), job.getThreadTs(), summary);
+        logger.info(
+            "Summarized hot thread {} ({} messages) in {} ms",
+            job.getThreadTs(),
+            thread.getMessages().size(),
+            System.currentTimeMillis() - startMillis);
+      }
+    } catch (Exception e) {
+      logger.warn("Failed to summarize hot thread {}: {}", job.getThreadTs(), e.toString());
+    } finally {
+      hotThreads.finish(job, startMillis);
+    }
+  }
+
+  /**
+   * Post channel digests, usually on a schedule. The payload can name the workspace, the channels
+   * and the window; otherwise the default workspace and the configured ones are used.
+   */
+  private void processDigest(Map<String, Object> input, Context context) {
+    AppConfig config = AppConfig.getInstance();
+
+    List<String> channels =
+        input.get("channels") instanceof List<?> list
+            ? list.stream().map(String::valueOf).toList()
+            : Arrays.stream(config.getDigestChannels().split(","))
+                .map(String::trim)
+                .filter(channel -> !channel.isEmpty())
+                .toList();
+    int windowMinutes =
+        input.get("window_minutes") instanceof Number n
+            ? n.intValue()
+            : config.getDigestWindowMinutes();
+
+    if (channels.isEmpty()) {
+      logger.warn("Channel digest requested but no channels are configured");
+      return;
+    }
+
+    logger.info("Building digest for {} channels over {} minutes", channels.size(), windowMinutes);
+    digestService.runDigest(
+        (String) input.get("team_id"), channels, windowMinutes, Deadline.fromContext(context));
+  }
+
+  /**
+   * Queue the mention for another attempt while Bedrock is under quota pressure, telling the user
+   * once instead of failing the request. Gives up after the configured number of attempts. Returns
+   * true when the mention was queued, in which case the retry records its outcome.
+   */
+  private boolean handleNoCapacity(SlackService slackService, MentionJob job) {
+    String channel = job.getChannel();
+    String threadTs = job.getThreadTs();
+    String eventId = job.getEventId();
+    int attempt = job.getAttempt();
+
+    try {
+      if (attempt < queuedRetryMaxAttempts) {
+        long delay =
+            RETRY_BASE_DELAY_MILLIS * (1L << attempt)
+                + ThreadLocalRandom.current().nextLong(RETRY_MAX_JITTER_MILLIS);
+
+        lambdaInvokeService.invokeAsync(
+            job.toBuilder()
+                .attempt(attempt + 1)
+                .notBefore(System.currentTimeMillis() + delay)
+                .queued(null)
+                .handoffs(null)
+                .build());
+        logger.info("Queued event {} for attempt {} in {} ms", eventId, attempt + 1, delay);
+
+        // Keep the thinking reaction, the retry removes it once it has answered
+        if (attempt == 0) {
+          slackService.postMessage(
+              channel,
+              threadTs,
+              "I'm handling a lot of requests right now. Your request is queued and I'll answer"
+                  + " shortly.");
+        }
+        return true;
+      }
+
+      slackService.postMessage(
+          channel,
+          threadTs,
+          "Sorry, I'm still too busy to answer. Please try again in a few minutes.");
+      slackService.removeReaction(channel, job.getTs(), THINKING_EMOJI);
+    } catch (Exception ex) {
+      logger.error("Failed to queue event {}", eventId, ex);
     }
+
+    return false;
   }
 
-  private String handleSpecialCommands(String text) {
-    String lowerText = text.toLowerCase().trim();
+  /**
+   * Hold a queued job until its backoff has passed, without eating more than a third of the
+   * invocation. Returns false when the backoff is longer than that, and the job isn't due yet.
+   */
+  private boolean waitUntil(long notBefore, Context context) {
+    long wait = notBefore - System.currentTimeMillis();
+    boolean capped = false;
+    if (context != null && wait > context.getRemainingTimeInMillis() / 3) {
+      wait = context.getRemainingTimeInMillis() / 3;
+      capped = true;
+    }
+    if (wait <= 0) {
+      return !capped;
+    }
+
+    try {
+      Thread.sleep(wait);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return false;
+    }
+    return !capped;
+  }
+
+  /**
+   * Answer a {@code search} in one Bedrock call from the stored summaries that best match it,
+   * listing the threads they came from
+   */
+  private String answerSearch(
+      MentionJob job, String userQuestion, Deadline deadline, Map<String, Object> outcome) {
+    if (!summarySearch.isEnabled()) {
+      return "Search isn't enabled.";
+    }
+    String query = Command.searchQuery(userQuestion);
+    if (query.isEmpty()) {
+      return "Tell me what to look for, for example `search payout retries`.";
+    }
+
+    List<SummaryIndex.Hit> hits = summarySearch.search(job.getTeamId(), job.getChannel(), query);
+    outcome.put("search_hits", hits.size());
+    if (hits.isEmpty()) {
+      return "I couldn't find any summarized threads about that. Threads become searchable once"
+          + " they have been summarized.";
+    }
+
+    StringBuilder context = new StringBuilder();
+    StringBuilder sources = new StringBuilder("\n\n*Sources:*");
+    for (int i = 0; i < hits.size(); i++) {
+      SummaryIndex.Document document = hits.get(i).getDocument();
+      String date =
+          Instant.ofEpochMilli(document.getSummarizedAt())
+              .atOffset(ZoneOffset.UTC)
+              .toLocalDate()
+              .toString();
+      context
+          .append(
+              String.format(
+                  "[%d] Thread in <#%s>, summarized %s:%n", i + 1, document.getChannel(), date))
+          .append(document.getText())
+          .append("\n\n");
+      sources.append(
+          String.format(
+              "\n[%d] <https://slack.com/archives/%s/p%s|Thread> in <#%s>, summarized %s",
+              i + 1,
+              document.getChannel(),
+              document.getThreadTs().replace(".", ""),
+              document.getChannel(),
+              date));
+    }
+    String searchContext = context.toString().strip();
+    outcome.put("context_tokens", TokenEstimator.estimate(searchContext));
+
+    return bedrockService.getResponse(searchContext, userQuestion, deadline) + sources;
+  }
 
-    if (lowerText.equals("help") || lowerText.equals("?")) {
+  private String handleSpecialCommands(Command command) {
+    if (command == Command.HELP) {
       return "*Available Commands:*\n"
           + "• `help` - Show this message\n"
           + "• `summarize` - Get a summary of this thread\n"
           + "• `action-items` - Extract action items from the thread\n"
-          + "• `key-points` - List key discussion points\n\n"
+          + "• `key-points` - List key discussion points\n"
+          + "• `search <words>` - Answer from summaries of earlier threads\n\n"
           + "Or ask me any question about this thread!";
     }
 
@@ -8,30 +8,60 @@ import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Objects;
+import java.util.regex.Pattern;
 import org.bvnk.slackbot.config.AppConfig;
+import org.bvnk.slackbot.config.AwsClientFactory;
+import org.bvnk.slackbot.logging.LogContext;
+import org.bvnk.slackbot.logging.Span;
+import org.bvnk.slackbot.logging.Tracing;
+import org.bvnk.slackbot.model.Command;
+import org.bvnk.slackbot.model.MentionJob;
 import org.bvnk.slackbot.model.SlackEvent;
 import org.bvnk.slackbot.service.DynamoService;
+import org.bvnk.slackbot.service.EventLifecycleStore;
+import org.bvnk.slackbot.service.HotThreadService;
 import org.bvnk.slackbot.service.LambdaInvokeService;
+import org.bvnk.slackbot.service.MentionScheduler;
+import org.bvnk.slackbot.service.ThreadCacheService;
 import org.bvnk.slackbot.util.SlackSignatureVerifier;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 public class SlackEventHandler implements RequestHandler<Object, Object> {
   private static final Logger logger = LoggerFactory.getLogger(SlackEventHandler.class);
+  private static final Pattern MENTION = Pattern.compile("<@[A-Z0-9]+>");
+  // Assumed for threads this container hasn't read yet
+  private static final int DEFAULT_THREAD_MESSAGES = 50;
 
   private final ObjectMapper objectMapper;
   private final SlackSignatureVerifier signatureVerifier;
-  private final DynamoService dynamoService;
+  private final EventLifecycleStore eventLifecycleStore;
   private final LambdaInvokeService lambdaInvokeService;
+  private final ThreadCacheService threadCache;
+  private final HotThreadService hotThreads;
+  private final MentionScheduler mentionScheduler;
   private final AppConfig config;
 
+  // Created on first use and kept for the life of the container, so its clients and caches stay
+  // warm across async invocations
+  private AsyncProcessorHandler asyncHandler;
+
   public SlackEventHandler() {
     this.config = AppConfig.getInstance();
     this.objectMapper = new ObjectMapper();
     this.objectMapper.disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
     this.signatureVerifier = new SlackSignatureVerifier(config.getSlackSigningSecret());
-    this.dynamoService = new DynamoService();
+    DynamoService dynamoService = new DynamoService();
+    this.eventLifecycleStore = EventLifecycleStore.fromConfig(dynamoService);
     this.lambdaInvokeService = new LambdaInvokeService();
+    this.threadCache = new ThreadCacheService(dynamoService);
+    this.hotThreads = new HotThreadService(dynamoService, lambdaInvokeService);
+    this.mentionScheduler = MentionScheduler.fromConfig();
+
+    // Runs during the Lambda init phase, so the first event finds open connections
+    AwsClientFactory.prewarm();
+    SnapStartPriming.registerIfEnabled(this);
   }
 
   @Override
@@ -49,8 +79,7 @@ public class SlackEventHandler implements RequestHandler<Object, Object> {
             objectMapper.convertValue(inputMap, APIGatewayProxyRequestEvent.class);
         return handleApiGatewayRequest(request, context);
       } else {
-        AsyncProcessorHandler asyncHandler = new AsyncProcessorHandler();
-        return asyncHandler.handleRequest(inputMap, context);
+        return asyncHandler().handleRequest(inputMap, context);
       }
     }
 
@@ -58,9 +87,19 @@ public class SlackEventHandler implements RequestHandler<Object, Object> {
     return handleApiGatewayRequest((APIGatewayProxyRequestEvent) input, context);
   }
 
+  AsyncProcessorHandler asyncHandler() {
+    if (asyncHandler == null) {
+      asyncHandler = new AsyncProcessorHandler();
+    }
+    return asyncHandler;
+  }
+
   private APIGatewayProxyResponseEvent handleApiGatewayRequest(
       APIGatewayProxyRequestEvent request, Context context) {
-    logger.info("Received request: {}", request.getPath());
+    logger.debug("Received request: {}", request.getPath());
+    LogContext.Scope logScope = null;
+    Span span = Tracing.startTrace("slack event", Span.Kind.SERVER, null);
+    span.set("http.request.method", request.getHttpMethod()).set("url.path", request.getPath());
 
     try {
       // Get headers
@@ -79,6 +118,13 @@ public class SlackEventHandler implements RequestHandler<Object, Object> {
 
       // Parse the event first to check if it's a URL verification
       SlackEvent slackEvent = objectMapper.readValue(body, SlackEvent.class);
+      logScope =
+          LogContext.start(
+              slackEvent.getEventId(),
+              slackEvent.getEvent() != null
+                  ? slackEvent.getEvent().getType()
+                  : slackEvent.getType());
+      traceEvent(span, slackEvent);
 
       // Handle URL verification challenge (these are not signed by Slack)
       if ("url_verification".equals(slackEvent.getType())) {
@@ -95,37 +141,132 @@ public class SlackEventHandler implements RequestHandler<Object, Object> {
         return createResponse(401, "Unauthorized");
       }
 
-      // Handle event callback
-      if ("event_callback".equals(slackEvent.getType())) {
-        SlackEvent.Event event = slackEvent.getEvent();
-
-        // Only process app_mention events in threads
-        if ("app_mention".equals(event.getType()) && event.getThreadTs() != null) {
-          String eventId = slackEvent.getEventId();
-
-          // Check for duplicate processing
-          if (dynamoService.checkAndSetEventProcessed(eventId)) {
-            logger.info("Processing new event: {}", eventId);
-
-            // Prepare async invocation payload
-            Map<String, Object> asyncPayload = new HashMap<>();
-            asyncPayload.put("action", "process_mention");
-            asyncPayload.put("event", slackEvent);
-
-            // Invoke Lambda asynchronously
-            lambdaInvokeService.invokeAsync(asyncPayload);
-          } else {
-            logger.info("Event already processed, skipping: {}", eventId);
-          }
-        }
-      }
+      dispatch(slackEvent);
 
       // Always return 200 OK immediately
       return createResponse(200, "OK");
 
     } catch (Exception e) {
       logger.error("Error processing request", e);
+      span.error(e);
       return createResponse(500, "Internal Server Error");
+    } finally {
+      span.close();
+      if (logScope != null) {
+        logScope.close();
+      }
+    }
+  }
+
+  /**
+   * Handle an event callback that arrived over Socket Mode, where the connection itself is
+   * authenticated, so there is no signature to check
+   */
+  void handleSocketEvent(String payload) {
+    LogContext.Scope logScope = null;
+    Span span = Tracing.startTrace("slack event", Span.Kind.CONSUMER, null);
+    try {
+      SlackEvent slackEvent = objectMapper.readValue(payload, SlackEvent.class);
+      logScope =
+          LogContext.start(
+              slackEvent.getEventId(),
+              slackEvent.getEvent() != null
+                  ? slackEvent.getEvent().getType()
+                  : slackEvent.getType());
+      traceEvent(span, slackEvent);
+      dispatch(slackEvent);
+    } catch (Exception e) {
+      logger.error("Error processing Socket Mode event", e);
+      span.error(e);
+    } finally {
+      span.close();
+      if (logScope != null) {
+        logScope.close();
+      }
+    }
+  }
+
+  /**
+   * Record which event the ingress span is for, and how long after Slack sent it it arrived. Slack
+   * only gives the event time in seconds, so the delivery lag is accurate to a second.
+   */
+  private static void traceEvent(Span span, SlackEvent slackEvent) {
+    span.set("slack.event_id", slackEvent.getEventId())
+        .set(
+            "slack.event_type",
+            slackEvent.getEvent() != null ? slackEvent.getEvent().getType() : slackEvent.getType())
+        .set("slack.team_id", slackEvent.getTeamId());
+    if (slackEvent.getEventTime() != null) {
+      span.set("slack.event_time", slackEvent.getEventTime())
+          .set(
+              "slack.delivery_lag_ms",
+              Math.max(0, System.currentTimeMillis() - slackEvent.getEventTime() * 1000));
+    }
+  }
+
+  /** Hand a verified event callback to the worker, or record it when it isn't a mention */
+  private void dispatch(SlackEvent slackEvent) {
+    if (!"event_callback".equals(slackEvent.getType())) {
+      return;
+    }
+    SlackEvent.Event event = slackEvent.getEvent();
+
+    // Only process app_mention events in threads
+    if ("app_mention".equals(event.getType()) && event.getThreadTs() != null) {
+      String eventId = slackEvent.getEventId();
+
+      // Check for duplicate processing
+      if (eventLifecycleStore.markReceived(eventId)) {
+        logger.info("Processing new event: {}", eventId);
+
+        // Invoke Lambda asynchronously with just what the worker needs, in this event's trace
+        MentionJob job =
+            MentionJob.fromEvent(slackEvent).toBuilder().traceparent(Tracing.traceparent()).build();
+        lambdaInvokeService.invokeAsync(schedule(job));
+      } else {
+        logger.info("Event already processed, skipping: {}", eventId);
+      }
+    } else if ("message".equals(event.getType())) {
+      invalidateEditedThread(event);
+      hotThreads.recordMessage(slackEvent.getTeamId(), event);
+    }
+  }
+
+  /**
+   * Submit the mention to the scheduler, weighed by its command and the size of its thread when
+   * this container has seen the thread. Returns the job to invoke the worker with.
+   */
+  private MentionJob schedule(MentionJob job) {
+    String text = job.getText() != null ? job.getText() : "";
+    Command command = Command.fromQuestion(MENTION.matcher(text).replaceAll(" ").trim());
+    int threadMessages = threadCache.cachedMessageCount(job.getChannel(), job.getThreadTs());
+    MentionJob costed =
+        job.toBuilder()
+            .cost(
+                MentionScheduler.estimateCost(
+                    command, threadMessages >= 0 ? threadMessages : DEFAULT_THREAD_MESSAGES))
+            .build();
+    return mentionScheduler.submit(costed) ? costed.toBuilder().queued(true).build() : costed;
+  }
+
+  /**
+   * Drop the cached copy of a thread when one of its messages is edited or deleted. These events
+   * only arrive when the app subscribes to message events, otherwise cached threads keep the text
+   * messages had when they were first read.
+   */
+  private void invalidateEditedThread(SlackEvent.Event event) {
+    Map<String, Object> previous = event.getPreviousMessage();
+    if (previous == null || !(previous.get("thread_ts") instanceof String threadTs)) {
+      return;
+    }
+
+    if ("message_deleted".equals(event.getSubtype())) {
+      threadCache.invalidate(event.getChannel(), threadTs);
+    } else if ("message_changed".equals(event.getSubtype())
+        && event.getMessage() != null
+        // Slack also sends message_changed for a parent whose reply count changed
+        && !Objects.equals(event.getMessage().get("text"), previous.get("text"))) {
+      threadCache.invalidate(event.getChannel(), threadTs);
     }
   }
 
@@ -0,0 +1,122 @@
+package org.bvnk.slackbot.handler;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import org.bvnk.slackbot.config.AwsClientFactory;
+import org.bvnk.slackbot.model.MentionJob;
+import org.bvnk.slackbot.service.DynamoService;
+import org.bvnk.slackbot.service.HttpSlackApiClient;
+import org.bvnk.slackbot.util.SlackResponseRenderer;
+import org.bvnk.slackbot.util.SlackSignatureVerifier;
+import org.bvnk.slackbot.util.TokenEstimator;
+import org.crac.Context;
+import org.crac.Core;
+import org.crac.Resource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Prepares the JVM deployment for a SnapStart snapshot. Before the snapshot, runs the request path
+ * enough times for its classes to load and its hot methods to compile, so a restored container
+ * doesn't pay for that on its first events. Connections are closed before the snapshot, as they
+ * would be stale in every container restored from it, and opened again after restore.
+ *
+ * <p>Only registered when Lambda initialises the function for a snapshot; the native image and a
+ * JVM function without SnapStart skip it.
+ */
+class SnapStartPriming implements Resource {
+  private static final Logger logger = LoggerFactory.getLogger(SnapStartPriming.class);
+  private static final int ITERATIONS = 100;
+  private static final String URL_VERIFICATION =
+      "{\"type\":\"url_verification\",\"challenge\":\"priming\",\"token\":\"priming\"}";
+  private static final String ANSWER =
+      "## Summary\n\n"
+          + "The team agreed to **retry EU payouts** after `03:00 UTC`.\n\n"
+          + "- Owner: @alice\n"
+          + "- Follow-up in [the runbook](https://example.com/runbook)\n";
+
+  // CRaC keeps only weak references to registered resources
+  private static SnapStartPriming registered;
+
+  private final SlackEventHandler handler;
+
+  private SnapStartPriming(SlackEventHandler handler) {
+    this.handler = handler;
+  }
+
+  static void registerIfEnabled(SlackEventHandler handler) {
+    if (!"snap-start".equals(System.getenv("AWS_LAMBDA_INITIALIZATION_TYPE"))) {
+      return;
+    }
+    registered = new SnapStartPriming(handler);
+    Core.getGlobalContext().register(registered);
+    logger.info("Registered SnapStart priming");
+  }
+
+  @Override
+  public void beforeCheckpoint(Context<? extends Resource> context) {
+    long start = System.currentTimeMillis();
+    try {
+      prime();
+    } catch (Exception e) {
+      // A snapshot without priming is slower on its first events, but still correct
+      logger.warn("SnapStart priming failed", e);
+    } finally {
+      AwsClientFactory.closeConnections();
+      HttpSlackApiClient.closeConnections();
+    }
+    logger.info("Primed for snapshot in {} ms", System.currentTimeMillis() - start);
+  }
+
+  @Override
+  public void afterRestore(Context<? extends Resource> context) {
+    CompletableFuture<Void> slack = CompletableFuture.runAsync(HttpSlackApiClient::prewarm);
+    AwsClientFactory.prewarm();
+    slack.join();
+  }
+
+  private void prime() throws Exception {
+    Map<String, Object> request = new HashMap<>();
+    request.put("httpMethod", "POST");
+    request.put("path", "/slack/events");
+    request.put("headers", Map.of("Content-Type", "application/json"));
+    request.put("body", URL_VERIFICATION);
+
+    ObjectWriter jobWriter = new ObjectMapper().writerFor(MentionJob.class);
+    ObjectMapper reader = new ObjectMapper();
+    SlackSignatureVerifier verifier = new SlackSignatureVerifier("priming");
+    String timestamp = String.valueOf(System.currentTimeMillis() / 1000);
+    MentionJob job =
+        MentionJob.builder()
+            .eventId("EvPRIMING")
+            .teamId("TPRIMING")
+            .channel("CPRIMING")
+            .threadTs("1800000000.000100")
+            .ts("1800000001.000200")
+            .user("UPRIMING")
+            .text("<@UBOT> summarise this thread")
+            .eventTime(1800000001L)
+            .build();
+
+    for (int i = 0; i < ITERATIONS; i++) {
+      handler.handleRequest(request, null);
+      MentionJob.fromPayload(reader.readValue(jobWriter.writeValueAsBytes(job), Map.class));
+      verifier.verifySignature("v0=00", timestamp, URL_VERIFICATION);
+      SlackResponseRenderer.render(ANSWER, SlackResponseRenderer.SECTION_CHAR_LIMIT, true);
+      TokenEstimator.estimate(ANSWER);
+    }
+    HttpSlackApiClient.primeParser(ITERATIONS);
+
+    // Creates the worker's services, and loads the DynamoDB request path with one read
+    handler.asyncHandler();
+    try {
+      new DynamoService().getTeamBotToken("TPRIMING");
+    } catch (RuntimeException e) {
+      // The request path is loaded whether or not the read succeeds
+      logger.info("Priming read of the table failed: {}", e.toString());
+    }
+  }
+}
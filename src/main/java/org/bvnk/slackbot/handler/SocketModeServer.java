@@ -0,0 +1,134 @@
+package org.bvnk.slackbot.handler;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import org.bvnk.slackbot.config.AppConfig;
+import org.bvnk.slackbot.service.HotThreadService;
+import org.bvnk.slackbot.service.LambdaInvokeService;
+import org.bvnk.slackbot.service.SlackSocketModeClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Long-running entry point that receives events over Socket Mode instead of through API Gateway.
+ * Events go through the same dispatch as {@link SlackEventHandler}, and the jobs it would invoke
+ * the function with run on a pool of worker threads in this process, so an event costs no HTTP
+ * request, signature check or extra invocation before the worker starts on it. Jobs that are due
+ * later wait on a timer rather than a worker, and hot threads are swept once a minute, as the
+ * template's schedule does for the function.
+ *
+ * <p>The Socket Mode connection stops reading once SOCKET_MODE_MAX_QUEUED jobs are waiting for a
+ * worker, and resumes when the backlog drops.
+ */
+public class SocketModeServer {
+  private static final Logger logger = LoggerFactory.getLogger(SocketModeServer.class);
+  private static final long SHUTDOWN_GRACE_SECONDS = 30;
+
+  private final ObjectMapper objectMapper = new ObjectMapper();
+  private final SlackEventHandler handler;
+  private final AsyncProcessorHandler asyncHandler;
+  private final ThreadPoolExecutor workers;
+  private final ScheduledExecutorService timers;
+  private final SlackSocketModeClient client;
+  private final int maxQueued;
+  private final CountDownLatch stopped = new CountDownLatch(1);
+
+  public SocketModeServer(String apiUrl, String appToken, int workerCount, int maxQueued) {
+    this.handler = new SlackEventHandler();
+    this.asyncHandler = handler.asyncHandler();
+    this.workers =
+        new ThreadPoolExecutor(
+            workerCount, workerCount, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>());
+    this.timers = Executors.newSingleThreadScheduledExecutor();
+    this.maxQueued = maxQueued;
+    this.client =
+        new SlackSocketModeClient(
+            apiUrl,
+            appToken,
+            payload -> workers.execute(() -> handler.handleSocketEvent(payload)),
+            () -> workers.getQueue().size() < this.maxQueued);
+  }
+
+  public static void main(String[] args) throws InterruptedException {
+    AppConfig config = AppConfig.getInstance();
+    if (config.getSlackAppToken().isEmpty()) {
+      throw new IllegalStateException("SLACK_APP_TOKEN is required for Socket Mode");
+    }
+
+    SocketModeServer server =
+        new SocketModeServer(
+            config.getSlackApiUrl(),
+            config.getSlackAppToken(),
+            config.getSocketModeWorkers(),
+            config.getSocketModeMaxQueued());
+    Runtime.getRuntime().addShutdownHook(new Thread(server::stop));
+    server.start();
+    server.awaitStop();
+  }
+
+  public void start() {
+    LambdaInvokeService.runInProcess(this::submit);
+    if (!AppConfig.getInstance().getHotThreadChannels().isBlank()) {
+      Map<String, Object> sweep = Map.of("action", HotThreadService.SWEEP_ACTION);
+      timers.scheduleAtFixedRate(() -> workers.execute(() -> run(sweep)), 1, 1, TimeUnit.MINUTES);
+    }
+    client.start();
+    logger.info("Socket Mode server started with {} workers", workers.getMaximumPoolSize());
+  }
+
+  /** Stop reading events, and give the workers a while to finish the jobs they have */
+  public void stop() {
+    client.stop();
+    timers.shutdownNow();
+    workers.shutdown();
+    try {
+      if (!workers.awaitTermination(SHUTDOWN_GRACE_SECONDS, TimeUnit.SECONDS)) {
+        logger.warn("Stopping with {} jobs unfinished", workers.getQueue().size());
+        workers.shutdownNow();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    stopped.countDown();
+  }
+
+  public void awaitStop() throws InterruptedException {
+    stopped.await();
+  }
+
+  /** Run a job the handlers would have invoked the function with */
+  private void submit(byte[] payload) {
+    Map<String, Object> input;
+    try {
+      input = objectMapper.readValue(payload, Map.class);
+    } catch (IOException e) {
+      throw new IllegalArgumentException("Unreadable job", e);
+    }
+
+    Runnable job = () -> run(input);
+    long delay =
+        input.get("not_before") instanceof Number notBefore
+            ? notBefore.longValue() - System.currentTimeMillis()
+            : 0;
+    if (delay > 0) {
+      timers.schedule(() -> workers.execute(job), delay, TimeUnit.MILLISECONDS);
+    } else {
+      workers.execute(job);
+    }
+  }
+
+  private void run(Map<String, Object> input) {
+    try {
+      asyncHandler.handleRequest(input, null);
+    } catch (Exception e) {
+      logger.error("Job failed", e);
+    }
+  }
+}
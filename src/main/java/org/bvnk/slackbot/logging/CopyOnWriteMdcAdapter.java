@@ -0,0 +1,82 @@
+package org.bvnk.slackbot.logging;
+
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.slf4j.helpers.ThreadLocalMapOfStacks;
+import org.slf4j.spi.MDCAdapter;
+
+/**
+ * MDC that replaces the thread's map on every change, so that each log record can keep a reference
+ * to it instead of a copy. Unlike SLF4J's BasicMDCAdapter it isn't inherited: pool threads started
+ * while one event was being handled would otherwise carry its correlation ID forever.
+ */
+class CopyOnWriteMdcAdapter implements MDCAdapter {
+  private final ThreadLocal<Map<String, String>> context =
+      ThreadLocal.withInitial(Collections::emptyMap);
+  private final ThreadLocalMapOfStacks stacks = new ThreadLocalMapOfStacks();
+
+  /** The current map, which never changes once returned */
+  Map<String, String> getContextMap() {
+    return context.get();
+  }
+
+  @Override
+  public void put(String key, String value) {
+    Map<String, String> updated = new LinkedHashMap<>(context.get());
+    updated.put(key, value);
+    context.set(Collections.unmodifiableMap(updated));
+  }
+
+  @Override
+  public String get(String key) {
+    return context.get().get(key);
+  }
+
+  @Override
+  public void remove(String key) {
+    Map<String, String> current = context.get();
+    if (current.containsKey(key)) {
+      Map<String, String> updated = new LinkedHashMap<>(current);
+      updated.remove(key);
+      context.set(Collections.unmodifiableMap(updated));
+    }
+  }
+
+  @Override
+  public void clear() {
+    context.remove();
+  }
+
+  @Override
+  public Map<String, String> getCopyOfContextMap() {
+    return new HashMap<>(context.get());
+  }
+
+  @Override
+  public void setContextMap(Map<String, String> contextMap) {
+    context.set(Collections.unmodifiableMap(new LinkedHashMap<>(contextMap)));
+  }
+
+  @Override
+  public void pushByKey(String key, String value) {
+    stacks.pushByKey(key, value);
+  }
+
+  @Override
+  public String popByKey(String key) {
+    return stacks.popByKey(key);
+  }
+
+  @Override
+  public Deque<String> getCopyOfDequeByKey(String key) {
+    return stacks.getCopyOfDequeByKey(key);
+  }
+
+  @Override
+  public void clearDequeByKey(String key) {
+    stacks.clearDequeByKey(key);
+  }
+}
@@ -0,0 +1,74 @@
+package org.bvnk.slackbot.logging;
+
+import org.slf4j.Marker;
+import org.slf4j.event.Level;
+import org.slf4j.helpers.LegacyAbstractLogger;
+
+/**
+ * Logger of {@link JsonLoggingProvider}. Lines logged inside a {@link LogContext} go through its
+ * sampling, everything else is written as long as the level is enabled.
+ */
+class JsonLogger extends LegacyAbstractLogger {
+  private final int threshold;
+  private final LogWriter writer;
+  private final CopyOnWriteMdcAdapter mdc;
+
+  JsonLogger(String name, Level level, LogWriter writer, CopyOnWriteMdcAdapter mdc) {
+    this.name = name;
+    this.threshold = level.toInt();
+    this.writer = writer;
+    this.mdc = mdc;
+  }
+
+  @Override
+  public boolean isTraceEnabled() {
+    return threshold <= Level.TRACE.toInt();
+  }
+
+  @Override
+  public boolean isDebugEnabled() {
+    return threshold <= Level.DEBUG.toInt();
+  }
+
+  @Override
+  public boolean isInfoEnabled() {
+    return threshold <= Level.INFO.toInt();
+  }
+
+  @Override
+  public boolean isWarnEnabled() {
+    return threshold <= Level.WARN.toInt();
+  }
+
+  @Override
+  public boolean isErrorEnabled() {
+    return threshold <= Level.ERROR.toInt();
+  }
+
+  @Override
+  protected String getFullyQualifiedCallerName() {
+    return null;
+  }
+
+  @Override
+  protected void handleNormalizedLoggingCall(
+      Level level, Marker marker, String pattern, Object[] arguments, Throwable throwable) {
+    LogRecord record =
+        new LogRecord(
+            System.currentTimeMillis(),
+            level,
+            name,
+            Thread.currentThread().getName(),
+            pattern,
+            arguments,
+            throwable,
+            mdc.getContextMap());
+
+    LogContext.Scope scope = LogContext.current();
+    if (scope != null) {
+      scope.route(record, writer);
+    } else {
+      writer.write(record);
+    }
+  }
+}
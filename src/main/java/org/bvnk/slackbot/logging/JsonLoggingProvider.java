@@ -0,0 +1,93 @@
+package org.bvnk.slackbot.logging;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.bvnk.slackbot.config.AppConfig;
+import org.slf4j.ILoggerFactory;
+import org.slf4j.IMarkerFactory;
+import org.slf4j.event.Level;
+import org.slf4j.helpers.BasicMarkerFactory;
+import org.slf4j.spi.MDCAdapter;
+import org.slf4j.spi.SLF4JServiceProvider;
+
+/**
+ * SLF4J backend writing one JSON object per line to stdout, where Lambda picks it up for CloudWatch
+ * Logs. Lines are encoded and written by a background thread from a bounded buffer, so the request
+ * path only formats the message. Found by SLF4J through {@code META-INF/services}, which the native
+ * image build registers on its own.
+ */
+public class JsonLoggingProvider implements SLF4JServiceProvider {
+  // The writer of the provider SLF4J initialized, shared with lines that aren't log records
+  private static volatile LogWriter lineWriter;
+
+  private ILoggerFactory loggerFactory;
+  private IMarkerFactory markerFactory;
+  private MDCAdapter mdcAdapter;
+
+  @Override
+  public void initialize() {
+    AppConfig config = AppConfig.getInstance();
+    Level level = parseLevel(config.getLogLevel());
+    LogWriter writer =
+        LogWriter.start(System.out, config.isLogAsync(), Math.max(1, config.getLogBufferSize()));
+    CopyOnWriteMdcAdapter mdc = new CopyOnWriteMdcAdapter();
+    lineWriter = writer;
+
+    Map<String, JsonLogger> loggers = new ConcurrentHashMap<>();
+    this.loggerFactory =
+        name -> loggers.computeIfAbsent(name, n -> new JsonLogger(n, level, writer, mdc));
+    this.markerFactory = new BasicMarkerFactory();
+    this.mdcAdapter = mdc;
+  }
+
+  /**
+   * Write a line that is already JSON, such as an Embedded Metric Format record, through the same
+   * background writer as the logs. It is never sampled out or dropped, and closing the event's
+   * {@link LogContext} scope waits for it like for its logs. Returns false when this provider isn't
+   * the SLF4J backend, in which case the caller writes the line itself.
+   */
+  public static boolean writeLine(String json) {
+    LogWriter writer = lineWriter;
+    if (writer == null) {
+      return false;
+    }
+
+    LogRecord record = LogRecord.line(json);
+    LogContext.Scope scope = LogContext.current();
+    if (scope != null) {
+      scope.write(record, writer);
+    } else {
+      writer.write(record);
+    }
+    return true;
+  }
+
+  @Override
+  public ILoggerFactory getLoggerFactory() {
+    return loggerFactory;
+  }
+
+  @Override
+  public IMarkerFactory getMarkerFactory() {
+    return markerFactory;
+  }
+
+  @Override
+  public MDCAdapter getMDCAdapter() {
+    return mdcAdapter;
+  }
+
+  @Override
+  public String getRequestedApiVersion() {
+    return "2.0.99";
+  }
+
+  private static Level parseLevel(String value) {
+    try {
+      return Level.valueOf(value.trim().toUpperCase(Locale.ROOT));
+    } catch (IllegalArgumentException e) {
+      return Level.INFO;
+    }
+  }
+}
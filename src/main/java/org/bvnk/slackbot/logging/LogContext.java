@@ -0,0 +1,162 @@
+package org.bvnk.slackbot.logging;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import org.bvnk.slackbot.config.AppConfig;
+import org.slf4j.MDC;
+import org.slf4j.event.Level;
+
+/**
+ * Correlation and sampling for the logs of one Slack event. {@link #start} puts the event's
+ * correlation ID and type in the MDC, so every line logged while handling it carries them, and
+ * decides whether the event's INFO and DEBUG lines are kept. The decision hashes the correlation
+ * ID, so the ingress and worker invocations of an event agree. The lines of an event left out of
+ * the sample are held back: they are dropped when the event ends, or written together with its
+ * first warning or error.
+ */
+public final class LogContext {
+  public static final String CORRELATION_ID = "correlation_id";
+  public static final String EVENT_TYPE = "event_type";
+  private static final int MAX_HELD_RECORDS = 200;
+  private static final long FLUSH_TIMEOUT_MILLIS = 500;
+
+  private static final ThreadLocal<Scope> current = new ThreadLocal<>();
+  private static final int defaultSamplePercent = AppConfig.getInstance().getLogSamplePercent();
+  private static final Map<String, Integer> samplePercentByType =
+      parsePercentages(AppConfig.getInstance().getLogSamplePercentByType());
+  private static final boolean messageText = AppConfig.getInstance().isLogMessageText();
+
+  private LogContext() {}
+
+  /**
+   * Start handling an event on this thread. Close the scope when the invocation ends; that also
+   * waits for the event's lines to be written.
+   */
+  public static Scope start(String correlationId, String eventType) {
+    int percent = samplePercentByType.getOrDefault(eventType, defaultSamplePercent);
+    int bucket =
+        correlationId != null
+            ? Math.floorMod(correlationId.hashCode(), 100)
+            : ThreadLocalRandom.current().nextInt(100);
+
+    if (correlationId != null) {
+      MDC.put(CORRELATION_ID, correlationId);
+    }
+    if (eventType != null) {
+      MDC.put(EVENT_TYPE, eventType);
+    }
+    Scope scope = new Scope(bucket < percent);
+    current.set(scope);
+    return scope;
+  }
+
+  /** The correlation ID of the event handled on this thread, or null */
+  public static String correlationId() {
+    return MDC.get(CORRELATION_ID);
+  }
+
+  /**
+   * Slack message text for a log argument. Unless LOG_MESSAGE_TEXT is set, only its length is
+   * logged, as messages can hold anything users paste into Slack.
+   */
+  public static Object redact(String text) {
+    return messageText || text == null ? text : new Redacted(text.length());
+  }
+
+  static Scope current() {
+    return current.get();
+  }
+
+  private static Map<String, Integer> parsePercentages(String value) {
+    Map<String, Integer> percentages = new HashMap<>();
+    for (String entry : value.split(",")) {
+      int separator = entry.indexOf(':');
+      if (separator > 0) {
+        try {
+          percentages.put(
+              entry.substring(0, separator).trim(),
+              Integer.parseInt(entry.substring(separator + 1).trim()));
+        } catch (NumberFormatException e) {
+          // Skip the entry, the default applies
+        }
+      }
+    }
+    return percentages;
+  }
+
+  public static final class Scope implements AutoCloseable {
+    private boolean sampled;
+    private List<LogRecord> held;
+    private LogWriter writer;
+    private LogRecord lastQueued;
+
+    private Scope(boolean sampled) {
+      this.sampled = sampled;
+    }
+
+    /** Write the record, or hold it back when the event isn't sampled and nothing went wrong yet */
+    void route(LogRecord record, LogWriter writer) {
+      if (sampled) {
+        write(record, writer);
+        return;
+      }
+
+      if (record.level.toInt() < Level.WARN.toInt()) {
+        if (held == null) {
+          held = new ArrayList<>();
+        }
+        if (held.size() < MAX_HELD_RECORDS) {
+          record.format();
+          held.add(record);
+        }
+        return;
+      }
+
+      // The event went wrong: write what led up to it, and everything from here on
+      sampled = true;
+      if (held != null) {
+        held.forEach(heldRecord -> write(heldRecord, writer));
+        held = null;
+      }
+      write(record, writer);
+    }
+
+    /** Write the record whether or not the event is sampled, and wait for it on close */
+    void write(LogRecord record, LogWriter writer) {
+      if (writer.write(record)) {
+        this.writer = writer;
+        this.lastQueued = record;
+      }
+    }
+
+    @Override
+    public void close() {
+      if (current.get() == this) {
+        current.remove();
+      }
+      MDC.remove(CORRELATION_ID);
+      MDC.remove(EVENT_TYPE);
+      held = null;
+
+      if (lastQueued != null) {
+        writer.awaitWritten(lastQueued, FLUSH_TIMEOUT_MILLIS);
+      }
+    }
+  }
+
+  private static final class Redacted {
+    private final int length;
+
+    private Redacted(int length) {
+      this.length = length;
+    }
+
+    @Override
+    public String toString() {
+      return "[" + length + " chars]";
+    }
+  }
+}
@@ -0,0 +1,77 @@
+package org.bvnk.slackbot.logging;
+
+import java.util.Map;
+import org.slf4j.event.Level;
+import org.slf4j.helpers.MessageFormatter;
+
+/** One log line, formatted when it is written or handed to the background writer */
+final class LogRecord {
+  final long timestamp;
+  final Level level;
+  final String logger;
+  final String thread;
+  final Throwable throwable;
+  final Map<String, String> mdc;
+  final String line; // already encoded, written as it is, or null
+
+  volatile boolean written; // set by the background writer
+
+  private String pattern;
+  private Object[] arguments;
+  private String message;
+
+  LogRecord(
+      long timestamp,
+      Level level,
+      String logger,
+      String thread,
+      String pattern,
+      Object[] arguments,
+      Throwable throwable,
+      Map<String, String> mdc) {
+    this(timestamp, level, logger, thread, pattern, arguments, throwable, mdc, null);
+  }
+
+  private LogRecord(
+      long timestamp,
+      Level level,
+      String logger,
+      String thread,
+      String pattern,
+      Object[] arguments,
+      Throwable throwable,
+      Map<String, String> mdc,
+      String line) {
+    this.timestamp = timestamp;
+    this.level = level;
+    this.logger = logger;
+    this.thread = thread;
+    this.pattern = pattern;
+    this.arguments = arguments;
+    this.throwable = throwable;
+    this.mdc = mdc;
+    this.line = line;
+  }
+
+  /** A line that is already JSON, such as a metric, to be written as it is */
+  static LogRecord line(String json) {
+    return new LogRecord(
+        System.currentTimeMillis(), Level.INFO, null, null, null, null, null, Map.of(), json);
+  }
+
+  /**
+   * Format the message, on the thread that logged it: the arguments may change once the call
+   * returns, so only the result can be handed to another thread
+   */
+  void format() {
+    if (pattern != null) {
+      message = arguments != null ? MessageFormatter.basicArrayFormat(pattern, arguments) : pattern;
+      pattern = null;
+      arguments = null;
+    }
+  }
+
+  String message() {
+    return message;
+  }
+}
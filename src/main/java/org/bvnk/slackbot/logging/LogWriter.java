@@ -0,0 +1,190 @@
+package org.bvnk.slackbot.logging;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import org.slf4j.event.Level;
+
+/**
+ * Encodes log records as JSON lines and writes them in batches. In async mode records go through a
+ * bounded ring buffer drained by a daemon thread. The thread is only woken every {@link
+ * #WAKE_BATCH} records and by {@link #awaitWritten}, as waking it for every record costs the
+ * logging thread more than formatting the line. When the buffer is full, INFO and DEBUG records are
+ * dropped and counted, while warnings, errors and preformatted lines such as metrics are written by
+ * the caller instead.
+ */
+final class LogWriter {
+  private static final int MAX_BATCH = 256;
+  private static final int WAKE_BATCH = 64;
+  private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+
+  private final JsonFactory jsonFactory = new JsonFactory();
+  private final ByteArrayOutputStream buffer = new ByteArrayOutputStream(16 * 1024);
+  private final PrintStream out;
+  private final BlockingQueue<LogRecord> queue; // null when writing synchronously
+  private final AtomicLong enqueued = new AtomicLong();
+  private final AtomicLong dropped = new AtomicLong();
+  private final List<LogRecord> batch = new ArrayList<>(MAX_BATCH); // guarded by this
+  private Thread drainer;
+
+  private LogWriter(PrintStream out, boolean async, int capacity) {
+    this.out = out;
+    this.queue = async ? new ArrayBlockingQueue<>(capacity) : null;
+  }
+
+  static LogWriter start(PrintStream out, boolean async, int capacity) {
+    LogWriter writer = new LogWriter(out, async, capacity);
+    if (async) {
+      writer.drainer = new Thread(writer::drain, "log-writer");
+      writer.drainer.setDaemon(true);
+      writer.drainer.start();
+      Runtime.getRuntime().addShutdownHook(new Thread(writer::drainAll));
+    }
+    return writer;
+  }
+
+  /** Write the record, returning true when it was queued rather than written or dropped */
+  boolean write(LogRecord record) {
+    record.format();
+    if (queue != null && queue.offer(record)) {
+      if (enqueued.incrementAndGet() % WAKE_BATCH == 0) {
+        LockSupport.unpark(drainer);
+      }
+      return true;
+    }
+
+    if (queue == null || record.level.toInt() >= Level.WARN.toInt() || record.line != null) {
+      synchronized (this) {
+        writeBatch(List.of(record));
+      }
+    } else {
+      dropped.incrementAndGet();
+    }
+    return false;
+  }
+
+  /**
+   * Wait until a queued record, and so every record queued before it, is written, for at most the
+   * given time. Called at the end of an invocation, as Lambda may freeze the container, or never
+   * thaw it, once the handler returns.
+   */
+  void awaitWritten(LogRecord record, long timeoutMillis) {
+    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+    synchronized (this) {
+      if (!record.written) {
+        LockSupport.unpark(drainer);
+      }
+      while (!record.written) {
+        long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+        if (remaining <= 0) {
+          return;
+        }
+        try {
+          wait(remaining);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          return;
+        }
+      }
+    }
+  }
+
+  private void drain() {
+    while (!Thread.currentThread().isInterrupted()) {
+      if (!drainOnce()) {
+        LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+      }
+    }
+  }
+
+  /** Write what is left when the JVM exits */
+  private void drainAll() {
+    while (drainOnce()) {
+      // Until the queue is empty
+    }
+  }
+
+  /** Write one batch, returning false when the queue was empty */
+  private synchronized boolean drainOnce() {
+    if (queue.drainTo(batch, MAX_BATCH) == 0) {
+      return false;
+    }
+
+    writeBatch(batch);
+    for (LogRecord record : batch) {
+      record.written = true;
+    }
+    batch.clear();
+    notifyAll();
+    return true;
+  }
+
+  private void writeBatch(List<LogRecord> records) {
+    buffer.reset();
+    try {
+      try (JsonGenerator json = jsonFactory.createGenerator(buffer)) {
+        json.setRootValueSeparator(null); // Lines end with a newline instead
+        long droppedRecords = dropped.getAndSet(0);
+        if (droppedRecords > 0) {
+          writeDropNotice(json, droppedRecords);
+        }
+        for (LogRecord record : records) {
+          writeRecord(json, record);
+        }
+      }
+      buffer.writeTo(out);
+      out.flush();
+    } catch (IOException e) {
+      // Nowhere left to report it
+    }
+  }
+
+  private static void writeRecord(JsonGenerator json, LogRecord record) throws IOException {
+    if (record.line != null) {
+      json.writeRaw(record.line);
+      json.writeRaw('\n');
+      return;
+    }
+    json.writeStartObject();
+    json.writeStringField("timestamp", Instant.ofEpochMilli(record.timestamp).toString());
+    json.writeStringField("level", record.level.name());
+    json.writeStringField("logger", record.logger);
+    json.writeStringField("message", record.message());
+    for (Map.Entry<String, String> entry : record.mdc.entrySet()) {
+      json.writeStringField(entry.getKey(), entry.getValue());
+    }
+    json.writeStringField("thread", record.thread);
+    if (record.throwable != null) {
+      StringWriter stackTrace = new StringWriter();
+      record.throwable.printStackTrace(new PrintWriter(stackTrace));
+      json.writeStringField("error", record.throwable.toString());
+      json.writeStringField("stack_trace", stackTrace.toString());
+    }
+    json.writeEndObject();
+    json.writeRaw('\n');
+  }
+
+  private static void writeDropNotice(JsonGenerator json, long droppedRecords) throws IOException {
+    json.writeStartObject();
+    json.writeStringField("timestamp", Instant.now().toString());
+    json.writeStringField("level", Level.WARN.name());
+    json.writeStringField("logger", LogWriter.class.getName());
+    json.writeStringField(
+        "message", "Dropped " + droppedRecords + " log records, the log buffer was full");
+    json.writeEndObject();
+    json.writeRaw('\n');
+  }
+}
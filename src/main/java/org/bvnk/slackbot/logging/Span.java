@@ -0,0 +1,102 @@
+package org.bvnk.slackbot.logging;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * One timed operation of a trace, started with {@link Tracing}. While it is open it is the current
+ * span of the thread that started it, so spans started on that thread become its children; closing
+ * it ends it and makes its parent current again. Spans started outside a trace, or below the root
+ * of a trace that isn't recorded, are {@link #NOOP}.
+ */
+public final class Span implements AutoCloseable {
+  /** The OpenTelemetry span kinds, numbered as in OTLP */
+  public enum Kind {
+    INTERNAL(1),
+    SERVER(2),
+    CLIENT(3),
+    PRODUCER(4),
+    CONSUMER(5);
+
+    final int otlp;
+
+    Kind(int otlp) {
+      this.otlp = otlp;
+    }
+  }
+
+  static final Span NOOP = new Span(null, null, null, null, Kind.INTERNAL, 0, null);
+
+  final Tracing.Trace trace;
+  final String spanId;
+  final String parentSpanId;
+  final String name;
+  final Kind kind;
+  final long startEpochNanos;
+  private final long startTicks;
+  private final Span previous;
+  final Map<String, Object> attributes = new LinkedHashMap<>();
+  long endEpochNanos;
+  String error;
+  private boolean ended;
+
+  Span(
+      Tracing.Trace trace,
+      String spanId,
+      String parentSpanId,
+      String name,
+      Kind kind,
+      long startEpochNanos,
+      Span previous) {
+    this.trace = trace;
+    this.spanId = spanId;
+    this.parentSpanId = parentSpanId;
+    this.name = name;
+    this.kind = kind;
+    this.startEpochNanos = startEpochNanos;
+    this.startTicks = System.nanoTime();
+    this.previous = previous;
+  }
+
+  /** Set an attribute: a string, number or boolean. Null values are left out */
+  public Span set(String key, Object value) {
+    if (this != NOOP && value != null) {
+      synchronized (this) {
+        attributes.put(key, value);
+      }
+    }
+    return this;
+  }
+
+  /** Mark the span as failed */
+  public Span error(Throwable error) {
+    if (this != NOOP) {
+      synchronized (this) {
+        this.error = error.getClass().getSimpleName();
+        attributes.put("exception.type", error.getClass().getName());
+      }
+    }
+    return this;
+  }
+
+  /** End the span now */
+  @Override
+  public void close() {
+    end(startEpochNanos + (System.nanoTime() - startTicks));
+  }
+
+  /** End the span at the given time, for spans of waits measured elsewhere */
+  void end(long endEpochNanos) {
+    if (this == NOOP) {
+      return;
+    }
+    synchronized (this) {
+      if (ended) {
+        return;
+      }
+      ended = true;
+      this.endEpochNanos = endEpochNanos;
+    }
+    Tracing.ended(this, previous);
+  }
+}
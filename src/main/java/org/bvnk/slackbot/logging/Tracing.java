@@ -0,0 +1,279 @@
+package org.bvnk.slackbot.logging;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import org.bvnk.slackbot.config.AppConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
+
+/**
+ * Traces of how an event is handled, across the ingress invocation, the async worker and the calls
+ * both make to Slack, DynamoDB and Bedrock. The trace travels between invocations as a W3C {@code
+ * traceparent} in the job payload, so the worker's spans join the trace of the request that queued
+ * it.
+ *
+ * <p>Spans of an invocation are collected until its root span ends, then written as one line of
+ * OTLP JSON on stdout, an {@code ExportTraceServiceRequest} that any OpenTelemetry collector or
+ * OTLP/HTTP endpoint accepts as-is. Nothing is sent anywhere on the request path; the lines land in
+ * CloudWatch Logs with the rest of the output. Whether a trace is recorded is decided once, when it
+ * starts, and carried in the traceparent's flags, so every invocation of an event agrees. Spans of
+ * a trace that isn't recorded cost nothing beyond its root.
+ */
+public final class Tracing {
+  public static final String TRACE_ID = "trace_id";
+  private static final Logger logger = LoggerFactory.getLogger(Tracing.class);
+  private static final String SERVICE_NAME = "slack-ai-assistant";
+  private static final ObjectMapper objectMapper = new ObjectMapper();
+
+  private static final ThreadLocal<Span> current = new ThreadLocal<>();
+  private static final boolean enabled = AppConfig.getInstance().isTracingEnabled();
+  private static final int samplePercent = AppConfig.getInstance().getTraceSamplePercent();
+  private static final String functionName = AppConfig.getInstance().getLambdaFunctionName();
+
+  private Tracing() {}
+
+  /**
+   * Start the root span of an invocation on this thread, continuing the trace of the given
+   * traceparent, or a new trace when it is null or malformed. Its trace ID is put in the MDC while
+   * it is open. Close it when the invocation ends; that writes the trace's spans.
+   */
+  public static Span startTrace(String name, Span.Kind kind, String traceparent) {
+    if (!enabled) {
+      return Span.NOOP;
+    }
+
+    String traceId = null;
+    String parentSpanId = null;
+    boolean sampled = false;
+    if (traceparent != null
+        && traceparent.length() == 55
+        && traceparent.startsWith("00-")
+        && isHex(traceparent, 3, 35)
+        && isHex(traceparent, 36, 52)
+        && isHex(traceparent, 53, 55)) {
+      traceId = traceparent.substring(3, 35);
+      parentSpanId = traceparent.substring(36, 52);
+      sampled = (Integer.parseInt(traceparent.substring(53, 55), 16) & 1) == 1;
+    }
+    if (traceId == null) {
+      UUID random = UUID.randomUUID();
+      traceId = hex(random.getMostSignificantBits()) + hex(random.getLeastSignificantBits());
+      sampled = Math.floorMod(traceId.hashCode(), 100) < samplePercent;
+    }
+
+    Trace trace = new Trace(traceId, sampled);
+    Span root = new Span(trace, spanId(), parentSpanId, name, kind, nowEpochNanos(), current.get());
+    trace.root = root;
+    current.set(root);
+    MDC.put(TRACE_ID, traceId);
+    return root;
+  }
+
+  /**
+   * Start a span as a child of this thread's current span. Returns {@link Span#NOOP} when there is
+   * no current span or its trace isn't recorded.
+   */
+  public static Span startSpan(String name, Span.Kind kind) {
+    Span parent = current.get();
+    if (parent == null || !parent.trace.sampled) {
+      return Span.NOOP;
+    }
+    Span span =
+        new Span(parent.trace, spanId(), parent.spanId, name, kind, nowEpochNanos(), parent);
+    current.set(span);
+    return span;
+  }
+
+  /**
+   * Record time spent waiting before this thread's current span started, such as in a queue, as a
+   * span next to it, with the same parent
+   */
+  public static void recordWait(String name, long sinceEpochMillis) {
+    Span span = current.get();
+    if (span == null
+        || !span.trace.sampled
+        || sinceEpochMillis * 1_000_000 >= span.startEpochNanos) {
+      return;
+    }
+    new Span(
+            span.trace,
+            spanId(),
+            span.parentSpanId,
+            name,
+            Span.Kind.INTERNAL,
+            sinceEpochMillis * 1_000_000,
+            null)
+        .end(span.startEpochNanos);
+  }
+
+  /** The W3C traceparent of this thread's current span, to pass on to another invocation */
+  public static String traceparent() {
+    Span span = current.get();
+    if (span == null) {
+      return null;
+    }
+    return "00-" + span.trace.traceId + "-" + span.spanId + (span.trace.sampled ? "-01" : "-00");
+  }
+
+  /** A task that runs with this thread's current span, for work handed to an executor */
+  public static <T> Callable<T> wrap(Callable<T> task) {
+    Span captured = current.get();
+    if (captured == null) {
+      return task;
+    }
+    return () -> {
+      Span previous = current.get();
+      current.set(captured);
+      try {
+        return task.call();
+      } finally {
+        if (previous != null) {
+          current.set(previous);
+        } else {
+          current.remove();
+        }
+      }
+    };
+  }
+
+  /** Called once a span has ended, to make its parent current again and keep it for writing */
+  static void ended(Span span, Span previous) {
+    Trace trace = span.trace;
+    if (current.get() == span) {
+      if (previous != null) {
+        current.set(previous);
+      } else {
+        current.remove();
+      }
+    }
+    if (span == trace.root) {
+      if (previous != null) {
+        MDC.put(TRACE_ID, previous.trace.traceId);
+      } else {
+        MDC.remove(TRACE_ID);
+      }
+    }
+    if (!trace.sampled) {
+      return;
+    }
+
+    List<Span> spans;
+    synchronized (trace) {
+      if (trace.spans == null) {
+        // The root has already ended, as it has when a hedged Bedrock call that lost ends
+        spans = List.of(span);
+      } else {
+        trace.spans.add(span);
+        if (span != trace.root) {
+          return;
+        }
+        spans = trace.spans;
+        trace.spans = null;
+      }
+    }
+    write(trace.traceId, spans);
+  }
+
+  private static void write(String traceId, List<Span> spans) {
+    try {
+      ObjectNode root = objectMapper.createObjectNode();
+      ObjectNode resourceSpans = root.putArray("resourceSpans").addObject();
+      ArrayNode resource = resourceSpans.putObject("resource").putArray("attributes");
+      attribute(resource, "service.name", SERVICE_NAME);
+      if (!functionName.isEmpty()) {
+        attribute(resource, "faas.name", functionName);
+      }
+
+      ObjectNode scopeSpans = resourceSpans.putArray("scopeSpans").addObject();
+      scopeSpans.putObject("scope").put("name", "org.bvnk.slackbot");
+      ArrayNode out = scopeSpans.putArray("spans");
+      for (Span span : spans) {
+        ObjectNode node = out.addObject();
+        node.put("traceId", traceId);
+        node.put("spanId", span.spanId);
+        if (span.parentSpanId != null) {
+          node.put("parentSpanId", span.parentSpanId);
+        }
+        node.put("name", span.name);
+        node.put("kind", span.kind.otlp);
+        node.put("startTimeUnixNano", Long.toString(span.startEpochNanos));
+        node.put("endTimeUnixNano", Long.toString(span.endEpochNanos));
+        ArrayNode attributes = node.putArray("attributes");
+        synchronized (span) {
+          span.attributes.forEach((key, value) -> attribute(attributes, key, value));
+          if (span.error != null) {
+            node.putObject("status").put("code", 2).put("message", span.error);
+          }
+        }
+      }
+
+      System.out.println(objectMapper.writeValueAsString(root));
+    } catch (Exception e) {
+      logger.warn("Failed to write trace {}", traceId, e);
+    }
+  }
+
+  /** An OTLP key and value; 64-bit integers are strings in OTLP JSON */
+  private static void attribute(ArrayNode attributes, String key, Object value) {
+    ObjectNode attribute = attributes.addObject();
+    attribute.put("key", key);
+    ObjectNode any = attribute.putObject("value");
+    if (value instanceof Boolean b) {
+      any.put("boolValue", b);
+    } else if (value instanceof Double || value instanceof Float) {
+      any.put("doubleValue", ((Number) value).doubleValue());
+    } else if (value instanceof Number n) {
+      any.put("intValue", Long.toString(n.longValue()));
+    } else {
+      any.put("stringValue", String.valueOf(value));
+    }
+  }
+
+  private static long nowEpochNanos() {
+    Instant now = Instant.now();
+    return now.getEpochSecond() * 1_000_000_000 + now.getNano();
+  }
+
+  /**
+   * A new span ID. IDs come from {@link UUID#randomUUID}, whose generator is reseeded when a
+   * SnapStart snapshot is restored, unlike {@code ThreadLocalRandom}, which would hand every
+   * container restored from one snapshot the same IDs.
+   */
+  private static String spanId() {
+    return hex(UUID.randomUUID().getLeastSignificantBits());
+  }
+
+  private static String hex(long value) {
+    String hex = Long.toHexString(value);
+    return "0".repeat(16 - hex.length()) + hex;
+  }
+
+  private static boolean isHex(String value, int from, int to) {
+    for (int i = from; i < to; i++) {
+      if (Character.digit(value.charAt(i), 16) < 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /** The spans of a trace recorded in this invocation, until they are written */
+  static final class Trace {
+    final String traceId;
+    final boolean sampled;
+    Span root;
+    List<Span> spans = new ArrayList<>(); // guarded by this
+
+    Trace(String traceId, boolean sampled) {
+      this.traceId = traceId;
+      this.sampled = sampled;
+    }
+  }
+}
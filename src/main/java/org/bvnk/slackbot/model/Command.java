@@ -0,0 +1,44 @@
+package org.bvnk.slackbot.model;
+
+/** Commands understood by the bot, parsed from the text following the mention */
+public enum Command {
+  HELP,
+  SUMMARIZE,
+  ACTION_ITEMS,
+  KEY_POINTS,
+  SEARCH,
+  QUESTION;
+
+  private static final String SEARCH_PREFIX = "search";
+
+  public static Command fromQuestion(String question) {
+    String lowerQuestion = question == null ? "" : question.toLowerCase().trim();
+
+    if (lowerQuestion.equals("help") || lowerQuestion.equals("?")) {
+      return HELP;
+    }
+    if (lowerQuestion.equals(SEARCH_PREFIX) || lowerQuestion.startsWith(SEARCH_PREFIX + " ")) {
+      return SEARCH;
+    }
+    if (lowerQuestion.equals("summarize")) {
+      return SUMMARIZE;
+    }
+    if (lowerQuestion.equals("action-items") || lowerQuestion.contains("action items")) {
+      return ACTION_ITEMS;
+    }
+    if (lowerQuestion.equals("key-points") || lowerQuestion.contains("key points")) {
+      return KEY_POINTS;
+    }
+
+    // Anything else is a free-form question about the thread
+    return QUESTION;
+  }
+
+  /** The query of a {@code search} command, the text after the command word */
+  public static String searchQuery(String question) {
+    String trimmed = question == null ? "" : question.trim();
+    return trimmed.length() > SEARCH_PREFIX.length()
+        ? trimmed.substring(SEARCH_PREFIX.length()).trim()
+        : "";
+  }
+}
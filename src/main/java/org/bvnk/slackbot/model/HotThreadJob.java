@@ -0,0 +1,47 @@
+package org.bvnk.slackbot.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+import java.util.Map;
+import lombok.Builder;
+import lombok.Value;
+
+/**
+ * A busy thread to summarize ahead of any mention, the payload of a {@code summarize_hot_thread}
+ * invocation. Jobs are started by the sweep once the thread has gone quiet, so the worker
+ * summarizes it straight away.
+ */
+@Value
+@Builder(toBuilder = true)
+@JsonInclude(JsonInclude.Include.NON_NULL)
+@JsonPropertyOrder({"action", "team_id", "channel", "thread_ts", "traceparent"})
+public class HotThreadJob {
+  public static final String ACTION = "summarize_hot_thread";
+
+  @JsonProperty("team_id")
+  String teamId;
+
+  String channel;
+
+  @JsonProperty("thread_ts")
+  String threadTs;
+
+  /** W3C trace context of the span that queued the job */
+  String traceparent;
+
+  @JsonProperty("action")
+  public String getAction() {
+    return ACTION;
+  }
+
+  /** Read a job from the invocation input, which the Lambda runtime has already parsed */
+  public static HotThreadJob fromPayload(Map<String, Object> payload) {
+    return HotThreadJob.builder()
+        .teamId(payload.get("team_id") instanceof String value ? value : null)
+        .channel(payload.get("channel") instanceof String value ? value : null)
+        .threadTs(payload.get("thread_ts") instanceof String value ? value : null)
+        .traceparent(payload.get("traceparent") instanceof String value ? value : null)
+        .build();
+  }
+}
@@ -0,0 +1,141 @@
+package org.bvnk.slackbot.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+import java.util.Map;
+import lombok.Builder;
+import lombok.Value;
+
+/**
+ * A mention for the async worker to answer, the payload of a {@code process_mention} invocation.
+ * Holds only what the worker uses, so the Invoke payload stays small and the worker doesn't depend
+ * on the Slack event schema. Increment {@link #VERSION} when the meaning of a field changes; the
+ * worker drops jobs of other versions.
+ */
+@Value
+@Builder(toBuilder = true)
+@JsonInclude(JsonInclude.Include.NON_NULL)
+@JsonPropertyOrder({
+  "action",
+  "v",
+  "event_id",
+  "team_id",
+  "channel",
+  "thread_ts",
+  "ts",
+  "user",
+  "text",
+  "event_time",
+  "attempt",
+  "not_before",
+  "cost",
+  "queued",
+  "handoffs",
+  "traceparent",
+  "dispatched_at"
+})
+public class MentionJob {
+  public static final String ACTION = "process_mention";
+  public static final int VERSION = 1;
+
+  @JsonProperty("v")
+  @Builder.Default
+  int version = VERSION;
+
+  @JsonProperty("event_id")
+  String eventId;
+
+  @JsonProperty("team_id")
+  String teamId;
+
+  String channel;
+
+  @JsonProperty("thread_ts")
+  String threadTs;
+
+  String ts;
+  String user;
+  String text;
+
+  /** When Slack sent the event, in epoch seconds */
+  @JsonProperty("event_time")
+  Long eventTime;
+
+  int attempt;
+
+  /** Epoch millis before which a queued retry shouldn't run */
+  @JsonProperty("not_before")
+  Long notBefore;
+
+  /** Estimated cost of answering, which the scheduler weighs jobs by */
+  Double cost;
+
+  /**
+   * Set when the job went into the scheduler, in which case the worker invoked with it takes the
+   * next scheduled job instead, which may be another one
+   */
+  Boolean queued;
+
+  /** How many times a worker that couldn't reach the scheduler passed the job to another one */
+  Integer handoffs;
+
+  /** W3C trace context of the span that queued the job, so the worker's spans join its trace */
+  String traceparent;
+
+  /**
+   * Epoch millis when the function was invoked with the job, so the worker can tell how long it
+   * waited in Lambda's async queue
+   */
+  @JsonProperty("dispatched_at")
+  Long dispatchedAt;
+
+  @JsonProperty("action")
+  public String getAction() {
+    return ACTION;
+  }
+
+  public static MentionJob fromEvent(SlackEvent slackEvent) {
+    SlackEvent.Event event = slackEvent.getEvent();
+    return MentionJob.builder()
+        .eventId(slackEvent.getEventId())
+        .teamId(slackEvent.getTeamId())
+        .channel(event.getChannel())
+        .threadTs(event.getThreadTs())
+        .ts(event.getTs())
+        .user(event.getUser())
+        .text(event.getText())
+        .eventTime(slackEvent.getEventTime())
+        .build();
+  }
+
+  /**
+   * Read a job from the invocation input, which the Lambda runtime has already parsed into a map.
+   * Reads the fields directly instead of going through an ObjectMapper, which would serialize the
+   * map only to parse it again.
+   */
+  public static MentionJob fromPayload(Map<String, Object> payload) {
+    return MentionJob.builder()
+        .version(payload.get("v") instanceof Number n ? n.intValue() : 0)
+        .eventId(string(payload, "event_id"))
+        .teamId(string(payload, "team_id"))
+        .channel(string(payload, "channel"))
+        .threadTs(string(payload, "thread_ts"))
+        .ts(string(payload, "ts"))
+        .user(string(payload, "user"))
+        .text(string(payload, "text"))
+        .eventTime(payload.get("event_time") instanceof Number n ? n.longValue() : null)
+        .attempt(payload.get("attempt") instanceof Number n ? n.intValue() : 0)
+        .notBefore(payload.get("not_before") instanceof Number n ? n.longValue() : null)
+        .cost(payload.get("cost") instanceof Number n ? n.doubleValue() : null)
+        .queued(payload.get("queued") instanceof Boolean queued ? queued : null)
+        .handoffs(payload.get("handoffs") instanceof Number n ? n.intValue() : null)
+        .traceparent(string(payload, "traceparent"))
+        .dispatchedAt(payload.get("dispatched_at") instanceof Number n ? n.longValue() : null)
+        .build();
+  }
+
+  private static String string(Map<String, Object> payload, String key) {
+    return payload.get(key) instanceof String value ? value : null;
+  }
+}
@@ -55,8 +55,18 @@ public class SlackEvent {
     @JsonProperty("channel_type")
     private String channelType;
 
+    @JsonProperty("bot_id")
+    private String botId;
+
     private List<Block> blocks;
     private Map<String, Object> metadata;
+
+    // The edited message, and the one before the edit or deletion, of message_changed and
+    // message_deleted events
+    private Map<String, Object> message;
+
+    @JsonProperty("previous_message")
+    private Map<String, Object> previousMessage;
   }
 
   @Data
@@ -0,0 +1,475 @@
+package org.bvnk.slackbot.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+import org.bvnk.slackbot.config.AppConfig;
+import org.bvnk.slackbot.logging.Span;
+import org.bvnk.slackbot.logging.Tracing;
+import org.bvnk.slackbot.util.MetricsEmitter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Text from the files shared in a thread, such as pasted logs, snippets and text files, which are
+ * often the most useful context during an incident. Files are streamed and never held whole: each
+ * one passes through a fixed read buffer into a head of its first bytes and a ring buffer of its
+ * last, so a file costs at most about twice ATTACHMENT_EXCERPT_BYTES of heap however large it is.
+ * Reading stops at ATTACHMENT_MAX_FILE_BYTES per file and ATTACHMENT_MAX_TOTAL_BYTES across the
+ * files of a fetch, which are read ATTACHMENT_CONCURRENCY at a time.
+ *
+ * <p>What a file holds is decided from its first bytes as much as from its name. Binary formats are
+ * skipped, logs keep a short head and a longer tail, where the failure usually is, and snippets and
+ * other text keep mostly their start.
+ */
+public class AttachmentService {
+  private static final Logger logger = LoggerFactory.getLogger(AttachmentService.class);
+  private static final int READ_BUFFER_BYTES = 8192;
+  private static final int SNIFF_BYTES = 512;
+  private static final int SNIFF_LINES = 10;
+  private static final Set<String> UNREADABLE_MODES = Set.of("external", "tombstone");
+  private static final Set<String> BINARY_FILETYPES =
+      Set.of(
+          "pdf", "zip", "gzip", "tar", "docx", "xlsx", "pptx", "doc", "xls", "ppt", "png", "jpg",
+          "jpeg", "gif", "webp", "heic", "mp4", "mov", "mp3", "m4a", "binary");
+  private static final byte[][] BINARY_MAGIC = {
+    {'%', 'P', 'D', 'F'},
+    {(byte) 0x89, 'P', 'N', 'G'},
+    {'G', 'I', 'F', '8'},
+    {(byte) 0xFF, (byte) 0xD8, (byte) 0xFF},
+    {'P', 'K', 3, 4},
+    {0x1F, (byte) 0x8B},
+    {'B', 'Z', 'h'},
+    {(byte) 0xFD, '7', 'z', 'X', 'Z'},
+    {0x7F, 'E', 'L', 'F'},
+  };
+  private static final Pattern LOG_LINE =
+      Pattern.compile(
+          "^\\W{0,2}(?:\\d{4}-\\d{2}-\\d{2}[T ]\\d{2}:\\d{2}|\\d{2}:\\d{2}:\\d{2}|[A-Z][a-z]{2} +\\d{1,2}"
+              + " \\d{2}:\\d{2})|\\b(?:ERROR|WARN|WARNING|INFO|DEBUG|TRACE|FATAL)\\b");
+
+  private final boolean enabled;
+  private final int maxFiles;
+  private final int maxFileBytes;
+  private final int maxTotalBytes;
+  private final int excerptBytes;
+  private final long timeoutMillis;
+  private final ExecutorService executor;
+
+  public AttachmentService() {
+    AppConfig config = AppConfig.getInstance();
+    this.enabled = config.isAttachmentsEnabled();
+    this.maxFiles = Math.max(0, config.getAttachmentMaxFiles());
+    this.maxFileBytes = Math.max(1, config.getAttachmentMaxFileBytes());
+    this.maxTotalBytes = Math.max(1, config.getAttachmentMaxTotalBytes());
+    this.excerptBytes = Math.max(256, config.getAttachmentExcerptBytes());
+    this.timeoutMillis = config.getAttachmentTimeoutMillis();
+    this.executor =
+        enabled
+            ? Executors.newFixedThreadPool(
+                Math.max(1, config.getAttachmentConcurrency()),
+                runnable -> {
+                  Thread thread = new Thread(runnable, "attachment-fetch");
+                  thread.setDaemon(true);
+                  return thread;
+                })
+            : null;
+  }
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * Excerpts of the files shared in the messages, by message timestamp, to go after each message's
+   * text. Only the newest ATTACHMENT_MAX_FILES files are read; the others, and files that can't be
+   * read, are named without their content. Returns an empty map when ingestion is off.
+   */
+  public Map<String, String> excerpts(
+      SlackService slackService, List<Map<String, Object>> messages) {
+    Map<String, String> excerpts = new LinkedHashMap<>();
+    if (!enabled) {
+      return excerpts;
+    }
+
+    List<Attachment> attachments = new ArrayList<>();
+    for (Map<String, Object> message : messages) {
+      if (message.get("files") instanceof List<?> files && message.get("ts") instanceof String ts) {
+        for (Object file : files) {
+          if (file instanceof SlackApiClient.File shared) {
+            attachments.add(new Attachment(ts, shared));
+          }
+        }
+      }
+    }
+    if (attachments.isEmpty()) {
+      return excerpts;
+    }
+
+    // The newest files are the likeliest to matter
+    long start = System.currentTimeMillis();
+    AtomicLong budget = new AtomicLong(maxTotalBytes);
+    List<Attachment> toRead = new ArrayList<>();
+    for (int i = attachments.size() - 1; i >= 0; i--) {
+      Attachment attachment = attachments.get(i);
+      attachment.skipReason = skipReason(attachment.file);
+      if (attachment.skipReason == null && toRead.size() < maxFiles) {
+        toRead.add(attachment);
+      } else if (attachment.skipReason == null) {
+        attachment.skipReason = "not read";
+      }
+    }
+
+    List<Callable<Void>> tasks = new ArrayList<>();
+    for (Attachment attachment : toRead) {
+      tasks.add(Tracing.wrap(() -> read(slackService, attachment, budget)));
+    }
+    try {
+      List<Future<Void>> futures = executor.invokeAll(tasks, timeoutMillis, TimeUnit.MILLISECONDS);
+      for (int i = 0; i < futures.size(); i++) {
+        try {
+          futures.get(i).get();
+        } catch (CancellationException e) {
+          toRead.get(i).fail("timed out");
+        } catch (ExecutionException e) {
+          toRead.get(i).fail("not read");
+          logger.warn(
+              "Could not read file {}: {}", toRead.get(i).file.getId(), e.getCause().toString());
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      toRead.forEach(attachment -> attachment.fail("not read"));
+    }
+
+    long bytesRead = maxTotalBytes - Math.max(0, budget.get());
+    logger.info(
+        "Read {} of {} attachments, {} bytes in {} ms",
+        toRead.stream().filter(attachment -> attachment.excerpt != null).count(),
+        attachments.size(),
+        bytesRead,
+        System.currentTimeMillis() - start);
+    MetricsEmitter.emit("AttachmentBytesRead", bytesRead, "Bytes", Map.of());
+
+    for (Attachment attachment : attachments) {
+      excerpts.merge(attachment.ts, attachment.format(), (a, b) -> a + "\n" + b);
+    }
+    return excerpts;
+  }
+
+  /** Why a file isn't worth downloading, going by what Slack says about it, or null when it is */
+  private static String skipReason(SlackApiClient.File file) {
+    if (file.getUrl() == null || UNREADABLE_MODES.contains(String.valueOf(file.getMode()))) {
+      return "not readable";
+    }
+    String mimetype = String.valueOf(file.getMimetype()).toLowerCase(Locale.ROOT);
+    if (mimetype.startsWith("image/")
+        || mimetype.startsWith("video/")
+        || mimetype.startsWith("audio/")
+        || BINARY_FILETYPES.contains(String.valueOf(file.getFiletype()).toLowerCase(Locale.ROOT))) {
+      return "not text";
+    }
+    return file.getSize() == 0 ? "empty" : null;
+  }
+
+  private Void read(SlackService slackService, Attachment attachment, AtomicLong budget)
+      throws IOException {
+    try (Span span = Tracing.startSpan("slack files.download", Span.Kind.CLIENT)) {
+      span.set("file.size", attachment.file.getSize());
+      Excerpt excerpt = new Excerpt(excerptBytes * 3 / 4);
+      try (InputStream in = slackService.openFile(attachment.file.getUrl())) {
+        byte[] buffer = new byte[READ_BUFFER_BYTES];
+        int n;
+        while ((n = in.read(buffer)) > 0) {
+          if (excerpt.total == 0) {
+            String reason = sniff(attachment.file, buffer, n);
+            if (reason != null) {
+              attachment.fail(reason);
+              span.set("attachment.result", reason);
+              return null;
+            }
+          }
+
+          // Both caps are checked before the bytes are kept, so neither is overshot
+          int allowed = (int) Math.min(n, maxFileBytes - excerpt.total);
+          long left = budget.getAndAdd(-allowed);
+          allowed = (int) Math.max(0, Math.min(allowed, left));
+          excerpt.append(buffer, allowed);
+          if (allowed < n) {
+            excerpt.cut = true;
+            break;
+          }
+        }
+      }
+      if (excerpt.total == 0) {
+        attachment.fail(excerpt.cut ? "not read" : "empty");
+        return null;
+      }
+      attachment.kind = kind(attachment.file, excerpt);
+      attachment.excerpt = excerpt;
+      span.set("attachment.kind", attachment.kind.label)
+          .set("attachment.bytes_read", excerpt.total);
+    }
+    return null;
+  }
+
+  /** Why the first bytes of a file show it isn't text, or null when they look like text */
+  private static String sniff(SlackApiClient.File file, byte[] bytes, int length) {
+    for (byte[] magic : BINARY_MAGIC) {
+      if (length >= magic.length && Arrays.equals(bytes, 0, magic.length, magic, 0, magic.length)) {
+        return "not text";
+      }
+    }
+    int sniffed = Math.min(length, SNIFF_BYTES);
+    for (int i = 0; i < sniffed; i++) {
+      if (bytes[i] == 0) {
+        return "not text";
+      }
+    }
+
+    // Slack answers with its sign-in page when the token lacks the files:read scope
+    String start = new String(bytes, 0, sniffed, StandardCharsets.UTF_8).stripLeading();
+    String lower = start.toLowerCase(Locale.ROOT);
+    if ((lower.startsWith("<!doctype html") || lower.startsWith("<html"))
+        && !"html".equalsIgnoreCase(file.getFiletype())) {
+      logger.warn(
+          "Got a web page instead of file {}; is the files:read scope missing?", file.getId());
+      return "not read";
+    }
+    return null;
+  }
+
+  private static Kind kind(SlackApiClient.File file, Excerpt excerpt) {
+    if ("snippet".equals(file.getMode())) {
+      return Kind.SNIPPET;
+    }
+    String name = String.valueOf(file.getName()).toLowerCase(Locale.ROOT);
+    if (name.endsWith(".log") || name.endsWith(".out") || "log".equals(file.getFiletype())) {
+      return Kind.LOG;
+    }
+
+    // Logs are mostly lines starting with a timestamp or carrying a level
+    String[] lines = excerpt.head().split("\n", SNIFF_LINES + 1);
+    int checked = Math.min(lines.length, SNIFF_LINES);
+    int matching = 0;
+    for (int i = 0; i < checked; i++) {
+      if (LOG_LINE.matcher(lines[i]).find()) {
+        matching++;
+      }
+    }
+    return checked >= 2 && matching * 2 >= checked ? Kind.LOG : Kind.TEXT;
+  }
+
+  private enum Kind {
+    LOG("log", 1, 3),
+    SNIPPET("snippet", 3, 1),
+    TEXT("text", 3, 1);
+
+    final String label;
+    final int headShare;
+    final int tailShare;
+
+    Kind(String label, int headShare, int tailShare) {
+      this.label = label;
+      this.headShare = headShare;
+      this.tailShare = tailShare;
+    }
+  }
+
+  /** A file of a message, and what became of it */
+  private class Attachment {
+    final String ts;
+    final SlackApiClient.File file;
+    volatile String skipReason;
+    volatile Kind kind;
+    volatile Excerpt excerpt;
+
+    Attachment(String ts, SlackApiClient.File file) {
+      this.ts = ts;
+      this.file = file;
+    }
+
+    void fail(String reason) {
+      if (excerpt == null && skipReason == null) {
+        skipReason = reason;
+      }
+    }
+
+    /** A line naming the file, followed by its excerpt when it was read */
+    String format() {
+      String name = file.getName() != null ? file.getName() : file.getId();
+      Excerpt read = excerpt;
+      if (read == null || skipReason != null) {
+        String type = file.getMimetype() != null ? file.getMimetype() : "file";
+        return "[File "
+            + name
+            + ", "
+            + type
+            + ", "
+            + size(Math.max(0, file.getSize()))
+            + ": "
+            + skipReason
+            + "]";
+      }
+
+      StringBuilder text = new StringBuilder("[File ").append(name).append(", ").append(kind.label);
+      text.append(", ").append(size(read.cut ? Math.max(file.getSize(), read.total) : read.total));
+      if (read.cut) {
+        text.append(", first ").append(size(read.total)).append(" read");
+      }
+      text.append("]\n").append(read.render(excerptBytes, kind));
+      return text.toString().strip();
+    }
+  }
+
+  private static String size(long bytes) {
+    if (bytes < 1024) {
+      return bytes + " B";
+    }
+    if (bytes < 1024 * 1024) {
+      return String.format(Locale.ROOT, "%.1f KB", bytes / 1024.0);
+    }
+    return String.format(Locale.ROOT, "%.1f MB", bytes / (1024.0 * 1024));
+  }
+
+  /**
+   * The first and last bytes of a stream, in a fixed head buffer and a ring buffer of the bytes
+   * after it, with a count of the lines in between
+   */
+  private static class Excerpt {
+    final byte[] head;
+    final byte[] tail;
+    int headLength;
+    long tailWritten; // bytes written to the ring, the newest at (tailWritten - 1) % length
+    long total;
+    long newlines;
+    boolean cut;
+
+    Excerpt(int capacity) {
+      this.head = new byte[capacity];
+      this.tail = new byte[capacity];
+    }
+
+    void append(byte[] bytes, int length) {
+      for (int i = 0; i < length; i++) {
+        if (bytes[i] == '\n') {
+          newlines++;
+        }
+      }
+      int offset = 0;
+      if (headLength < head.length) {
+        int copied = Math.min(length, head.length - headLength);
+        System.arraycopy(bytes, 0, head, headLength, copied);
+        headLength += copied;
+        offset = copied;
+      }
+      while (offset < length) {
+        int position = (int) (tailWritten % tail.length);
+        int copied = Math.min(length - offset, tail.length - position);
+        System.arraycopy(bytes, offset, tail, position, copied);
+        tailWritten += copied;
+        offset += copied;
+      }
+      total += length;
+    }
+
+    String head() {
+      return new String(head, 0, headLength, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * The whole content when it fits in the budget, or its first and last whole lines, shared
+     * between them as the kind says, around a count of the lines left out
+     */
+    String render(int budget, Kind kind) {
+      byte[] all = last((int) Math.min(total, (long) headLength + tail.length));
+      if (total <= budget && all.length == total) {
+        return clean(all, 0, all.length);
+      }
+
+      int headKeep = budget * kind.headShare / (kind.headShare + kind.tailShare);
+      int tailKeep = budget - headKeep;
+      int headEnd = Math.min(headKeep, headLength);
+      int lastNewline = lastIndexOf(head, '\n', headEnd);
+      if (lastNewline > 0) {
+        headEnd = lastNewline + 1;
+      }
+
+      byte[] end = last(Math.min(tailKeep, (int) Math.min(total - headEnd, Integer.MAX_VALUE)));
+      int endStart = 0;
+      int firstNewline = indexOf(end, '\n');
+      if (firstNewline >= 0 && firstNewline < end.length - 1) {
+        endStart = firstNewline + 1;
+      }
+
+      long omitted =
+          newlines - count(head, headEnd) - count(end, end.length) + count(end, endStart);
+      return clean(head, 0, headEnd)
+          + "\n... ["
+          + Math.max(0, omitted)
+          + " lines omitted] ...\n"
+          + clean(end, endStart, end.length);
+    }
+
+    /** The last n bytes written, from the ring and, when it holds fewer, the end of the head */
+    private byte[] last(int n) {
+      byte[] bytes = new byte[n];
+      int fromTail = (int) Math.min(n, Math.min(tailWritten, tail.length));
+      int fromHead = n - fromTail;
+      System.arraycopy(head, headLength - fromHead, bytes, 0, fromHead);
+      long first = tailWritten - fromTail;
+      for (int i = 0; i < fromTail; i++) {
+        bytes[fromHead + i] = tail[(int) ((first + i) % tail.length)];
+      }
+      return bytes;
+    }
+
+    private static String clean(byte[] bytes, int from, int to) {
+      return new String(bytes, from, to - from, StandardCharsets.UTF_8).replace("\r", "").strip();
+    }
+
+    private static int count(byte[] bytes, int to) {
+      int count = 0;
+      for (int i = 0; i < to; i++) {
+        if (bytes[i] == '\n') {
+          count++;
+        }
+      }
+      return count;
+    }
+
+    private static int indexOf(byte[] bytes, char c) {
+      for (int i = 0; i < bytes.length; i++) {
+        if (bytes[i] == c) {
+          return i;
+        }
+      }
+      return -1;
+    }
+
+    private static int lastIndexOf(byte[] bytes, char c, int before) {
+      for (int i = before - 1; i >= 0; i--) {
+        if (bytes[i] == c) {
+          return i;
+        }
+      }
+      return -1;
+    }
+  }
+}
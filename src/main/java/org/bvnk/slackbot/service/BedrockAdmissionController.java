@@ -0,0 +1,147 @@
+package org.bvnk.slackbot.service;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.bvnk.slackbot.config.AppConfig;
+import org.bvnk.slackbot.util.AimdConcurrencyLimiter;
+import org.bvnk.slackbot.util.CircuitBreaker;
+import org.bvnk.slackbot.util.MetricsEmitter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Decides whether a Bedrock call may be sent. Each model has a circuit breaker and an adaptive
+ * concurrency limit shared by everything in the container, and optionally a per-minute permit
+ * counter in DynamoDB shared by all containers. A throttle from Bedrock shrinks the local limit and
+ * uses up the shared window, so the whole fleet backs off together instead of retrying into it.
+ */
+public class BedrockAdmissionController {
+  private static final Logger logger = LoggerFactory.getLogger(BedrockAdmissionController.class);
+  private static final String PERMIT_COUNTER_PREFIX = "bedrock-permits#";
+  private static final int INITIAL_CONCURRENCY = 4;
+  private static final int MIN_CONCURRENCY = 1;
+  private static final long SLOT_WAIT_MILLIS = 1000;
+
+  // Shared by every handler instance in the container
+  private static final Map<String, AimdConcurrencyLimiter> limiters = new ConcurrentHashMap<>();
+  private static final Map<String, CircuitBreaker> breakers = new ConcurrentHashMap<>();
+
+  public enum Outcome {
+    SUCCESS,
+    THROTTLED,
+    FAILED,
+    IGNORED
+  }
+
+  private final DynamoService dynamoService;
+  private final int maxConcurrency;
+  private final int globalRequestsPerMinute;
+  private final int breakerFailureThreshold;
+  private final long breakerOpenMillis;
+
+  public BedrockAdmissionController(DynamoService dynamoService) {
+    AppConfig config = AppConfig.getInstance();
+    this.dynamoService = dynamoService;
+    this.maxConcurrency = config.getBedrockMaxConcurrency();
+    this.globalRequestsPerMinute = config.getBedrockGlobalRequestsPerMinute();
+    this.breakerFailureThreshold = config.getCircuitBreakerFailureThreshold();
+    this.breakerOpenMillis = config.getCircuitBreakerOpenMillis();
+  }
+
+  /** A granted call; it must be released exactly once with the outcome of the call */
+  public class Permit {
+    private final String modelId;
+    private boolean released;
+
+    private Permit(String modelId) {
+      this.modelId = modelId;
+    }
+
+    public void release(Outcome outcome) {
+      if (released) {
+        return;
+      }
+      released = true;
+
+      AimdConcurrencyLimiter limiter = limiter(modelId);
+      CircuitBreaker breaker = breaker(modelId);
+
+      switch (outcome) {
+        case SUCCESS:
+          limiter.onSuccess();
+          breaker.onSuccess();
+          break;
+        case THROTTLED:
+          limiter.onThrottled();
+          breaker.onFailure();
+          if (globalRequestsPerMinute > 0) {
+            dynamoService.exhaustWindowPermits(
+                PERMIT_COUNTER_PREFIX + modelId, globalRequestsPerMinute);
+          }
+          logger.warn(
+              "Bedrock throttled {}, concurrency limit now {}", modelId, limiter.getLimit());
+          break;
+        case FAILED:
+          limiter.onIgnored();
+          breaker.onFailure();
+          break;
+        default:
+          limiter.onIgnored();
+          breaker.onIgnored();
+      }
+    }
+  }
+
+  /** Grant a call to the model or throw {@link BedrockCapacityException} without calling it */
+  public Permit acquire(String modelId) {
+    CircuitBreaker breaker = breaker(modelId);
+    if (!breaker.allowRequest()) {
+      reject(modelId, "circuit_open");
+      throw new BedrockCapacityException("Circuit breaker is open for " + modelId);
+    }
+
+    AimdConcurrencyLimiter limiter = limiter(modelId);
+    if (!tryAcquireSlot(limiter)) {
+      breaker.onIgnored();
+      reject(modelId, "concurrency_limit");
+      throw new BedrockCapacityException(
+          "Concurrency limit of " + limiter.getLimit() + " reached for " + modelId);
+    }
+
+    if (globalRequestsPerMinute > 0
+        && !dynamoService.tryAcquireWindowPermit(
+            PERMIT_COUNTER_PREFIX + modelId, globalRequestsPerMinute)) {
+      limiter.onIgnored();
+      breaker.onIgnored();
+      reject(modelId, "global_limit");
+      throw new BedrockCapacityException("Shared request budget used up for " + modelId);
+    }
+
+    return new Permit(modelId);
+  }
+
+  private boolean tryAcquireSlot(AimdConcurrencyLimiter limiter) {
+    try {
+      return limiter.tryAcquire(SLOT_WAIT_MILLIS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return false;
+    }
+  }
+
+  private void reject(String modelId, String reason) {
+    logger.warn("Rejected Bedrock call to {}: {}", modelId, reason);
+    MetricsEmitter.emit("BedrockRejected", 1, "Count", Map.of("Reason", reason));
+  }
+
+  private AimdConcurrencyLimiter limiter(String modelId) {
+    return limiters.computeIfAbsent(
+        modelId,
+        id -> new AimdConcurrencyLimiter(INITIAL_CONCURRENCY, MIN_CONCURRENCY, maxConcurrency));
+  }
+
+  private CircuitBreaker breaker(String modelId) {
+    return breakers.computeIfAbsent(
+        modelId, id -> new CircuitBreaker(breakerFailureThreshold, breakerOpenMillis));
+  }
+}
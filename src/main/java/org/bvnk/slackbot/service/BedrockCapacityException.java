@@ -0,0 +1,15 @@
+package org.bvnk.slackbot.service;
+
+/**
+ * Thrown when Bedrock has no capacity for a request, either because it throttled us or because the
+ * client-side limiter or circuit breaker rejected the call before it was sent
+ */
+public class BedrockCapacityException extends RuntimeException {
+  public BedrockCapacityException(String message) {
+    super(message);
+  }
+
+  public BedrockCapacityException(String message, Throwable cause) {
+    super(message, cause);
+  }
+}
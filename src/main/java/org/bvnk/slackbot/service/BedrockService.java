@@ -1,177 +1,440 @@
 package org.bvnk.slackbot.service;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.io.IOException;
 import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 import org.bvnk.slackbot.config.AppConfig;
+import org.bvnk.slackbot.config.AwsClientFactory;
+import org.bvnk.slackbot.logging.Span;
+import org.bvnk.slackbot.logging.Tracing;
+import org.bvnk.slackbot.model.Command;
+import org.bvnk.slackbot.util.Deadline;
+import org.bvnk.slackbot.util.MarkdownToMrkdwn;
+import org.bvnk.slackbot.util.TokenEstimator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import software.amazon.awssdk.awscore.AwsRequestOverrideConfiguration;
 import software.amazon.awssdk.core.SdkBytes;
-import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.core.exception.AbortedException;
+import software.amazon.awssdk.core.exception.ApiCallTimeoutException;
 import software.amazon.awssdk.services.bedrockruntime.BedrockRuntimeClient;
+import software.amazon.awssdk.services.bedrockruntime.model.InternalServerException;
 import software.amazon.awssdk.services.bedrockruntime.model.InvokeModelRequest;
 import software.amazon.awssdk.services.bedrockruntime.model.InvokeModelResponse;
+import software.amazon.awssdk.services.bedrockruntime.model.ModelErrorException;
+import software.amazon.awssdk.services.bedrockruntime.model.ServiceUnavailableException;
+import software.amazon.awssdk.services.bedrockruntime.model.ThrottlingException;
 
 public class BedrockService {
   private static final Logger logger = LoggerFactory.getLogger(BedrockService.class);
   private static final int MAX_TOKENS = 1000;
   private static final double TEMPERATURE = 0.7;
-  private static final int SLACK_MESSAGE_CHAR_LIMIT = 3000; // Slack's message character limit
+  private static final long RESPONSE_RESERVE_MILLIS = 2000; // Time kept for posting the reply
 
-  private final BedrockRuntimeClient bedrockClient;
-  private final String modelId;
+  // Runs primary and hedged calls; daemon threads so a stuck call never blocks shutdown
+  private static final ExecutorService executor =
+      Executors.newCachedThreadPool(
+          runnable -> {
+            Thread thread = new Thread(runnable, "bedrock-call");
+            thread.setDaemon(true);
+            return thread;
+          });
+
+  private final String region;
+  private final ModelRouter modelRouter;
+  private final BedrockAdmissionController admissionController;
   private final ObjectMapper objectMapper;
 
   public BedrockService() {
+    this(new DynamoService());
+  }
+
+  public BedrockService(DynamoService dynamoService) {
     AppConfig config = AppConfig.getInstance();
-    this.modelId = config.getBedrockModelId();
+    this.modelRouter = new ModelRouter();
+    this.admissionController = new BedrockAdmissionController(dynamoService);
     this.objectMapper = new ObjectMapper();
-    this.bedrockClient =
-        BedrockRuntimeClient.builder().region(Region.of(config.getAwsRegion())).build();
+    this.region = config.getAwsRegion();
   }
 
   public String getResponse(String threadContext, String userQuestion) {
+    return getResponse(threadContext, userQuestion, Deadline.none());
+  }
+
+  /**
+   * Get a response for the thread, routing it to a model tier that fits the request size and the
+   * time the invocation has left. Throws {@link BedrockCapacityException} when Bedrock has no
+   * capacity on any route, so the caller can queue the request instead of failing it.
+   */
+  public String getResponse(String threadContext, String userQuestion, Deadline deadline) {
+    return getResponse(threadContext, userQuestion, deadline, answer -> {});
+  }
+
+  /**
+   * Same as {@link #getResponse(String, String, Deadline)}, also handing the model's answer to
+   * {@code onAnswer}, but not the message that replaces it when there is none
+   */
+  public String getResponse(
+      String threadContext, String userQuestion, Deadline deadline, Consumer<String> onAnswer) {
+    return getResponse(threadContext, userQuestion, deadline, onAnswer, () -> null);
+  }
+
+  /**
+   * Same as {@link #getResponse(String, String, Deadline, Consumer)}, answering with {@code
+   * fallback} instead of an apology when Bedrock fails or runs out of time, unless it returns null
+   */
+  public String getResponse(
+      String threadContext,
+      String userQuestion,
+      Deadline deadline,
+      Consumer<String> onAnswer,
+      Supplier<String> fallback) {
+    return getResponse(
+        threadContext,
+        userQuestion,
+        ConversationService.Conversation.EMPTY,
+        deadline,
+        onAnswer,
+        fallback);
+  }
+
+  /**
+   * Same as {@link #getResponse(String, String, Deadline, Consumer, Supplier)}, sent after the
+   * earlier turns of the conversation in the thread
+   */
+  public String getResponse(
+      String threadContext,
+      String userQuestion,
+      ConversationService.Conversation conversation,
+      Deadline deadline,
+      Consumer<String> onAnswer,
+      Supplier<String> fallback) {
     try {
+      String response = complete(threadContext, userQuestion, conversation, deadline);
+      if (response != null) {
+        onAnswer.accept(response);
+        return response;
+      }
+
+      return "I couldn't generate a response. Please try again.";
+
+    } catch (BedrockCapacityException e) {
+      throw e;
+    } catch (DeadlineExceededException | ApiCallTimeoutException e) {
+      logger.warn("Ran out of time waiting for Bedrock: {}", e.getMessage());
+      String degraded = fallback.get();
+      return degraded != null
+          ? degraded
+          : "I couldn't finish answering in time. Try asking about a smaller part of the thread,"
+              + " or try again in a moment.";
+    } catch (Exception e) {
+      logger.error("Error getting response from Bedrock", e);
+      String degraded = fallback.get();
+      return degraded != null
+          ? degraded
+          : "I encountered an error while processing your request. Please try again later.";
+    }
+  }
+
+  /**
+   * Same as {@link #getResponse(String, String, Deadline)}, but failures are thrown instead of
+   * being turned into a message for the user. Returns null when the model produced no text.
+   */
+  public String complete(String threadContext, String userQuestion, Deadline deadline)
+      throws Exception {
+    return complete(threadContext, userQuestion, ConversationService.Conversation.EMPTY, deadline);
+  }
+
+  /**
+   * Same as {@link #complete(String, String, Deadline)}, sending the earlier turns of the
+   * conversation as messages before the prompt and the summary of older ones with the system prompt
+   */
+  public String complete(
+      String threadContext,
+      String userQuestion,
+      ConversationService.Conversation conversation,
+      Deadline deadline)
+      throws Exception {
+    // Keep enough of the invocation to post whatever we end up with
+    Deadline answerDeadline = deadline.minusMillis(RESPONSE_RESERVE_MILLIS);
+
+    try {
+      if (answerDeadline.isExpired()) {
+        throw new DeadlineExceededException("No time left to call Bedrock");
+      }
+
       // Handle special command prompts
       String prompt = buildPrompt(threadContext, userQuestion);
+      String jsonRequest = buildRequestBody(prompt, conversation);
 
-      // Create the request body for Claude
-      ObjectNode requestBody = objectMapper.createObjectNode();
-      requestBody.put("anthropic_version", "bedrock-2023-05-31");
-      requestBody.put("max_tokens", MAX_TOKENS);
-      requestBody.put("temperature", TEMPERATURE);
+      ModelRouter.Route route =
+          modelRouter.route(
+              Command.fromQuestion(userQuestion),
+              TokenEstimator.estimate(prompt) + conversation.tokens(),
+              answerDeadline.remainingMillis());
 
-      // Build messages array
-      requestBody.putArray("messages").addObject().put("role", "user").put("content", prompt);
+      String rawResponse;
+      try {
+        rawResponse = invokeHedged(route, jsonRequest, answerDeadline);
+      } catch (ThrottlingException | ServiceUnavailableException | BedrockCapacityException e) {
+        Optional<ModelRouter.Route> fallback =
+            modelRouter.fallback(route, answerDeadline.remainingMillis());
+        if (fallback.isEmpty()) {
+          throw e;
+        }
+        logger.warn(
+            "Bedrock {} route unavailable ({}), falling back to {} route",
+            route.getName(),
+            e.getClass().getSimpleName(),
+            fallback.get().getName());
+        rawResponse = invokeHedged(fallback.get(), jsonRequest, answerDeadline);
+      }
 
-      // Add system prompt
-      requestBody.put(
-          "system",
-          "You are a helpful AI assistant analyzing a Slack conversation thread. "
-              + "Provide concise, relevant answers based on the thread context. "
-              + "Format your responses using Slack markdown where appropriate.");
+      return rawResponse != null ? formatResponseForSlack(rawResponse) : null;
 
-      String jsonRequest = objectMapper.writeValueAsString(requestBody);
+    } catch (ThrottlingException | ServiceUnavailableException e) {
+      throw new BedrockCapacityException("Bedrock has no capacity for the request", e);
+    }
+  }
 
+  /**
+   * Invoke the model on a route, sending a duplicate to the hedge route when the call is still
+   * running after the route's p95 latency. The first successful reply wins and the other call is
+   * cancelled.
+   */
+  private String invokeHedged(ModelRouter.Route route, String jsonRequest, Deadline deadline)
+      throws Exception {
+    CompletionService<String> completionService = new ExecutorCompletionService<>(executor);
+    List<Future<String>> calls = new ArrayList<>();
+    calls.add(completionService.submit(Tracing.wrap(() -> invokeModel(route, jsonRequest))));
+
+    try {
+      Optional<ModelRouter.Route> hedge = modelRouter.hedge(route, deadline.remainingMillis());
+      long firstWait =
+          hedge.isPresent()
+              ? Math.min(modelRouter.hedgeDelayMillis(route), deadline.remainingMillis())
+              : deadline.remainingMillis();
+
+      Future<String> completed = completionService.poll(firstWait, TimeUnit.MILLISECONDS);
+
+      if (completed == null && hedge.isPresent() && !deadline.isExpired()) {
+        logger.info(
+            "Bedrock {} route still running after {} ms, hedging on {} route",
+            route.getName(),
+            firstWait,
+            hedge.get().getName());
+        calls.add(
+            completionService.submit(Tracing.wrap(() -> invokeModel(hedge.get(), jsonRequest))));
+      }
+
+      int outstanding = calls.size();
+      while (true) {
+        if (completed == null) {
+          completed = completionService.poll(deadline.remainingMillis(), TimeUnit.MILLISECONDS);
+          if (completed == null) {
+            throw new DeadlineExceededException("No Bedrock reply before the deadline");
+          }
+        }
+
+        outstanding--;
+        try {
+          return completed.get();
+        } catch (ExecutionException e) {
+          // Wait for the other call when one of them fails
+          if (outstanding == 0) {
+            throw e.getCause() instanceof Exception cause ? cause : e;
+          }
+          logger.warn("Bedrock call failed, waiting for the other call", e.getCause());
+        }
+        completed = null;
+      }
+    } finally {
+      calls.forEach(call -> call.cancel(true));
+    }
+  }
+
+  private String buildRequestBody(String prompt, ConversationService.Conversation conversation)
+      throws JsonProcessingException {
+    // Create the request body for Claude
+    ObjectNode requestBody = objectMapper.createObjectNode();
+    requestBody.put("anthropic_version", "bedrock-2023-05-31");
+    requestBody.put("max_tokens", MAX_TOKENS);
+    requestBody.put("temperature", TEMPERATURE);
+
+    // Build messages array, earlier turns of the conversation first
+    ArrayNode messages = requestBody.putArray("messages");
+    for (ConversationService.Turn turn : conversation.getTurns()) {
+      // The API rejects empty content, which would fail every later question in the thread
+      if (turn.getQuestion().isBlank() || turn.getAnswer().isBlank()) {
+        continue;
+      }
+      messages.addObject().put("role", "user").put("content", turn.getQuestion());
+      messages.addObject().put("role", "assistant").put("content", turn.getAnswer());
+    }
+    messages.addObject().put("role", "user").put("content", prompt);
+
+    // Add system prompt
+    String system =
+        "You are a helpful AI assistant analyzing a Slack conversation thread. "
+            + "Provide concise, relevant answers based on the thread context. "
+            + "Format your responses using Slack markdown where appropriate.";
+    if (!conversation.getSummary().isEmpty()) {
+      system +=
+          "\n\nEarlier in this thread you were asked the following, oldest first:\n"
+              + conversation.getSummary();
+    }
+    requestBody.put("system", system);
+
+    return objectMapper.writeValueAsString(requestBody);
+  }
+
+  /** Invoke the model on a route and return the text of the first content block, if any */
+  private String invokeModel(ModelRouter.Route route, String jsonRequest) throws IOException {
+    BedrockAdmissionController.Permit permit = admissionController.acquire(route.getModelId());
+    BedrockAdmissionController.Outcome admissionOutcome =
+        BedrockAdmissionController.Outcome.IGNORED;
+    long start = System.currentTimeMillis();
+    String outcome = "error";
+    Span span = Tracing.startSpan("chat " + route.getModelId(), Span.Kind.CLIENT);
+    span.set("gen_ai.system", "aws.bedrock")
+        .set("gen_ai.operation.name", "chat")
+        .set("gen_ai.request.model", route.getModelId())
+        .set("bedrock.route", route.getName())
+        .set("cloud.region", route.getRegion() != null ? route.getRegion() : region);
+
+    try {
       // Invoke the model
       InvokeModelRequest invokeRequest =
           InvokeModelRequest.builder()
-              .modelId(modelId)
+              .modelId(route.getModelId())
               .contentType("application/json")
               .accept("application/json")
               .body(SdkBytes.fromString(jsonRequest, StandardCharsets.UTF_8))
+              .overrideConfiguration(
+                  AwsRequestOverrideConfiguration.builder()
+                      .apiCallTimeout(Duration.ofMillis(route.getTimeoutMillis()))
+                      .build())
               .build();
 
-      InvokeModelResponse response = bedrockClient.invokeModel(invokeRequest);
+      InvokeModelResponse response = clientFor(route).invokeModel(invokeRequest);
 
       // Parse the response
       String responseBody = response.body().asUtf8String();
       Map<String, Object> responseMap = objectMapper.readValue(responseBody, Map.class);
+      outcome = "success";
+      admissionOutcome = BedrockAdmissionController.Outcome.SUCCESS;
+      if (responseMap.get("usage") instanceof Map<?, ?> usage) {
+        span.set("gen_ai.usage.input_tokens", usage.get("input_tokens"))
+            .set("gen_ai.usage.output_tokens", usage.get("output_tokens"));
+      }
 
       // Extract the content from Claude's response
       Object content = responseMap.get("content");
       if (content instanceof List && !((List<?>) content).isEmpty()) {
         Map<String, Object> firstContent = (Map<String, Object>) ((List<?>) content).get(0);
-        String rawResponse = (String) firstContent.get("text");
-        return formatResponseForSlack(rawResponse);
+        return (String) firstContent.get("text");
       }
 
-      return "I couldn't generate a response. Please try again.";
+      return null;
 
-    } catch (Exception e) {
-      logger.error("Error getting response from Bedrock", e);
-      return "I encountered an error while processing your request. Please try again later.";
+    } catch (ThrottlingException e) {
+      outcome = "throttled";
+      admissionOutcome = BedrockAdmissionController.Outcome.THROTTLED;
+      throw e;
+    } catch (ApiCallTimeoutException
+        | ServiceUnavailableException
+        | InternalServerException
+        | ModelErrorException e) {
+      outcome =
+          e instanceof ApiCallTimeoutException
+              ? "timeout"
+              : e instanceof ServiceUnavailableException ? "unavailable" : "server_error";
+      admissionOutcome = BedrockAdmissionController.Outcome.FAILED;
+      throw e;
+    } catch (AbortedException e) {
+      // The other call of a hedged pair won
+      outcome = "cancelled";
+      throw e;
+    } finally {
+      permit.release(admissionOutcome);
+      modelRouter.record(route, System.currentTimeMillis() - start, outcome);
+      span.set("bedrock.outcome", outcome).close();
     }
   }
 
-  private String buildPrompt(String threadContext, String userQuestion) {
-    String lowerQuestion = userQuestion.toLowerCase().trim();
+  private BedrockRuntimeClient clientFor(ModelRouter.Route route) {
+    return AwsClientFactory.bedrockRuntime(route.getRegion() != null ? route.getRegion() : region);
+  }
 
+  private String buildPrompt(String threadContext, String userQuestion) {
     // Handle special commands with context-aware prompts
-    if (lowerQuestion.equals("summarize")) {
-      return String.format(
-          "Please provide a concise summary of the following Slack thread conversation:\n\n"
-              + "Thread Context:\n%s\n\n"
-              + "Provide a clear, bullet-point summary of the key topics discussed.",
-          threadContext);
-    }
+    switch (Command.fromQuestion(userQuestion)) {
+      case SUMMARIZE:
+        return String.format(
+            "Please provide a concise summary of the following Slack thread conversation:\n\n"
+                + "Thread Context:\n%s\n\n"
+                + "Provide a clear, bullet-point summary of the key topics discussed.",
+            threadContext);
 
-    if (lowerQuestion.equals("action-items") || lowerQuestion.contains("action items")) {
-      return String.format(
-          "Please extract all action items from the following Slack thread:\n\n"
-              + "Thread Context:\n%s\n\n"
-              + "List all action items, tasks, or commitments mentioned in the conversation. "
-              + "Format as a numbered list with the person responsible (if mentioned).",
-          threadContext);
-    }
+      case ACTION_ITEMS:
+        return String.format(
+            "Please extract all action items from the following Slack thread:\n\n"
+                + "Thread Context:\n%s\n\n"
+                + "List all action items, tasks, or commitments mentioned in the conversation. "
+                + "Format as a numbered list with the person responsible (if mentioned).",
+            threadContext);
 
-    if (lowerQuestion.equals("key-points") || lowerQuestion.contains("key points")) {
-      return String.format(
-          "Please identify the key discussion points from the following Slack thread:\n\n"
-              + "Thread Context:\n%s\n\n"
-              + "List the main topics, decisions, and important points discussed. "
-              + "Format as bullet points.",
-          threadContext);
-    }
+      case KEY_POINTS:
+        return String.format(
+            "Please identify the key discussion points from the following Slack thread:\n\n"
+                + "Thread Context:\n%s\n\n"
+                + "List the main topics, decisions, and important points discussed. "
+                + "Format as bullet points.",
+            threadContext);
+
+      case SEARCH:
+        return String.format(
+            "Below are summaries of earlier Slack threads that matched a search, numbered.\n\n"
+                + "Summaries:\n%s\n\n"
+                + "Search: %s\n\n"
+                + "Answer the search from these summaries only, citing the numbers of the"
+                + " summaries you used, such as [2]. If they don't answer it, say so.",
+            threadContext, Command.searchQuery(userQuestion));
 
-    // Default question handling
-    return String.format(
-        "Based on the following Slack thread conversation, please answer the user's question.\n\n"
-            + "Thread Context:\n%s\n\n"
-            + "User Question: %s\n\n"
-            + "Please provide a helpful and relevant response based on the thread context.",
-        threadContext, userQuestion);
+      default:
+        // Default question handling
+        return String.format(
+            "Based on the following Slack thread conversation, please answer the user's question."
+                + "\n\n"
+                + "Thread Context:\n%s\n\n"
+                + "User Question: %s\n\n"
+                + "Please provide a helpful and relevant response based on the thread context.",
+            threadContext, userQuestion);
+    }
   }
 
-  /**
-   * Format the AI response for Slack display Handles code blocks, truncation, and Slack-specific
-   * formatting
-   */
+  /** Convert the model's Markdown to Slack mrkdwn. Long answers are split when posted */
   private String formatResponseForSlack(String response) {
     if (response == null) {
       return "I couldn't generate a response.";
     }
-
-    // Convert markdown code blocks to Slack format
-    String formatted =
-        response
-            // Convert triple backtick code blocks
-            .replaceAll("```([^`]+)```", "```$1```")
-            // Convert inline code
-            .replaceAll("`([^`]+)`", "`$1`")
-            // Ensure bullet points work in Slack (handle multiline)
-            .replaceAll("(?m)^- ", "• ")
-            // Convert bold text
-            .replaceAll("\\*\\*([^*]+)\\*\\*", "*$1*");
-
-    // Truncate if necessary, preserving complete sentences
-    if (formatted.length() > SLACK_MESSAGE_CHAR_LIMIT) {
-      formatted = truncateResponse(formatted);
-    }
-
-    return formatted;
-  }
-
-  /** Truncate response intelligently at sentence boundaries */
-  private String truncateResponse(String response) {
-    if (response.length() <= SLACK_MESSAGE_CHAR_LIMIT) {
-      return response;
-    }
-
-    // Try to find a good breaking point
-    int cutoff = SLACK_MESSAGE_CHAR_LIMIT - 100; // Leave room for truncation message
-
-    // Look for sentence endings
-    int lastPeriod = response.lastIndexOf(".", cutoff);
-    int lastNewline = response.lastIndexOf("\n", cutoff);
-
-    int breakPoint = Math.max(lastPeriod, lastNewline);
-    if (breakPoint <= 0) {
-      breakPoint = cutoff;
-    }
-
-    return response.substring(0, breakPoint) + "\n\n_[Response truncated due to length]_";
+    return MarkdownToMrkdwn.convert(response.strip());
   }
 }
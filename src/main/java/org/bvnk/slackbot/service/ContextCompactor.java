@@ -0,0 +1,292 @@
+package org.bvnk.slackbot.service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import lombok.Value;
+import org.bvnk.slackbot.config.AppConfig;
+import org.bvnk.slackbot.util.TokenEstimator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Shrinks formatted thread messages before they are put into a prompt, in two passes. The first
+ * shortens links to their host, drops emoji shortcodes, trims code blocks and stack traces to a
+ * head/tail window and notes where each message was last repeated; the second emits every message
+ * once, at its latest occurrence, with a count of the earlier ones folded into it. Only messages
+ * posted by apps, such as alerts, are folded when they merely look alike, differing in numbers, ids
+ * or timestamps; people's messages are folded only when they are exact repeats, since "ETA is 5pm"
+ * after "ETA is 3pm" is a correction, not a repeat.
+ */
+public class ContextCompactor {
+  private static final Logger logger = LoggerFactory.getLogger(ContextCompactor.class);
+
+  public static final String STAGE_DEDUPE = "dedupe";
+  public static final String STAGE_URLS = "urls";
+  public static final String STAGE_EMOJI = "emoji";
+  public static final String STAGE_BLOCKS = "blocks";
+
+  private static final String CODE_FENCE = "```";
+
+  // Slack sends links as <url> or <url|label>, everything else is a bare URL
+  private static final Pattern SLACK_LINK = Pattern.compile("<(https?://[^>|]+)(?:\\|([^>]*))?>");
+  private static final Pattern BARE_URL = Pattern.compile("https?://[^\\s<>|]+");
+  private static final Pattern EMOJI_SHORTCODE = Pattern.compile("(?<!\\w):[a-z0-9_+'-]+:(?!\\w)");
+  private static final Pattern INNER_SPACES = Pattern.compile("(?<=\\S) {2,}");
+  private static final Pattern STACK_FRAME =
+      Pattern.compile("^\\s*(at [\\w$.<>]+\\(.*\\)|\\.\\.\\. \\d+ (more|common frames omitted))$");
+  private static final Pattern VOLATILE_TOKENS = Pattern.compile("[0-9a-f]*[0-9][0-9a-f]*");
+  private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+  private final boolean enabled;
+  private final Set<String> stages;
+  private final int blockHeadLines;
+  private final int blockTailLines;
+
+  public ContextCompactor() {
+    AppConfig config = AppConfig.getInstance();
+    this.enabled = config.isCompactionEnabled();
+    this.stages =
+        Arrays.stream(config.getCompactionStages().split(","))
+            .map(String::trim)
+            .map(stage -> stage.toLowerCase(Locale.ROOT))
+            .collect(Collectors.toSet());
+    this.blockHeadLines = config.getCompactionBlockHeadLines();
+    this.blockTailLines = config.getCompactionBlockTailLines();
+  }
+
+  @Value
+  public static class Result {
+    List<String> messages;
+    int bytesBefore;
+    int bytesAfter;
+    int tokensBefore;
+    int tokensAfter;
+    int foldedMessages;
+  }
+
+  /** Compact messages that were all posted by people, folding only exact repeats */
+  public Result compact(List<String> messages) {
+    return compact(messages, List.of());
+  }
+
+  /**
+   * Compact messages, given whether each was posted by an app, in the same order. Messages missing
+   * from {@code automated} count as posted by people.
+   */
+  public Result compact(List<String> messages, List<Boolean> automated) {
+    if (!enabled) {
+      int bytes = 0;
+      int tokens = 0;
+      for (String message : messages) {
+        bytes += utf8Length(message);
+        tokens += TokenEstimator.estimate(message);
+      }
+      return new Result(messages, bytes, bytes, tokens, tokens, 0);
+    }
+
+    List<String> compactedMessages = new ArrayList<>(messages.size());
+    List<String> fingerprints = new ArrayList<>(messages.size());
+    Map<String, Integer> lastSeen = new HashMap<>();
+    Map<String, Integer> occurrences = new HashMap<>();
+    int bytesBefore = 0;
+    int tokensBefore = 0;
+
+    for (int i = 0; i < messages.size(); i++) {
+      String message = messages.get(i);
+      bytesBefore += utf8Length(message);
+      tokensBefore += TokenEstimator.estimate(message);
+
+      String compactedMessage = compactMessage(message);
+      compactedMessages.add(compactedMessage);
+
+      if (stages.contains(STAGE_DEDUPE)) {
+        String fingerprint =
+            i < automated.size() && Boolean.TRUE.equals(automated.get(i))
+                ? "~" + fingerprint(compactedMessage)
+                : "=" + WHITESPACE.matcher(compactedMessage).replaceAll(" ").trim();
+        fingerprints.add(fingerprint);
+        lastSeen.put(fingerprint, i);
+        occurrences.merge(fingerprint, 1, Integer::sum);
+      }
+    }
+
+    // Keep each repeated message where it was last posted, so the thread reads in order and the
+    // latest version of an alert is the one kept, noting how often it was posted before
+    List<String> compacted = new ArrayList<>(messages.size());
+    int folded = 0;
+    for (int i = 0; i < compactedMessages.size(); i++) {
+      if (fingerprints.isEmpty()) {
+        compacted.add(compactedMessages.get(i));
+        continue;
+      }
+      String fingerprint = fingerprints.get(i);
+      if (lastSeen.get(fingerprint) != i) {
+        folded++;
+        continue;
+      }
+      int earlier = occurrences.get(fingerprint) - 1;
+      compacted.add(
+          earlier == 0
+              ? compactedMessages.get(i)
+              : compactedMessages.get(i)
+                  + String.format(
+                      " _(also posted %d time%s before)_", earlier, earlier == 1 ? "" : "s"));
+    }
+
+    int bytesAfter = 0;
+    int tokensAfter = 0;
+    for (String message : compacted) {
+      bytesAfter += utf8Length(message);
+      tokensAfter += TokenEstimator.estimate(message);
+    }
+
+    logger.debug(
+        "Compacted thread context: {} -> {} bytes, ~{} -> ~{} tokens, {} messages folded",
+        bytesBefore,
+        bytesAfter,
+        tokensBefore,
+        tokensAfter,
+        folded);
+
+    return new Result(compacted, bytesBefore, bytesAfter, tokensBefore, tokensAfter, folded);
+  }
+
+  /** Apply the per-message stages, leaving the contents of code blocks to the block trimmer */
+  private String compactMessage(String message) {
+    if (message == null || message.isEmpty()) {
+      return "";
+    }
+
+    String[] segments = message.split(CODE_FENCE, -1);
+    StringBuilder result = new StringBuilder(message.length());
+
+    for (int i = 0; i < segments.length; i++) {
+      boolean insideFence = i % 2 == 1 && i < segments.length - 1;
+      if (i > 0) {
+        result.append(CODE_FENCE);
+      }
+      result.append(insideFence ? compactBlock(segments[i]) : compactProse(segments[i]));
+    }
+
+    return result.toString().trim();
+  }
+
+  private String compactProse(String text) {
+    if (stages.contains(STAGE_URLS)) {
+      text = shortenLinks(text);
+    }
+    if (stages.contains(STAGE_EMOJI)) {
+      text = EMOJI_SHORTCODE.matcher(text).replaceAll("");
+      text = INNER_SPACES.matcher(text).replaceAll(" ");
+    }
+    if (stages.contains(STAGE_BLOCKS)) {
+      text = trimStackTraces(text);
+    }
+    return text;
+  }
+
+  private String compactBlock(String block) {
+    if (!stages.contains(STAGE_BLOCKS)) {
+      return block;
+    }
+
+    String[] lines = block.split("\n", -1);
+    if (lines.length <= blockHeadLines + blockTailLines + 1) {
+      return block;
+    }
+
+    return window(Arrays.asList(lines), 0, lines.length);
+  }
+
+  private String shortenLinks(String text) {
+    Matcher slackLink = SLACK_LINK.matcher(text);
+    StringBuilder result = new StringBuilder(text.length());
+    while (slackLink.find()) {
+      String host = host(slackLink.group(1));
+      String label = slackLink.group(2);
+      String replacement =
+          label == null || label.isEmpty() || label.equals(slackLink.group(1))
+              ? host
+              : label + " (" + host + ")";
+      slackLink.appendReplacement(result, Matcher.quoteReplacement(replacement));
+    }
+    slackLink.appendTail(result);
+
+    Matcher bareUrl = BARE_URL.matcher(result);
+    StringBuilder shortened = new StringBuilder(result.length());
+    while (bareUrl.find()) {
+      bareUrl.appendReplacement(shortened, Matcher.quoteReplacement(host(bareUrl.group())));
+    }
+    bareUrl.appendTail(shortened);
+
+    return shortened.toString();
+  }
+
+  /** Fold runs of stack frames pasted outside code blocks to the same head/tail window */
+  private String trimStackTraces(String text) {
+    if (!text.contains("at ")) {
+      return text;
+    }
+
+    List<String> lines = Arrays.asList(text.split("\n", -1));
+    List<String> result = new ArrayList<>(lines.size());
+    int i = 0;
+    while (i < lines.size()) {
+      int runEnd = i;
+      while (runEnd < lines.size() && STACK_FRAME.matcher(lines.get(runEnd)).matches()) {
+        runEnd++;
+      }
+
+      if (runEnd - i > blockHeadLines + blockTailLines + 1) {
+        result.add(window(lines, i, runEnd));
+        i = runEnd;
+      } else {
+        result.add(lines.get(i));
+        i++;
+      }
+    }
+
+    return String.join("\n", result);
+  }
+
+  private String window(List<String> lines, int from, int to) {
+    int omitted = to - from - blockHeadLines - blockTailLines;
+    StringBuilder result = new StringBuilder();
+    for (int i = from; i < from + blockHeadLines; i++) {
+      result.append(lines.get(i)).append('\n');
+    }
+    result.append("... [").append(omitted).append(" lines omitted] ...");
+    for (int i = to - blockTailLines; i < to; i++) {
+      result.append('\n').append(lines.get(i));
+    }
+    return result.toString();
+  }
+
+  /** Lower-cased text with numbers, hex ids and whitespace runs normalised */
+  private String fingerprint(String message) {
+    String normalised = VOLATILE_TOKENS.matcher(message.toLowerCase(Locale.ROOT)).replaceAll("#");
+    return WHITESPACE.matcher(normalised).replaceAll(" ").trim();
+  }
+
+  private String host(String url) {
+    int start = url.indexOf("://") + 3;
+    int end = start;
+    while (end < url.length() && "/?#:".indexOf(url.charAt(end)) < 0) {
+      end++;
+    }
+    return url.substring(start, end);
+  }
+
+  private int utf8Length(String text) {
+    return text == null ? 0 : text.getBytes(StandardCharsets.UTF_8).length;
+  }
+}
@@ -0,0 +1,153 @@
+package org.bvnk.slackbot.service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.IntStream;
+import org.bvnk.slackbot.config.AppConfig;
+import org.bvnk.slackbot.util.Bm25Index;
+import org.bvnk.slackbot.util.TokenEstimator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Picks the thread messages relevant to a free-form question so that long threads don't have to be
+ * sent to Bedrock in full. Runs entirely in-process: a BM25 index is built over the formatted
+ * messages, the top hits are expanded with their neighbours and packed into a token budget.
+ */
+public class ContextSelector {
+  private static final Logger logger = LoggerFactory.getLogger(ContextSelector.class);
+  private static final String MESSAGE_SEPARATOR = "\n\n";
+  private static final String GAP_MARKER = "[...]";
+
+  private final boolean enabled;
+  private final int tokenBudget;
+  private final int topK;
+  private final int neighborWindow;
+
+  public ContextSelector() {
+    AppConfig config = AppConfig.getInstance();
+    this.enabled = config.isContextSelectionEnabled();
+    this.tokenBudget = config.getContextTokenBudget();
+    this.topK = config.getContextTopK();
+    this.neighborWindow = config.getContextNeighborWindow();
+  }
+
+  /**
+   * Build the thread context for a question. Threads that already fit the budget are returned in
+   * full; otherwise only the selected messages are kept, in thread order, with gaps marked.
+   */
+  public String select(List<String> messages, String question) {
+    return enabled
+        ? select(messages, question, tokenBudget)
+        : String.join(MESSAGE_SEPARATOR, messages);
+  }
+
+  /**
+   * Same as {@link #select(List, String)} with a budget of its own, whether or not selection is
+   * enabled, for follow-up questions whose earlier answers are sent along with them
+   */
+  public String select(List<String> messages, String question, int tokenBudget) {
+    String fullContext = String.join(MESSAGE_SEPARATOR, messages);
+    int fullTokens = TokenEstimator.estimate(fullContext);
+
+    if (fullTokens <= tokenBudget) {
+      return fullContext;
+    }
+
+    long start = System.nanoTime();
+    boolean[] selected = selectMessages(messages, question, tokenBudget);
+    String selectedContext = render(messages, selected);
+    long elapsedMicros = (System.nanoTime() - start) / 1_000;
+
+    logger.debug(
+        "Context selection kept {}/{} messages, ~{} -> ~{} tokens in {} us",
+        countSelected(selected),
+        messages.size(),
+        fullTokens,
+        TokenEstimator.estimate(selectedContext),
+        elapsedMicros);
+
+    return selectedContext;
+  }
+
+  private boolean[] selectMessages(List<String> messages, String question, int tokenBudget) {
+    boolean[] selected = new boolean[messages.size()];
+    int[] tokens = messages.stream().mapToInt(TokenEstimator::estimate).toArray();
+    int remaining = tokenBudget;
+
+    // The thread root usually states what the thread is about, so keep it when it fits
+    if (tokens[0] <= remaining) {
+      selected[0] = true;
+      remaining -= tokens[0];
+    }
+
+    double[] scores = new Bm25Index(messages).score(question);
+    List<Integer> hits =
+        IntStream.range(0, messages.size())
+            .filter(i -> scores[i] > 0)
+            .boxed()
+            .sorted(Comparator.comparingDouble((Integer i) -> scores[i]).reversed())
+            .limit(topK)
+            .toList();
+
+    // Nothing matched the question terms, so fall back to the most recent messages
+    if (hits.isEmpty()) {
+      for (int i = messages.size() - 1; i > 0 && remaining > 0; i--) {
+        if (tokens[i] <= remaining) {
+          selected[i] = true;
+          remaining -= tokens[i];
+        }
+      }
+      return selected;
+    }
+
+    // Take every hit first, then spend what is left of the budget on surrounding context
+    for (int hit : hits) {
+      remaining = take(selected, tokens, hit, remaining);
+    }
+    for (int distance = 1; distance <= neighborWindow; distance++) {
+      for (int hit : hits) {
+        remaining = take(selected, tokens, hit - distance, remaining);
+        remaining = take(selected, tokens, hit + distance, remaining);
+      }
+    }
+
+    return selected;
+  }
+
+  private int take(boolean[] selected, int[] tokens, int index, int remaining) {
+    if (index < 0 || index >= selected.length || selected[index] || tokens[index] > remaining) {
+      return remaining;
+    }
+    selected[index] = true;
+    return remaining - tokens[index];
+  }
+
+  private String render(List<String> messages, boolean[] selected) {
+    List<String> parts = new ArrayList<>();
+    boolean inGap = false;
+
+    for (int i = 0; i < messages.size(); i++) {
+      if (selected[i]) {
+        parts.add(messages.get(i));
+        inGap = false;
+      } else if (!inGap) {
+        parts.add(GAP_MARKER);
+        inGap = true;
+      }
+    }
+
+    return String.join(MESSAGE_SEPARATOR, parts);
+  }
+
+  private int countSelected(boolean[] selected) {
+    int count = 0;
+    for (boolean isSelected : selected) {
+      if (isSelected) {
+        count++;
+      }
+    }
+    return count;
+  }
+}
@@ -0,0 +1,244 @@
+package org.bvnk.slackbot.service;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+import lombok.Value;
+import org.bvnk.slackbot.config.AppConfig;
+import org.bvnk.slackbot.util.TokenEstimator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The questions the bot was asked in a thread and its answers, so that a follow-up such as "expand
+ * on point 3" is sent to Bedrock after the turns it follows up on, as a multi-turn conversation.
+ * Conversations are kept per channel and thread, compressed, in a {@link ConversationStore}: the
+ * DynamoDB table until CONVERSATION_TTL_HOURS after their last turn, or memory when events are.
+ *
+ * <p>The latest CONVERSATION_MAX_TURNS turns are kept as they were, within
+ * CONVERSATION_TOKEN_BUDGET. Older turns are rolled into a running summary, a line per turn of up
+ * to CONVERSATION_SUMMARY_TOKENS in all, so what is sent stays bounded however long the
+ * conversation runs. Follow-ups only need the part of the thread relevant to them, within
+ * CONVERSATION_FOLLOW_UP_CONTEXT_TOKENS, since the earlier answers carry the rest.
+ */
+public class ConversationService {
+  private static final Logger logger = LoggerFactory.getLogger(ConversationService.class);
+  private static final int FORMAT_VERSION = 1;
+  private static final int SUMMARY_ANSWER_CHARS = 240; // Of each answer rolled into the summary
+  private static final int FOLLOW_UP_MAX_WORDS = 4; // Too short to be a question of its own
+
+  private static final Pattern POINT_REFERENCE =
+      Pattern.compile(
+          "\\b(?:point|item|bullet|step|number)\\s*#?(\\d{1,2})\\b", Pattern.CASE_INSENSITIVE);
+  private static final Pattern FOLLOW_UP =
+      Pattern.compile(
+          "\\b(?:expand|elaborate|more detail|tell me more|more (?:on|about) (?:that|this|it|those)"
+              + "|what do you mean|you (?:said|mentioned|listed|wrote)|your (?:answer|summary|list)"
+              + "|the (?:above|first one|second one|last one)|why (?:is|was) that)\\b",
+          Pattern.CASE_INSENSITIVE);
+  private static final Pattern LIST_LINE = Pattern.compile("^\\s*(?:[-*•]|\\d+[.)])\\s+(.*)$");
+
+  private final ConversationStore store;
+  private final boolean enabled;
+  private final int maxTurns;
+  private final int tokenBudget;
+  private final int summaryTokens;
+  private final int followUpContextTokens;
+
+  public ConversationService(ConversationStore store) {
+    AppConfig config = AppConfig.getInstance();
+    this.store = store;
+    this.enabled = config.isConversationEnabled();
+    this.maxTurns = Math.max(1, config.getConversationMaxTurns());
+    this.tokenBudget = config.getConversationTokenBudget();
+    this.summaryTokens = config.getConversationSummaryTokens();
+    this.followUpContextTokens = config.getConversationFollowUpContextTokens();
+  }
+
+  /** The conversation so far in a thread, empty when there is none or it can't be read */
+  public Conversation get(String channel, String threadTs) {
+    if (!enabled) {
+      return Conversation.EMPTY;
+    }
+
+    byte[] encoded = store.get(conversationKey(channel, threadTs));
+    Conversation conversation = encoded != null ? decode(encoded) : null;
+    return conversation != null ? conversation : Conversation.EMPTY;
+  }
+
+  /**
+   * Add a turn to the conversation read with {@link #get}, rolling the oldest turns into the
+   * summary once there are too many. A bare mention has no question to replay, so it isn't
+   * recorded.
+   */
+  public void record(
+      String channel, String threadTs, Conversation previous, String question, String answer) {
+    if (!enabled || question == null || answer == null || question.isBlank() || answer.isBlank()) {
+      return;
+    }
+
+    List<Turn> turns = new ArrayList<>(previous.getTurns());
+    turns.add(new Turn(question, answer));
+    List<String> summary = new ArrayList<>(previous.summaryLines());
+    while (turns.size() > 1 && (turns.size() > maxTurns || tokens(turns) > tokenBudget)) {
+      summary.add(summaryLine(turns.remove(0)));
+    }
+    while (summary.size() > 1
+        && TokenEstimator.estimate(String.join("\n", summary)) > summaryTokens) {
+      summary.remove(0);
+    }
+    Conversation conversation = new Conversation(String.join("\n", summary), List.copyOf(turns));
+
+    store.put(conversationKey(channel, threadTs), encode(conversation));
+  }
+
+  /**
+   * Whether a question follows up on an earlier answer in the conversation: it refers back to one,
+   * or is too short to be understood without them
+   */
+  public boolean isFollowUp(Conversation conversation, String question) {
+    if (conversation.getTurns().isEmpty() || question == null) {
+      return false;
+    }
+    return POINT_REFERENCE.matcher(question).find()
+        || FOLLOW_UP.matcher(question).find()
+        || question.strip().split("\\s+").length <= FOLLOW_UP_MAX_WORDS;
+  }
+
+  /**
+   * What to look for in the thread for a follow-up: the question with the point of the last answer
+   * it refers to, or with the whole last answer, whose terms the question itself usually lacks
+   */
+  public String followUpQuery(Conversation conversation, String question) {
+    String lastAnswer = conversation.getTurns().get(conversation.getTurns().size() - 1).getAnswer();
+    Matcher reference = POINT_REFERENCE.matcher(question);
+    if (reference.find()) {
+      int point = Integer.parseInt(reference.group(1));
+      List<String> points =
+          lastAnswer
+              .lines()
+              .map(LIST_LINE::matcher)
+              .filter(Matcher::matches)
+              .map(line -> line.group(1))
+              .toList();
+      if (point >= 1 && point <= points.size()) {
+        return question + "\n" + points.get(point - 1);
+      }
+    }
+    return question + "\n" + lastAnswer;
+  }
+
+  public int getFollowUpContextTokens() {
+    return followUpContextTokens;
+  }
+
+  private static int tokens(List<Turn> turns) {
+    int tokens = 0;
+    for (Turn turn : turns) {
+      tokens +=
+          TokenEstimator.estimate(turn.getQuestion()) + TokenEstimator.estimate(turn.getAnswer());
+    }
+    return tokens;
+  }
+
+  /** A turn rolled out of the conversation as a line: the question and the start of its answer */
+  private static String summaryLine(Turn turn) {
+    String answer = turn.getAnswer().replaceAll("\\s+", " ").strip();
+    if (answer.length() > SUMMARY_ANSWER_CHARS) {
+      answer = answer.substring(0, SUMMARY_ANSWER_CHARS) + "...";
+    }
+    return "- Asked \""
+        + turn.getQuestion().replaceAll("\\s+", " ").strip()
+        + "\", answered: "
+        + answer;
+  }
+
+  private static String conversationKey(String channel, String threadTs) {
+    return "conversation#" + channel + "#" + threadTs;
+  }
+
+  private static byte[] encode(Conversation conversation) {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(bytes))) {
+      out.writeByte(FORMAT_VERSION);
+      writeString(out, conversation.getSummary());
+      out.writeInt(conversation.getTurns().size());
+      for (Turn turn : conversation.getTurns()) {
+        writeString(out, turn.getQuestion());
+        writeString(out, turn.getAnswer());
+      }
+    } catch (IOException e) {
+      throw new IllegalStateException("Could not encode conversation", e);
+    }
+    return bytes.toByteArray();
+  }
+
+  /** The conversation, or null when it was written in another format or is unreadable */
+  private static Conversation decode(byte[] encoded) {
+    try (DataInputStream in =
+        new DataInputStream(new InflaterInputStream(new ByteArrayInputStream(encoded)))) {
+      if (in.readByte() != FORMAT_VERSION) {
+        return null;
+      }
+      String summary = readString(in);
+      int count = in.readInt();
+      List<Turn> turns = new ArrayList<>(count);
+      for (int i = 0; i < count; i++) {
+        turns.add(new Turn(readString(in), readString(in)));
+      }
+      return new Conversation(summary, turns);
+    } catch (IOException e) {
+      logger.warn("Could not read conversation: {}", e.toString());
+      return null;
+    }
+  }
+
+  private static void writeString(DataOutputStream out, String value) throws IOException {
+    byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  private static String readString(DataInputStream in) throws IOException {
+    byte[] bytes = new byte[in.readInt()];
+    in.readFully(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  /** The turns of a thread's conversation, oldest first, after a summary of those rolled out */
+  @Value
+  public static class Conversation {
+    public static final Conversation EMPTY = new Conversation("", List.of());
+
+    String summary; // Empty until turns are rolled into it
+    List<Turn> turns;
+
+    public boolean isEmpty() {
+      return summary.isEmpty() && turns.isEmpty();
+    }
+
+    /** The estimated tokens of the summary and turns, as they are sent along with a question */
+    public int tokens() {
+      return TokenEstimator.estimate(summary) + ConversationService.tokens(turns);
+    }
+
+    List<String> summaryLines() {
+      return summary.isEmpty() ? List.of() : summary.lines().toList();
+    }
+  }
+
+  @Value
+  public static class Turn {
+    String question;
+    String answer; // As posted, in Slack mrkdwn
+  }
+}
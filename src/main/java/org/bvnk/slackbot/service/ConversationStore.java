@@ -0,0 +1,24 @@
+package org.bvnk.slackbot.service;
+
+import org.bvnk.slackbot.config.AppConfig;
+
+/**
+ * Encoded conversations in threads, replaced as a whole on every turn. Last writer wins: of two
+ * mentions answered at once in a thread, the turn of one may be lost, which only costs the next
+ * follow-up context.
+ */
+public interface ConversationStore {
+
+  /** The conversation stored under the key, or null when there is none or it can't be read */
+  byte[] get(String conversationKey);
+
+  /** Replace the stored conversation. Errors are logged */
+  void put(String conversationKey, byte[] conversation);
+
+  /** The store selected by EVENT_STORE: the DynamoDB table, or memory for local runs and tests */
+  static ConversationStore fromConfig() {
+    return "memory".equalsIgnoreCase(AppConfig.getInstance().getEventStore())
+        ? InMemoryConversationStore.getInstance()
+        : new DynamoConversationStore();
+  }
+}
@@ -0,0 +1,8 @@
+package org.bvnk.slackbot.service;
+
+/** Thrown when no model reply arrived before the invocation had to start wrapping up */
+public class DeadlineExceededException extends RuntimeException {
+  public DeadlineExceededException(String message) {
+    super(message);
+  }
+}
@@ -0,0 +1,311 @@
+package org.bvnk.slackbot.service;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Collectors;
+import lombok.Value;
+import org.bvnk.slackbot.config.AppConfig;
+import org.bvnk.slackbot.logging.Tracing;
+import org.bvnk.slackbot.util.Deadline;
+import org.bvnk.slackbot.util.TokenBucket;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Posts a digest of the threads that were active in a channel over a time window. Threads are
+ * fetched and summarized in parallel, bounded by a worker pool and Slack's rate limit, and the
+ * summaries are posted together under one digest message. Each summarized thread gets a watermark
+ * with its latest reply, so threads without new replies are skipped on the next run and threads
+ * that didn't fit in the invocation are picked up by the next one.
+ */
+public class DigestService {
+  private static final Logger logger = LoggerFactory.getLogger(DigestService.class);
+  private static final String SUMMARY_QUESTION = "summarize";
+  private static final String WATERMARK_PREFIX = "digest#";
+  private static final long POST_RESERVE_MILLIS = 3000; // Time kept for posting the digest
+  private static final long MIN_THREAD_MILLIS = 4000; // Don't start a thread with less time left
+  private static final int SLACK_BURST = 5;
+  private static final int TITLE_MAX_CHARS = 80;
+
+  private final SlackClientPool slackClientPool;
+  private final BedrockService bedrockService;
+  private final DynamoService dynamoService;
+  private final ContextCompactor contextCompactor;
+  private final SummarySearchService summarySearch;
+  private final TokenBucket slackRateLimit;
+  private final ExecutorService executor;
+  private final int lookbackHours;
+  private final int maxThreads;
+
+  public DigestService(
+      SlackClientPool slackClientPool,
+      BedrockService bedrockService,
+      DynamoService dynamoService,
+      ContextCompactor contextCompactor,
+      SummarySearchService summarySearch) {
+    AppConfig config = AppConfig.getInstance();
+    this.slackClientPool = slackClientPool;
+    this.bedrockService = bedrockService;
+    this.dynamoService = dynamoService;
+    this.contextCompactor = contextCompactor;
+    this.summarySearch = summarySearch;
+    this.slackRateLimit = new TokenBucket(config.getDigestSlackRequestsPerMinute(), SLACK_BURST);
+    this.lookbackHours = config.getDigestLookbackHours();
+    this.maxThreads = config.getDigestMaxThreads();
+    this.executor =
+        Executors.newFixedThreadPool(
+            Math.max(1, config.getDigestConcurrency()),
+            runnable -> {
+              Thread thread = new Thread(runnable, "digest-worker");
+              thread.setDaemon(true);
+              return thread;
+            });
+  }
+
+  /** Post a digest to each channel of a workspace, in turn, for as long as the deadline allows */
+  public void runDigest(
+      String teamId, List<String> channels, int windowMinutes, Deadline deadline) {
+    SlackService slackService = slackClientPool.forTeam(teamId);
+
+    for (String channel : channels) {
+      if (deadline.remainingMillis() < POST_RESERVE_MILLIS + MIN_THREAD_MILLIS) {
+        logger.warn("No time left for the digest of channel {}", channel);
+        continue;
+      }
+
+      try {
+        digestChannel(slackService, teamId, channel, windowMinutes, deadline);
+      } catch (Exception e) {
+        logger.error("Error building digest for channel {}", channel, e);
+      }
+    }
+  }
+
+  private void digestChannel(
+      SlackService slackService,
+      String teamId,
+      String channel,
+      int windowMinutes,
+      Deadline deadline)
+      throws InterruptedException {
+    long start = System.currentTimeMillis();
+    long now = Instant.now().getEpochSecond();
+    BigDecimal windowStart = BigDecimal.valueOf(now - windowMinutes * 60L);
+    String botUserId = slackService.getBotUserId();
+
+    // Thread parents can be older than the window, so look further back and keep the threads
+    // whose latest reply falls inside it
+    List<Map<String, Object>> active = new ArrayList<>();
+    for (Map<String, Object> message :
+        slackService.getChannelHistory(channel, String.valueOf(now - lookbackHours * 3600L))) {
+      String latestReply = (String) message.get("latest_reply");
+      boolean hasReplies = message.get("reply_count") instanceof Integer count && count > 0;
+      if (hasReplies
+          && latestReply != null
+          && new BigDecimal(latestReply).compareTo(windowStart) >= 0
+          && !String.valueOf(message.get("user")).equals(botUserId)) {
+        active.add(message);
+      }
+    }
+
+    // Most recently active first, so those are the ones covered when time runs short
+    active.sort(
+        Comparator.comparing(
+                (Map<String, Object> message) ->
+                    new BigDecimal((String) message.get("latest_reply")))
+            .reversed());
+    if (active.size() > maxThreads) {
+      active = active.subList(0, maxThreads);
+    }
+
+    Map<String, String> watermarks =
+        dynamoService.getWatermarks(
+            active.stream()
+                .map(message -> watermarkKey(channel, (String) message.get("ts")))
+                .toList());
+    List<Map<String, Object>> changed =
+        active.stream()
+            .filter(
+                message -> {
+                  String watermark =
+                      watermarks.get(watermarkKey(channel, (String) message.get("ts")));
+                  return watermark == null
+                      || new BigDecimal((String) message.get("latest_reply"))
+                              .compareTo(new BigDecimal(watermark))
+                          > 0;
+                })
+            .toList();
+
+    if (changed.isEmpty()) {
+      logger.info(
+          "No changed threads in channel {} ({} active, all unchanged)", channel, active.size());
+      return;
+    }
+
+    Deadline workDeadline = deadline.minusMillis(POST_RESERVE_MILLIS);
+    List<Future<ThreadSummary>> futures = new ArrayList<>();
+    for (Map<String, Object> message : changed) {
+      futures.add(
+          executor.submit(
+              Tracing.wrap(
+                  () -> summarizeThread(slackService, channel, message, botUserId, workDeadline))));
+    }
+
+    List<ThreadSummary> summaries = new ArrayList<>();
+    for (Future<ThreadSummary> future : futures) {
+      try {
+        ThreadSummary summary =
+            future.get(Math.max(1, workDeadline.remainingMillis()), TimeUnit.MILLISECONDS);
+        if (summary != null) {
+          summaries.add(summary);
+        }
+      } catch (TimeoutException e) {
+        future.cancel(true);
+      } catch (ExecutionException e) {
+        logger.warn("Failed to summarize a thread in channel {}", channel, e.getCause());
+      }
+    }
+
+    if (!summaries.isEmpty()) {
+      postDigest(
+          slackService, channel, windowMinutes, summaries, changed.size() - summaries.size());
+      dynamoService.putWatermarks(
+          summaries.stream()
+              .collect(
+                  Collectors.toMap(
+                      summary -> watermarkKey(channel, summary.getThreadTs()),
+                      ThreadSummary::getLatestReply)));
+      summarySearch.record(
+          teamId,
+          channel,
+          summaries.stream()
+              .collect(Collectors.toMap(ThreadSummary::getThreadTs, ThreadSummary::getSummary)));
+    }
+
+    logger.info(
+        "Digest for channel {}: {} active threads, {} unchanged, {} summarized, {} deferred in {}"
+            + " ms",
+        channel,
+        active.size(),
+        active.size() - changed.size(),
+        summaries.size(),
+        changed.size() - summaries.size(),
+        System.currentTimeMillis() - start);
+  }
+
+  /**
+   * Fetch and summarize one thread. Returns null when the thread is skipped, either because the
+   * deadline is too close or because Slack or Bedrock couldn't serve it; it then keeps its old
+   * watermark and is retried on the next run.
+   */
+  private ThreadSummary summarizeThread(
+      SlackService slackService,
+      String channel,
+      Map<String, Object> parent,
+      String botUserId,
+      Deadline deadline) {
+    String threadTs = (String) parent.get("ts");
+
+    try {
+      if (deadline.remainingMillis() < MIN_THREAD_MILLIS || !slackRateLimit.acquire(deadline)) {
+        return null;
+      }
+
+      List<Map<String, Object>> thread =
+          slackService.threadMessagesForAI(
+              slackService.getThreadMessages(channel, threadTs), botUserId, null);
+      if (thread.isEmpty()) {
+        return null;
+      }
+      List<String> messages = thread.stream().map(slackService::formatThreadMessage).toList();
+
+      String threadContext =
+          String.join(
+              "\n\n",
+              contextCompactor
+                  .compact(messages, thread.stream().map(SlackService::isAutomated).toList())
+                  .getMessages());
+      String summary = bedrockService.complete(threadContext, SUMMARY_QUESTION, deadline);
+      if (summary == null) {
+        return null;
+      }
+
+      return new ThreadSummary(
+          threadTs, (String) parent.get("latest_reply"), title(messages.get(0)), summary);
+
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return null;
+    } catch (Exception e) {
+      logger.warn("Skipping thread {} in this digest: {}", threadTs, e.toString());
+      return null;
+    }
+  }
+
+  /** Post the digest header to the channel and the thread summaries as a reply to it */
+  private void postDigest(
+      SlackService slackService,
+      String channel,
+      int windowMinutes,
+      List<ThreadSummary> summaries,
+      int deferred) {
+    String header =
+        String.format(
+            "*Digest for the last %s:* %d active thread%s",
+            describeWindow(windowMinutes), summaries.size(), summaries.size() == 1 ? "" : "s");
+    if (deferred > 0) {
+      header += String.format("\n_%d more will be covered in the next digest._", deferred);
+    }
+    String digestTs = slackService.postMessage(channel, null, header);
+
+    // Long digests are split into as many blocks and messages as needed, between summaries
+    List<String> sections = new ArrayList<>();
+    for (ThreadSummary summary : summaries) {
+      sections.add(
+          String.format(
+              "*<%s|%s>*\n%s",
+              permalink(channel, summary.getThreadTs()), summary.getTitle(), summary.getSummary()));
+    }
+    slackService.postMessage(channel, digestTs, String.join("\n\n", sections));
+  }
+
+  private static String watermarkKey(String channel, String threadTs) {
+    return WATERMARK_PREFIX + channel + "#" + threadTs;
+  }
+
+  /** First line of the thread's opening message, safe to use as link text */
+  private static String title(String firstMessage) {
+    String line = firstMessage.lines().findFirst().orElse("").replaceAll("[<>|*]", "").trim();
+    return line.length() > TITLE_MAX_CHARS ? line.substring(0, TITLE_MAX_CHARS - 3) + "..." : line;
+  }
+
+  private static String permalink(String channel, String threadTs) {
+    return "https://slack.com/archives/" + channel + "/p" + threadTs.replace(".", "");
+  }
+
+  private static String describeWindow(int windowMinutes) {
+    if (windowMinutes % 60 != 0) {
+      return windowMinutes + " minutes";
+    }
+    int hours = windowMinutes / 60;
+    return hours == 1 ? "hour" : hours + " hours";
+  }
+
+  @Value
+  private static class ThreadSummary {
+    String threadTs;
+    String latestReply;
+    String title;
+    String summary;
+  }
+}
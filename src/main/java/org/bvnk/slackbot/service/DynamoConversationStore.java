@@ -0,0 +1,70 @@
+package org.bvnk.slackbot.service;
+
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+import org.bvnk.slackbot.config.AppConfig;
+import org.bvnk.slackbot.config.AwsClientFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import software.amazon.awssdk.core.SdkBytes;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.*;
+
+/**
+ * Conversations as {@code conversation#} items of the DynamoDB table, each replaced on every turn
+ * and kept until CONVERSATION_TTL_HOURS after it.
+ */
+class DynamoConversationStore implements ConversationStore {
+  private static final Logger logger = LoggerFactory.getLogger(DynamoConversationStore.class);
+
+  private final DynamoDbClient dynamoDbClient;
+  private final String tableName;
+  private final long conversationTtlSeconds;
+
+  DynamoConversationStore() {
+    AppConfig config = AppConfig.getInstance();
+    this.tableName = config.getDynamoTableName();
+    this.conversationTtlSeconds = config.getConversationTtlHours() * 3600L;
+    this.dynamoDbClient = AwsClientFactory.dynamoDb();
+  }
+
+  @Override
+  public byte[] get(String conversationKey) {
+    try {
+      GetItemResponse response =
+          dynamoDbClient.getItem(
+              GetItemRequest.builder()
+                  .tableName(tableName)
+                  .key(Map.of("event_id", AttributeValue.builder().s(conversationKey).build()))
+                  .projectionExpression("turns")
+                  .build());
+
+      if (response.hasItem() && response.item().containsKey("turns")) {
+        return response.item().get("turns").b().asByteArray();
+      }
+    } catch (Exception e) {
+      logger.error("Error reading conversation {}", conversationKey, e);
+    }
+    return null;
+  }
+
+  @Override
+  public void put(String conversationKey, byte[] conversation) {
+    long ttl = Instant.now().getEpochSecond() + conversationTtlSeconds;
+    Map<String, AttributeValue> item = new HashMap<>();
+    item.put("event_id", AttributeValue.builder().s(conversationKey).build());
+    item.put("turns", AttributeValue.builder().b(SdkBytes.fromByteArray(conversation)).build());
+    item.put("ttl", numberValue(ttl));
+
+    try {
+      dynamoDbClient.putItem(PutItemRequest.builder().tableName(tableName).item(item).build());
+    } catch (Exception e) {
+      logger.error("Error storing conversation {}", conversationKey, e);
+    }
+  }
+
+  private static AttributeValue numberValue(long value) {
+    return AttributeValue.builder().n(String.valueOf(value)).build();
+  }
+}
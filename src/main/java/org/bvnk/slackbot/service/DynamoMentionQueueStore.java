@@ -0,0 +1,246 @@
+package org.bvnk.slackbot.service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.bvnk.slackbot.config.AppConfig;
+import org.bvnk.slackbot.config.AwsClientFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import software.amazon.awssdk.core.SdkBytes;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.*;
+
+/**
+ * The mention scheduler's index and team queues as items of the DynamoDB table. The index keeps a
+ * {@code pending_<team>} count and {@code finish_<team>} tag per team; each queue item keeps the
+ * encoded queue, its generation and the inbox list. Reads are consistent, as every take starts from
+ * them.
+ */
+class DynamoMentionQueueStore implements MentionQueueStore {
+  private static final Logger logger = LoggerFactory.getLogger(DynamoMentionQueueStore.class);
+
+  private final DynamoDbClient dynamoDbClient;
+  private final String tableName;
+
+  DynamoMentionQueueStore() {
+    this.tableName = AppConfig.getInstance().getDynamoTableName();
+    this.dynamoDbClient = AwsClientFactory.dynamoDb();
+  }
+
+  @Override
+  public void appendInbox(String queueKey, byte[] entry) {
+    dynamoDbClient.updateItem(
+        UpdateItemRequest.builder()
+            .tableName(tableName)
+            .key(Map.of("event_id", AttributeValue.builder().s(queueKey).build()))
+            .updateExpression("SET inbox = list_append(if_not_exists(inbox, :empty), :entries)")
+            .expressionAttributeValues(
+                Map.of(
+                    ":empty", AttributeValue.builder().l(List.of()).build(),
+                    ":entries",
+                        AttributeValue.builder()
+                            .l(AttributeValue.builder().b(SdkBytes.fromByteArray(entry)).build())
+                            .build()))
+            .build());
+  }
+
+  @Override
+  public QueueItem getQueue(String queueKey) {
+    GetItemResponse response =
+        dynamoDbClient.getItem(
+            GetItemRequest.builder()
+                .tableName(tableName)
+                .key(Map.of("event_id", AttributeValue.builder().s(queueKey).build()))
+                .consistentRead(true)
+                .build());
+
+    if (!response.hasItem()) {
+      return null;
+    }
+    Map<String, AttributeValue> item = response.item();
+    List<byte[]> inbox = new ArrayList<>();
+    if (item.containsKey("inbox")) {
+      item.get("inbox").l().forEach(entry -> inbox.add(entry.b().asByteArray()));
+    }
+    return new QueueItem(
+        item.containsKey("generation") ? item.get("generation").s() : null,
+        item.containsKey("state") ? item.get("state").b().asByteArray() : null,
+        inbox);
+  }
+
+  @Override
+  public boolean putQueue(
+      String queueKey,
+      String generation,
+      byte[] state,
+      String expectedGeneration,
+      int inboxEntries) {
+    Map<String, AttributeValue> values = new HashMap<>();
+    values.put(":new_generation", AttributeValue.builder().s(generation).build());
+    values.put(":state", AttributeValue.builder().b(SdkBytes.fromByteArray(state)).build());
+
+    StringBuilder expression =
+        new StringBuilder("SET generation = :new_generation, #state = :state");
+    for (int i = 0; i < inboxEntries; i++) {
+      expression.append(i == 0 ? " REMOVE " : ", ").append("inbox[").append(i).append("]");
+    }
+
+    UpdateItemRequest.Builder request =
+        UpdateItemRequest.builder()
+            .tableName(tableName)
+            .key(Map.of("event_id", AttributeValue.builder().s(queueKey).build()))
+            .updateExpression(expression.toString())
+            .expressionAttributeNames(Map.of("#state", "state"));
+    if (expectedGeneration == null) {
+      request.conditionExpression("attribute_not_exists(generation)");
+    } else {
+      request.conditionExpression("generation = :generation");
+      values.put(":generation", AttributeValue.builder().s(expectedGeneration).build());
+    }
+
+    try {
+      dynamoDbClient.updateItem(request.expressionAttributeValues(values).build());
+      return true;
+    } catch (ConditionalCheckFailedException e) {
+      return false;
+    }
+  }
+
+  @Override
+  public void addPending(String indexKey, String team, long delta) {
+    dynamoDbClient.updateItem(
+        UpdateItemRequest.builder()
+            .tableName(tableName)
+            .key(Map.of("event_id", AttributeValue.builder().s(indexKey).build()))
+            .updateExpression("ADD #pending :delta")
+            .expressionAttributeNames(Map.of("#pending", "pending_" + team))
+            .expressionAttributeValues(Map.of(":delta", numberValue(delta)))
+            .build());
+  }
+
+  @Override
+  public IndexItem getIndex(String indexKey) {
+    GetItemResponse response =
+        dynamoDbClient.getItem(
+            GetItemRequest.builder()
+                .tableName(tableName)
+                .key(Map.of("event_id", AttributeValue.builder().s(indexKey).build()))
+                .consistentRead(true)
+                .build());
+
+    if (!response.hasItem()) {
+      return null;
+    }
+    Map<String, Long> pending = new HashMap<>();
+    Map<String, Double> finish = new HashMap<>();
+    response
+        .item()
+        .forEach(
+            (name, value) -> {
+              if (name.startsWith("pending_")) {
+                pending.put(name.substring("pending_".length()), Long.parseLong(value.n()));
+              } else if (name.startsWith("finish_")) {
+                finish.put(name.substring("finish_".length()), Double.parseDouble(value.n()));
+              }
+            });
+    AttributeValue virtualTime = response.item().get("virtual_time");
+    return new IndexItem(
+        virtualTime != null ? Double.parseDouble(virtualTime.n()) : 0, pending, finish);
+  }
+
+  @Override
+  public long recordTake(String indexKey, String team, double virtualTime, double finish) {
+    Map<String, AttributeValue> values = new HashMap<>();
+    values.put(":finish", AttributeValue.builder().n(String.valueOf(finish)).build());
+    values.put(":delta", numberValue(-1));
+    Map<String, String> names = Map.of("#pending", "pending_" + team, "#finish", "finish_" + team);
+
+    UpdateItemResponse response;
+    try {
+      Map<String, AttributeValue> withVirtualTime = new HashMap<>(values);
+      withVirtualTime.put(
+          ":virtual_time", AttributeValue.builder().n(String.valueOf(virtualTime)).build());
+      response =
+          dynamoDbClient.updateItem(
+              UpdateItemRequest.builder()
+                  .tableName(tableName)
+                  .key(Map.of("event_id", AttributeValue.builder().s(indexKey).build()))
+                  .updateExpression(
+                      "SET virtual_time = :virtual_time, #finish = :finish ADD #pending :delta")
+                  .conditionExpression(
+                      "attribute_not_exists(virtual_time) OR virtual_time <= :virtual_time")
+                  .expressionAttributeNames(names)
+                  .expressionAttributeValues(withVirtualTime)
+                  .returnValues(ReturnValue.UPDATED_NEW)
+                  .build());
+    } catch (ConditionalCheckFailedException e) {
+      response =
+          dynamoDbClient.updateItem(
+              UpdateItemRequest.builder()
+                  .tableName(tableName)
+                  .key(Map.of("event_id", AttributeValue.builder().s(indexKey).build()))
+                  .updateExpression("SET #finish = :finish ADD #pending :delta")
+                  .expressionAttributeNames(names)
+                  .expressionAttributeValues(values)
+                  .returnValues(ReturnValue.UPDATED_NEW)
+                  .build());
+    }
+    return longValue(response.attributes(), "pending_" + team);
+  }
+
+  @Override
+  public boolean removeTeam(String indexKey, String team) {
+    try {
+      dynamoDbClient.updateItem(
+          UpdateItemRequest.builder()
+              .tableName(tableName)
+              .key(Map.of("event_id", AttributeValue.builder().s(indexKey).build()))
+              .updateExpression("REMOVE #pending, #finish")
+              .conditionExpression("#pending <= :zero")
+              .expressionAttributeNames(
+                  Map.of("#pending", "pending_" + team, "#finish", "finish_" + team))
+              .expressionAttributeValues(Map.of(":zero", numberValue(0)))
+              .build());
+      return true;
+    } catch (ConditionalCheckFailedException e) {
+      return false;
+    } catch (Exception e) {
+      logger.warn("Could not drop team {} from {}: {}", team, indexKey, e.toString());
+      return false;
+    }
+  }
+
+  @Override
+  public boolean resetTeam(String indexKey, String team, long pending) {
+    try {
+      dynamoDbClient.updateItem(
+          UpdateItemRequest.builder()
+              .tableName(tableName)
+              .key(Map.of("event_id", AttributeValue.builder().s(indexKey).build()))
+              .updateExpression("REMOVE #pending, #finish")
+              .conditionExpression("#pending = :pending")
+              .expressionAttributeNames(
+                  Map.of("#pending", "pending_" + team, "#finish", "finish_" + team))
+              .expressionAttributeValues(Map.of(":pending", numberValue(pending)))
+              .build());
+      return true;
+    } catch (ConditionalCheckFailedException e) {
+      return false;
+    } catch (Exception e) {
+      logger.warn("Could not reset team {} in {}: {}", team, indexKey, e.toString());
+      return false;
+    }
+  }
+
+  private static AttributeValue numberValue(long value) {
+    return AttributeValue.builder().n(String.valueOf(value)).build();
+  }
+
+  private static long longValue(Map<String, AttributeValue> item, String name) {
+    return item.containsKey(name) && item.get(name).n() != null
+        ? Long.parseLong(item.get(name).n())
+        : 0;
+  }
+}
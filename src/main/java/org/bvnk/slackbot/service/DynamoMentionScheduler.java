@@ -0,0 +1,326 @@
+package org.bvnk.slackbot.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+import org.bvnk.slackbot.model.MentionJob;
+import org.bvnk.slackbot.util.WeightedFairQueue;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Mention scheduler shared by all containers through the DynamoDB table. Each team's jobs are
+ * queued in an item of its own, so teams don't write to the same item, and a small index item
+ * counts the jobs queued per team. Submitted jobs are appended to an inbox list on their team's
+ * item, which never conflicts. Taking a job picks the team with the earliest start tag in the index
+ * (start-time fair queueing, each team's tag advancing by the cost of the jobs taken from it), then
+ * reads the team's item, moves the inbox into its queue, takes the next job and writes the queue
+ * back conditionally on its generation, retrying when another container took one in between. The
+ * index's virtual time only moves forward, and a team whose count stays above zero with nothing
+ * queued is dropped from it. Failures are reported to the caller: a job that couldn't be submitted
+ * is answered by the worker it was sent to.
+ */
+class DynamoMentionScheduler implements MentionScheduler {
+  private static final Logger logger = LoggerFactory.getLogger(DynamoMentionScheduler.class);
+  private static final String INDEX_KEY = "scheduler#teams";
+  private static final String QUEUE_KEY_PREFIX = "scheduler#mentions#";
+  private static final int FORMAT_VERSION = 1;
+  private static final int MAX_STORED_BYTES =
+      200_000; // leaves room in the 400 KB item for the inbox
+  private static final int MAX_INBOX_MOVES = 100; // keeps the update expression under 4 KB
+  private static final int MAX_ATTEMPTS = 12;
+  private static final long BASE_BACKOFF_MILLIS = 4;
+  private static final long MAX_BACKOFF_MILLIS = 100;
+  // A job is counted before it is appended, so a team found empty may have one on its way; its
+  // count is only reset once it has stayed the same for much longer than an append can take
+  private static final long RESET_AFTER_MILLIS = 60_000;
+
+  private final MentionQueueStore store;
+  private final ObjectWriter jobWriter;
+  private final ObjectReader jobReader;
+  // Teams counted in the index whose queue was found empty: the count, and when first seen
+  private final Map<String, long[]> emptyTeams = new ConcurrentHashMap<>();
+
+  DynamoMentionScheduler(MentionQueueStore store) {
+    ObjectMapper objectMapper = new ObjectMapper();
+    this.store = store;
+    this.jobWriter = objectMapper.writerFor(MentionJob.class);
+    this.jobReader = objectMapper.readerFor(Map.class);
+  }
+
+  @Override
+  public boolean submit(MentionJob job) {
+    String team = String.valueOf(job.getTeamId());
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (DataOutputStream out = new DataOutputStream(bytes)) {
+      out.writeUTF(team);
+      out.writeUTF(String.valueOf(job.getChannel()));
+      out.writeDouble(job.getCost() != null ? job.getCost() : 1);
+      out.writeLong(System.currentTimeMillis());
+      writeBytes(out, jobWriter.writeValueAsBytes(job));
+    } catch (IOException e) {
+      throw new IllegalStateException("Could not encode mention job", e);
+    }
+
+    // Counted before it is appended, so a team is never dropped from the index with a job queued
+    try {
+      store.addPending(INDEX_KEY, team, 1);
+    } catch (Exception e) {
+      logger.warn("Could not schedule mention {}: {}", job.getEventId(), e.toString());
+      return false;
+    }
+    try {
+      store.appendInbox(queueKey(team), bytes.toByteArray());
+      return true;
+    } catch (Exception e) {
+      logger.warn("Could not schedule mention {}: {}", job.getEventId(), e.toString());
+      try {
+        store.addPending(INDEX_KEY, team, -1);
+      } catch (Exception countError) {
+        logger.warn("Could not uncount mention {}: {}", job.getEventId(), countError.toString());
+      }
+      return false;
+    }
+  }
+
+  @Override
+  public Scheduled next() {
+    MentionQueueStore.IndexItem index = store.getIndex(INDEX_KEY);
+    if (index == null) {
+      return null;
+    }
+
+    double virtualTime = index.getVirtualTime();
+    Map<String, Double> finish = index.getFinish();
+    List<String> teams = new ArrayList<>();
+    long queued = 0;
+    for (Map.Entry<String, Long> team : index.getPending().entrySet()) {
+      if (team.getValue() > 0) {
+        teams.add(team.getKey());
+        queued += team.getValue();
+      }
+    }
+    Collections.shuffle(teams); // So that ties don't always favour the same team
+    teams.sort(
+        Comparator.comparingDouble(team -> Math.max(virtualTime, finish.getOrDefault(team, 0.0))));
+
+    for (String team : teams) {
+      WeightedFairQueue.Entry<byte[]> entry = take(team);
+      if (entry == null) {
+        reset(team, index.getPending().get(team));
+        continue;
+      }
+      emptyTeams.remove(team);
+
+      MentionJob job = readJob(entry.getItem());
+      double start = Math.max(virtualTime, finish.getOrDefault(team, 0.0));
+      try {
+        long left =
+            store.recordTake(
+                INDEX_KEY, team, start, start + (job.getCost() != null ? job.getCost() : 1));
+        if (left <= 0) {
+          store.removeTeam(INDEX_KEY, team);
+        }
+      } catch (Exception e) {
+        // The job is taken either way; the team's count stays one too high
+        logger.warn("Could not record mention taken for team {}: {}", team, e.toString());
+      }
+      return new Scheduled(
+          job,
+          System.currentTimeMillis() - entry.getQueuedAtMillis(),
+          (int) Math.max(0, queued - 1));
+    }
+    return null;
+  }
+
+  /**
+   * Drop a team from the index whose queue is empty though it is counted. That is normal for a
+   * moment, while a job counted by submit is being appended, but the count is left too high for
+   * good when recording a take or undoing a failed submit failed, and the team would be tried on
+   * every take from then on.
+   */
+  private void reset(String team, long pending) {
+    long now = System.currentTimeMillis();
+    long[] seen =
+        emptyTeams.compute(
+            team,
+            (key, previous) ->
+                previous != null && previous[0] == pending ? previous : new long[] {pending, now});
+    if (now - seen[1] < RESET_AFTER_MILLIS) {
+      return;
+    }
+
+    emptyTeams.remove(team);
+    if (store.resetTeam(INDEX_KEY, team, pending)) {
+      logger.warn("Reset the count of {} mentions of team {} with none queued", pending, team);
+    }
+  }
+
+  /** Take the next job from a team's queue, or null when it has none */
+  private WeightedFairQueue.Entry<byte[]> take(String team) {
+    String queueKey = queueKey(team);
+    for (int attempt = 1; attempt <= MAX_ATTEMPTS; attempt++) {
+      MentionQueueStore.QueueItem stored = store.getQueue(queueKey);
+      if (stored == null) {
+        return null;
+      }
+
+      List<byte[]> inbox = stored.getInbox();
+      int moves = Math.min(inbox.size(), MAX_INBOX_MOVES);
+      WeightedFairQueue<byte[]> queue;
+      WeightedFairQueue.Entry<byte[]> entry;
+      byte[] encoded;
+      while (true) {
+        queue = stored.getState() != null ? decode(stored.getState()) : new WeightedFairQueue<>();
+        for (int i = 0; i < moves; i++) {
+          addInboxEntry(queue, inbox.get(i));
+        }
+        entry = queue.poll();
+        if (entry == null && moves == 0) {
+          return null;
+        }
+        encoded = encode(queue);
+        if (encoded.length <= MAX_STORED_BYTES || moves == 0) {
+          break;
+        }
+        // The queue is full: leave more of the inbox where it is until jobs are taken
+        moves /= 2;
+      }
+
+      if (store.putQueue(
+          queueKey, UUID.randomUUID().toString(), encoded, stored.getGeneration(), moves)) {
+        return entry;
+      }
+
+      try {
+        // Full jitter, so containers that conflicted don't retry in step
+        long backoff = Math.min(MAX_BACKOFF_MILLIS, BASE_BACKOFF_MILLIS << attempt);
+        Thread.sleep(ThreadLocalRandom.current().nextLong(1, backoff + 1));
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        break;
+      }
+    }
+    throw new IllegalStateException("Scheduler queue of team " + team + " kept changing, gave up");
+  }
+
+  private static String queueKey(String team) {
+    return QUEUE_KEY_PREFIX + team;
+  }
+
+  private void addInboxEntry(WeightedFairQueue<byte[]> queue, byte[] encoded) {
+    try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(encoded))) {
+      String team = in.readUTF();
+      String channel = in.readUTF();
+      double cost = in.readDouble();
+      long queuedAt = in.readLong();
+      queue.add(team, channel, cost, readBytes(in), queuedAt);
+    } catch (IOException e) {
+      logger.warn("Dropping unreadable scheduler inbox entry: {}", e.toString());
+    }
+  }
+
+  private byte[] encode(WeightedFairQueue<byte[]> queue) {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(bytes))) {
+      out.writeByte(FORMAT_VERSION);
+      out.writeDouble(queue.getVirtualTime());
+      out.writeLong(queue.getSequence());
+
+      Map<String, Double> lastFinish = queue.getLastFinish();
+      out.writeInt(lastFinish.size());
+      for (Map.Entry<String, Double> flow : lastFinish.entrySet()) {
+        out.writeUTF(flow.getKey());
+        out.writeDouble(flow.getValue());
+      }
+
+      List<WeightedFairQueue.Entry<byte[]>> entries = queue.getEntries();
+      out.writeInt(entries.size());
+      for (WeightedFairQueue.Entry<byte[]> entry : entries) {
+        out.writeUTF(entry.getTeam());
+        out.writeUTF(entry.getChannel());
+        out.writeDouble(entry.getFinish());
+        out.writeLong(entry.getSequence());
+        out.writeLong(entry.getQueuedAtMillis());
+        writeBytes(out, entry.getItem());
+      }
+    } catch (IOException e) {
+      throw new IllegalStateException("Could not encode scheduler queue", e);
+    }
+    return bytes.toByteArray();
+  }
+
+  /** The stored queue, or an empty one when it was written in another format */
+  private WeightedFairQueue<byte[]> decode(byte[] encoded) {
+    try (DataInputStream in =
+        new DataInputStream(new InflaterInputStream(new ByteArrayInputStream(encoded)))) {
+      if (in.readByte() != FORMAT_VERSION) {
+        logger.warn("Dropping scheduler queue stored in another format");
+        return new WeightedFairQueue<>();
+      }
+      double virtualTime = in.readDouble();
+      long sequence = in.readLong();
+
+      int flows = in.readInt();
+      Map<String, Double> lastFinish = new HashMap<>();
+      for (int i = 0; i < flows; i++) {
+        lastFinish.put(in.readUTF(), in.readDouble());
+      }
+
+      int count = in.readInt();
+      List<WeightedFairQueue.Entry<byte[]>> entries = new ArrayList<>(count);
+      for (int i = 0; i < count; i++) {
+        String team = in.readUTF();
+        String channel = in.readUTF();
+        double finish = in.readDouble();
+        long entrySequence = in.readLong();
+        long queuedAt = in.readLong();
+        entries.add(
+            new WeightedFairQueue.Entry<>(
+                team, channel, finish, entrySequence, queuedAt, readBytes(in)));
+      }
+      return WeightedFairQueue.restore(virtualTime, sequence, lastFinish, entries);
+    } catch (IOException e) {
+      throw new IllegalStateException("Could not read scheduler queue", e);
+    }
+  }
+
+  /** Jobs are kept as JSON while queued, and only the one taken is read */
+  private MentionJob readJob(byte[] encoded) {
+    try {
+      Map<String, Object> payload =
+          jobReader.readValue(new String(encoded, StandardCharsets.UTF_8));
+      return MentionJob.fromPayload(payload);
+    } catch (IOException e) {
+      throw new IllegalStateException("Could not read scheduled mention job", e);
+    }
+  }
+
+  private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  private static byte[] readBytes(DataInputStream in) throws IOException {
+    byte[] bytes = new byte[in.readInt()];
+    in.readFully(bytes);
+    return bytes;
+  }
+}
@@ -0,0 +1,190 @@
+package org.bvnk.slackbot.service;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.bvnk.slackbot.config.AppConfig;
+import org.bvnk.slackbot.config.AwsClientFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import software.amazon.awssdk.core.SdkBytes;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.*;
+
+/**
+ * The summary search index as {@code search#} items of the DynamoDB table: a manifest item with the
+ * generation, chunk count and list of recent summaries, and one item per snapshot chunk.
+ */
+class DynamoSearchIndexStore implements SearchIndexStore {
+  private static final Logger logger = LoggerFactory.getLogger(DynamoSearchIndexStore.class);
+  private static final int BATCH_GET_LIMIT = 100;
+  private static final int BATCH_MAX_ROUNDS = 3;
+
+  private final DynamoDbClient dynamoDbClient;
+  private final String tableName;
+
+  DynamoSearchIndexStore() {
+    this.tableName = AppConfig.getInstance().getDynamoTableName();
+    this.dynamoDbClient = AwsClientFactory.dynamoDb();
+  }
+
+  @Override
+  public void appendRecent(String manifestKey, List<byte[]> documents) {
+    List<AttributeValue> entries = new ArrayList<>(documents.size());
+    for (byte[] document : documents) {
+      entries.add(AttributeValue.builder().b(SdkBytes.fromByteArray(document)).build());
+    }
+
+    dynamoDbClient.updateItem(
+        UpdateItemRequest.builder()
+            .tableName(tableName)
+            .key(Map.of("event_id", AttributeValue.builder().s(manifestKey).build()))
+            .updateExpression("SET recent = list_append(if_not_exists(recent, :empty), :entries)")
+            .expressionAttributeValues(
+                Map.of(
+                    ":empty", AttributeValue.builder().l(List.of()).build(),
+                    ":entries", AttributeValue.builder().l(entries).build()))
+            .build());
+  }
+
+  @Override
+  public ManifestItem getManifest(String manifestKey) {
+    GetItemResponse response =
+        dynamoDbClient.getItem(
+            GetItemRequest.builder()
+                .tableName(tableName)
+                .key(Map.of("event_id", AttributeValue.builder().s(manifestKey).build()))
+                .build());
+
+    if (!response.hasItem()) {
+      return null;
+    }
+    Map<String, AttributeValue> item = response.item();
+    List<byte[]> recent = new ArrayList<>();
+    if (item.containsKey("recent")) {
+      item.get("recent").l().forEach(entry -> recent.add(entry.b().asByteArray()));
+    }
+    return new ManifestItem(
+        item.containsKey("generation") ? item.get("generation").s() : null,
+        (int) longValue(item, "chunks"),
+        recent);
+  }
+
+  @Override
+  public List<byte[]> getChunks(List<String> chunkKeys) {
+    Map<String, byte[]> chunks = new HashMap<>();
+    for (int start = 0; start < chunkKeys.size(); start += BATCH_GET_LIMIT) {
+      List<Map<String, AttributeValue>> keys = new ArrayList<>();
+      for (String chunkKey :
+          chunkKeys.subList(start, Math.min(start + BATCH_GET_LIMIT, chunkKeys.size()))) {
+        keys.add(Map.of("event_id", AttributeValue.builder().s(chunkKey).build()));
+      }
+
+      // Snapshots are only named in the manifest once all their chunks are written
+      Map<String, KeysAndAttributes> request =
+          Map.of(tableName, KeysAndAttributes.builder().keys(keys).consistentRead(true).build());
+      for (int round = 0; round < BATCH_MAX_ROUNDS && !request.isEmpty(); round++) {
+        BatchGetItemResponse response =
+            dynamoDbClient.batchGetItem(
+                BatchGetItemRequest.builder().requestItems(request).build());
+        for (Map<String, AttributeValue> item :
+            response.responses().getOrDefault(tableName, List.of())) {
+          if (item.containsKey("data")) {
+            chunks.put(item.get("event_id").s(), item.get("data").b().asByteArray());
+          }
+        }
+        request = response.unprocessedKeys();
+      }
+    }
+
+    List<byte[]> ordered = new ArrayList<>(chunkKeys.size());
+    for (String chunkKey : chunkKeys) {
+      byte[] chunk = chunks.get(chunkKey);
+      if (chunk == null) {
+        throw new IllegalStateException("Search index chunk " + chunkKey + " is missing");
+      }
+      ordered.add(chunk);
+    }
+    return ordered;
+  }
+
+  @Override
+  public void putChunk(String chunkKey, byte[] data) {
+    dynamoDbClient.putItem(
+        PutItemRequest.builder()
+            .tableName(tableName)
+            .item(
+                Map.of(
+                    "event_id", AttributeValue.builder().s(chunkKey).build(),
+                    "data", AttributeValue.builder().b(SdkBytes.fromByteArray(data)).build()))
+            .build());
+  }
+
+  @Override
+  public boolean putManifest(
+      String manifestKey,
+      String generation,
+      int chunks,
+      String expectedGeneration,
+      int recentEntries) {
+    Map<String, AttributeValue> values = new HashMap<>();
+    values.put(":new_generation", AttributeValue.builder().s(generation).build());
+    values.put(":chunks", numberValue(chunks));
+
+    StringBuilder expression =
+        new StringBuilder("SET generation = :new_generation, chunks = :chunks");
+    for (int i = 0; i < recentEntries; i++) {
+      expression.append(i == 0 ? " REMOVE " : ", ").append("recent[").append(i).append("]");
+    }
+
+    UpdateItemRequest.Builder request =
+        UpdateItemRequest.builder()
+            .tableName(tableName)
+            .key(Map.of("event_id", AttributeValue.builder().s(manifestKey).build()))
+            .updateExpression(expression.toString());
+    if (expectedGeneration == null) {
+      request.conditionExpression("attribute_not_exists(generation)");
+    } else {
+      request.conditionExpression("generation = :generation");
+      values.put(":generation", AttributeValue.builder().s(expectedGeneration).build());
+    }
+
+    try {
+      dynamoDbClient.updateItem(request.expressionAttributeValues(values).build());
+      return true;
+    } catch (ConditionalCheckFailedException e) {
+      return false;
+    }
+  }
+
+  @Override
+  public void expireChunks(List<String> chunkKeys, long ttlSeconds) {
+    long ttl = Instant.now().getEpochSecond() + ttlSeconds;
+    for (String chunkKey : chunkKeys) {
+      try {
+        dynamoDbClient.updateItem(
+            UpdateItemRequest.builder()
+                .tableName(tableName)
+                .key(Map.of("event_id", AttributeValue.builder().s(chunkKey).build()))
+                .updateExpression("SET #ttl = :ttl")
+                .expressionAttributeNames(Map.of("#ttl", "ttl"))
+                .expressionAttributeValues(Map.of(":ttl", numberValue(ttl)))
+                .build());
+      } catch (Exception e) {
+        logger.warn("Could not expire search index chunk {}: {}", chunkKey, e.toString());
+      }
+    }
+  }
+
+  private static AttributeValue numberValue(long value) {
+    return AttributeValue.builder().n(String.valueOf(value)).build();
+  }
+
+  private static long longValue(Map<String, AttributeValue> item, String name) {
+    return item.containsKey(name) && item.get(name).n() != null
+        ? Long.parseLong(item.get(name).n())
+        : 0;
+  }
+}
@@ -1,34 +1,62 @@
 package org.bvnk.slackbot.service;
 
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import lombok.Value;
 import org.bvnk.slackbot.config.AppConfig;
+import org.bvnk.slackbot.config.AwsClientFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.core.SdkBytes;
 import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
 import software.amazon.awssdk.services.dynamodb.model.*;
 
-public class DynamoService {
+public class DynamoService implements EventLifecycleStore {
   private static final Logger logger = LoggerFactory.getLogger(DynamoService.class);
   private static final int TTL_SECONDS = 300; // 5 minutes
+  private static final int PERMIT_WINDOW_SECONDS = 60;
+  private static final int WATERMARK_TTL_SECONDS = 30 * 24 * 3600; // 30 days
+  private static final int BATCH_GET_LIMIT = 100;
+  private static final int BATCH_WRITE_LIMIT = 25;
+  private static final int BATCH_MAX_ROUNDS = 3;
+  private static final int OUTCOME_WRITE_CONCURRENCY = 8;
+
+  // Shared by all instances, started on the first flush with more than one outcome
+  private static ExecutorService outcomeWriters;
 
   private final DynamoDbClient dynamoDbClient;
   private final String tableName;
+  private final boolean outcomeWritesEnabled;
+  private final long threadCacheTtlSeconds;
+  private final Queue<Outcome> pendingOutcomes = new ConcurrentLinkedQueue<>();
 
   public DynamoService() {
     AppConfig config = AppConfig.getInstance();
     this.tableName = config.getDynamoTableName();
-    this.dynamoDbClient = DynamoDbClient.builder().region(Region.of(config.getAwsRegion())).build();
+    this.outcomeWritesEnabled = config.isEventOutcomeWritesEnabled();
+    this.threadCacheTtlSeconds = config.getThreadCacheTtlHours() * 3600L;
+    this.dynamoDbClient = AwsClientFactory.dynamoDb();
   }
 
-  public boolean checkAndSetEventProcessed(String eventId) {
+  @Override
+  public boolean markReceived(String eventId) {
     if (eventId == null || eventId.isEmpty()) {
       logger.warn("Event ID is null or empty");
       return false;
     }
 
+    String claim = UUID.randomUUID().toString();
     try {
       long now = Instant.now().getEpochSecond();
       long ttl = now + TTL_SECONDS;
@@ -38,19 +66,28 @@ public class DynamoService {
       item.put("processed_at", AttributeValue.builder().n(String.valueOf(now)).build());
       item.put("ttl", AttributeValue.builder().n(String.valueOf(ttl)).build());
       item.put("status", AttributeValue.builder().s("processing").build());
+      item.put("claim", AttributeValue.builder().s(claim).build());
 
       PutItemRequest request =
           PutItemRequest.builder()
               .tableName(tableName)
               .item(item)
               .conditionExpression("attribute_not_exists(event_id)")
+              .returnValuesOnConditionCheckFailure(ReturnValuesOnConditionCheckFailure.ALL_OLD)
               .build();
 
       dynamoDbClient.putItem(request);
-      logger.info("Successfully marked event as processed: {}", eventId);
+      logger.debug("Successfully marked event as processed: {}", eventId);
       return true;
 
     } catch (ConditionalCheckFailedException e) {
+      // An attempt that timed out may still have written the item before the SDK retried it, in
+      // which case the item carries our own claim and the event is ours to process
+      AttributeValue existingClaim = e.hasItem() ? e.item().get("claim") : null;
+      if (existingClaim != null && claim.equals(existingClaim.s())) {
+        logger.info("Event marked as processed by an earlier attempt: {}", eventId);
+        return true;
+      }
       logger.info("Event already processed: {}", eventId);
       return false;
     } catch (Exception e) {
@@ -59,31 +96,648 @@ public class DynamoService {
     }
   }
 
-  public void updateEventStatus(String eventId, String status) {
+  @Override
+  public void recordOutcome(String eventId, String status, Map<String, Object> fields) {
+    if (!outcomeWritesEnabled || eventId == null || eventId.isEmpty()) {
+      return;
+    }
+    pendingOutcomes.add(new Outcome(eventId, status, Instant.now().getEpochSecond(), fields));
+  }
+
+  /**
+   * Write the outcomes recorded since the last flush, each as an expression update of its ingress
+   * item so that the claim and the other attributes written at ingress are kept. Several outcomes
+   * are updated in parallel, a few at a time.
+   */
+  @Override
+  public void flush() {
+    List<Outcome> outcomes = new ArrayList<>();
+    for (Outcome outcome; (outcome = pendingOutcomes.poll()) != null; ) {
+      outcomes.add(outcome);
+    }
+
+    if (outcomes.size() == 1) {
+      try {
+        updateOutcome(outcomes.get(0));
+      } catch (Exception e) {
+        logger.error("Error writing event outcome", e);
+      }
+    } else if (outcomes.size() > 1) {
+      updateOutcomes(outcomes);
+    }
+  }
+
+  private void updateOutcomes(List<Outcome> outcomes) {
+    List<Callable<Void>> tasks = new ArrayList<>();
+    for (Outcome outcome : outcomes) {
+      tasks.add(
+          () -> {
+            updateOutcome(outcome);
+            return null;
+          });
+    }
+
+    int failed = 0;
     try {
-      Map<String, AttributeValue> key = new HashMap<>();
-      key.put("event_id", AttributeValue.builder().s(eventId).build());
+      for (Future<Void> future : outcomeWriters().invokeAll(tasks)) {
+        try {
+          future.get();
+        } catch (ExecutionException e) {
+          failed++;
+          logger.warn("Error writing event outcome: {}", e.getCause().toString());
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      logger.error("Interrupted writing {} event outcomes", outcomes.size());
+      return;
+    }
+    logger.info("Updated status of {} events, {} failed", outcomes.size(), failed);
+  }
 
-      Map<String, AttributeValueUpdate> updates = new HashMap<>();
-      updates.put(
-          "status",
-          AttributeValueUpdate.builder()
-              .value(AttributeValue.builder().s(status).build())
-              .action(AttributeAction.PUT)
-              .build());
+  private static ExecutorService outcomeWriters() {
+    synchronized (DynamoService.class) {
+      if (outcomeWriters == null) {
+        outcomeWriters =
+            Executors.newFixedThreadPool(
+                OUTCOME_WRITE_CONCURRENCY,
+                runnable -> {
+                  Thread thread = new Thread(runnable, "outcome-write");
+                  thread.setDaemon(true);
+                  return thread;
+                });
+      }
+      return outcomeWriters;
+    }
+  }
+
+  private void updateOutcome(Outcome outcome) {
+    Map<String, String> names = new HashMap<>();
+    Map<String, AttributeValue> values = new HashMap<>();
+    StringBuilder expression =
+        new StringBuilder("SET #status = :status, completed_at = :completed, #ttl = :ttl");
+    names.put("#status", "status");
+    names.put("#ttl", "ttl");
+    values.put(":status", AttributeValue.builder().s(outcome.getStatus()).build());
+    values.put(":completed", numberValue(outcome.getCompletedAt()));
+    values.put(":ttl", numberValue(outcome.getCompletedAt() + TTL_SECONDS));
+
+    int index = 0;
+    for (Map.Entry<String, Object> field : outcome.getFields().entrySet()) {
+      expression.append(", #f").append(index).append(" = :f").append(index);
+      names.put("#f" + index, field.getKey());
+      values.put(":f" + index, attributeValue(field.getValue()));
+      index++;
+    }
+
+    dynamoDbClient.updateItem(
+        UpdateItemRequest.builder()
+            .tableName(tableName)
+            .key(Map.of("event_id", AttributeValue.builder().s(outcome.getEventId()).build()))
+            .updateExpression(expression.toString())
+            .expressionAttributeNames(names)
+            .expressionAttributeValues(values)
+            .build());
+    logger.debug("Updated event status: {} -> {}", outcome.getEventId(), outcome.getStatus());
+  }
+
+  /**
+   * Take one permit from a counter shared by all containers, in fixed one-minute windows. Returns
+   * false when the current window is used up. Errors fail open so that DynamoDB problems don't
+   * block every request.
+   */
+  public boolean tryAcquireWindowPermit(String counterName, int limit) {
+    try {
+      UpdateItemRequest request =
+          UpdateItemRequest.builder()
+              .tableName(tableName)
+              .key(windowKey(counterName))
+              .updateExpression("ADD permits :one SET #ttl = if_not_exists(#ttl, :ttl)")
+              .conditionExpression("attribute_not_exists(permits) OR permits < :limit")
+              .expressionAttributeNames(Map.of("#ttl", "ttl"))
+              .expressionAttributeValues(
+                  Map.of(
+                      ":one", AttributeValue.builder().n("1").build(),
+                      ":limit", AttributeValue.builder().n(String.valueOf(limit)).build(),
+                      ":ttl", AttributeValue.builder().n(String.valueOf(windowTtl())).build()))
+              .build();
+
+      dynamoDbClient.updateItem(request);
+      return true;
+
+    } catch (ConditionalCheckFailedException e) {
+      logger.info("Permit window for {} is exhausted", counterName);
+      return false;
+    } catch (Exception e) {
+      logger.error("Error acquiring permit for {}, allowing request", counterName, e);
+      return true;
+    }
+  }
 
+  /** Use up the rest of the current window, so every container backs off until the next one */
+  public void exhaustWindowPermits(String counterName, int limit) {
+    try {
       UpdateItemRequest request =
           UpdateItemRequest.builder()
               .tableName(tableName)
-              .key(key)
-              .attributeUpdates(updates)
+              .key(windowKey(counterName))
+              .updateExpression("SET permits = :limit, #ttl = :ttl")
+              .expressionAttributeNames(Map.of("#ttl", "ttl"))
+              .expressionAttributeValues(
+                  Map.of(
+                      ":limit", AttributeValue.builder().n(String.valueOf(limit)).build(),
+                      ":ttl", AttributeValue.builder().n(String.valueOf(windowTtl())).build()))
               .build();
 
       dynamoDbClient.updateItem(request);
-      logger.info("Updated event status: {} -> {}", eventId, status);
+      logger.info("Exhausted permit window for {}", counterName);
+
+    } catch (Exception e) {
+      logger.error("Error exhausting permit window for {}", counterName, e);
+    }
+  }
 
+  /**
+   * Get the last reply timestamp recorded for each of the given keys, in batches. Keys without a
+   * watermark are left out of the result. Errors return what was read so far, so the caller just
+   * does more work than needed.
+   */
+  public Map<String, String> getWatermarks(List<String> watermarkKeys) {
+    Map<String, String> watermarks = new HashMap<>();
+
+    try {
+      for (int start = 0; start < watermarkKeys.size(); start += BATCH_GET_LIMIT) {
+        List<Map<String, AttributeValue>> keys = new ArrayList<>();
+        for (String watermarkKey :
+            watermarkKeys.subList(start, Math.min(start + BATCH_GET_LIMIT, watermarkKeys.size()))) {
+          keys.add(Map.of("event_id", AttributeValue.builder().s(watermarkKey).build()));
+        }
+
+        Map<String, KeysAndAttributes> request =
+            Map.of(
+                tableName,
+                KeysAndAttributes.builder()
+                    .keys(keys)
+                    .projectionExpression("event_id, last_ts")
+                    .build());
+
+        for (int round = 0; round < BATCH_MAX_ROUNDS && !request.isEmpty(); round++) {
+          BatchGetItemResponse response =
+              dynamoDbClient.batchGetItem(
+                  BatchGetItemRequest.builder().requestItems(request).build());
+
+          for (Map<String, AttributeValue> item :
+              response.responses().getOrDefault(tableName, List.of())) {
+            if (item.containsKey("last_ts")) {
+              watermarks.put(item.get("event_id").s(), item.get("last_ts").s());
+            }
+          }
+          request = response.unprocessedKeys();
+        }
+      }
     } catch (Exception e) {
-      logger.error("Error updating event status", e);
+      logger.error("Error reading watermarks", e);
     }
+
+    return watermarks;
+  }
+
+  /** Record the last reply timestamp for each key, in batches */
+  public void putWatermarks(Map<String, String> watermarks) {
+    long ttl = Instant.now().getEpochSecond() + WATERMARK_TTL_SECONDS;
+    List<WriteRequest> writes = new ArrayList<>();
+    for (Map.Entry<String, String> entry : watermarks.entrySet()) {
+      Map<String, AttributeValue> item = new HashMap<>();
+      item.put("event_id", AttributeValue.builder().s(entry.getKey()).build());
+      item.put("last_ts", AttributeValue.builder().s(entry.getValue()).build());
+      item.put("ttl", AttributeValue.builder().n(String.valueOf(ttl)).build());
+      writes.add(
+          WriteRequest.builder().putRequest(PutRequest.builder().item(item).build()).build());
+    }
+
+    try {
+      batchWrite(writes);
+      logger.info("Stored {} watermarks", writes.size());
+    } catch (Exception e) {
+      logger.error("Error storing watermarks", e);
+    }
+  }
+
+  /** Write items in batches of the BatchWriteItem limit, retrying unprocessed items a few times */
+  private void batchWrite(List<WriteRequest> writes) {
+    for (int start = 0; start < writes.size(); start += BATCH_WRITE_LIMIT) {
+      Map<String, List<WriteRequest>> request =
+          Map.of(
+              tableName, writes.subList(start, Math.min(start + BATCH_WRITE_LIMIT, writes.size())));
+
+      for (int round = 0; round < BATCH_MAX_ROUNDS && !request.isEmpty(); round++) {
+        request =
+            dynamoDbClient
+                .batchWriteItem(BatchWriteItemRequest.builder().requestItems(request).build())
+                .unprocessedItems();
+      }
+      if (!request.isEmpty()) {
+        logger.warn("Gave up writing {} items", request.get(tableName).size());
+      }
+    }
+  }
+
+  private static AttributeValue attributeValue(Object value) {
+    return value instanceof Number number
+        ? AttributeValue.builder().n(number.toString()).build()
+        : AttributeValue.builder().s(String.valueOf(value)).build();
+  }
+
+  private static AttributeValue numberValue(long value) {
+    return AttributeValue.builder().n(String.valueOf(value)).build();
+  }
+
+  /**
+   * Get the bot token stored for a workspace, or null when there is none. Tokens are stored as
+   * {@code team#<team id>} items with a {@code bot_token} attribute. Errors reading the table are
+   * thrown rather than returned as null, so that callers don't take a failed read for a workspace
+   * without a token.
+   */
+  public String getTeamBotToken(String teamId) {
+    GetItemResponse response =
+        dynamoDbClient.getItem(
+            GetItemRequest.builder()
+                .tableName(tableName)
+                .key(Map.of("event_id", AttributeValue.builder().s("team#" + teamId).build()))
+                .projectionExpression("bot_token")
+                .build());
+
+    if (response.hasItem() && response.item().containsKey("bot_token")) {
+      return response.item().get("bot_token").s();
+    }
+    return null;
+  }
+
+  /** The cached thread stored under the key, or null when there is none or it can't be read */
+  public ThreadCacheItem getThreadCache(String cacheKey) {
+    try {
+      GetItemResponse response =
+          dynamoDbClient.getItem(
+              GetItemRequest.builder()
+                  .tableName(tableName)
+                  .key(Map.of("event_id", AttributeValue.builder().s(cacheKey).build()))
+                  .projectionExpression("generation, last_ts, messages")
+                  .build());
+
+      Map<String, AttributeValue> item = response.item();
+      if (response.hasItem() && item.containsKey("generation") && item.containsKey("messages")) {
+        return new ThreadCacheItem(
+            item.get("generation").s(),
+            item.get("last_ts").s(),
+            item.get("messages").b().asByteArray());
+      }
+    } catch (Exception e) {
+      logger.error("Error reading cached thread {}", cacheKey, e);
+    }
+    return null;
+  }
+
+  /** Only the generation of a cached thread, a much smaller read than the thread itself */
+  public String getThreadCacheGeneration(String cacheKey) {
+    try {
+      GetItemResponse response =
+          dynamoDbClient.getItem(
+              GetItemRequest.builder()
+                  .tableName(tableName)
+                  .key(Map.of("event_id", AttributeValue.builder().s(cacheKey).build()))
+                  .projectionExpression("generation")
+                  .build());
+
+      if (response.hasItem() && response.item().containsKey("generation")) {
+        return response.item().get("generation").s();
+      }
+    } catch (Exception e) {
+      logger.error("Error reading generation of cached thread {}", cacheKey, e);
+    }
+    return null;
+  }
+
+  /**
+   * Store a cached thread, provided the stored one still has the given generation, or that there is
+   * none when it is null. Returns false when another writer got there first or the write failed.
+   */
+  public boolean putThreadCache(
+      String cacheKey, ThreadCacheItem thread, String expectedGeneration) {
+    long ttl = Instant.now().getEpochSecond() + threadCacheTtlSeconds;
+    Map<String, AttributeValue> item = new HashMap<>();
+    item.put("event_id", AttributeValue.builder().s(cacheKey).build());
+    item.put("generation", AttributeValue.builder().s(thread.getGeneration()).build());
+    item.put("last_ts", AttributeValue.builder().s(thread.getLastTs()).build());
+    item.put(
+        "messages",
+        AttributeValue.builder().b(SdkBytes.fromByteArray(thread.getMessages())).build());
+    item.put("ttl", numberValue(ttl));
+
+    PutItemRequest.Builder request = PutItemRequest.builder().tableName(tableName).item(item);
+    if (expectedGeneration == null) {
+      request.conditionExpression("attribute_not_exists(event_id)");
+    } else {
+      request
+          .conditionExpression("generation = :generation")
+          .expressionAttributeValues(
+              Map.of(":generation", AttributeValue.builder().s(expectedGeneration).build()));
+    }
+
+    try {
+      dynamoDbClient.putItem(request.build());
+      return true;
+    } catch (ConditionalCheckFailedException e) {
+      logger.info("Cached thread {} was changed by another writer", cacheKey);
+    } catch (Exception e) {
+      logger.error("Error storing cached thread {}", cacheKey, e);
+    }
+    return false;
+  }
+
+  public void deleteThreadCache(String cacheKey) {
+    try {
+      dynamoDbClient.deleteItem(
+          DeleteItemRequest.builder()
+              .tableName(tableName)
+              .key(Map.of("event_id", AttributeValue.builder().s(cacheKey).build()))
+              .build());
+    } catch (Exception e) {
+      logger.error("Error deleting cached thread {}", cacheKey, e);
+    }
+  }
+
+  /**
+   * Count a new message in a thread, returning the thread's activity including it. Messages are
+   * counted in total and in a window that starts with the first message after the previous one
+   * ended, see {@link #restartThreadActivityWindow}. Returns null when the write fails.
+   */
+  public ThreadActivity recordThreadActivity(String activityKey, long nowMillis) {
+    try {
+      UpdateItemResponse response =
+          dynamoDbClient.updateItem(
+              UpdateItemRequest.builder()
+                  .tableName(tableName)
+                  .key(Map.of("event_id", AttributeValue.builder().s(activityKey).build()))
+                  .updateExpression(
+                      "ADD messages :one, window_messages :one SET last_message_ms = :now,"
+                          + " window_start_ms = if_not_exists(window_start_ms, :now), #ttl = :ttl")
+                  .expressionAttributeNames(Map.of("#ttl", "ttl"))
+                  .expressionAttributeValues(
+                      Map.of(
+                          ":one", numberValue(1),
+                          ":now", numberValue(nowMillis),
+                          ":ttl", numberValue(nowMillis / 1000 + threadCacheTtlSeconds)))
+                  .returnValues(ReturnValue.ALL_NEW)
+                  .build());
+      return threadActivity(response.attributes());
+    } catch (Exception e) {
+      logger.error("Error recording activity for {}", activityKey, e);
+      return null;
+    }
+  }
+
+  /**
+   * Start a new activity window holding just the latest message, unless another writer already
+   * restarted the window that started at {@code windowStartMillis}
+   */
+  public void restartThreadActivityWindow(
+      String activityKey, long windowStartMillis, long nowMillis) {
+    try {
+      dynamoDbClient.updateItem(
+          UpdateItemRequest.builder()
+              .tableName(tableName)
+              .key(Map.of("event_id", AttributeValue.builder().s(activityKey).build()))
+              .updateExpression("SET window_start_ms = :now, window_messages = :one")
+              .conditionExpression("window_start_ms = :start")
+              .expressionAttributeValues(
+                  Map.of(
+                      ":one", numberValue(1),
+                      ":now", numberValue(nowMillis),
+                      ":start", numberValue(windowStartMillis)))
+              .build());
+    } catch (ConditionalCheckFailedException e) {
+      // Another message restarted it first
+    } catch (Exception e) {
+      logger.error("Error restarting activity window for {}", activityKey, e);
+    }
+  }
+
+  /** The activity of a thread, or null when none was recorded or it can't be read */
+  public ThreadActivity getThreadActivity(String activityKey) {
+    try {
+      GetItemResponse response =
+          dynamoDbClient.getItem(
+              GetItemRequest.builder()
+                  .tableName(tableName)
+                  .key(Map.of("event_id", AttributeValue.builder().s(activityKey).build()))
+                  .build());
+      return response.hasItem() ? threadActivity(response.item()) : null;
+    } catch (Exception e) {
+      logger.error("Error reading activity for {}", activityKey, e);
+      return null;
+    }
+  }
+
+  /**
+   * Mark a thread as having a summary queued, so that only one job per thread is queued at a time.
+   * A mark older than {@code staleBeforeMillis} is taken over, in case its job was lost. Returns
+   * false when another job is queued, or when the write fails.
+   */
+  public boolean claimThreadSummary(String activityKey, long nowMillis, long staleBeforeMillis) {
+    try {
+      dynamoDbClient.updateItem(
+          UpdateItemRequest.builder()
+              .tableName(tableName)
+              .key(Map.of("event_id", AttributeValue.builder().s(activityKey).build()))
+              .updateExpression("SET summary_queued_ms = :now")
+              .conditionExpression(
+                  "attribute_exists(event_id)"
+                      + " AND (attribute_not_exists(summary_queued_ms) OR summary_queued_ms < :stale)")
+              .expressionAttributeValues(
+                  Map.of(":now", numberValue(nowMillis), ":stale", numberValue(staleBeforeMillis)))
+              .build());
+      return true;
+    } catch (ConditionalCheckFailedException e) {
+      return false;
+    } catch (Exception e) {
+      logger.error("Error queueing summary for {}", activityKey, e);
+      return false;
+    }
+  }
+
+  /** Clear the mark set by {@link #claimThreadSummary}, returning the thread's activity */
+  public ThreadActivity releaseThreadSummary(String activityKey) {
+    try {
+      UpdateItemResponse response =
+          dynamoDbClient.updateItem(
+              UpdateItemRequest.builder()
+                  .tableName(tableName)
+                  .key(Map.of("event_id", AttributeValue.builder().s(activityKey).build()))
+                  .updateExpression("REMOVE summary_queued_ms")
+                  .conditionExpression("attribute_exists(event_id)")
+                  .returnValues(ReturnValue.ALL_NEW)
+                  .build());
+      return threadActivity(response.attributes());
+    } catch (Exception e) {
+      logger.error("Error releasing summary of {}", activityKey, e);
+      return null;
+    }
+  }
+
+  /** Add an entry to the set of threads waiting for a summary, returning false when it fails */
+  public boolean addPendingSummary(String setKey, String entry) {
+    try {
+      dynamoDbClient.updateItem(
+          UpdateItemRequest.builder()
+              .tableName(tableName)
+              .key(Map.of("event_id", AttributeValue.builder().s(setKey).build()))
+              .updateExpression("ADD pending :entry")
+              .expressionAttributeValues(
+                  Map.of(":entry", AttributeValue.builder().ss(entry).build()))
+              .build());
+      return true;
+    } catch (Exception e) {
+      logger.error("Error adding {} to {}", entry, setKey, e);
+      return false;
+    }
+  }
+
+  /** The entries of a set of threads waiting for a summary, empty when it can't be read */
+  public List<String> getPendingSummaries(String setKey) {
+    try {
+      GetItemResponse response =
+          dynamoDbClient.getItem(
+              GetItemRequest.builder()
+                  .tableName(tableName)
+                  .key(Map.of("event_id", AttributeValue.builder().s(setKey).build()))
+                  .consistentRead(true)
+                  .build());
+      if (response.hasItem() && response.item().containsKey("pending")) {
+        return response.item().get("pending").ss();
+      }
+    } catch (Exception e) {
+      logger.error("Error reading {}", setKey, e);
+    }
+    return List.of();
+  }
+
+  /**
+   * Remove an entry from a set of threads waiting for a summary. Returns false when another caller
+   * removed it first, or when the write fails, so that each entry is taken once.
+   */
+  public boolean takePendingSummary(String setKey, String entry) {
+    try {
+      dynamoDbClient.updateItem(
+          UpdateItemRequest.builder()
+              .tableName(tableName)
+              .key(Map.of("event_id", AttributeValue.builder().s(setKey).build()))
+              .updateExpression("DELETE pending :entries")
+              .conditionExpression("contains(pending, :entry)")
+              .expressionAttributeValues(
+                  Map.of(
+                      ":entries", AttributeValue.builder().ss(entry).build(),
+                      ":entry", AttributeValue.builder().s(entry).build()))
+              .build());
+      return true;
+    } catch (ConditionalCheckFailedException e) {
+      return false;
+    } catch (Exception e) {
+      logger.error("Error taking {} from {}", entry, setKey, e);
+      return false;
+    }
+  }
+
+  /** The summary stored under the key, or null when there is none or it can't be read */
+  public SummaryCacheItem getSummaryCache(String cacheKey) {
+    try {
+      GetItemResponse response =
+          dynamoDbClient.getItem(
+              GetItemRequest.builder()
+                  .tableName(tableName)
+                  .key(Map.of("event_id", AttributeValue.builder().s(cacheKey).build()))
+                  .projectionExpression("last_ts, summary")
+                  .build());
+
+      Map<String, AttributeValue> item = response.item();
+      if (response.hasItem() && item.containsKey("last_ts") && item.containsKey("summary")) {
+        return new SummaryCacheItem(item.get("last_ts").s(), item.get("summary").s());
+      }
+    } catch (Exception e) {
+      logger.error("Error reading cached summary {}", cacheKey, e);
+    }
+    return null;
+  }
+
+  public void putSummaryCache(String cacheKey, SummaryCacheItem summary) {
+    long ttl = Instant.now().getEpochSecond() + threadCacheTtlSeconds;
+    Map<String, AttributeValue> item = new HashMap<>();
+    item.put("event_id", AttributeValue.builder().s(cacheKey).build());
+    item.put("last_ts", AttributeValue.builder().s(summary.getLastTs()).build());
+    item.put("summary", AttributeValue.builder().s(summary.getSummary()).build());
+    item.put("ttl", numberValue(ttl));
+
+    try {
+      dynamoDbClient.putItem(PutItemRequest.builder().tableName(tableName).item(item).build());
+    } catch (Exception e) {
+      logger.error("Error storing cached summary {}", cacheKey, e);
+    }
+  }
+
+  private static ThreadActivity threadActivity(Map<String, AttributeValue> item) {
+    return new ThreadActivity(
+        longValue(item, "messages"),
+        longValue(item, "window_start_ms"),
+        longValue(item, "window_messages"),
+        longValue(item, "last_message_ms"),
+        longValue(item, "summary_queued_ms"));
+  }
+
+  private static long longValue(Map<String, AttributeValue> item, String name) {
+    return item.containsKey(name) && item.get(name).n() != null
+        ? Long.parseLong(item.get(name).n())
+        : 0;
+  }
+
+  private Map<String, AttributeValue> windowKey(String counterName) {
+    long now = Instant.now().getEpochSecond();
+    long windowStart = now - now % PERMIT_WINDOW_SECONDS;
+    return Map.of("event_id", AttributeValue.builder().s(counterName + "#" + windowStart).build());
+  }
+
+  private long windowTtl() {
+    return Instant.now().getEpochSecond() + PERMIT_WINDOW_SECONDS + TTL_SECONDS;
+  }
+
+  /** A thread cached by {@link ThreadCacheService}, with its messages compressed */
+  @Value
+  public static class ThreadCacheItem {
+    String generation;
+    String lastTs;
+    byte[] messages;
+  }
+
+  /** Message counts of a thread, kept to find threads worth summarizing before anyone asks */
+  @Value
+  public static class ThreadActivity {
+    long messages;
+    long windowStartMillis;
+    long windowMessages;
+    long lastMessageMillis;
+    long summaryQueuedMillis; // 0 when no summary is queued
+  }
+
+  /** A thread summary, with the timestamp of the last message it covers */
+  @Value
+  public static class SummaryCacheItem {
+    String lastTs;
+    String summary;
+  }
+
+  @Value
+  private static class Outcome {
+    String eventId;
+    String status;
+    long completedAt;
+    Map<String, Object> fields;
   }
 }
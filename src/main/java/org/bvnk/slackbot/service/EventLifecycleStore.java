@@ -0,0 +1,31 @@
+package org.bvnk.slackbot.service;
+
+import java.util.Map;
+import org.bvnk.slackbot.config.AppConfig;
+
+/**
+ * Lifecycle of a Slack event: marked as received once at ingress, which is what deduplicates
+ * Slack's retries, then given an outcome when processing ends. Outcomes may be buffered and are
+ * only guaranteed to be written after {@link #flush()}.
+ */
+public interface EventLifecycleStore {
+
+  /** Mark the event as received. Returns false when it was already received, i.e. a retry */
+  boolean markReceived(String eventId);
+
+  /**
+   * Record how processing of the event ended. Timing and metric fields are stored on the same write
+   * as the status; values should be numbers or strings.
+   */
+  void recordOutcome(String eventId, String status, Map<String, Object> fields);
+
+  /** Write any buffered outcomes */
+  void flush();
+
+  /** The store selected by EVENT_STORE: the DynamoDB table, or memory for local runs and tests */
+  static EventLifecycleStore fromConfig(DynamoService dynamoService) {
+    return "memory".equalsIgnoreCase(AppConfig.getInstance().getEventStore())
+        ? InMemoryEventLifecycleStore.getInstance()
+        : dynamoService;
+  }
+}
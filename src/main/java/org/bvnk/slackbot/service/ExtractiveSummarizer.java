@@ -0,0 +1,368 @@
+package org.bvnk.slackbot.service;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.IntStream;
+import org.bvnk.slackbot.config.AppConfig;
+import org.bvnk.slackbot.model.Command;
+import org.bvnk.slackbot.util.Bm25Index;
+
+/**
+ * Answers commands from the sentences of the thread itself, without a model. Key points and
+ * summaries are the sentences TextRank ranks highest: a graph of the thread's sentences, linked by
+ * the terms they share, ranked as PageRank ranks pages. Action items are sentences with commitment,
+ * request or deadline cues, assigned to the author or the user they mention. Free-form questions
+ * get the sentences BM25 ranks highest for the question.
+ *
+ * <p>Runs in well under a millisecond on short threads, so key points and action items of threads
+ * up to EXTRACTIVE_FAST_PATH_MAX_MESSAGES are answered this way instead of by Bedrock, and any
+ * command can fall back to it when Bedrock fails.
+ */
+public class ExtractiveSummarizer {
+  private static final double DAMPING = 0.85;
+  private static final int MAX_ITERATIONS = 30;
+  private static final double CONVERGENCE = 1e-4;
+  private static final int MAX_SENTENCES = 300; // the sentence graph grows with the square
+  private static final int MAX_ROOT_SENTENCES = 30;
+  private static final double ROOT_BOOST = 1.2;
+  private static final int MIN_TERMS = 3;
+  private static final double MAX_OVERLAP = 0.6; // Jaccard similarity of near-duplicates
+  private static final int MAX_ACTION_ITEMS = 10;
+  private static final int ACTION_ITEM_THRESHOLD = 2;
+
+  private static final Pattern SENTENCE_BREAK =
+      Pattern.compile("(?<=[.!?])\\s+(?=\\S)|\\s*\\n+\\s*");
+  private static final Pattern LIST_MARKER = Pattern.compile("^(?:[-*•]|\\d+[.)])\\s+");
+  private static final Pattern COMMITMENT =
+      Pattern.compile(
+          "\\b(?:i'll|i will|i'm going to|i am going to|i can take|let me|i'm on it|will do)\\b",
+          Pattern.CASE_INSENSITIVE);
+  private static final Pattern REQUEST =
+      Pattern.compile(
+          "\\b(?:can you|could you|would you|will you|please|assigned to|owner)\\b",
+          Pattern.CASE_INSENSITIVE);
+  private static final Pattern TASK_MARKER =
+      Pattern.compile(
+          "\\b(?:todo|to-do|action items?|follow[- ]up|next steps?)\\b", Pattern.CASE_INSENSITIVE);
+  private static final Pattern OBLIGATION =
+      Pattern.compile(
+          "\\b(?:we need to|need to|needs to|we should|must|have to)\\b", Pattern.CASE_INSENSITIVE);
+  private static final Pattern DEADLINE =
+      Pattern.compile(
+          "\\b(?:today|tomorrow|tonight|asap|eod|eow|end of (?:the )?(?:day|week)|next week"
+              + "|(?:by|before|until) (?:monday|tuesday|wednesday|thursday|friday|\\d))\\b",
+          Pattern.CASE_INSENSITIVE);
+  private static final Pattern ANY_MENTION = Pattern.compile("(?<!\\w)@(\\w[\\w.-]*\\w|\\w)");
+
+  private final int fastPathMaxMessages;
+  private final boolean fallbackEnabled;
+  private final int maxPoints;
+
+  public ExtractiveSummarizer() {
+    AppConfig config = AppConfig.getInstance();
+    this.fastPathMaxMessages = config.getExtractiveFastPathMaxMessages();
+    this.fallbackEnabled = config.isExtractiveFallbackEnabled();
+    this.maxPoints = Math.max(1, config.getExtractiveMaxPoints());
+  }
+
+  /**
+   * Whether the command on a thread of this many messages is answered here instead of by Bedrock
+   */
+  public boolean answersFast(Command command, int messages) {
+    return (command == Command.KEY_POINTS || command == Command.ACTION_ITEMS)
+        && messages > 0
+        && messages <= fastPathMaxMessages;
+  }
+
+  public boolean isFallbackEnabled() {
+    return fallbackEnabled;
+  }
+
+  /**
+   * Answer a command from formatted thread messages, {@code "name: text"} each, in thread order.
+   * Returns null when the thread has nothing to answer with, such as no sentence with an action
+   * item cue.
+   */
+  public String answer(Command command, List<String> messages, String question) {
+    List<Sentence> sentences = sentences(messages);
+    if (sentences.isEmpty()) {
+      return null;
+    }
+
+    return switch (command) {
+      case ACTION_ITEMS -> actionItems(sentences, authors(sentences));
+      case QUESTION -> bullets(relevant(sentences, question));
+      default -> bullets(keyPoints(sentences));
+    };
+  }
+
+  /** The highest ranked sentences, skipping near-duplicates of those already taken */
+  private List<Sentence> keyPoints(List<Sentence> sentences) {
+    List<Sentence> candidates =
+        sentences.stream().filter(sentence -> sentence.terms.size() >= MIN_TERMS).toList();
+    if (candidates.isEmpty()) {
+      candidates = sentences;
+    }
+
+    double[] ranks = textRank(candidates);
+    List<Sentence> taken = new ArrayList<>();
+    for (int i : byScore(ranks)) {
+      Sentence sentence = candidates.get(i);
+      if (taken.stream().noneMatch(other -> overlap(sentence, other) > MAX_OVERLAP)) {
+        taken.add(sentence);
+      }
+      if (taken.size() == maxPoints) {
+        break;
+      }
+    }
+    taken.sort(Comparator.comparingInt(sentence -> sentence.position));
+    return taken;
+  }
+
+  /**
+   * Weighted PageRank over the sentence graph, with edges weighted by shared terms normalized by
+   * sentence length, as in TextRank
+   */
+  private static double[] textRank(List<Sentence> sentences) {
+    int n = sentences.size();
+    double[][] weights = new double[n][n];
+    double[] outgoing = new double[n];
+    for (int i = 0; i < n; i++) {
+      for (int j = i + 1; j < n; j++) {
+        Set<String> a = sentences.get(i).terms;
+        Set<String> b = sentences.get(j).terms;
+        int shared = 0;
+        for (String term : a.size() <= b.size() ? a : b) {
+          if ((a.size() <= b.size() ? b : a).contains(term)) {
+            shared++;
+          }
+        }
+        if (shared > 0) {
+          double weight = shared / Math.max(1, Math.log(a.size()) + Math.log(b.size()));
+          weights[i][j] = weight;
+          weights[j][i] = weight;
+          outgoing[i] += weight;
+          outgoing[j] += weight;
+        }
+      }
+    }
+
+    double[] ranks = new double[n];
+    Arrays.fill(ranks, 1.0);
+    for (int iteration = 0; iteration < MAX_ITERATIONS; iteration++) {
+      double[] next = new double[n];
+      double change = 0;
+      for (int i = 0; i < n; i++) {
+        double sum = 0;
+        for (int j = 0; j < n; j++) {
+          if (weights[j][i] > 0) {
+            sum += weights[j][i] / outgoing[j] * ranks[j];
+          }
+        }
+        next[i] = 1 - DAMPING + DAMPING * sum;
+        change += Math.abs(next[i] - ranks[i]);
+      }
+      ranks = next;
+      if (change / n < CONVERGENCE) {
+        break;
+      }
+    }
+
+    // The thread root usually says what the thread is about
+    if (sentences.get(0).position == 0) {
+      ranks[0] *= ROOT_BOOST;
+    }
+    return ranks;
+  }
+
+  /** The sentences BM25 ranks highest for the question, or the key points when none match */
+  private List<Sentence> relevant(List<Sentence> sentences, String question) {
+    double[] scores = new Bm25Index(sentences.stream().map(s -> s.text).toList()).score(question);
+    List<Sentence> taken = new ArrayList<>();
+    for (int i : byScore(scores)) {
+      if (scores[i] <= 0 || taken.size() == maxPoints) {
+        break;
+      }
+      taken.add(sentences.get(i));
+    }
+    if (taken.isEmpty()) {
+      return keyPoints(sentences);
+    }
+    taken.sort(Comparator.comparingInt(sentence -> sentence.position));
+    return taken;
+  }
+
+  private String actionItems(List<Sentence> sentences, List<String> authors) {
+    StringBuilder items = new StringBuilder();
+    int count = 0;
+    for (Sentence sentence : sentences) {
+      String text = sentence.text;
+      String mentioned = mentioned(text, authors);
+      int score = 0;
+      String owner = null;
+
+      if (COMMITMENT.matcher(text).find()) {
+        score += 2;
+        owner = sentence.author;
+      }
+      if (mentioned != null && REQUEST.matcher(text).find()) {
+        score += 2;
+        owner = mentioned;
+      } else if (mentioned != null && text.startsWith("@")) {
+        score += 1;
+        owner = mentioned;
+      }
+      if (TASK_MARKER.matcher(text).find()) {
+        score += 2;
+      }
+      if (OBLIGATION.matcher(text).find()) {
+        score += 1;
+      }
+      if (DEADLINE.matcher(text).find()) {
+        score += 1;
+      }
+      // An open question is rarely a task, unless it asks someone to do something
+      if (text.endsWith("?") && owner == null) {
+        score -= 1;
+      }
+
+      if (score >= ACTION_ITEM_THRESHOLD) {
+        items.append(++count).append(". ").append(text);
+        if (owner != null) {
+          items.append(" (*").append(owner).append("*)");
+        }
+        items.append('\n');
+        if (count == MAX_ACTION_ITEMS) {
+          break;
+        }
+      }
+    }
+    return count > 0 ? items.toString().strip() : null;
+  }
+
+  /** The user a sentence mentions, preferring the longest author name that follows an @ */
+  private static String mentioned(String text, List<String> authors) {
+    int at = text.indexOf('@');
+    while (at >= 0) {
+      for (String author : authors) {
+        if (text.startsWith(author, at + 1)) {
+          return author;
+        }
+      }
+      at = text.indexOf('@', at + 1);
+    }
+    Matcher any = ANY_MENTION.matcher(text);
+    return any.find() ? any.group(1) : null;
+  }
+
+  private static List<String> authors(List<Sentence> sentences) {
+    Set<String> authors = new LinkedHashSet<>();
+    for (Sentence sentence : sentences) {
+      if (sentence.author != null) {
+        authors.add(sentence.author);
+      }
+    }
+    return authors.stream().sorted(Comparator.comparingInt(String::length).reversed()).toList();
+  }
+
+  private static String bullets(List<Sentence> sentences) {
+    StringBuilder bullets = new StringBuilder();
+    for (Sentence sentence : sentences) {
+      bullets.append("• ");
+      if (sentence.author != null) {
+        bullets.append('*').append(sentence.author).append("*: ");
+      }
+      bullets.append(sentence.text).append('\n');
+    }
+    return bullets.toString().strip();
+  }
+
+  /**
+   * Split each message into sentences, keeping its author, up to {@link #MAX_SENTENCES}. A long
+   * thread keeps the sentences of its root, which sets out what it is about, and then its latest
+   * ones, where its current status is, rather than stopping partway through.
+   */
+  private static List<Sentence> sentences(List<String> messages) {
+    List<String[]> root = new ArrayList<>();
+    Deque<String[]> latest = new ArrayDeque<>();
+    for (int i = 0; i < messages.size(); i++) {
+      String message = messages.get(i);
+      int separator = message.indexOf(": ");
+      String author = separator > 0 ? message.substring(0, separator) : null;
+      String text = separator > 0 ? message.substring(separator + 2) : message;
+
+      for (String part : SENTENCE_BREAK.split(text)) {
+        String sentence = LIST_MARKER.matcher(part.strip()).replaceFirst("");
+        if (sentence.isEmpty() || sentence.equals("[...]")) {
+          continue;
+        }
+        if (i == 0 && root.size() < MAX_ROOT_SENTENCES) {
+          root.add(new String[] {author, sentence});
+        } else {
+          latest.addLast(new String[] {author, sentence});
+          if (root.size() + latest.size() > MAX_SENTENCES) {
+            latest.removeFirst();
+          }
+        }
+      }
+    }
+
+    List<Sentence> sentences = new ArrayList<>(root.size() + latest.size());
+    for (String[] kept : root) {
+      sentences.add(sentence(sentences.size(), kept));
+    }
+    for (String[] kept : latest) {
+      sentences.add(sentence(sentences.size(), kept));
+    }
+    return sentences;
+  }
+
+  private static Sentence sentence(int position, String[] authorAndText) {
+    return new Sentence(
+        position,
+        authorAndText[0],
+        authorAndText[1],
+        new HashSet<>(Bm25Index.tokenize(authorAndText[1])));
+  }
+
+  private static double overlap(Sentence a, Sentence b) {
+    Set<String> union = new HashSet<>(a.terms);
+    union.addAll(b.terms);
+    if (union.isEmpty()) {
+      return 1;
+    }
+    long shared = a.terms.stream().filter(b.terms::contains).count();
+    return (double) shared / union.size();
+  }
+
+  private static int[] byScore(double[] scores) {
+    return IntStream.range(0, scores.length)
+        .boxed()
+        .sorted(Comparator.comparingDouble((Integer i) -> scores[i]).reversed())
+        .mapToInt(Integer::intValue)
+        .toArray();
+  }
+
+  private static class Sentence {
+    final int position;
+    final String author;
+    final String text;
+    final Set<String> terms;
+
+    Sentence(int position, String author, String text, Set<String> terms) {
+      this.position = position;
+      this.author = author;
+      this.text = text;
+      this.terms = terms;
+    }
+  }
+}
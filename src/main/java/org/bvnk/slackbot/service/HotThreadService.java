@@ -0,0 +1,195 @@
+package org.bvnk.slackbot.service;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import org.bvnk.slackbot.config.AppConfig;
+import org.bvnk.slackbot.model.HotThreadJob;
+import org.bvnk.slackbot.model.SlackEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Summarizes busy threads before anyone asks, so that {@code summarize} on them is answered from a
+ * stored summary instead of a Bedrock call on the whole thread. Replies in the channels listed in
+ * HOT_THREAD_CHANNELS are counted per thread in the DynamoDB table. A thread becomes hot once it
+ * has HOT_THREAD_MIN_MESSAGES replies, or HOT_THREAD_BURST_MESSAGES within
+ * HOT_THREAD_BURST_MINUTES; each reply to a hot thread then queues a summary, one at a time per
+ * thread. Queued threads are kept in a set in the table, which a sweep on a one-minute schedule
+ * checks: a worker is only started for a thread once it has been quiet for
+ * HOT_THREAD_QUIET_SECONDS, or has waited HOT_THREAD_MAX_WAIT_MINUTES for quiet, so nothing sleeps
+ * while a thread is busy. Summaries across all threads are limited to
+ * HOT_THREAD_SUMMARIES_PER_MINUTE, so they don't compete with mentions for Bedrock capacity.
+ */
+public class HotThreadService {
+  public static final String SWEEP_ACTION = "sweep_hot_threads";
+
+  private static final Logger logger = LoggerFactory.getLogger(HotThreadService.class);
+  private static final String SUMMARY_PERMITS = "hot_thread_summaries";
+  private static final String PENDING_KEY = "hot_threads#pending";
+  // A queued summary older than this is assumed lost, and the next reply queues another
+  private static final long QUEUED_SUMMARY_STALE_MILLIS = 15 * 60_000;
+
+  private final DynamoService dynamoService;
+  private final LambdaInvokeService lambdaInvokeService;
+  private final Set<String> channels;
+  private final int minMessages;
+  private final int burstMessages;
+  private final long burstWindowMillis;
+  private final long quietMillis;
+  private final long maxWaitMillis;
+  private final int summariesPerMinute;
+
+  public HotThreadService(DynamoService dynamoService, LambdaInvokeService lambdaInvokeService) {
+    AppConfig config = AppConfig.getInstance();
+    this.dynamoService = dynamoService;
+    this.lambdaInvokeService = lambdaInvokeService;
+    this.channels =
+        Arrays.stream(config.getHotThreadChannels().split(","))
+            .map(String::trim)
+            .filter(channel -> !channel.isEmpty())
+            .collect(Collectors.toUnmodifiableSet());
+    this.minMessages = config.getHotThreadMinMessages();
+    this.burstMessages = config.getHotThreadBurstMessages();
+    this.burstWindowMillis = config.getHotThreadBurstMinutes() * 60_000L;
+    this.quietMillis = config.getHotThreadQuietSeconds() * 1000L;
+    this.maxWaitMillis = config.getHotThreadMaxWaitMinutes() * 60_000L;
+    this.summariesPerMinute = config.getHotThreadSummariesPerMinute();
+  }
+
+  /**
+   * Count a message event, queueing a summary of its thread when the thread is hot. Only new
+   * replies from people in the configured channels count.
+   */
+  public void recordMessage(String teamId, SlackEvent.Event event) {
+    if (!channels.contains(event.getChannel())
+        || event.getSubtype() != null
+        || event.getBotId() != null
+        || event.getThreadTs() == null
+        || event.getThreadTs().equals(event.getTs())) {
+      return;
+    }
+
+    long now = System.currentTimeMillis();
+    String key = activityKey(event.getChannel(), event.getThreadTs());
+    DynamoService.ThreadActivity activity = dynamoService.recordThreadActivity(key, now);
+    if (activity == null) {
+      return;
+    }
+
+    long windowMessages = activity.getWindowMessages();
+    if (now - activity.getWindowStartMillis() > burstWindowMillis) {
+      dynamoService.restartThreadActivityWindow(key, activity.getWindowStartMillis(), now);
+      windowMessages = 1;
+    }
+
+    boolean hot = activity.getMessages() >= minMessages || windowMessages >= burstMessages;
+    if (hot && activity.getSummaryQueuedMillis() < now - QUEUED_SUMMARY_STALE_MILLIS) {
+      queue(teamId, event.getChannel(), event.getThreadTs(), now);
+    }
+  }
+
+  /**
+   * Start a worker for each queued thread that is quiet or has waited long enough, while summary
+   * permits are left this minute. Threads still active stay queued for the next sweep, so a thread
+   * that never goes quiet is summarized once it has waited HOT_THREAD_MAX_WAIT_MINUTES. Returns the
+   * number of workers started.
+   */
+  public int sweep() {
+    List<String> pending = dynamoService.getPendingSummaries(PENDING_KEY);
+    long now = System.currentTimeMillis();
+    int started = 0;
+
+    for (String entry : pending) {
+      String[] parts = entry.split("#", -1);
+      DynamoService.ThreadActivity activity =
+          parts.length == 3
+              ? dynamoService.getThreadActivity(activityKey(parts[1], parts[2]))
+              : null;
+      if (activity == null || activity.getSummaryQueuedMillis() == 0) {
+        // The thread's activity expired, or its summary was given up
+        dynamoService.takePendingSummary(PENDING_KEY, entry);
+        continue;
+      }
+      if (activity.getLastMessageMillis() + quietMillis > now
+          && activity.getSummaryQueuedMillis() + maxWaitMillis > now) {
+        continue;
+      }
+      if (!dynamoService.takePendingSummary(PENDING_KEY, entry)) {
+        continue; // Taken by another sweep
+      }
+      if (!dynamoService.tryAcquireWindowPermit(SUMMARY_PERMITS, summariesPerMinute)) {
+        dynamoService.addPendingSummary(PENDING_KEY, entry);
+        break;
+      }
+
+      try {
+        lambdaInvokeService.invokeAsync(
+            HotThreadJob.builder()
+                .teamId(parts[0].isEmpty() ? null : parts[0])
+                .channel(parts[1])
+                .threadTs(parts[2])
+                .build());
+        started++;
+      } catch (Exception e) {
+        logger.warn("Failed to start summary of hot thread {}", parts[2], e);
+        dynamoService.addPendingSummary(PENDING_KEY, entry);
+      }
+    }
+
+    if (!pending.isEmpty()) {
+      logger.info("Started {} of {} queued hot thread summaries", started, pending.size());
+    }
+    return started;
+  }
+
+  /**
+   * End a job, queueing another one when replies arrived after {@code startedMillis}, which the
+   * summary may have missed
+   */
+  public void finish(HotThreadJob job, long startedMillis) {
+    DynamoService.ThreadActivity activity =
+        dynamoService.releaseThreadSummary(activityKey(job.getChannel(), job.getThreadTs()));
+    if (activity != null && activity.getLastMessageMillis() > startedMillis) {
+      queue(job.getTeamId(), job.getChannel(), job.getThreadTs(), System.currentTimeMillis());
+    }
+  }
+
+  /** The stored summary of a thread, provided it covers the thread up to {@code latestTs} */
+  public String getSummary(String channel, String threadTs, String latestTs) {
+    if (channels.isEmpty() || latestTs == null) {
+      return null;
+    }
+    DynamoService.SummaryCacheItem cached =
+        dynamoService.getSummaryCache(summaryKey(channel, threadTs));
+    return cached != null && latestTs.equals(cached.getLastTs()) ? cached.getSummary() : null;
+  }
+
+  public void putSummary(String channel, String threadTs, String latestTs, String summary) {
+    dynamoService.putSummaryCache(
+        summaryKey(channel, threadTs), new DynamoService.SummaryCacheItem(latestTs, summary));
+  }
+
+  private void queue(String teamId, String channel, String threadTs, long now) {
+    String key = activityKey(channel, threadTs);
+    if (!dynamoService.claimThreadSummary(key, now, now - QUEUED_SUMMARY_STALE_MILLIS)) {
+      return;
+    }
+
+    String entry = (teamId != null ? teamId : "") + "#" + channel + "#" + threadTs;
+    if (dynamoService.addPendingSummary(PENDING_KEY, entry)) {
+      logger.info("Queued summary of hot thread {} in channel {}", threadTs, channel);
+    } else {
+      dynamoService.releaseThreadSummary(key);
+    }
+  }
+
+  private static String activityKey(String channel, String threadTs) {
+    return "activity#" + channel + "#" + threadTs;
+  }
+
+  private static String summaryKey(String channel, String threadTs) {
+    return "summary#" + channel + "#" + threadTs;
+  }
+}
@@ -0,0 +1,537 @@
+package org.bvnk.slackbot.service;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.bvnk.slackbot.config.AppConfig;
+import org.bvnk.slackbot.logging.Span;
+import org.bvnk.slackbot.logging.Tracing;
+
+/**
+ * Slack Web API client on the JDK's HTTP client. Requests go over one shared HTTP/2 connection
+ * where Slack offers it, and responses are read with Jackson's streaming parser, keeping only the
+ * fields the bot uses and skipping the rest without building objects for them. Nothing is bound by
+ * reflection, so the native image needs no registration for it.
+ */
+public class HttpSlackApiClient implements SlackApiClient {
+  private static final String DEFAULT_API_URL = "https://slack.com/api/";
+  private static final String FORM = "application/x-www-form-urlencoded";
+  private static final String JSON_UTF8 = "application/json; charset=utf-8";
+  private static final Duration CONNECT_TIMEOUT = Duration.ofSeconds(5);
+  private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(15);
+  private static final JsonFactory JSON = new JsonFactory();
+  private static final String FILE_DOWNLOAD = "files.download";
+
+  // One HTTP client, and so one connection pool, shared by the clients of every workspace
+  private static volatile HttpClient http = newHttpClient();
+
+  private final String apiUrl;
+  private final String authorization;
+  private final HttpClient.Version version;
+
+  public HttpSlackApiClient(String botToken) {
+    this(AppConfig.getInstance().getSlackApiUrl(), botToken);
+  }
+
+  /** Client for the given API URL, such as a local stand-in; empty means Slack itself */
+  public HttpSlackApiClient(String apiUrl, String botToken) {
+    String url = apiUrl == null || apiUrl.isEmpty() ? DEFAULT_API_URL : apiUrl;
+    this.apiUrl = url.endsWith("/") ? url : url + "/";
+    this.authorization = "Bearer " + botToken;
+    // HTTP/2 is negotiated over TLS; over plain HTTP, as to a local stand-in, the client would try
+    // an h2c upgrade on every request instead
+    this.version =
+        this.apiUrl.startsWith("https") ? HttpClient.Version.HTTP_2 : HttpClient.Version.HTTP_1_1;
+  }
+
+  /**
+   * Close the pooled connections by replacing the shared HTTP client. Used before a SnapStart
+   * snapshot, as connections in it would be dead by the time it is restored.
+   */
+  public static void closeConnections() {
+    HttpClient previous = http;
+    http = newHttpClient();
+    previous.shutdownNow();
+  }
+
+  /**
+   * Open a connection to the Slack API with api.test, which needs no token, so the first real call
+   * finds it in the pool. Failures are ignored; the first call connects instead.
+   */
+  public static void prewarm() {
+    try {
+      new HttpSlackApiClient("").postForm("api.test");
+    } catch (SlackApiException e) {
+      // Nothing lost, the first call opens the connection
+    }
+  }
+
+  /** Run the response parser over a canned response, so it is loaded and compiled before a call */
+  public static void primeParser(int iterations) {
+    byte[] response =
+        ("{\"ok\":true,\"user_id\":\"UPRIMING\",\"messages\":[{\"type\":\"message\","
+                + "\"user\":\"U1\",\"text\":\"Deploy failed\",\"ts\":\"1700000000.000100\","
+                + "\"thread_ts\":\"1700000000.000100\",\"reply_count\":1,\"blocks\":[],"
+                + "\"files\":[{\"id\":\"F1\",\"name\":\"app.log\",\"mimetype\":\"text/plain\","
+                + "\"filetype\":\"text\",\"mode\":\"hosted\",\"size\":1024,"
+                + "\"url_private\":\"https://files.slack.com/files-pri/T1-F1/app.log\"}]}],"
+                + "\"user\":{\"name\":\"priming\",\"profile\":{\"display_name\":\"Priming\","
+                + "\"real_name\":\"Priming\"}},\"response_metadata\":{\"next_cursor\":\"\"}}")
+            .getBytes(StandardCharsets.UTF_8);
+    for (int i = 0; i < iterations; i++) {
+      try {
+        parse(new ByteArrayInputStream(response));
+      } catch (IOException e) {
+        throw new IllegalStateException("Canned Slack response failed to parse", e);
+      }
+    }
+  }
+
+  @Override
+  public String authTest() {
+    return postForm("auth.test").userId;
+  }
+
+  @Override
+  public User usersInfo(String userId) {
+    Response response = postForm("users.info", "user", userId);
+    return new User(response.userName, response.displayName, response.realName);
+  }
+
+  @Override
+  public List<Map<String, Object>> conversationsReplies(
+      String channel, String threadTs, String oldest, int limit) {
+    Response response =
+        postForm(
+            "conversations.replies",
+            "channel",
+            channel,
+            "ts",
+            threadTs,
+            "oldest",
+            oldest,
+            "inclusive",
+            "true",
+            "limit",
+            String.valueOf(limit));
+    return response.messages != null ? response.messages : List.of();
+  }
+
+  @Override
+  public HistoryPage conversationsHistory(String channel, String oldest, String cursor, int limit) {
+    Response response =
+        postForm(
+            "conversations.history",
+            "channel",
+            channel,
+            "oldest",
+            oldest,
+            "cursor",
+            cursor,
+            "limit",
+            String.valueOf(limit));
+    String nextCursor =
+        response.nextCursor == null || response.nextCursor.isEmpty() ? null : response.nextCursor;
+    return new HistoryPage(response.messages != null ? response.messages : List.of(), nextCursor);
+  }
+
+  @Override
+  public String chatPostMessage(
+      String channel, String threadTs, String text, List<String> sections) {
+    // Blocks are nested JSON, so this one goes as a JSON body rather than a form
+    ByteArrayOutputStream body = new ByteArrayOutputStream(text.length() * 2 + 256);
+    try (JsonGenerator json = JSON.createGenerator(body)) {
+      json.writeStartObject();
+      json.writeStringField("channel", channel);
+      if (threadTs != null) {
+        json.writeStringField("thread_ts", threadTs);
+      }
+      json.writeStringField("text", text);
+      if (!sections.isEmpty()) {
+        json.writeArrayFieldStart("blocks");
+        for (String section : sections) {
+          json.writeStartObject();
+          json.writeStringField("type", "section");
+          json.writeObjectFieldStart("text");
+          json.writeStringField("type", "mrkdwn");
+          json.writeStringField("text", section);
+          json.writeEndObject();
+          json.writeEndObject();
+        }
+        json.writeEndArray();
+      }
+      json.writeEndObject();
+    } catch (IOException e) {
+      throw new SlackApiException("chat.postMessage", e);
+    }
+
+    return post("chat.postMessage", JSON_UTF8, body.toByteArray()).ts;
+  }
+
+  @Override
+  public void reactionsAdd(String channel, String timestamp, String name) {
+    postForm("reactions.add", "channel", channel, "timestamp", timestamp, "name", name);
+  }
+
+  @Override
+  public void reactionsRemove(String channel, String timestamp, String name) {
+    postForm("reactions.remove", "channel", channel, "timestamp", timestamp, "name", name);
+  }
+
+  /**
+   * Stream a file from one of Slack's hosts over https. The bot token goes with the request, so
+   * other hosts are refused, apart from the exact scheme, host and port of an overridden API URL,
+   * as a local stand-in serves files from there. Even then plain http is only sent to loopback.
+   */
+  @Override
+  public InputStream openFile(String url) {
+    URI uri;
+    try {
+      uri = URI.create(url);
+    } catch (IllegalArgumentException e) {
+      throw new SlackApiException(FILE_DOWNLOAD, "invalid_url", 0);
+    }
+    if (!trustedFileUrl(uri)) {
+      throw new SlackApiException(FILE_DOWNLOAD, "untrusted_host", 0);
+    }
+
+    HttpRequest request =
+        HttpRequest.newBuilder(uri)
+            .version(
+                "https".equals(uri.getScheme())
+                    ? HttpClient.Version.HTTP_2
+                    : HttpClient.Version.HTTP_1_1)
+            .timeout(REQUEST_TIMEOUT)
+            .header("Authorization", authorization)
+            .GET()
+            .build();
+
+    HttpResponse<InputStream> response;
+    try {
+      response = http.send(request, HttpResponse.BodyHandlers.ofInputStream());
+    } catch (IOException e) {
+      throw new SlackApiException(FILE_DOWNLOAD, e);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new SlackApiException(FILE_DOWNLOAD, e);
+    }
+
+    if (response.statusCode() != 200) {
+      try {
+        response.body().close();
+      } catch (IOException e) {
+        // Nothing more to read from it anyway
+      }
+      if (response.statusCode() == 429) {
+        long retryAfter = response.headers().firstValueAsLong("Retry-After").orElse(1);
+        throw new SlackApiException(FILE_DOWNLOAD, "ratelimited", retryAfter);
+      }
+      throw new SlackApiException(FILE_DOWNLOAD, "http_" + response.statusCode(), 0);
+    }
+    return response.body();
+  }
+
+  /**
+   * The WebSocket URL for a new Socket Mode connection. Only works with an app-level token, so it
+   * isn't part of {@link SlackApiClient}, whose clients hold bot tokens.
+   */
+  public String appsConnectionsOpen() {
+    return postForm("apps.connections.open").url;
+  }
+
+  /** Call a method with form parameters given as name, value pairs; null values are left out */
+  private Response postForm(String method, String... params) {
+    StringBuilder form = new StringBuilder();
+    for (int i = 0; i + 1 < params.length; i += 2) {
+      if (params[i + 1] == null) {
+        continue;
+      }
+      if (form.length() > 0) {
+        form.append('&');
+      }
+      form.append(params[i])
+          .append('=')
+          .append(URLEncoder.encode(params[i + 1], StandardCharsets.UTF_8));
+    }
+    return post(method, FORM, form.toString().getBytes(StandardCharsets.UTF_8));
+  }
+
+  private Response post(String method, String contentType, byte[] body) {
+    try (Span span = Tracing.startSpan("slack " + method, Span.Kind.CLIENT)) {
+      span.set("rpc.system", "slack").set("rpc.method", method);
+      try {
+        return send(method, contentType, body);
+      } catch (SlackApiException e) {
+        span.error(e).set("slack.error", e.getError());
+        throw e;
+      }
+    }
+  }
+
+  private Response send(String method, String contentType, byte[] body) {
+    HttpRequest request =
+        HttpRequest.newBuilder(URI.create(apiUrl + method))
+            .version(version)
+            .timeout(REQUEST_TIMEOUT)
+            .header("Authorization", authorization)
+            .header("Content-Type", contentType)
+            .POST(HttpRequest.BodyPublishers.ofByteArray(body))
+            .build();
+
+    HttpResponse<InputStream> response;
+    try {
+      response = http.send(request, HttpResponse.BodyHandlers.ofInputStream());
+    } catch (IOException e) {
+      throw new SlackApiException(method, e);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new SlackApiException(method, e);
+    }
+
+    try (InputStream in = response.body()) {
+      if (response.statusCode() == 429) {
+        long retryAfter = response.headers().firstValueAsLong("Retry-After").orElse(1);
+        throw new SlackApiException(method, "ratelimited", retryAfter);
+      }
+      if (response.statusCode() != 200) {
+        throw new SlackApiException(method, "http_" + response.statusCode(), 0);
+      }
+
+      Response parsed = parse(in);
+      if (!parsed.ok) {
+        throw new SlackApiException(
+            method, parsed.error != null ? parsed.error : "unknown_error", 0);
+      }
+      return parsed;
+    } catch (IOException e) {
+      throw new SlackApiException(method, e);
+    }
+  }
+
+  private static HttpClient newHttpClient() {
+    return HttpClient.newBuilder()
+        .version(HttpClient.Version.HTTP_2)
+        .connectTimeout(CONNECT_TIMEOUT)
+        .build();
+  }
+
+  private boolean trustedFileUrl(URI uri) {
+    String host = uri.getHost();
+    if (host == null) {
+      return false;
+    }
+    if ("https".equals(uri.getScheme())
+        && uri.getPort() == -1
+        && (host.equals("slack.com") || host.endsWith(".slack.com"))) {
+      return true;
+    }
+
+    URI api = URI.create(apiUrl);
+    return !apiUrl.equals(DEFAULT_API_URL)
+        && api.getScheme().equals(uri.getScheme())
+        && host.equals(api.getHost())
+        && uri.getPort() == api.getPort()
+        && ("https".equals(uri.getScheme()) || isLoopback(host));
+  }
+
+  private static boolean isLoopback(String host) {
+    return host.equals("localhost") || host.equals("[::1]") || host.startsWith("127.");
+  }
+
+  /** Read the fields any of our methods use from a response, skipping everything else */
+  private static Response parse(InputStream in) throws IOException {
+    Response response = new Response();
+    try (JsonParser parser = JSON.createParser(in)) {
+      if (parser.nextToken() != JsonToken.START_OBJECT) {
+        response.error = "invalid_response";
+        return response;
+      }
+
+      while (parser.nextToken() == JsonToken.FIELD_NAME) {
+        String field = parser.currentName();
+        JsonToken value = parser.nextToken();
+        switch (field) {
+          case "ok" -> response.ok = value == JsonToken.VALUE_TRUE;
+          case "error" -> response.error = text(parser);
+          case "user_id" -> response.userId = text(parser);
+          case "ts" -> response.ts = text(parser);
+          case "url" -> response.url = text(parser);
+          case "messages" -> response.messages = readMessages(parser);
+          case "user" -> readUser(parser, response);
+          case "response_metadata" -> readMetadata(parser, response);
+          default -> parser.skipChildren();
+        }
+      }
+    }
+    return response;
+  }
+
+  private static List<Map<String, Object>> readMessages(JsonParser parser) throws IOException {
+    List<Map<String, Object>> messages = new ArrayList<>();
+    if (parser.currentToken() != JsonToken.START_ARRAY) {
+      parser.skipChildren();
+      return messages;
+    }
+
+    while (parser.nextToken() == JsonToken.START_OBJECT) {
+      Map<String, Object> message = new HashMap<>();
+      while (parser.nextToken() == JsonToken.FIELD_NAME) {
+        String field = parser.currentName();
+        parser.nextToken();
+        switch (field) {
+          case "user", "text", "ts", "thread_ts", "latest_reply", "bot_id", "subtype", "username" ->
+              message.put(field, text(parser));
+          case "reply_count" -> message.put(field, parser.getValueAsInt());
+          case "files" -> message.put(field, readFiles(parser));
+          case "bot_profile" -> message.put(field, readBotProfile(parser));
+          default -> parser.skipChildren();
+        }
+      }
+      messages.add(message);
+    }
+    return messages;
+  }
+
+  /** The name of the app that posted a message, as {@code {"name": ...}}, the part we use */
+  private static Map<String, Object> readBotProfile(JsonParser parser) throws IOException {
+    Map<String, Object> profile = new HashMap<>();
+    if (parser.currentToken() != JsonToken.START_OBJECT) {
+      parser.skipChildren();
+      return profile;
+    }
+
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      String field = parser.currentName();
+      parser.nextToken();
+      if ("name".equals(field)) {
+        profile.put(field, text(parser));
+      } else {
+        parser.skipChildren();
+      }
+    }
+    return profile;
+  }
+
+  private static List<SlackApiClient.File> readFiles(JsonParser parser) throws IOException {
+    List<SlackApiClient.File> files = new ArrayList<>();
+    if (parser.currentToken() != JsonToken.START_ARRAY) {
+      parser.skipChildren();
+      return files;
+    }
+
+    while (parser.nextToken() == JsonToken.START_OBJECT) {
+      String id = null;
+      String name = null;
+      String mimetype = null;
+      String filetype = null;
+      String mode = null;
+      long size = 0;
+      String download = null;
+      String url = null;
+      while (parser.nextToken() == JsonToken.FIELD_NAME) {
+        String field = parser.currentName();
+        parser.nextToken();
+        switch (field) {
+          case "id" -> id = text(parser);
+          case "name" -> name = text(parser);
+          case "mimetype" -> mimetype = text(parser);
+          case "filetype" -> filetype = text(parser);
+          case "mode" -> mode = text(parser);
+          case "size" -> size = parser.getValueAsLong();
+          case "url_private_download" -> download = text(parser);
+          case "url_private" -> url = text(parser);
+          default -> parser.skipChildren();
+        }
+      }
+      files.add(
+          new SlackApiClient.File(
+              id, name, mimetype, filetype, mode, size, download != null ? download : url));
+    }
+    return files;
+  }
+
+  /** users.info's user object; auth.test also has a "user", but it is just the bot's name */
+  private static void readUser(JsonParser parser, Response response) throws IOException {
+    if (parser.currentToken() != JsonToken.START_OBJECT) {
+      parser.skipChildren();
+      return;
+    }
+
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      String field = parser.currentName();
+      parser.nextToken();
+      if ("name".equals(field)) {
+        response.userName = text(parser);
+      } else if ("profile".equals(field) && parser.currentToken() == JsonToken.START_OBJECT) {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+          String profileField = parser.currentName();
+          parser.nextToken();
+          switch (profileField) {
+            case "display_name" -> response.displayName = text(parser);
+            case "real_name" -> response.realName = text(parser);
+            default -> parser.skipChildren();
+          }
+        }
+      } else {
+        parser.skipChildren();
+      }
+    }
+  }
+
+  private static void readMetadata(JsonParser parser, Response response) throws IOException {
+    if (parser.currentToken() != JsonToken.START_OBJECT) {
+      parser.skipChildren();
+      return;
+    }
+
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      String field = parser.currentName();
+      parser.nextToken();
+      if ("next_cursor".equals(field)) {
+        response.nextCursor = text(parser);
+      } else {
+        parser.skipChildren();
+      }
+    }
+  }
+
+  /** The value as a string, or null when it is an object or array, which is skipped */
+  private static String text(JsonParser parser) throws IOException {
+    JsonToken token = parser.currentToken();
+    if (token == JsonToken.START_OBJECT || token == JsonToken.START_ARRAY) {
+      parser.skipChildren();
+      return null;
+    }
+    return token == JsonToken.VALUE_NULL ? null : parser.getValueAsString();
+  }
+
+  /** The union of the fields read from any method's response */
+  private static class Response {
+    boolean ok;
+    String error;
+    String userId;
+    String ts;
+    String url;
+    String nextCursor;
+    String userName;
+    String displayName;
+    String realName;
+    List<Map<String, Object>> messages;
+  }
+}
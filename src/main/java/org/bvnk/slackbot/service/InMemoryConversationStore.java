@@ -0,0 +1,35 @@
+package org.bvnk.slackbot.service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Conversation store kept in process memory, for local runs and tests, where the ingress and worker
+ * handlers share the process. Only the most recently used conversations are kept.
+ */
+public class InMemoryConversationStore implements ConversationStore {
+  private static final InMemoryConversationStore INSTANCE = new InMemoryConversationStore();
+  private static final int MAX_CACHED = 256;
+
+  private final Map<String, byte[]> conversations =
+      new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, byte[]> eldest) {
+          return size() > MAX_CACHED;
+        }
+      };
+
+  public static InMemoryConversationStore getInstance() {
+    return INSTANCE;
+  }
+
+  @Override
+  public synchronized byte[] get(String conversationKey) {
+    return conversations.get(conversationKey);
+  }
+
+  @Override
+  public synchronized void put(String conversationKey, byte[] conversation) {
+    conversations.put(conversationKey, conversation);
+  }
+}
@@ -0,0 +1,52 @@
+package org.bvnk.slackbot.service;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Event lifecycle store kept in process memory. Deduplication only holds within one JVM, so this is
+ * for local runs and tests, where the ingress and worker handlers share the process.
+ */
+public class InMemoryEventLifecycleStore implements EventLifecycleStore {
+  private static final InMemoryEventLifecycleStore INSTANCE = new InMemoryEventLifecycleStore();
+
+  private final Map<String, Map<String, Object>> events = new ConcurrentHashMap<>();
+
+  public static InMemoryEventLifecycleStore getInstance() {
+    return INSTANCE;
+  }
+
+  @Override
+  public boolean markReceived(String eventId) {
+    if (eventId == null || eventId.isEmpty()) {
+      return false;
+    }
+    Map<String, Object> item = new ConcurrentHashMap<>();
+    item.put("status", "processing");
+    item.put("processed_at", System.currentTimeMillis() / 1000);
+    return events.putIfAbsent(eventId, item) == null;
+  }
+
+  @Override
+  public void recordOutcome(String eventId, String status, Map<String, Object> fields) {
+    Map<String, Object> item = events.computeIfAbsent(eventId, id -> new ConcurrentHashMap<>());
+    item.putAll(fields);
+    item.put("status", status);
+  }
+
+  @Override
+  public void flush() {
+    // Outcomes are applied as they are recorded
+  }
+
+  /** Copy of what is stored for the event, or null when it was never received */
+  public Map<String, Object> getEvent(String eventId) {
+    Map<String, Object> item = events.get(eventId);
+    return item != null ? new HashMap<>(item) : null;
+  }
+
+  public void clear() {
+    events.clear();
+  }
+}
@@ -0,0 +1,43 @@
+package org.bvnk.slackbot.service;
+
+import org.bvnk.slackbot.model.MentionJob;
+import org.bvnk.slackbot.util.WeightedFairQueue;
+
+/**
+ * Mention scheduler kept in process memory. Only workers in the same JVM share it, so this is for
+ * local runs and tests, where the ingress and worker handlers share the process.
+ */
+public class InMemoryMentionScheduler implements MentionScheduler {
+  private static final InMemoryMentionScheduler INSTANCE = new InMemoryMentionScheduler();
+
+  private final WeightedFairQueue<MentionJob> queue = new WeightedFairQueue<>();
+
+  public static InMemoryMentionScheduler getInstance() {
+    return INSTANCE;
+  }
+
+  @Override
+  public synchronized boolean submit(MentionJob job) {
+    queue.add(
+        String.valueOf(job.getTeamId()),
+        String.valueOf(job.getChannel()),
+        job.getCost() != null ? job.getCost() : 1,
+        job,
+        System.currentTimeMillis());
+    return true;
+  }
+
+  @Override
+  public synchronized Scheduled next() {
+    WeightedFairQueue.Entry<MentionJob> entry = queue.poll();
+    if (entry == null) {
+      return null;
+    }
+    return new Scheduled(
+        entry.getItem(), System.currentTimeMillis() - entry.getQueuedAtMillis(), queue.size());
+  }
+
+  public synchronized int size() {
+    return queue.size();
+  }
+}
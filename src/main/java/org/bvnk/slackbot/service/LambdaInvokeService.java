@@ -1,12 +1,17 @@
 package org.bvnk.slackbot.service;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import java.nio.charset.StandardCharsets;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import java.util.function.Consumer;
 import org.bvnk.slackbot.config.AppConfig;
+import org.bvnk.slackbot.config.AwsClientFactory;
+import org.bvnk.slackbot.logging.Tracing;
+import org.bvnk.slackbot.model.HotThreadJob;
+import org.bvnk.slackbot.model.MentionJob;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import software.amazon.awssdk.core.SdkBytes;
-import software.amazon.awssdk.regions.Region;
 import software.amazon.awssdk.services.lambda.LambdaClient;
 import software.amazon.awssdk.services.lambda.model.InvocationType;
 import software.amazon.awssdk.services.lambda.model.InvokeRequest;
@@ -15,33 +20,88 @@ import software.amazon.awssdk.services.lambda.model.InvokeResponse;
 public class LambdaInvokeService {
   private static final Logger logger = LoggerFactory.getLogger(LambdaInvokeService.class);
 
+  // Set in the Socket Mode server, which runs jobs on its own workers instead of invoking itself
+  private static volatile Consumer<byte[]> inProcessWorker;
+
   private final LambdaClient lambdaClient;
   private final String functionName;
-  private final ObjectMapper objectMapper;
+  private final String qualifier;
+  // Resolved once, so each mention only pays for writing its fields
+  private final ObjectWriter mentionJobWriter;
+  private final ObjectWriter hotThreadJobWriter;
 
   public LambdaInvokeService() {
     AppConfig config = AppConfig.getInstance();
     this.functionName = config.getLambdaFunctionName();
-    this.objectMapper = new ObjectMapper();
-    this.lambdaClient = LambdaClient.builder().region(Region.of(config.getAwsRegion())).build();
+    this.qualifier =
+        config.getLambdaInvokeQualifier().isEmpty() ? null : config.getLambdaInvokeQualifier();
+    ObjectMapper objectMapper = new ObjectMapper();
+    this.mentionJobWriter = objectMapper.writerFor(MentionJob.class);
+    this.hotThreadJobWriter = objectMapper.writerFor(HotThreadJob.class);
+    this.lambdaClient = AwsClientFactory.lambda();
+  }
+
+  /**
+   * Hand jobs to the given worker in this process instead of invoking the function, for every
+   * instance from now on. The worker gets the same payload the function would have been invoked
+   * with.
+   */
+  public static void runInProcess(Consumer<byte[]> worker) {
+    inProcessWorker = worker;
+  }
+
+  /**
+   * Queue a mention for the async worker, stamped with the current trace and the time it was
+   * dispatched
+   */
+  public void invokeAsync(MentionJob job) {
+    String traceparent = Tracing.traceparent();
+    try {
+      invokeAsync(
+          mentionJobWriter.writeValueAsBytes(
+              job.toBuilder()
+                  .traceparent(traceparent != null ? traceparent : job.getTraceparent())
+                  .dispatchedAt(System.currentTimeMillis())
+                  .build()));
+    } catch (JsonProcessingException e) {
+      throw new RuntimeException("Failed to encode mention job", e);
+    }
   }
 
-  public void invokeAsync(Object payload) {
+  /** Queue a busy thread for the async worker to summarize */
+  public void invokeAsync(HotThreadJob job) {
+    String traceparent = Tracing.traceparent();
+    try {
+      invokeAsync(
+          hotThreadJobWriter.writeValueAsBytes(
+              traceparent != null ? job.toBuilder().traceparent(traceparent).build() : job));
+    } catch (JsonProcessingException e) {
+      throw new RuntimeException("Failed to encode hot thread job", e);
+    }
+  }
+
+  private void invokeAsync(byte[] payload) {
+    Consumer<byte[]> worker = inProcessWorker;
+    if (worker != null) {
+      worker.accept(payload);
+      return;
+    }
+
     try {
-      String jsonPayload = objectMapper.writeValueAsString(payload);
-      logger.info("Invoking Lambda function async: {}", functionName);
+      logger.debug("Invoking Lambda function async: {}", functionName);
 
       InvokeRequest invokeRequest =
           InvokeRequest.builder()
               .functionName(functionName)
+              .qualifier(qualifier)
               .invocationType(InvocationType.EVENT)
-              .payload(SdkBytes.fromString(jsonPayload, StandardCharsets.UTF_8))
+              .payload(SdkBytes.fromByteArrayUnsafe(payload))
               .build();
 
       InvokeResponse response = lambdaClient.invoke(invokeRequest);
 
       if (response.statusCode() == 202) {
-        logger.info("Successfully invoked Lambda function async");
+        logger.debug("Successfully invoked Lambda function async");
       } else {
         logger.error("Failed to invoke Lambda function. Status code: {}", response.statusCode());
       }
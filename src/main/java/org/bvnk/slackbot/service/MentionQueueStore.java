@@ -0,0 +1,82 @@
+package org.bvnk.slackbot.service;
+
+import java.util.List;
+import java.util.Map;
+import lombok.Value;
+
+/**
+ * Persistence of the mention scheduler shared by all containers: an index counting the jobs queued
+ * per team, and one queue per team with an inbox that submitted jobs are appended to. Errors are
+ * thrown unless a method says otherwise, so that the scheduler can report them to its caller.
+ */
+interface MentionQueueStore {
+
+  /**
+   * Append an entry to a team's inbox. Appends don't conflict with each other or with changes to
+   * the queue, so they need no retries.
+   */
+  void appendInbox(String queueKey, byte[] entry);
+
+  /** The stored queue of a team and its inbox, or null when there is none */
+  QueueItem getQueue(String queueKey);
+
+  /**
+   * Store a team's queue and drop the first {@code inboxEntries} entries of its inbox, which it now
+   * contains, provided the stored queue still has the given generation, or that there is none when
+   * it is null. Returns false when another writer got there first.
+   */
+  boolean putQueue(
+      String queueKey,
+      String generation,
+      byte[] state,
+      String expectedGeneration,
+      int inboxEntries);
+
+  /** Add to the number of jobs queued for a team in the index */
+  void addPending(String indexKey, String team, long delta);
+
+  /** The index of teams with jobs queued, or null when there is none */
+  IndexItem getIndex(String indexKey);
+
+  /**
+   * Record a job taken from a team's queue in the index: the team's new finish tag, the virtual
+   * time, and one job fewer queued. The virtual time only moves forward; when another take has
+   * already moved it further, it is left as it is. Returns how many are still queued for the team.
+   */
+  long recordTake(String indexKey, String team, double virtualTime, double finish);
+
+  /**
+   * Drop a team from the index once it has no jobs queued. Returns false when one was queued in
+   * between, or when the write fails; the team is then left for a later take.
+   */
+  boolean removeTeam(String indexKey, String team);
+
+  /**
+   * Drop a team from the index whose count was left too high, as it still is at {@code pending}
+   * though its queue is empty. Returns false when the count has changed in between, or when the
+   * write fails.
+   */
+  boolean resetTeam(String indexKey, String team, long pending);
+
+  /**
+   * The teams with jobs queued, with how many each has queued and the finish tag of the last job
+   * taken from it, and the virtual time across teams
+   */
+  @Value
+  class IndexItem {
+    double virtualTime;
+    Map<String, Long> pending;
+    Map<String, Double> finish;
+  }
+
+  /**
+   * The encoded queue of a team, replaced as a whole on every change, and the entries appended to
+   * its inbox since. The generation and state are null before the first change.
+   */
+  @Value
+  class QueueItem {
+    String generation;
+    byte[] state;
+    List<byte[]> inbox;
+  }
+}
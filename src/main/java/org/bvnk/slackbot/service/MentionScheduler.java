@@ -0,0 +1,73 @@
+package org.bvnk.slackbot.service;
+
+import lombok.Value;
+import org.bvnk.slackbot.config.AppConfig;
+import org.bvnk.slackbot.model.Command;
+import org.bvnk.slackbot.model.MentionJob;
+
+/**
+ * Orders mentions between ingress and the async worker, so that one busy channel can't hold up
+ * every other one. Ingress submits each job and then invokes the worker as usual; the worker takes
+ * whichever scheduled job is due next, which need not be the one it was invoked with. Jobs are
+ * ordered by weighted fair queueing across teams and their channels, weighed by their estimated
+ * cost, so a short question gets ahead of a channel's backlog of summaries.
+ */
+public interface MentionScheduler {
+
+  /** Scheduling is off: every worker answers the mention it was invoked with */
+  MentionScheduler NONE =
+      new MentionScheduler() {
+        @Override
+        public boolean submit(MentionJob job) {
+          return false;
+        }
+
+        @Override
+        public Scheduled next() {
+          return null;
+        }
+      };
+
+  /**
+   * Queue a job. Returns false when it couldn't be queued; the worker then answers it directly, so
+   * the caller shouldn't mark it as queued.
+   */
+  boolean submit(MentionJob job);
+
+  /** Take the job to answer next, or null when none is queued */
+  Scheduled next();
+
+  /**
+   * Estimated cost of answering a command on a thread, in roughly the units of one short question.
+   * Summaries and lists send the whole thread to the model, while a question only sends the
+   * messages selected for it, so its cost levels off.
+   */
+  static double estimateCost(Command command, int threadMessages) {
+    return switch (command) {
+      case HELP -> 0.1;
+      case SEARCH -> 1; // Answered from the summary index, whatever the thread's size
+      case QUESTION -> 1 + Math.min(threadMessages, 30) / 10.0;
+      default -> 1 + threadMessages / 10.0;
+    };
+  }
+
+  /**
+   * The scheduler selected by MENTION_SCHEDULER: the DynamoDB table, memory for local runs and
+   * tests, or off, the default
+   */
+  static MentionScheduler fromConfig() {
+    return switch (AppConfig.getInstance().getMentionScheduler().toLowerCase()) {
+      case "dynamodb" -> new DynamoMentionScheduler(new DynamoMentionQueueStore());
+      case "memory" -> InMemoryMentionScheduler.getInstance();
+      default -> NONE;
+    };
+  }
+
+  /** A job taken from the scheduler, with how long it waited and how many are still queued */
+  @Value
+  class Scheduled {
+    MentionJob job;
+    long waitMillis;
+    int queueDepth;
+  }
+}
@@ -0,0 +1,183 @@
+package org.bvnk.slackbot.service;
+
+import java.util.Map;
+import java.util.Optional;
+import lombok.Value;
+import org.bvnk.slackbot.config.AppConfig;
+import org.bvnk.slackbot.model.Command;
+import org.bvnk.slackbot.util.LatencyTracker;
+import org.bvnk.slackbot.util.MetricsEmitter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Picks the Bedrock model for a request. Small and simple requests go to the fast tier, large
+ * summaries go to the large tier, and requests that no longer have time for the large model are
+ * sent to the fast one. Whether there is time is judged by the large tier's p95 latency once it has
+ * enough samples, or half its timeout before that, rather than by the full timeout, which is close
+ * to all a 15 second invocation has left after its reserve. Routing is disabled when no fast model
+ * is configured.
+ */
+public class ModelRouter {
+  private static final Logger logger = LoggerFactory.getLogger(ModelRouter.class);
+
+  private static final long MIN_CALL_TIMEOUT_MILLIS = 1000;
+  private static final int MIN_HEDGE_SAMPLES = 20;
+  private static final double HEDGE_PERCENTILE = 95;
+
+  private static final LatencyTracker latencyTracker = new LatencyTracker();
+
+  public enum Tier {
+    FAST,
+    LARGE
+  }
+
+  @Value
+  public static class Route {
+    Tier tier;
+    String modelId;
+    long timeoutMillis;
+
+    /** Region to call, or null for the default region */
+    String region;
+
+    public String getName() {
+      String name = tier.name().toLowerCase();
+      return region == null ? name : name + "@" + region;
+    }
+  }
+
+  private final String largeModelId;
+  private final String fastModelId;
+  private final int fastMaxInputTokens;
+  private final long fastTimeoutMillis;
+  private final long largeTimeoutMillis;
+  private final boolean hedgingEnabled;
+  private final String hedgeRegion;
+  private final long defaultHedgeDelayMillis;
+
+  public ModelRouter() {
+    AppConfig config = AppConfig.getInstance();
+    this.largeModelId = config.getBedrockModelId();
+    this.fastModelId = config.getBedrockFastModelId();
+    this.fastMaxInputTokens = config.getRoutingFastMaxInputTokens();
+    this.fastTimeoutMillis = config.getBedrockFastTimeoutMillis();
+    this.largeTimeoutMillis = config.getBedrockLargeTimeoutMillis();
+    this.hedgingEnabled = config.isBedrockHedgingEnabled();
+    this.hedgeRegion = config.getBedrockHedgeRegion();
+    this.defaultHedgeDelayMillis = config.getBedrockHedgeDelayMillis();
+  }
+
+  /** Route a request that has to be answered within the given time */
+  public Route route(Command command, int estimatedInputTokens, long remainingMillis) {
+    Tier tier = chooseTier(command, estimatedInputTokens, remainingMillis);
+    Route route = routeFor(tier, null, remainingMillis);
+
+    logger.debug(
+        "Routing {} request with ~{} input tokens to {} tier ({}), timeout {} ms",
+        command,
+        estimatedInputTokens,
+        route.getName(),
+        route.getModelId(),
+        route.getTimeoutMillis());
+
+    return route;
+  }
+
+  /** The other tier, when there is one and enough time is left to call it */
+  public Optional<Route> fallback(Route route, long remainingMillis) {
+    if (!isRoutingEnabled() || remainingMillis < MIN_CALL_TIMEOUT_MILLIS) {
+      return Optional.empty();
+    }
+    return Optional.of(routeFor(otherTier(route.getTier()), null, remainingMillis));
+  }
+
+  /**
+   * Where to send a hedged duplicate of a slow call: the same model in the hedge region when one is
+   * configured, otherwise the other tier
+   */
+  public Optional<Route> hedge(Route route, long remainingMillis) {
+    if (!hedgingEnabled || remainingMillis < MIN_CALL_TIMEOUT_MILLIS) {
+      return Optional.empty();
+    }
+    if (hedgeRegion != null && !hedgeRegion.isEmpty() && route.getRegion() == null) {
+      return Optional.of(routeFor(route.getTier(), hedgeRegion, remainingMillis));
+    }
+    return fallback(route, remainingMillis);
+  }
+
+  /**
+   * How long to wait on a call before hedging it: the p95 of the route's successful calls once it
+   * has enough of them
+   */
+  public long hedgeDelayMillis(Route route) {
+    if (latencyTracker.sampleCount(route.getName()) < MIN_HEDGE_SAMPLES) {
+      return defaultHedgeDelayMillis;
+    }
+    return latencyTracker.percentile(route.getName(), HEDGE_PERCENTILE);
+  }
+
+  /** Record the latency and outcome of a call made on a route */
+  public void record(Route route, long latencyMillis, String outcome) {
+    // Only answers say how long the route takes to answer. Cancelled hedges never finished, and
+    // throttles and errors come back fast exactly when the route is overloaded, so counting them
+    // would make hedges fire earlier the busier Bedrock gets.
+    if ("success".equals(outcome)) {
+      latencyTracker.record(route.getName(), latencyMillis);
+    }
+
+    logger.debug(
+        "Bedrock call on {} route: outcome={} latency={} ms (p50={} ms, p95={} ms over {} calls)",
+        route.getName(),
+        outcome,
+        latencyMillis,
+        latencyTracker.percentile(route.getName(), 50),
+        latencyTracker.percentile(route.getName(), 95),
+        latencyTracker.sampleCount(route.getName()));
+
+    MetricsEmitter.emit(
+        "BedrockLatency",
+        latencyMillis,
+        "Milliseconds",
+        Map.of("Route", route.getName(), "Outcome", outcome));
+  }
+
+  private Tier chooseTier(Command command, int estimatedInputTokens, long remainingMillis) {
+    if (!isRoutingEnabled()) {
+      return Tier.LARGE;
+    }
+
+    // Not enough time left for the large model to answer
+    if (remainingMillis < largeAnswerMillis()) {
+      return Tier.FAST;
+    }
+
+    // Summaries need more reasoning over the whole thread, so they leave the fast tier earlier
+    int threshold = command == Command.SUMMARIZE ? fastMaxInputTokens / 2 : fastMaxInputTokens;
+    return estimatedInputTokens <= threshold ? Tier.FAST : Tier.LARGE;
+  }
+
+  /** How long the large tier usually takes to answer, from its own calls once there are enough */
+  private long largeAnswerMillis() {
+    String name = Tier.LARGE.name().toLowerCase();
+    if (latencyTracker.sampleCount(name) < MIN_HEDGE_SAMPLES) {
+      return largeTimeoutMillis / 2;
+    }
+    return Math.min(largeTimeoutMillis, latencyTracker.percentile(name, HEDGE_PERCENTILE));
+  }
+
+  private Route routeFor(Tier tier, String region, long remainingMillis) {
+    long tierTimeout = tier == Tier.FAST ? fastTimeoutMillis : largeTimeoutMillis;
+    long timeout = Math.max(MIN_CALL_TIMEOUT_MILLIS, Math.min(tierTimeout, remainingMillis));
+    String modelId = tier == Tier.FAST ? fastModelId : largeModelId;
+    return new Route(tier, modelId, timeout, region);
+  }
+
+  private Tier otherTier(Tier tier) {
+    return tier == Tier.FAST ? Tier.LARGE : Tier.FAST;
+  }
+
+  private boolean isRoutingEnabled() {
+    return fastModelId != null && !fastModelId.isEmpty();
+  }
+}
@@ -0,0 +1,56 @@
+package org.bvnk.slackbot.service;
+
+import java.util.List;
+import lombok.Value;
+
+/**
+ * Persistence of the summary search index: snapshots stored in chunks, and a manifest naming the
+ * current snapshot with a list of the summaries added since it was written. Errors are thrown
+ * unless a method says otherwise.
+ */
+interface SearchIndexStore {
+
+  /**
+   * Append encoded summaries to the manifest's list of summaries not yet in its snapshot. Appends
+   * never conflict.
+   */
+  void appendRecent(String manifestKey, List<byte[]> documents);
+
+  /** The manifest, or null when there is none */
+  ManifestItem getManifest(String manifestKey);
+
+  /** Read the chunks of a snapshot, in order. Throws when any of them is missing */
+  List<byte[]> getChunks(List<String> chunkKeys);
+
+  /** Store one chunk of a snapshot */
+  void putChunk(String chunkKey, byte[] data);
+
+  /**
+   * Point the manifest at a new snapshot and drop the first {@code recentEntries} summaries from
+   * its list, which the snapshot now contains, provided the manifest still names the expected
+   * generation, or none when it is null. Returns false when another writer got there first.
+   */
+  boolean putManifest(
+      String manifestKey,
+      String generation,
+      int chunks,
+      String expectedGeneration,
+      int recentEntries);
+
+  /**
+   * Let chunks of a snapshot that is no longer current expire, after giving containers that are
+   * still loading it time to finish. Errors are logged.
+   */
+  void expireChunks(List<String> chunkKeys, long ttlSeconds);
+
+  /**
+   * Where the current snapshot is stored, and the summaries added since it was written. The
+   * generation is null before the first snapshot.
+   */
+  @Value
+  class ManifestItem {
+    String generation;
+    int chunks;
+    List<byte[]> recent;
+  }
+}
@@ -0,0 +1,71 @@
+package org.bvnk.slackbot.service;
+
+import java.io.InputStream;
+import java.util.List;
+import java.util.Map;
+import lombok.Value;
+
+/**
+ * The Slack Web API methods the bot calls, for one workspace's bot token. Messages come back as
+ * maps holding only the fields the bot reads: user, text, ts and thread_ts, files as a list of
+ * {@link File}, plus reply_count and latest_reply for channel history. Calls that Slack answers
+ * with {@code ok: false}, or that fail on the way, throw {@link SlackApiException}.
+ */
+public interface SlackApiClient {
+
+  /** The bot's own user ID */
+  String authTest();
+
+  User usersInfo(String userId);
+
+  /**
+   * The parent message and replies of a thread, parent first. With {@code oldest}, only replies
+   * from that timestamp on, though Slack still sends the parent.
+   */
+  List<Map<String, Object>> conversationsReplies(
+      String channel, String threadTs, String oldest, int limit);
+
+  /** One page of top-level channel messages posted since {@code oldest} */
+  HistoryPage conversationsHistory(String channel, String oldest, String cursor, int limit);
+
+  /**
+   * Post a message made of mrkdwn section blocks, with {@code text} as the notification fallback.
+   * Returns the timestamp of the new message.
+   */
+  String chatPostMessage(String channel, String threadTs, String text, List<String> sections);
+
+  void reactionsAdd(String channel, String timestamp, String name);
+
+  void reactionsRemove(String channel, String timestamp, String name);
+
+  /**
+   * Open a file shared in the workspace, from its private URL, to stream its content. The caller
+   * reads as much as it needs and closes the stream.
+   */
+  InputStream openFile(String url);
+
+  @Value
+  class User {
+    String name;
+    String displayName;
+    String realName;
+  }
+
+  /** A file shared in a message: an upload, a snippet or a link to an external file */
+  @Value
+  class File {
+    String id;
+    String name;
+    String mimetype;
+    String filetype;
+    String mode; // hosted, snippet, external, tombstone, ...
+    long size;
+    String url; // url_private_download, or url_private when there is none
+  }
+
+  @Value
+  class HistoryPage {
+    List<Map<String, Object>> messages;
+    String nextCursor; // null on the last page
+  }
+}
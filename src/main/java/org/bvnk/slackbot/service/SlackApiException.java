@@ -0,0 +1,32 @@
+package org.bvnk.slackbot.service;
+
+/**
+ * Thrown when a Slack Web API call fails, either with an error from Slack such as {@code
+ * channel_not_found} or {@code ratelimited}, or because the request itself failed
+ */
+public class SlackApiException extends RuntimeException {
+  private final String error;
+  private final long retryAfterSeconds;
+
+  public SlackApiException(String method, String error, long retryAfterSeconds) {
+    super(method + " failed: " + error);
+    this.error = error;
+    this.retryAfterSeconds = retryAfterSeconds;
+  }
+
+  public SlackApiException(String method, Throwable cause) {
+    super(method + " failed: " + cause.getMessage(), cause);
+    this.error = "request_failed";
+    this.retryAfterSeconds = 0;
+  }
+
+  /** Slack's error code, or request_failed when no answer came back */
+  public String getError() {
+    return error;
+  }
+
+  /** How long Slack asked us to wait when rate limited, otherwise 0 */
+  public long getRetryAfterSeconds() {
+    return retryAfterSeconds;
+  }
+}
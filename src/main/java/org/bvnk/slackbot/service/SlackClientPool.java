@@ -0,0 +1,102 @@
+package org.bvnk.slackbot.service;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.bvnk.slackbot.config.AppConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Slack clients for every workspace the bot is installed in, keyed on the team ID of the event. Bot
+ * tokens come from SLACK_BOT_TOKENS, then from the DynamoDB table, then fall back to
+ * SLACK_BOT_TOKEN. Clients are kept warm in an LRU so that their bot identity and user name caches
+ * survive across invocations of the same container. A workspace falls back to SLACK_BOT_TOKEN for
+ * good only when the table has no token for it, not when the table can't be read.
+ */
+public class SlackClientPool {
+  private static final Logger logger = LoggerFactory.getLogger(SlackClientPool.class);
+
+  private final DynamoService dynamoService;
+  private final String defaultToken;
+  private final Map<String, String> configuredTokens;
+  private final Map<String, SlackService> clients;
+  private volatile SlackService defaultClient;
+
+  public SlackClientPool(DynamoService dynamoService) {
+    AppConfig config = AppConfig.getInstance();
+    this.dynamoService = dynamoService;
+    this.defaultToken = config.getSlackBotToken();
+    this.configuredTokens = parseTokens(config.getSlackBotTokens());
+
+    int maxSize = Math.max(1, config.getSlackClientPoolSize());
+    this.clients =
+        new LinkedHashMap<>(16, 0.75f, true) {
+          @Override
+          protected boolean removeEldestEntry(Map.Entry<String, SlackService> eldest) {
+            return size() > maxSize;
+          }
+        };
+  }
+
+  /** The client for a workspace, or the default one when the event carries no team ID */
+  public SlackService forTeam(String teamId) {
+    if (teamId == null || teamId.isEmpty()) {
+      return defaultClient();
+    }
+
+    synchronized (clients) {
+      SlackService client = clients.get(teamId);
+      if (client != null) {
+        return client;
+      }
+    }
+
+    // Resolve outside the lock, a DynamoDB read shouldn't hold up other workspaces
+    String token = configuredTokens.get(teamId);
+    if (token == null) {
+      try {
+        token = dynamoService.getTeamBotToken(teamId);
+      } catch (Exception e) {
+        // Not pooled, so the next event for the workspace reads its token again
+        logger.warn("Could not read the bot token for team {}, using the default token", teamId, e);
+        return defaultClient();
+      }
+    }
+    if (token == null) {
+      logger.info("No bot token stored for team {}, using the default token", teamId);
+    }
+
+    synchronized (clients) {
+      SlackService client = clients.get(teamId);
+      if (client == null) {
+        client = token != null ? new SlackService(token) : defaultClient();
+        clients.put(teamId, client);
+        logger.info("Created Slack client for team {} ({} pooled)", teamId, clients.size());
+      }
+      return client;
+    }
+  }
+
+  private SlackService defaultClient() {
+    if (defaultToken.isEmpty()) {
+      throw new IllegalStateException("No bot token for the workspace and no SLACK_BOT_TOKEN");
+    }
+    if (defaultClient == null) {
+      defaultClient = new SlackService(defaultToken);
+    }
+    return defaultClient;
+  }
+
+  /** Parse "T012AB3C4:xoxb-...,T056DE7F8:xoxb-..." into team ID to token */
+  private static Map<String, String> parseTokens(String value) {
+    Map<String, String> tokens = new HashMap<>();
+    for (String entry : value.split(",")) {
+      int separator = entry.indexOf(':');
+      if (separator > 0) {
+        tokens.put(entry.substring(0, separator).trim(), entry.substring(separator + 1).trim());
+      }
+    }
+    return tokens;
+  }
+}
@@ -1,56 +1,48 @@
 package org.bvnk.slackbot.service;
 
-import com.slack.api.Slack;
-import com.slack.api.methods.MethodsClient;
-import com.slack.api.methods.request.chat.ChatPostMessageRequest;
-import com.slack.api.methods.request.conversations.ConversationsRepliesRequest;
-import com.slack.api.methods.request.reactions.ReactionsAddRequest;
-import com.slack.api.methods.request.reactions.ReactionsRemoveRequest;
-import com.slack.api.methods.request.users.UsersInfoRequest;
-import com.slack.api.methods.response.chat.ChatPostMessageResponse;
-import com.slack.api.methods.response.conversations.ConversationsRepliesResponse;
-import com.slack.api.methods.response.reactions.ReactionsAddResponse;
-import com.slack.api.methods.response.reactions.ReactionsRemoveResponse;
-import com.slack.api.methods.response.users.UsersInfoResponse;
-import com.slack.api.model.Message;
-import com.slack.api.model.User;
-import com.slack.api.model.block.SectionBlock;
-import com.slack.api.model.block.composition.MarkdownTextObject;
+import java.io.InputStream;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 import org.bvnk.slackbot.config.AppConfig;
+import org.bvnk.slackbot.util.SlackResponseRenderer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 public class SlackService {
   private static final Logger logger = LoggerFactory.getLogger(SlackService.class);
-
-  private final MethodsClient slackClient;
-  private final String botToken;
+  private static final int THREAD_PAGE_SIZE = 1000;
+  private static final int HISTORY_PAGE_SIZE = 200;
+  private static final int MAX_BLOCKS_PER_MESSAGE = 50;
+  private static final int MESSAGE_TEXT_CHAR_LIMIT = 40000;
+  // Posted instead of an empty answer, which Slack would reject with no_text
+  private static final String EMPTY_MESSAGE_TEXT = "_Nothing to summarize._";
+
+  private final SlackApiClient slackClient;
   private final Map<String, String> userCache = new ConcurrentHashMap<>();
+  private volatile String botUserId;
 
   public SlackService() {
-    AppConfig config = AppConfig.getInstance();
-    this.botToken = config.getSlackBotToken();
-    this.slackClient = Slack.getInstance().methods(botToken);
+    this(AppConfig.getInstance().getSlackBotToken());
   }
 
-  public void addReaction(String channel, String timestamp, String emoji) {
-    try {
-      ReactionsAddRequest request =
-          ReactionsAddRequest.builder().channel(channel).timestamp(timestamp).name(emoji).build();
+  /** Client for the workspace the bot token belongs to */
+  public SlackService(String botToken) {
+    this(new HttpSlackApiClient(botToken));
+  }
 
-      ReactionsAddResponse response = slackClient.reactionsAdd(request);
+  public SlackService(SlackApiClient slackClient) {
+    this.slackClient = slackClient;
+  }
 
-      if (response.isOk()) {
-        logger.info("Added reaction {} to message", emoji);
-      } else {
-        logger.warn("Failed to add reaction: {}", response.getError());
-      }
+  public void addReaction(String channel, String timestamp, String emoji) {
+    try {
+      slackClient.reactionsAdd(channel, timestamp, emoji);
+      logger.debug("Added reaction {} to message", emoji);
+    } catch (SlackApiException e) {
+      logger.warn("Failed to add reaction: {}", e.getError());
     } catch (Exception e) {
       logger.error("Error adding reaction", e);
     }
@@ -58,98 +50,162 @@ public class SlackService {
 
   public void removeReaction(String channel, String timestamp, String emoji) {
     try {
-      ReactionsRemoveRequest request =
-          ReactionsRemoveRequest.builder()
-              .channel(channel)
-              .timestamp(timestamp)
-              .name(emoji)
-              .build();
-
-      ReactionsRemoveResponse response = slackClient.reactionsRemove(request);
-
-      if (response.isOk()) {
-        logger.info("Removed reaction {} from message", emoji);
-      } else {
-        logger.warn("Failed to remove reaction: {}", response.getError());
-      }
+      slackClient.reactionsRemove(channel, timestamp, emoji);
+      logger.debug("Removed reaction {} from message", emoji);
+    } catch (SlackApiException e) {
+      logger.warn("Failed to remove reaction: {}", e.getError());
     } catch (Exception e) {
       logger.error("Error removing reaction", e);
     }
   }
 
   public List<Map<String, Object>> getThreadMessages(String channel, String threadTs) {
-    List<Map<String, Object>> messages = new ArrayList<>();
+    return getThreadMessages(channel, threadTs, null);
+  }
 
+  /**
+   * Get the messages of a thread, or with {@code oldestTs} only the replies from that timestamp on
+   * plus the parent, which Slack always sends. Returns an empty list when the fetch fails.
+   */
+  public List<Map<String, Object>> getThreadMessages(
+      String channel, String threadTs, String oldestTs) {
     try {
-      ConversationsRepliesRequest request =
-          ConversationsRepliesRequest.builder()
-              .channel(channel)
-              .ts(threadTs)
-              .inclusive(true)
-              .limit(1000)
-              .build();
-
-      ConversationsRepliesResponse response = slackClient.conversationsReplies(request);
-
-      if (response.isOk() && response.getMessages() != null) {
-        for (Message message : response.getMessages()) {
-          Map<String, Object> msgMap = new HashMap<>();
-          msgMap.put("user", message.getUser());
-          msgMap.put("text", message.getText());
-          msgMap.put("ts", message.getTs());
-          msgMap.put("thread_ts", message.getThreadTs());
-          messages.add(msgMap);
-        }
-        logger.info("Retrieved {} thread messages", messages.size());
-      } else {
-        logger.warn("Failed to get thread messages: {}", response.getError());
-      }
+      List<Map<String, Object>> messages =
+          slackClient.conversationsReplies(channel, threadTs, oldestTs, THREAD_PAGE_SIZE);
+      logger.debug("Retrieved {} thread messages", messages.size());
+      return messages;
+    } catch (SlackApiException e) {
+      logger.warn("Failed to get thread messages: {}", e.getError());
     } catch (Exception e) {
       logger.error("Error getting thread messages", e);
     }
 
-    return messages;
+    return new ArrayList<>();
+  }
+
+  /**
+   * Open a file shared in the thread to stream its content; the caller closes it. Throws {@link
+   * SlackApiException} when it can't be read.
+   */
+  public InputStream openFile(String url) {
+    return slackClient.openFile(url);
   }
 
-  public void postMessage(String channel, String threadTs, String text) {
+  /**
+   * Post a message, returning the timestamp of its first part so that replies can be threaded under
+   * it. Text longer than a section block is split into several blocks, and into several messages
+   * when it needs more blocks than one message can hold; the parts are posted in order. Text with
+   * nothing to show is posted as a short notice instead.
+   */
+  public String postMessage(String channel, String threadTs, String text) {
     try {
-      // Create a markdown block for better formatting
-      SectionBlock textBlock =
-          SectionBlock.builder().text(MarkdownTextObject.builder().text(text).build()).build();
-
-      ChatPostMessageRequest request =
-          ChatPostMessageRequest.builder()
-              .channel(channel)
-              .threadTs(threadTs)
-              .blocks(List.of(textBlock))
-              .text(text) // Fallback for notifications
-              .build();
-
-      ChatPostMessageResponse response = slackClient.chatPostMessage(request);
-
-      if (response.isOk()) {
-        logger.info("Posted message to thread");
-      } else {
-        logger.error("Failed to post message: {}", response.getError());
-        throw new RuntimeException("Failed to post message: " + response.getError());
+      String firstTs = null;
+      List<String> blocks = new ArrayList<>();
+      StringBuilder fallbackText = new StringBuilder();
+
+      List<String> chunks = SlackResponseRenderer.split(text);
+      if (chunks.isEmpty()) {
+        logger.warn("Nothing to post, posting a notice instead");
+        chunks = List.of(EMPTY_MESSAGE_TEXT);
+      }
+
+      for (String chunk : chunks) {
+        if (blocks.size() == MAX_BLOCKS_PER_MESSAGE
+            || fallbackText.length() + chunk.length() > MESSAGE_TEXT_CHAR_LIMIT) {
+          String ts = postBlocks(channel, threadTs, blocks, fallbackText.toString());
+          firstTs = firstTs != null ? firstTs : ts;
+          blocks.clear();
+          fallbackText.setLength(0);
+        }
+        // Markdown section blocks, for better formatting
+        blocks.add(chunk);
+        fallbackText.append(fallbackText.length() > 0 ? "\n\n" : "").append(chunk);
+      }
+
+      if (!blocks.isEmpty()) {
+        String ts = postBlocks(channel, threadTs, blocks, fallbackText.toString());
+        firstTs = firstTs != null ? firstTs : ts;
       }
+      return firstTs;
+
     } catch (Exception e) {
       logger.error("Error posting message", e);
       throw new RuntimeException("Error posting message", e);
     }
   }
 
+  private String postBlocks(
+      String channel, String threadTs, List<String> blocks, String fallbackText) {
+    try {
+      // The text is the fallback for notifications
+      String ts = slackClient.chatPostMessage(channel, threadTs, fallbackText, blocks);
+      logger.debug("Posted message to thread ({} blocks)", blocks.size());
+      return ts;
+    } catch (SlackApiException e) {
+      logger.error("Failed to post message: {}", e.getError());
+      throw e;
+    }
+  }
+
+  /**
+   * Get the top-level messages posted to a channel since the given timestamp, following pagination.
+   * Thread parents carry their reply count and the timestamp of their latest reply, so callers can
+   * find threads with recent activity without fetching every thread.
+   */
+  public List<Map<String, Object>> getChannelHistory(String channel, String oldestTs) {
+    List<Map<String, Object>> messages = new ArrayList<>();
+    String cursor = null;
+
+    try {
+      do {
+        SlackApiClient.HistoryPage page =
+            slackClient.conversationsHistory(channel, oldestTs, cursor, HISTORY_PAGE_SIZE);
+        messages.addAll(page.getMessages());
+        cursor = page.getNextCursor();
+      } while (cursor != null);
+
+      logger.info("Retrieved {} channel messages", messages.size());
+    } catch (SlackApiException e) {
+      logger.warn("Failed to get channel history: {}", e.getError());
+    } catch (Exception e) {
+      logger.error("Error getting channel history", e);
+    }
+
+    return messages;
+  }
+
   /**
    * Convert thread messages to formatted markdown string for AI context Excludes bot's own messages
    * and the triggering message, formats for readability with actual user names
    */
   public String formatThreadMessagesForAI(
       List<Map<String, Object>> messages, String botUserId, String triggerMessageTs) {
+    return String.join("\n\n", formatThreadMessages(messages, botUserId, triggerMessageTs));
+  }
+
+  /**
+   * Format thread messages one entry per message, in thread order, so that later stages can select
+   * or compact individual messages before they are joined into the prompt
+   */
+  public List<String> formatThreadMessages(
+      List<Map<String, Object>> messages, String botUserId, String triggerMessageTs) {
+    return threadMessagesForAI(messages, botUserId, triggerMessageTs).stream()
+        .map(this::formatThreadMessage)
+        .collect(Collectors.toList());
+  }
+
+  /**
+   * The thread messages that go into the prompt, in thread order: those with a user, other than the
+   * bot itself, and those posted by apps and integrations, such as alerts, which often have no
+   * user. The triggering message is left out.
+   */
+  public List<Map<String, Object>> threadMessagesForAI(
+      List<Map<String, Object>> messages, String botUserId, String triggerMessageTs) {
     if (messages == null || messages.isEmpty()) {
-      return "";
+      return List.of();
     }
 
-    logger.info(
+    logger.debug(
         "Formatting {} thread messages for AI context, excluding bot messages and trigger message",
         messages.size());
 
@@ -170,26 +226,45 @@ public class SlackService {
                 logger.debug("Excluding bot's own message");
               }
 
-              return userId != null && !userId.equals(botUserId) && !isTriggerMessage;
+              boolean hasAuthor = userId != null ? !userId.equals(botUserId) : isAutomated(msg);
+              return hasAuthor && !isTriggerMessage;
             })
-        .map(
-            msg -> {
-              String userId = (String) msg.get("user");
-              String text = (String) msg.get("text");
-              String ts = (String) msg.get("ts");
+        .collect(Collectors.toList());
+  }
 
-              // Get the actual user name
-              String userName = getUserDisplayName(userId);
+  /** Whether a message was posted by an app or integration, such as an alert, not by a person */
+  public static boolean isAutomated(Map<String, Object> msg) {
+    return msg.get("bot_id") != null || "bot_message".equals(msg.get("subtype"));
+  }
 
-              // Clean up text - replace user mentions with names
-              if (text != null) {
-                // Replace user mentions with actual names
-                text = replaceUserMentionsWithNames(text);
-              }
+  /** Format one message as "name: text", with the author and mentioned users named */
+  public String formatThreadMessage(Map<String, Object> msg) {
+    String userId = (String) msg.get("user");
+    String text = (String) msg.get("text");
 
-              return String.format("%s: %s", userName, text);
-            })
-        .collect(Collectors.joining("\n\n"));
+    // Get the actual user name, or the app's for integration posts without a user
+    String userName = userId != null ? getUserDisplayName(userId) : appName(msg);
+
+    // Clean up text - replace user mentions with names
+    if (text != null) {
+      // Replace user mentions with actual names
+      text = replaceUserMentionsWithNames(text);
+    }
+
+    return String.format("%s: %s", userName, text);
+  }
+
+  /** The name an app or integration posted a message under, see {@link #isAutomated} */
+  private static String appName(Map<String, Object> msg) {
+    if (msg.get("username") instanceof String username && !username.isBlank()) {
+      return username;
+    }
+    if (msg.get("bot_profile") instanceof Map<?, ?> profile
+        && profile.get("name") instanceof String name
+        && !name.isBlank()) {
+      return name;
+    }
+    return "App";
   }
 
   /**
@@ -234,8 +309,13 @@ public class SlackService {
       return "";
     }
 
+    // Drop the bot's own mention before names are put in, as its name can be more than one word,
+    // which would leave part of it in front of the command
+    String botUserId = getBotUserId();
+    String withoutBot = botUserId != null ? text.replace("<@" + botUserId + ">", " ") : text;
+
     // First replace user mentions with names (except for the bot mention which we'll remove)
-    String withNames = replaceUserMentionsWithNames(text);
+    String withNames = replaceUserMentionsWithNames(withoutBot);
 
     // Remove any remaining @mentions (likely the bot mention)
     String cleaned = withNames.replaceAll("@[\\w]+", "").trim();
@@ -246,13 +326,15 @@ public class SlackService {
     return cleaned;
   }
 
-  /** Get bot user ID from the bot token This is needed to filter out bot's own messages */
+  /** The bot's own user ID in this workspace, looked up once per client */
   public String getBotUserId() {
+    if (botUserId != null) {
+      return botUserId;
+    }
+
     try {
-      var authTestResponse = slackClient.authTest(r -> r);
-      if (authTestResponse.isOk()) {
-        return authTestResponse.getUserId();
-      }
+      botUserId = slackClient.authTest();
+      return botUserId;
     } catch (Exception e) {
       logger.error("Failed to get bot user ID", e);
     }
@@ -271,39 +353,24 @@ public class SlackService {
     }
 
     try {
-      UsersInfoRequest request = UsersInfoRequest.builder().user(userId).build();
-
-      UsersInfoResponse response = slackClient.usersInfo(request);
-
-      if (response.isOk() && response.getUser() != null) {
-        User user = response.getUser();
-        String displayName = null;
-
-        // Try to get the best display name available
-        if (user.getProfile() != null) {
-          // Prefer display name
-          if (user.getProfile().getDisplayName() != null
-              && !user.getProfile().getDisplayName().isEmpty()) {
-            displayName = user.getProfile().getDisplayName();
-          }
-          // Fall back to real name
-          else if (user.getProfile().getRealName() != null
-              && !user.getProfile().getRealName().isEmpty()) {
-            displayName = user.getProfile().getRealName();
-          }
-        }
+      SlackApiClient.User user = slackClient.usersInfo(userId);
 
-        // Fall back to username
-        if (displayName == null || displayName.isEmpty()) {
-          displayName = user.getName();
-        }
+      // Prefer the display name, then the real name, then the username
+      String displayName = user.getDisplayName();
+      if (displayName == null || displayName.isEmpty()) {
+        displayName = user.getRealName();
+      }
+      if (displayName == null || displayName.isEmpty()) {
+        displayName = user.getName();
+      }
 
+      if (displayName != null && !displayName.isEmpty()) {
         // Cache the result
         userCache.put(userId, displayName);
         return displayName;
-      } else {
-        logger.warn("Failed to get user info for {}: {}", userId, response.getError());
       }
+    } catch (SlackApiException e) {
+      logger.warn("Failed to get user info for {}: {}", userId, e.getError());
     } catch (Exception e) {
       logger.error("Error getting user info for " + userId, e);
     }
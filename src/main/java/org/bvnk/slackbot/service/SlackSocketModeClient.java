@@ -0,0 +1,196 @@
+package org.bvnk.slackbot.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.WebSocket;
+import java.time.Duration;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Receives Slack events over a Socket Mode WebSocket instead of HTTP requests. Each envelope is
+ * acknowledged on the socket as soon as it is read, then its event is handed to the consumer.
+ *
+ * <p>Messages are read one at a time, and the next one is only requested once {@code hasCapacity}
+ * says the consumer can take it. While the consumer is backed up the socket isn't read, so Slack
+ * holds on to later events and retries them, instead of them piling up in memory here. When Slack
+ * asks to refresh the connection, or it drops, a new connection is opened, retrying with backoff
+ * until it succeeds.
+ */
+public class SlackSocketModeClient {
+  private static final Logger logger = LoggerFactory.getLogger(SlackSocketModeClient.class);
+  private static final Duration CONNECT_TIMEOUT = Duration.ofSeconds(10);
+  private static final long CAPACITY_CHECK_MILLIS = 20;
+  private static final long RECONNECT_BASE_MILLIS = 500;
+  private static final long RECONNECT_MAX_MILLIS = 30_000;
+
+  private final HttpSlackApiClient apiClient;
+  private final Consumer<String> onEvent;
+  private final BooleanSupplier hasCapacity;
+  private final ObjectMapper objectMapper = new ObjectMapper();
+  private final HttpClient http = HttpClient.newBuilder().connectTimeout(CONNECT_TIMEOUT).build();
+  private final ScheduledExecutorService scheduler =
+      Executors.newSingleThreadScheduledExecutor(
+          runnable -> {
+            Thread thread = new Thread(runnable, "socket-mode");
+            thread.setDaemon(true);
+            return thread;
+          });
+
+  private volatile WebSocket current;
+  private volatile boolean stopped;
+  private int failedConnects; // only touched on the scheduler thread
+
+  /**
+   * @param apiUrl the Slack API URL, or empty for Slack itself
+   * @param appToken an app-level token with the {@code connections:write} scope
+   * @param onEvent takes the payload of each {@code events_api} envelope, an event callback
+   * @param hasCapacity whether {@code onEvent} can take another event now
+   */
+  public SlackSocketModeClient(
+      String apiUrl, String appToken, Consumer<String> onEvent, BooleanSupplier hasCapacity) {
+    this.apiClient = new HttpSlackApiClient(apiUrl, appToken);
+    this.onEvent = onEvent;
+    this.hasCapacity = hasCapacity;
+  }
+
+  public void start() {
+    scheduler.execute(this::connect);
+  }
+
+  public void stop() {
+    stopped = true;
+    WebSocket socket = current;
+    if (socket != null) {
+      socket.sendClose(WebSocket.NORMAL_CLOSURE, "shutdown");
+    }
+    scheduler.shutdownNow();
+  }
+
+  /**
+   * Open a new connection, replacing the current one. The old connection is closed once the new one
+   * is open, so no events are missed in between.
+   */
+  private void connect() {
+    if (stopped) {
+      return;
+    }
+
+    WebSocket previous = current;
+    try {
+      String url = apiClient.appsConnectionsOpen();
+      current =
+          http.newWebSocketBuilder()
+              .connectTimeout(CONNECT_TIMEOUT)
+              .buildAsync(URI.create(url), new Listener())
+              .join();
+      failedConnects = 0;
+      logger.info("Socket Mode connection opened");
+    } catch (Exception e) {
+      failedConnects++;
+      long backoff =
+          Math.min(RECONNECT_MAX_MILLIS, RECONNECT_BASE_MILLIS << Math.min(failedConnects, 16));
+      long delay = ThreadLocalRandom.current().nextLong(backoff / 2, backoff + 1);
+      logger.warn("Could not open a Socket Mode connection, retrying in {} ms", delay, e);
+      scheduler.schedule(this::connect, delay, TimeUnit.MILLISECONDS);
+      return;
+    }
+
+    if (previous != null) {
+      previous.sendClose(WebSocket.NORMAL_CLOSURE, "replaced");
+    }
+  }
+
+  private void reconnect(WebSocket socket, String reason) {
+    // Only the current connection is replaced; others are already on their way out
+    if (!stopped && socket == current) {
+      logger.info("Reconnecting Socket Mode: {}", reason);
+      scheduler.execute(this::connect);
+    }
+  }
+
+  private void handle(WebSocket socket, String message) throws Exception {
+    JsonNode envelope = objectMapper.readTree(message);
+    String type = envelope.path("type").asText();
+    String envelopeId = envelope.path("envelope_id").asText(null);
+
+    if (envelopeId != null) {
+      try {
+        socket.sendText("{\"envelope_id\":\"" + envelopeId + "\"}", true).join();
+      } catch (CompletionException e) {
+        // A replaced connection that is closing; Slack sends the envelope again on the new one
+        logger.debug("Could not acknowledge envelope {}, leaving it to be retried", envelopeId);
+        return;
+      }
+    }
+
+    switch (type) {
+      case "events_api" -> onEvent.accept(envelope.path("payload").toString());
+      case "hello" -> logger.debug("Socket Mode connection ready");
+      case "disconnect" -> reconnect(socket, envelope.path("reason").asText("disconnect"));
+      default -> logger.debug("Ignoring Socket Mode envelope of type {}", type);
+    }
+  }
+
+  /** Ask for the next message once the consumer has room for it */
+  private void requestNext(WebSocket socket) {
+    if (stopped || socket.isInputClosed()) {
+      return;
+    }
+    if (hasCapacity.getAsBoolean()) {
+      socket.request(1);
+    } else {
+      scheduler.schedule(() -> requestNext(socket), CAPACITY_CHECK_MILLIS, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  private class Listener implements WebSocket.Listener {
+    private final StringBuilder message = new StringBuilder();
+
+    @Override
+    public void onOpen(WebSocket socket) {
+      socket.request(1);
+    }
+
+    @Override
+    public CompletionStage<?> onText(WebSocket socket, CharSequence data, boolean last) {
+      message.append(data);
+      if (!last) {
+        socket.request(1);
+        return null;
+      }
+
+      try {
+        handle(socket, message.toString());
+      } catch (Exception e) {
+        logger.error("Failed to handle Socket Mode message", e);
+      } finally {
+        message.setLength(0);
+      }
+      requestNext(socket);
+      return null;
+    }
+
+    @Override
+    public CompletionStage<?> onClose(WebSocket socket, int statusCode, String reason) {
+      reconnect(socket, "closed with " + statusCode + " " + reason);
+      return null;
+    }
+
+    @Override
+    public void onError(WebSocket socket, Throwable error) {
+      logger.warn("Socket Mode connection failed", error);
+      reconnect(socket, error.toString());
+    }
+  }
+}
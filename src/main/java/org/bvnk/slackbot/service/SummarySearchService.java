@@ -0,0 +1,251 @@
+package org.bvnk.slackbot.service;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Predicate;
+import lombok.Value;
+import org.bvnk.slackbot.config.AppConfig;
+import org.bvnk.slackbot.util.SummaryIndex;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps every generated thread summary in a {@link SummaryIndex}, so that {@code search} can answer
+ * from the summaries that match instead of fetching and summarizing threads again.
+ *
+ * <p>The index is stored in the DynamoDB table as a snapshot, split into chunks under a generation,
+ * and a manifest item naming the current generation. New summaries are appended to a list on the
+ * manifest, which never conflicts. Once SEARCH_SNAPSHOT_AFTER summaries have piled up there, they
+ * are merged into a new snapshot, which replaces the old one conditionally on its generation, as
+ * the mention scheduler does. Each container keeps the snapshot it loaded and only reads the chunks
+ * again when the generation changes, so a search usually costs a single read of the manifest.
+ */
+public class SummarySearchService {
+  private static final Logger logger = LoggerFactory.getLogger(SummarySearchService.class);
+  private static final String MANIFEST_KEY = "search#summaries";
+  private static final int CHUNK_BYTES = 350_000; // under the 400 KB item limit
+  private static final int MAX_RECENT = 100; // keeps the update expression under 4 KB
+  private static final long RETIRED_CHUNK_TTL_SECONDS = 3600;
+
+  private final SearchIndexStore store;
+  private final boolean enabled;
+  private final boolean workspaceScope;
+  private final int topK;
+  private final int maxDocuments;
+  private final int snapshotAfter;
+
+  // The last snapshot loaded, and the index with the recent summaries merged into it
+  private volatile Loaded snapshot = new Loaded(null, 0, SummaryIndex.empty());
+  private volatile Loaded current = snapshot;
+
+  public SummarySearchService() {
+    this(new DynamoSearchIndexStore());
+  }
+
+  SummarySearchService(SearchIndexStore store) {
+    AppConfig config = AppConfig.getInstance();
+    this.store = store;
+    this.enabled = config.isSearchEnabled();
+    this.workspaceScope = "workspace".equalsIgnoreCase(config.getSearchScope());
+    this.topK = Math.max(1, config.getSearchTopK());
+    this.maxDocuments = Math.max(1, config.getSearchMaxDocuments());
+    this.snapshotAfter = Math.min(MAX_RECENT, Math.max(1, config.getSearchSnapshotAfter()));
+  }
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  /** Add a thread's summary to the index. Failures are logged, the summary just isn't searchable */
+  public void record(String teamId, String channel, String threadTs, String summary) {
+    record(teamId, channel, Map.of(threadTs, summary));
+  }
+
+  /** Add the summaries of several threads in a channel, by thread timestamp */
+  public void record(String teamId, String channel, Map<String, String> summaries) {
+    if (!enabled) {
+      return;
+    }
+
+    long now = System.currentTimeMillis();
+    List<byte[]> encoded = new ArrayList<>();
+    for (Map.Entry<String, String> summary : summaries.entrySet()) {
+      if (summary.getValue() != null && !summary.getValue().isBlank()) {
+        encoded.add(
+            encode(
+                new SummaryIndex.Document(
+                    teamId, channel, summary.getKey(), now, summary.getValue())));
+      }
+    }
+
+    // A snapshot's worth at a time, so the list on the manifest item stays well inside its limit
+    for (int start = 0; start < encoded.size(); start += snapshotAfter) {
+      try {
+        store.appendRecent(
+            MANIFEST_KEY, encoded.subList(start, Math.min(start + snapshotAfter, encoded.size())));
+        // Whoever adds the summary that fills the list writes the next snapshot
+        refresh();
+      } catch (Exception e) {
+        logger.warn("Could not index summaries in channel {}: {}", channel, e.toString());
+      }
+    }
+  }
+
+  /**
+   * The summaries that best match the query, best first. Depending on SEARCH_SCOPE, only summaries
+   * of threads in the channel asked from, or anywhere in the workspace, are searched. Read errors
+   * are thrown.
+   */
+  public List<SummaryIndex.Hit> search(String teamId, String channel, String query) {
+    Predicate<SummaryIndex.Document> filter =
+        document ->
+            document.getTeamId().equals(teamId)
+                && (workspaceScope || document.getChannel().equals(channel));
+    return refresh().search(query, filter, topK);
+  }
+
+  /** The current index, loading a new snapshot or summaries added since the last call */
+  private SummaryIndex refresh() {
+    SearchIndexStore.ManifestItem manifest = store.getManifest(MANIFEST_KEY);
+    if (manifest == null) {
+      return SummaryIndex.empty();
+    }
+
+    Loaded base = snapshot;
+    if (manifest.getGeneration() != null && !manifest.getGeneration().equals(base.generation)) {
+      long start = System.currentTimeMillis();
+      base =
+          new Loaded(
+              manifest.getGeneration(),
+              0,
+              SummaryIndex.read(
+                  concat(
+                      store.getChunks(chunkKeys(manifest.getGeneration(), manifest.getChunks())))));
+      snapshot = base;
+      logger.info(
+          "Loaded search index snapshot with {} summaries in {} ms",
+          base.index.size(),
+          System.currentTimeMillis() - start);
+    }
+
+    List<byte[]> recent = manifest.getRecent();
+    Loaded merged = current;
+    if (!matches(merged, manifest.getGeneration(), recent.size())) {
+      List<SummaryIndex.Document> added = new ArrayList<>(recent.size());
+      for (byte[] encoded : recent) {
+        added.add(decode(encoded));
+      }
+      merged =
+          new Loaded(manifest.getGeneration(), recent.size(), base.index.with(added, maxDocuments));
+      current = merged;
+    }
+
+    if (recent.size() >= snapshotAfter) {
+      writeSnapshot(manifest, merged.index);
+    }
+    return merged.index;
+  }
+
+  /**
+   * Write the index as a new snapshot and point the manifest at it. When another container wrote
+   * one first, this one is thrown away, and the summaries are in the other's.
+   */
+  private void writeSnapshot(SearchIndexStore.ManifestItem manifest, SummaryIndex index) {
+    String generation = UUID.randomUUID().toString();
+    byte[] encoded = index.write();
+    int chunks = Math.max(1, (encoded.length + CHUNK_BYTES - 1) / CHUNK_BYTES);
+    List<String> keys = chunkKeys(generation, chunks);
+
+    try {
+      for (int i = 0; i < chunks; i++) {
+        store.putChunk(
+            keys.get(i),
+            Arrays.copyOfRange(
+                encoded, i * CHUNK_BYTES, Math.min(encoded.length, (i + 1) * CHUNK_BYTES)));
+      }
+
+      int merged = Math.min(manifest.getRecent().size(), MAX_RECENT);
+      if (store.putManifest(MANIFEST_KEY, generation, chunks, manifest.getGeneration(), merged)) {
+        snapshot = new Loaded(generation, 0, index);
+        if (manifest.getGeneration() != null) {
+          store.expireChunks(
+              chunkKeys(manifest.getGeneration(), manifest.getChunks()), RETIRED_CHUNK_TTL_SECONDS);
+        }
+        logger.info(
+            "Wrote search index snapshot with {} summaries in {} chunks", index.size(), chunks);
+      } else {
+        store.expireChunks(keys, 0);
+      }
+    } catch (Exception e) {
+      // The summaries stay in the list until the next attempt
+      logger.warn("Could not write search index snapshot: {}", e.toString());
+    }
+  }
+
+  private static boolean matches(Loaded loaded, String generation, int recent) {
+    return loaded.recent == recent
+        && (generation == null ? loaded.generation == null : generation.equals(loaded.generation));
+  }
+
+  private static List<String> chunkKeys(String generation, int chunks) {
+    List<String> keys = new ArrayList<>(chunks);
+    for (int i = 0; i < chunks; i++) {
+      keys.add(MANIFEST_KEY + "#" + generation + "#" + i);
+    }
+    return keys;
+  }
+
+  private static byte[] concat(List<byte[]> chunks) {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    chunks.forEach(bytes::writeBytes);
+    return bytes.toByteArray();
+  }
+
+  private static byte[] encode(SummaryIndex.Document document) {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (DataOutputStream out = new DataOutputStream(bytes)) {
+      out.writeUTF(String.valueOf(document.getTeamId()));
+      out.writeUTF(String.valueOf(document.getChannel()));
+      out.writeUTF(String.valueOf(document.getThreadTs()));
+      out.writeLong(document.getSummarizedAt());
+      byte[] text = document.getText().getBytes(StandardCharsets.UTF_8);
+      out.writeInt(text.length);
+      out.write(text);
+    } catch (IOException e) {
+      throw new IllegalStateException("Could not encode summary", e);
+    }
+    return bytes.toByteArray();
+  }
+
+  private static SummaryIndex.Document decode(byte[] encoded) {
+    try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(encoded))) {
+      String teamId = in.readUTF();
+      String channel = in.readUTF();
+      String threadTs = in.readUTF();
+      long summarizedAt = in.readLong();
+      byte[] text = new byte[in.readInt()];
+      in.readFully(text);
+      return new SummaryIndex.Document(
+          teamId, channel, threadTs, summarizedAt, new String(text, StandardCharsets.UTF_8));
+    } catch (IOException e) {
+      throw new IllegalStateException("Could not read indexed summary", e);
+    }
+  }
+
+  /** An index, with the snapshot generation and number of recent summaries it was built from */
+  @Value
+  private static class Loaded {
+    String generation;
+    int recent;
+    SummaryIndex index;
+  }
+}
@@ -0,0 +1,320 @@
+package org.bvnk.slackbot.service;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.stream.Stream;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+import lombok.Value;
+import org.bvnk.slackbot.config.AppConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Formatted thread messages, kept per channel and thread so that a mention in a thread that was
+ * read before only fetches the replies posted since, and only formats those. Threads are kept in an
+ * LRU shared by the handlers of a container and, compressed, in the DynamoDB table. Every write to
+ * the table has a new generation; a container checks the stored generation before trusting its own
+ * copy, so it picks up replies merged by other containers and threads dropped because one of their
+ * messages was edited or deleted.
+ *
+ * <p>With ATTACHMENTS_ENABLED, excerpts of the files shared in new messages are read by {@link
+ * AttachmentService} and kept as part of the messages' text, so each file is read once.
+ */
+public class ThreadCacheService {
+  private static final Logger logger = LoggerFactory.getLogger(ThreadCacheService.class);
+  private static final int FORMAT_VERSION = 3;
+  private static final int MAX_STORED_BYTES = 350_000; // DynamoDB items are limited to 400 KB
+
+  private static final int MAX_THREADS = Math.max(1, AppConfig.getInstance().getThreadCacheSize());
+
+  private static final Map<String, CachedThread> threads =
+      new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CachedThread> eldest) {
+          return size() > MAX_THREADS;
+        }
+      };
+
+  private final DynamoService dynamoService;
+  private final AttachmentService attachments;
+  private final boolean enabled;
+  private final boolean persistent;
+
+  public ThreadCacheService(DynamoService dynamoService) {
+    AppConfig config = AppConfig.getInstance();
+    this.dynamoService = dynamoService;
+    this.attachments = new AttachmentService();
+    this.enabled = config.isThreadCacheEnabled();
+    // Local runs keep events in memory, and so the threads too
+    this.persistent = !"memory".equalsIgnoreCase(config.getEventStore());
+  }
+
+  /**
+   * The messages of a thread, in thread order: the cached ones plus any posted since they were
+   * cached. Messages without a user are left out, other than those posted by apps and integrations,
+   * such as alerts, which are kept under an empty user.
+   */
+  public ThreadContent getThread(SlackService slackService, String channel, String threadTs) {
+    String key = cacheKey(channel, threadTs);
+    CachedThread cached = enabled ? lookup(key) : null;
+
+    String oldestTs = cached != null ? cached.getLastTs() : null;
+    List<Map<String, Object>> fetched = slackService.getThreadMessages(channel, threadTs, oldestTs);
+    if (cached != null && fetched.isEmpty()) {
+      // The fetch failed; what we have is better than nothing
+      return new ThreadContent(cached.getMessages());
+    }
+
+    List<ThreadMessage> messages =
+        new ArrayList<>(cached != null ? cached.getMessages() : List.of());
+    String lastTs = oldestTs;
+    List<Map<String, Object>> fresh = new ArrayList<>();
+    for (Map<String, Object> message : fetched) {
+      String ts = (String) message.get("ts");
+      if (ts == null || (oldestTs != null && compareTs(ts, oldestTs) <= 0)) {
+        continue; // The parent and the last cached reply come back with every fetch
+      }
+      if (lastTs == null || compareTs(ts, lastTs) > 0) {
+        lastTs = ts;
+      }
+      if (message.get("user") != null || SlackService.isAutomated(message)) {
+        fresh.add(message);
+      }
+    }
+
+    // Files of all the new messages are read together, a few at a time
+    Map<String, String> excerpts = attachments.excerpts(slackService, fresh);
+    for (Map<String, Object> message : fresh) {
+      String ts = (String) message.get("ts");
+      String text = slackService.formatThreadMessage(message);
+      String excerpt = excerpts.get(ts);
+      messages.add(
+          new ThreadMessage(
+              ts,
+              Objects.requireNonNullElse((String) message.get("user"), ""),
+              excerpt != null ? text + "\n" + excerpt : text,
+              SlackService.isAutomated(message)));
+    }
+    int added = fresh.size();
+
+    logger.info(
+        "Thread {} has {} messages, {} of them fetched",
+        threadTs,
+        messages.size(),
+        cached != null ? added : "all");
+    if (enabled && lastTs != null && (cached == null || added > 0)) {
+      store(key, lastTs, messages, cached != null ? cached.getGeneration() : null);
+    }
+    return new ThreadContent(messages);
+  }
+
+  /**
+   * The number of messages in a thread as this container last saw it, or -1 when it isn't cached
+   * here. Doesn't read the table, so it is cheap enough for ingress.
+   */
+  public int cachedMessageCount(String channel, String threadTs) {
+    CachedThread cached;
+    synchronized (threads) {
+      cached = enabled ? threads.get(cacheKey(channel, threadTs)) : null;
+    }
+    return cached != null ? cached.getMessages().size() : -1;
+  }
+
+  /** Drop a thread, so that the next mention reads it again. Used when a message is edited */
+  public void invalidate(String channel, String threadTs) {
+    if (!enabled) {
+      return;
+    }
+
+    String key = cacheKey(channel, threadTs);
+    synchronized (threads) {
+      threads.remove(key);
+    }
+    if (persistent) {
+      dynamoService.deleteThreadCache(key);
+    }
+    logger.info("Dropped cached thread {}", threadTs);
+  }
+
+  private CachedThread lookup(String key) {
+    CachedThread cached;
+    synchronized (threads) {
+      cached = threads.get(key);
+    }
+    if (!persistent) {
+      return cached;
+    }
+
+    // Our own copy is current while the table holds the generation we last read or wrote
+    if (cached != null
+        && cached.getGeneration().equals(dynamoService.getThreadCacheGeneration(key))) {
+      return cached;
+    }
+
+    DynamoService.ThreadCacheItem item = dynamoService.getThreadCache(key);
+    List<ThreadMessage> messages = item != null ? decode(item.getMessages()) : null;
+    if (messages == null) {
+      return null;
+    }
+    cached = new CachedThread(item.getGeneration(), item.getLastTs(), messages);
+    synchronized (threads) {
+      threads.put(key, cached);
+    }
+    return cached;
+  }
+
+  private void store(
+      String key, String lastTs, List<ThreadMessage> messages, String previousGeneration) {
+    String generation = UUID.randomUUID().toString();
+
+    if (persistent) {
+      byte[] encoded = encode(messages);
+      // Conditional on the generation we merged into, so that a thread dropped or extended by
+      // another container in the meantime isn't overwritten with our older view of it
+      boolean written =
+          encoded.length <= MAX_STORED_BYTES
+              && dynamoService.putThreadCache(
+                  key,
+                  new DynamoService.ThreadCacheItem(generation, lastTs, encoded),
+                  previousGeneration);
+      if (!written) {
+        synchronized (threads) {
+          threads.remove(key);
+        }
+        return;
+      }
+    }
+
+    synchronized (threads) {
+      threads.put(key, new CachedThread(generation, lastTs, messages));
+    }
+  }
+
+  private static String cacheKey(String channel, String threadTs) {
+    return "thread#" + channel + "#" + threadTs;
+  }
+
+  /** Slack timestamps are decimal seconds, which don't always compare as strings */
+  private static int compareTs(String a, String b) {
+    try {
+      return new BigDecimal(a).compareTo(new BigDecimal(b));
+    } catch (NumberFormatException e) {
+      return a.compareTo(b);
+    }
+  }
+
+  private static byte[] encode(List<ThreadMessage> messages) {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(bytes))) {
+      out.writeByte(FORMAT_VERSION);
+      out.writeInt(messages.size());
+      for (ThreadMessage message : messages) {
+        writeString(out, message.getTs());
+        writeString(out, message.getUser());
+        writeString(out, message.getText());
+        out.writeBoolean(message.isAutomated());
+      }
+    } catch (IOException e) {
+      throw new IllegalStateException("Could not encode thread", e);
+    }
+    return bytes.toByteArray();
+  }
+
+  /** The messages, or null when they were written in another format or are unreadable */
+  private static List<ThreadMessage> decode(byte[] encoded) {
+    try (DataInputStream in =
+        new DataInputStream(new InflaterInputStream(new ByteArrayInputStream(encoded)))) {
+      if (in.readByte() != FORMAT_VERSION) {
+        return null;
+      }
+      int count = in.readInt();
+      List<ThreadMessage> messages = new ArrayList<>(count);
+      for (int i = 0; i < count; i++) {
+        messages.add(
+            new ThreadMessage(readString(in), readString(in), readString(in), in.readBoolean()));
+      }
+      return messages;
+    } catch (IOException e) {
+      logger.warn("Could not read cached thread: {}", e.toString());
+      return null;
+    }
+  }
+
+  // Length-prefixed rather than writeUTF, which is limited to 64 KB
+  private static void writeString(DataOutputStream out, String value) throws IOException {
+    byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  private static String readString(DataInputStream in) throws IOException {
+    byte[] bytes = new byte[in.readInt()];
+    in.readFully(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  /** The messages of a thread as they go into the prompt */
+  @Value
+  public static class ThreadContent {
+    List<ThreadMessage> messages;
+
+    /** One entry per message, leaving out the bot's own messages and the triggering message */
+    public List<String> format(String botUserId, String triggerMessageTs) {
+      return kept(botUserId, triggerMessageTs).map(ThreadMessage::getText).toList();
+    }
+
+    /** Whether each message that {@link #format} keeps was posted by an app, in the same order */
+    public List<Boolean> automated(String botUserId, String triggerMessageTs) {
+      return kept(botUserId, triggerMessageTs).map(ThreadMessage::isAutomated).toList();
+    }
+
+    private Stream<ThreadMessage> kept(String botUserId, String triggerMessageTs) {
+      return messages.stream()
+          .filter(message -> !message.getUser().equals(botUserId))
+          .filter(message -> !message.getTs().equals(triggerMessageTs));
+    }
+
+    /**
+     * The timestamp of the newest message that {@link #format} keeps, or null when it keeps none. A
+     * summary made from that message on is still current.
+     */
+    public String latestTs(String botUserId, String triggerMessageTs) {
+      String latest = null;
+      for (ThreadMessage message : messages) {
+        if (!message.getUser().equals(botUserId)
+            && !message.getTs().equals(triggerMessageTs)
+            && (latest == null || compareTs(message.getTs(), latest) > 0)) {
+          latest = message.getTs();
+        }
+      }
+      return latest;
+    }
+  }
+
+  @Value
+  public static class ThreadMessage {
+    String ts;
+    String user;
+    String text; // Formatted, with the author's and mentioned users' names resolved
+    boolean automated; // Posted by an app or integration, see SlackService#isAutomated
+  }
+
+  @Value
+  private static class CachedThread {
+    String generation;
+    String lastTs;
+    List<ThreadMessage> messages;
+  }
+}
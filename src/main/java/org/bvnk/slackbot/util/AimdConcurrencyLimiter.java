@@ -0,0 +1,67 @@
+package org.bvnk.slackbot.util;
+
+/**
+ * Concurrency limit that adapts to the downstream service: every successful call raises the limit
+ * by roughly one per window of calls (additive increase), every throttled call halves it
+ * (multiplicative decrease). Until the first throttle the limit grows by one per success instead
+ * (slow start), so a cold container reaches its working limit within a few round trips. Calls over
+ * the current limit wait a bounded time for a slot and are rejected after that instead of piling
+ * up.
+ */
+public class AimdConcurrencyLimiter {
+  private static final double BACKOFF_RATIO = 0.5;
+
+  private final int minLimit;
+  private final int maxLimit;
+  private double limit;
+  private int inFlight;
+  private boolean slowStart = true;
+
+  public AimdConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit) {
+    this.minLimit = minLimit;
+    this.maxLimit = maxLimit;
+    this.limit = Math.max(minLimit, Math.min(initialLimit, maxLimit));
+  }
+
+  public synchronized boolean tryAcquire(long timeoutMillis) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + timeoutMillis;
+    while (inFlight >= (int) limit) {
+      long remaining = deadline - System.currentTimeMillis();
+      if (remaining <= 0) {
+        return false;
+      }
+      wait(remaining);
+    }
+    inFlight++;
+    return true;
+  }
+
+  public synchronized void onSuccess() {
+    limit = Math.min(maxLimit, limit + (slowStart ? 1.0 : 1.0 / limit));
+    release();
+  }
+
+  public synchronized void onThrottled() {
+    slowStart = false;
+    limit = Math.max(minLimit, limit * BACKOFF_RATIO);
+    release();
+  }
+
+  /** Release without adjusting the limit, for failures that say nothing about capacity */
+  public synchronized void onIgnored() {
+    release();
+  }
+
+  private void release() {
+    inFlight = Math.max(0, inFlight - 1);
+    notifyAll();
+  }
+
+  public synchronized int getLimit() {
+    return (int) limit;
+  }
+
+  public synchronized int getInFlight() {
+    return inFlight;
+  }
+}
@@ -0,0 +1,125 @@
+package org.bvnk.slackbot.util;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/** Small in-memory BM25 index over a fixed list of documents, built once per request */
+public class Bm25Index {
+  private static final double K1 = 1.2;
+  private static final double B = 0.75;
+
+  private static final Set<String> STOP_WORDS =
+      Set.of(
+          "the", "and", "for", "are", "was", "were", "this", "that", "with", "have", "has", "had",
+          "you", "your", "our", "but", "not", "what", "when", "where", "which", "who", "how", "why",
+          "can", "could", "would", "should", "will", "about", "from", "into", "there", "their",
+          "they", "them", "then", "than", "its", "is", "be", "of", "to", "in", "on", "at", "it",
+          "we", "i", "a", "an", "or", "do", "did", "does", "so", "if", "as", "by", "me", "my");
+
+  private final List<Map<String, Integer>> termFrequencies;
+  private final int[] documentLengths;
+  private final Map<String, Integer> documentFrequencies = new HashMap<>();
+  private final double averageDocumentLength;
+
+  public Bm25Index(List<String> documents) {
+    this.termFrequencies = new ArrayList<>(documents.size());
+    this.documentLengths = new int[documents.size()];
+
+    long totalLength = 0;
+    for (int i = 0; i < documents.size(); i++) {
+      List<String> terms = tokenize(documents.get(i));
+      Map<String, Integer> frequencies = new HashMap<>();
+      for (String term : terms) {
+        frequencies.merge(term, 1, Integer::sum);
+      }
+      for (String term : frequencies.keySet()) {
+        documentFrequencies.merge(term, 1, Integer::sum);
+      }
+      termFrequencies.add(frequencies);
+      documentLengths[i] = terms.size();
+      totalLength += terms.size();
+    }
+
+    this.averageDocumentLength = documents.isEmpty() ? 0 : (double) totalLength / documents.size();
+  }
+
+  /** Score every document against the query, returned in document order */
+  public double[] score(String query) {
+    double[] scores = new double[termFrequencies.size()];
+    if (scores.length == 0) {
+      return scores;
+    }
+
+    for (String term : Set.copyOf(tokenize(query))) {
+      Integer documentFrequency = documentFrequencies.get(term);
+      if (documentFrequency == null) {
+        continue;
+      }
+
+      double idf =
+          Math.log(1 + (scores.length - documentFrequency + 0.5) / (documentFrequency + 0.5));
+
+      for (int i = 0; i < scores.length; i++) {
+        Integer frequency = termFrequencies.get(i).get(term);
+        if (frequency == null) {
+          continue;
+        }
+        double lengthNorm = 1 - B + B * documentLengths[i] / Math.max(averageDocumentLength, 1);
+        scores[i] += idf * (frequency * (K1 + 1)) / (frequency + K1 * lengthNorm);
+      }
+    }
+
+    return scores;
+  }
+
+  /**
+   * Lower-cased, lightly stemmed alphanumeric terms with stop words and single characters removed
+   */
+  public static List<String> tokenize(String text) {
+    List<String> terms = new ArrayList<>();
+    if (text == null) {
+      return terms;
+    }
+
+    String lower = text.toLowerCase(Locale.ROOT);
+    int start = -1;
+    for (int i = 0; i <= lower.length(); i++) {
+      boolean isTermChar = i < lower.length() && Character.isLetterOrDigit(lower.charAt(i));
+      if (isTermChar && start < 0) {
+        start = i;
+      } else if (!isTermChar && start >= 0) {
+        String term = lower.substring(start, i);
+        if (term.length() > 1 && !STOP_WORDS.contains(term)) {
+          terms.add(stem(term));
+        }
+        start = -1;
+      }
+    }
+
+    return terms;
+  }
+
+  /** Strip the common English suffixes so that "retries" matches "retry" and "decided" "decide" */
+  private static String stem(String term) {
+    if (term.length() <= 4 || !Character.isLetter(term.charAt(term.length() - 1))) {
+      return term;
+    }
+    if (term.endsWith("ies")) {
+      return term.substring(0, term.length() - 3) + "y";
+    }
+
+    String stem = term;
+    if (stem.endsWith("ing")) {
+      stem = stem.substring(0, stem.length() - 3);
+    } else if (stem.endsWith("ed") || stem.endsWith("es")) {
+      stem = stem.substring(0, stem.length() - 2);
+    } else if (stem.endsWith("s") && !stem.endsWith("ss")) {
+      stem = stem.substring(0, stem.length() - 1);
+    }
+    return stem.endsWith("e") ? stem.substring(0, stem.length() - 1) : stem;
+  }
+}
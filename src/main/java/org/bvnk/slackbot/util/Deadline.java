@@ -0,0 +1,43 @@
+package org.bvnk.slackbot.util;
+
+import com.amazonaws.services.lambda.runtime.Context;
+
+/** Point in time by which work has to be finished, usually derived from the Lambda timeout */
+public final class Deadline {
+  private static final Deadline NONE = new Deadline(Long.MAX_VALUE);
+
+  private final long expiresAtMillis;
+
+  private Deadline(long expiresAtMillis) {
+    this.expiresAtMillis = expiresAtMillis;
+  }
+
+  public static Deadline none() {
+    return NONE;
+  }
+
+  public static Deadline afterMillis(long millis) {
+    long now = System.currentTimeMillis();
+    return millis >= Long.MAX_VALUE - now ? NONE : new Deadline(now + millis);
+  }
+
+  /** The end of the current invocation, or no deadline when running outside Lambda */
+  public static Deadline fromContext(Context context) {
+    return context != null ? afterMillis(context.getRemainingTimeInMillis()) : NONE;
+  }
+
+  /** A deadline that leaves the given time for work that has to happen afterwards */
+  public Deadline minusMillis(long millis) {
+    return this == NONE ? NONE : new Deadline(expiresAtMillis - millis);
+  }
+
+  public long remainingMillis() {
+    return this == NONE
+        ? Long.MAX_VALUE
+        : Math.max(0, expiresAtMillis - System.currentTimeMillis());
+  }
+
+  public boolean isExpired() {
+    return remainingMillis() == 0;
+  }
+}
@@ -0,0 +1,56 @@
+package org.bvnk.slackbot.util;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps the most recent latency samples per key so percentiles can be read cheaply at runtime. One
+ * instance lives for the whole container, so the window spans invocations.
+ */
+public class LatencyTracker {
+  private static final int WINDOW_SIZE = 256;
+
+  private final Map<String, Window> windows = new ConcurrentHashMap<>();
+
+  public void record(String key, long millis) {
+    windows.computeIfAbsent(key, k -> new Window()).add(millis);
+  }
+
+  /** Percentile (0-100) of the recorded samples, or -1 when nothing has been recorded yet */
+  public long percentile(String key, double percentile) {
+    Window window = windows.get(key);
+    return window == null ? -1 : window.percentile(percentile);
+  }
+
+  public int sampleCount(String key) {
+    Window window = windows.get(key);
+    return window == null ? 0 : window.size();
+  }
+
+  private static class Window {
+    private final long[] samples = new long[WINDOW_SIZE];
+    private int next;
+    private int size;
+
+    synchronized void add(long millis) {
+      samples[next] = millis;
+      next = (next + 1) % WINDOW_SIZE;
+      size = Math.min(size + 1, WINDOW_SIZE);
+    }
+
+    synchronized int size() {
+      return size;
+    }
+
+    synchronized long percentile(double percentile) {
+      if (size == 0) {
+        return -1;
+      }
+      long[] sorted = Arrays.copyOf(samples, size);
+      Arrays.sort(sorted);
+      int index = (int) Math.ceil(percentile / 100.0 * size) - 1;
+      return sorted[Math.max(0, Math.min(index, size - 1))];
+    }
+  }
+}
@@ -0,0 +1,156 @@
+package org.bvnk.slackbot.util;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Converts the Markdown that models write into Slack mrkdwn in a single pass over each line.
+ * Headings become bold lines, list markers become bullets, {@code **bold**} becomes {@code *bold*},
+ * links become {@code <url|text>}, and {@code &}, {@code <} and {@code >} are escaped as Slack
+ * requires. A single {@code *span*} is left alone, since the model may already be writing mrkdwn,
+ * where it is bold. So are mentions, channel links and links already in Slack's {@code <...>} form,
+ * which escaping would break. Code spans and fenced blocks are left as they are, apart from
+ * escaping. Fence state is kept between lines so streamed output can be converted line by line.
+ */
+public class MarkdownToMrkdwn {
+  private static final String FENCE = "```";
+  private static final Pattern HEADING = Pattern.compile("^\\s{0,3}#{1,6}\\s+(.*?)\\s*#*\\s*$");
+  private static final Pattern BULLET = Pattern.compile("^(\\s*)[-*+]\\s+(.*)$");
+  private static final Pattern QUOTE = Pattern.compile("^(\\s*)>\\s?(.*)$");
+  // <@U123>, <#C123|name>, <!here>, <https://...|label> and <mailto:...>
+  private static final Pattern SLACK_TOKEN =
+      Pattern.compile("<(?:[@#!][^<>\\s]+|(?:https?|mailto):[^<>\\s|]+(?:\\|[^<>]*)?)>");
+
+  private boolean inCodeBlock;
+
+  public static String convert(String markdown) {
+    MarkdownToMrkdwn converter = new MarkdownToMrkdwn();
+    StringBuilder out = new StringBuilder(markdown.length());
+    for (String line : markdown.split("\n", -1)) {
+      if (out.length() > 0) {
+        out.append('\n');
+      }
+      out.append(converter.convertLine(line));
+    }
+    return out.toString();
+  }
+
+  public boolean isInCodeBlock() {
+    return inCodeBlock;
+  }
+
+  /** Convert one line, without its line break */
+  public String convertLine(String line) {
+    if (line.stripLeading().startsWith(FENCE)) {
+      if (togglesFence(line)) {
+        // Slack doesn't understand language hints, they would show up as the first line of code
+        inCodeBlock = !inCodeBlock;
+        return FENCE;
+      }
+      return escape(line); // A code block opened and closed on one line
+    }
+    if (inCodeBlock) {
+      return escape(line);
+    }
+
+    Matcher heading = HEADING.matcher(line);
+    if (heading.matches()) {
+      String text = inline(heading.group(1)).replace("*", "");
+      return text.isEmpty() ? "" : "*" + text + "*";
+    }
+
+    Matcher bullet = BULLET.matcher(line);
+    if (bullet.matches()) {
+      return bullet.group(1) + "• " + inline(bullet.group(2));
+    }
+
+    Matcher quote = QUOTE.matcher(line);
+    if (quote.matches()) {
+      return quote.group(1) + "> " + inline(quote.group(2));
+    }
+
+    return inline(line);
+  }
+
+  /** Convert inline formatting, scanning the text once */
+  private static String inline(String text) {
+    StringBuilder out = new StringBuilder(text.length());
+    int i = 0;
+
+    while (i < text.length()) {
+      char c = text.charAt(i);
+
+      if (c == '`') {
+        int end = text.indexOf('`', i + 1);
+        if (end > i) {
+          out.append('`').append(escape(text.substring(i + 1, end))).append('`');
+          i = end + 1;
+          continue;
+        }
+      } else if (text.startsWith("**", i) || text.startsWith("__", i)) {
+        String marker = text.substring(i, i + 2);
+        int end = text.indexOf(marker, i + 2);
+        if (end > i + 2) {
+          out.append('*').append(inline(text.substring(i + 2, end))).append('*');
+          i = end + 2;
+          continue;
+        }
+      } else if (text.startsWith("~~", i)) {
+        int end = text.indexOf("~~", i + 2);
+        if (end > i + 2) {
+          out.append('~').append(inline(text.substring(i + 2, end))).append('~');
+          i = end + 2;
+          continue;
+        }
+      } else if (c == '<') {
+        Matcher token = SLACK_TOKEN.matcher(text).region(i, text.length());
+        if (token.lookingAt()) {
+          out.append(token.group());
+          i = token.end();
+          continue;
+        }
+      } else if (c == '[') {
+        int textEnd = text.indexOf("](", i + 1);
+        int urlEnd = textEnd > i ? text.indexOf(')', textEnd + 2) : -1;
+        if (urlEnd > textEnd + 2) {
+          String label = text.substring(i + 1, textEnd).replace("|", "");
+          String url = text.substring(textEnd + 2, urlEnd).trim();
+          out.append('<').append(url).append('|').append(escape(label)).append('>');
+          i = urlEnd + 1;
+          continue;
+        }
+      }
+
+      appendEscaped(out, c);
+      i++;
+    }
+
+    return out.toString();
+  }
+
+  /** Whether a line starting with a fence opens or closes a block, rather than doing both */
+  static boolean togglesFence(String line) {
+    int fences = 0;
+    for (int i = line.indexOf(FENCE); i >= 0; i = line.indexOf(FENCE, i + FENCE.length())) {
+      fences++;
+    }
+    return fences % 2 == 1;
+  }
+
+  private static String escape(String text) {
+    StringBuilder out = new StringBuilder(text.length());
+    for (int i = 0; i < text.length(); i++) {
+      appendEscaped(out, text.charAt(i));
+    }
+    return out.toString();
+  }
+
+  private static void appendEscaped(StringBuilder out, char c) {
+    switch (c) {
+      case '&' -> out.append("&amp;");
+      case '<' -> out.append("&lt;");
+      case '>' -> out.append("&gt;");
+      default -> out.append(c);
+    }
+  }
+}
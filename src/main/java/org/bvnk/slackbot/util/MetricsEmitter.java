@@ -0,0 +1,46 @@
+package org.bvnk.slackbot.util;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.util.Map;
+import org.bvnk.slackbot.logging.JsonLoggingProvider;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Writes metrics as CloudWatch Embedded Metric Format lines on stdout. Lambda ships stdout to
+ * CloudWatch Logs, which turns these lines into metrics without any API call on the request path.
+ * The lines go through the log writer, off the request thread, and are never sampled out.
+ */
+public final class MetricsEmitter {
+  private static final Logger logger = LoggerFactory.getLogger(MetricsEmitter.class);
+  private static final String NAMESPACE = "SlackAiAssistant";
+  private static final ObjectMapper objectMapper = new ObjectMapper();
+
+  private MetricsEmitter() {}
+
+  public static void emit(String name, double value, String unit, Map<String, String> dimensions) {
+    try {
+      ObjectNode root = objectMapper.createObjectNode();
+      ObjectNode aws = root.putObject("_aws");
+      aws.put("Timestamp", System.currentTimeMillis());
+
+      ObjectNode directive = aws.putArray("CloudWatchMetrics").addObject();
+      directive.put("Namespace", NAMESPACE);
+      ArrayNode dimensionSet = directive.putArray("Dimensions").addArray();
+      dimensions.keySet().forEach(dimensionSet::add);
+      directive.putArray("Metrics").addObject().put("Name", name).put("Unit", unit);
+
+      dimensions.forEach(root::put);
+      root.put(name, value);
+
+      String line = objectMapper.writeValueAsString(root);
+      if (!JsonLoggingProvider.writeLine(line)) {
+        System.out.println(line);
+      }
+    } catch (Exception e) {
+      logger.warn("Failed to emit metric {}", name, e);
+    }
+  }
+}
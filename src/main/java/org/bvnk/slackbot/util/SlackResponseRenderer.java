@@ -0,0 +1,164 @@
+package org.bvnk.slackbot.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Splits a response into chunks that each fit in one Slack section block, so long answers are
+ * posted in full instead of being truncated. Chunks end at paragraph breaks where possible, and
+ * otherwise at line breaks, so list items stay whole. Lines longer than a chunk are cut after a
+ * sentence, or failing that a word. A code block that has to be split is closed at the end of one
+ * chunk and reopened at the start of the next.
+ *
+ * <p>Text can be fed in pieces as it is streamed with {@link #append(String)}, which returns the
+ * chunks completed so far; {@link #finish()} returns the rest. With {@code convertMarkdown} set,
+ * each line is converted from Markdown to mrkdwn as it completes.
+ */
+public class SlackResponseRenderer {
+  public static final int SECTION_CHAR_LIMIT = 3000; // Slack's limit for a section block's text
+  private static final String FENCE = "```";
+  private static final String[] SENTENCE_ENDS = {". ", "! ", "? ", "; "};
+
+  private final int budget;
+  private final MarkdownToMrkdwn converter;
+  private final StringBuilder partialLine = new StringBuilder();
+  private final List<String> lines = new ArrayList<>();
+  private final List<Boolean> inFenceAfter = new ArrayList<>();
+  private final List<String> ready = new ArrayList<>();
+  private int length;
+  private boolean inFence;
+
+  public SlackResponseRenderer(int maxChars, boolean convertMarkdown) {
+    // Keep room to close a code block that has to be split
+    this.budget = Math.max(FENCE.length() * 4, maxChars - FENCE.length() - 1);
+    this.converter = convertMarkdown ? new MarkdownToMrkdwn() : null;
+  }
+
+  /** Split text that is already mrkdwn into section-sized chunks */
+  public static List<String> split(String mrkdwn) {
+    return render(mrkdwn, SECTION_CHAR_LIMIT, false);
+  }
+
+  public static List<String> render(String text, int maxChars, boolean convertMarkdown) {
+    SlackResponseRenderer renderer = new SlackResponseRenderer(maxChars, convertMarkdown);
+    List<String> chunks = new ArrayList<>(renderer.append(text));
+    chunks.addAll(renderer.finish());
+    return chunks;
+  }
+
+  /** Add streamed text, returning the chunks that are complete */
+  public List<String> append(String text) {
+    partialLine.append(text);
+    int newline;
+    while ((newline = partialLine.indexOf("\n")) >= 0) {
+      addLine(partialLine.substring(0, newline));
+      partialLine.delete(0, newline + 1);
+    }
+    return drain();
+  }
+
+  /** End of the text, returning the remaining chunks */
+  public List<String> finish() {
+    if (partialLine.length() > 0) {
+      addLine(partialLine.toString());
+      partialLine.setLength(0);
+    }
+    emit(lines.size());
+    return drain();
+  }
+
+  private void addLine(String rawLine) {
+    String line = converter != null ? converter.convertLine(rawLine) : rawLine;
+    if (line.stripLeading().startsWith(FENCE) && MarkdownToMrkdwn.togglesFence(line)) {
+      inFence = !inFence;
+    }
+
+    for (String piece : splitLongLine(line)) {
+      if (!lines.isEmpty() && length + 1 + piece.length() > budget) {
+        emit(splitPoint());
+      }
+      length += (lines.isEmpty() ? 0 : 1) + piece.length();
+      lines.add(piece);
+      inFenceAfter.add(inFence);
+    }
+  }
+
+  /**
+   * Where to end the current chunk: after the last blank line, as long as that keeps the chunk at
+   * least half full, otherwise after the last line
+   */
+  private int splitPoint() {
+    int used = 0;
+    int best = lines.size();
+    for (int i = 0; i < lines.size(); i++) {
+      used += lines.get(i).length() + 1;
+      if (lines.get(i).isBlank() && !inFenceAfter.get(i) && used >= budget / 2) {
+        best = i + 1;
+      }
+    }
+    return best;
+  }
+
+  /** Move the first {@code count} lines into a chunk, carrying an open code block over */
+  private void emit(int count) {
+    if (count == 0) {
+      return;
+    }
+
+    boolean openFence = inFenceAfter.get(count - 1);
+    String chunk = joinTrimmingBlankLines(lines.subList(0, count));
+    if (openFence) {
+      chunk += "\n" + FENCE;
+    }
+    if (!chunk.isBlank() && !chunk.equals(FENCE + "\n" + FENCE)) {
+      ready.add(chunk);
+    }
+
+    lines.subList(0, count).clear();
+    inFenceAfter.subList(0, count).clear();
+    if (openFence) {
+      lines.add(0, FENCE);
+      inFenceAfter.add(0, true);
+    }
+    length = lines.isEmpty() ? 0 : String.join("\n", lines).length();
+  }
+
+  /** Cut a line that doesn't fit in a chunk on its own after a sentence or a word */
+  private List<String> splitLongLine(String line) {
+    List<String> pieces = new ArrayList<>();
+    int limit = budget - FENCE.length() - 1; // a reopened code block takes a line
+
+    while (line.length() > limit) {
+      int cut = -1;
+      for (String end : SENTENCE_ENDS) {
+        cut = Math.max(cut, line.lastIndexOf(end, limit - 1));
+      }
+      cut = cut > limit / 2 ? cut + 1 : line.lastIndexOf(' ', limit);
+      if (cut <= 0) {
+        cut = limit;
+      }
+      pieces.add(line.substring(0, cut).stripTrailing());
+      line = line.substring(cut).stripLeading();
+    }
+    pieces.add(line);
+    return pieces;
+  }
+
+  private static String joinTrimmingBlankLines(List<String> chunkLines) {
+    int start = 0;
+    int end = chunkLines.size();
+    while (start < end && chunkLines.get(start).isBlank()) {
+      start++;
+    }
+    while (end > start && chunkLines.get(end - 1).isBlank()) {
+      end--;
+    }
+    return String.join("\n", chunkLines.subList(start, end));
+  }
+
+  private List<String> drain() {
+    List<String> chunks = new ArrayList<>(ready);
+    ready.clear();
+    return chunks;
+  }
+}
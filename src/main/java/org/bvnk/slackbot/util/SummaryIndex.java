@@ -0,0 +1,337 @@
+package org.bvnk.slackbot.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.function.Predicate;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+import lombok.Value;
+
+/**
+ * Inverted index over thread summaries, scored with BM25 using the terms of {@link Bm25Index}. Each
+ * term maps to one packed array of document numbers and term frequencies, so the index is a few
+ * arrays rather than a map per document, and is written out as-is, delta and variable-length
+ * encoded, so loading a snapshot doesn't tokenize anything.
+ *
+ * <p>Immutable: adding documents returns a new index, in which a document replaces any older one
+ * with the same key and the oldest documents are dropped beyond the size limit.
+ */
+public class SummaryIndex {
+  private static final double K1 = 1.2;
+  private static final double B = 0.75;
+  private static final int FORMAT_VERSION = 1;
+  private static final SummaryIndex EMPTY = new SummaryIndex(List.of(), new int[0], Map.of(), 0);
+
+  private final List<Document> documents;
+  private final int[] lengths;
+  // term -> [document, frequency, document, frequency, ...] in document order
+  private final Map<String, int[]> postings;
+  private final double averageLength;
+
+  private SummaryIndex(
+      List<Document> documents, int[] lengths, Map<String, int[]> postings, long totalLength) {
+    this.documents = documents;
+    this.lengths = lengths;
+    this.postings = postings;
+    this.averageLength = documents.isEmpty() ? 0 : (double) totalLength / documents.size();
+  }
+
+  public static SummaryIndex empty() {
+    return EMPTY;
+  }
+
+  public int size() {
+    return documents.size();
+  }
+
+  /**
+   * A new index with the documents added, replacing documents with the same key, and keeping only
+   * the newest {@code maxDocuments}
+   */
+  public SummaryIndex with(List<Document> added, int maxDocuments) {
+    // Later documents win, both over the index and over earlier ones in the list
+    Map<String, Document> newest = new HashMap<>();
+    for (Document document : added) {
+      newest.put(document.getKey(), document);
+    }
+    List<Document> fresh = new ArrayList<>();
+    for (Document document : added) {
+      if (newest.get(document.getKey()) == document) {
+        fresh.add(document);
+      }
+    }
+
+    // Documents are kept oldest first, so the ones dropped for space are at the front
+    int replaced = 0;
+    for (Document document : documents) {
+      if (newest.containsKey(document.getKey())) {
+        replaced++;
+      }
+    }
+    int overflow = Math.max(0, documents.size() - replaced + fresh.size() - maxDocuments);
+
+    int[] remap = new int[documents.size()];
+    List<Document> kept = new ArrayList<>();
+    for (int i = 0; i < documents.size(); i++) {
+      Document document = documents.get(i);
+      if (newest.containsKey(document.getKey())) {
+        remap[i] = -1;
+      } else if (overflow > 0) {
+        remap[i] = -1;
+        overflow--;
+      } else {
+        remap[i] = kept.size();
+        kept.add(document);
+      }
+    }
+    int firstFresh = Math.min(overflow, fresh.size());
+    int keptFromIndex = kept.size();
+    kept.addAll(fresh.subList(firstFresh, fresh.size()));
+
+    int[] newLengths = new int[kept.size()];
+    long totalLength = 0;
+    for (int i = 0; i < documents.size(); i++) {
+      if (remap[i] >= 0) {
+        newLengths[remap[i]] = lengths[i];
+        totalLength += lengths[i];
+      }
+    }
+
+    Map<String, IntList> merged = new HashMap<>();
+    for (Map.Entry<String, int[]> term : postings.entrySet()) {
+      int[] list = term.getValue();
+      IntList remapped = new IntList(list.length);
+      for (int p = 0; p < list.length; p += 2) {
+        int document = remap[list[p]];
+        if (document >= 0) {
+          remapped.add(document, list[p + 1]);
+        }
+      }
+      if (remapped.size > 0) {
+        merged.put(term.getKey(), remapped);
+      }
+    }
+    for (int i = keptFromIndex; i < kept.size(); i++) {
+      List<String> terms = Bm25Index.tokenize(kept.get(i).getText());
+      Map<String, Integer> frequencies = new HashMap<>();
+      for (String term : terms) {
+        frequencies.merge(term, 1, Integer::sum);
+      }
+      for (Map.Entry<String, Integer> term : frequencies.entrySet()) {
+        merged.computeIfAbsent(term.getKey(), key -> new IntList(2)).add(i, term.getValue());
+      }
+      newLengths[i] = terms.size();
+      totalLength += terms.size();
+    }
+
+    Map<String, int[]> newPostings = new HashMap<>(merged.size() * 4 / 3 + 1);
+    merged.forEach((term, list) -> newPostings.put(term, list.toArray()));
+    return new SummaryIndex(List.copyOf(kept), newLengths, newPostings, totalLength);
+  }
+
+  /** The best scoring documents the filter accepts, best first, leaving out ones without a match */
+  public List<Hit> search(String query, Predicate<Document> filter, int limit) {
+    double[] scores = new double[documents.size()];
+    for (String term : new HashSet<>(Bm25Index.tokenize(query))) {
+      int[] list = postings.get(term);
+      if (list == null) {
+        continue;
+      }
+
+      int documentFrequency = list.length / 2;
+      double idf =
+          Math.log(1 + (documents.size() - documentFrequency + 0.5) / (documentFrequency + 0.5));
+      for (int p = 0; p < list.length; p += 2) {
+        int document = list[p];
+        int frequency = list[p + 1];
+        double lengthNorm = 1 - B + B * lengths[document] / Math.max(averageLength, 1);
+        scores[document] += idf * (frequency * (K1 + 1)) / (frequency + K1 * lengthNorm);
+      }
+    }
+
+    // Ties go to the newer summary
+    PriorityQueue<Hit> best =
+        new PriorityQueue<>(
+            (a, b) ->
+                a.getScore() != b.getScore()
+                    ? Double.compare(a.getScore(), b.getScore())
+                    : Long.compare(
+                        a.getDocument().getSummarizedAt(), b.getDocument().getSummarizedAt()));
+    for (int i = 0; i < scores.length; i++) {
+      if (scores[i] <= 0 || !filter.test(documents.get(i))) {
+        continue;
+      }
+      best.add(new Hit(documents.get(i), scores[i]));
+      if (best.size() > limit) {
+        best.poll();
+      }
+    }
+
+    List<Hit> hits = new ArrayList<>(best);
+    hits.sort(best.comparator().reversed());
+    return hits;
+  }
+
+  /** The index compressed, to be read back with {@link #read} */
+  public byte[] write() {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(bytes))) {
+      out.writeByte(FORMAT_VERSION);
+      writeVarInt(out, documents.size());
+      for (int i = 0; i < documents.size(); i++) {
+        Document document = documents.get(i);
+        writeString(out, document.getTeamId());
+        writeString(out, document.getChannel());
+        writeString(out, document.getThreadTs());
+        out.writeLong(document.getSummarizedAt());
+        writeString(out, document.getText());
+        writeVarInt(out, lengths[i]);
+      }
+
+      writeVarInt(out, postings.size());
+      for (Map.Entry<String, int[]> term : postings.entrySet()) {
+        writeString(out, term.getKey());
+        int[] list = term.getValue();
+        writeVarInt(out, list.length / 2);
+        int previous = 0;
+        for (int p = 0; p < list.length; p += 2) {
+          writeVarInt(out, list[p] - previous);
+          writeVarInt(out, list[p + 1]);
+          previous = list[p];
+        }
+      }
+    } catch (IOException e) {
+      throw new IllegalStateException("Could not write summary index", e);
+    }
+    return bytes.toByteArray();
+  }
+
+  /**
+   * Read an index written by {@link #write}, or an empty one when it was written in another format
+   */
+  public static SummaryIndex read(byte[] encoded) {
+    try (DataInputStream in =
+        new DataInputStream(new InflaterInputStream(new ByteArrayInputStream(encoded)))) {
+      if (in.readByte() != FORMAT_VERSION) {
+        return EMPTY;
+      }
+
+      int count = readVarInt(in);
+      List<Document> documents = new ArrayList<>(count);
+      int[] lengths = new int[count];
+      long totalLength = 0;
+      for (int i = 0; i < count; i++) {
+        String teamId = readString(in);
+        String channel = readString(in);
+        String threadTs = readString(in);
+        long summarizedAt = in.readLong();
+        documents.add(new Document(teamId, channel, threadTs, summarizedAt, readString(in)));
+        lengths[i] = readVarInt(in);
+        totalLength += lengths[i];
+      }
+
+      int terms = readVarInt(in);
+      Map<String, int[]> postings = new HashMap<>(terms * 4 / 3 + 1);
+      for (int t = 0; t < terms; t++) {
+        String term = readString(in);
+        int[] list = new int[readVarInt(in) * 2];
+        int previous = 0;
+        for (int p = 0; p < list.length; p += 2) {
+          list[p] = previous + readVarInt(in);
+          list[p + 1] = readVarInt(in);
+          previous = list[p];
+        }
+        postings.put(term, list);
+      }
+      return new SummaryIndex(List.copyOf(documents), lengths, postings, totalLength);
+    } catch (IOException e) {
+      throw new IllegalStateException("Could not read summary index", e);
+    }
+  }
+
+  private static void writeVarInt(DataOutputStream out, int value) throws IOException {
+    while ((value & ~0x7F) != 0) {
+      out.writeByte((value & 0x7F) | 0x80);
+      value >>>= 7;
+    }
+    out.writeByte(value);
+  }
+
+  private static int readVarInt(DataInputStream in) throws IOException {
+    int value = 0;
+    for (int shift = 0; shift < 32; shift += 7) {
+      int b = in.readUnsignedByte();
+      value |= (b & 0x7F) << shift;
+      if ((b & 0x80) == 0) {
+        return value;
+      }
+    }
+    throw new IOException("Malformed variable-length integer");
+  }
+
+  private static void writeString(DataOutputStream out, String value) throws IOException {
+    byte[] bytes = (value != null ? value : "").getBytes(StandardCharsets.UTF_8);
+    writeVarInt(out, bytes.length);
+    out.write(bytes);
+  }
+
+  private static String readString(DataInputStream in) throws IOException {
+    byte[] bytes = new byte[readVarInt(in)];
+    in.readFully(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  /** A summary of one thread */
+  @Value
+  public static class Document {
+    String teamId;
+    String channel;
+    String threadTs;
+    long summarizedAt;
+    String text;
+
+    /** Documents with the same key are summaries of the same thread */
+    public String getKey() {
+      return teamId + "/" + channel + "/" + threadTs;
+    }
+  }
+
+  @Value
+  public static class Hit {
+    Document document;
+    double score;
+  }
+
+  /** Growable list of document and frequency pairs, to avoid boxing while postings are built */
+  private static class IntList {
+    int[] values;
+    int size;
+
+    IntList(int capacity) {
+      this.values = new int[Math.max(capacity, 2)];
+    }
+
+    void add(int document, int frequency) {
+      if (size + 2 > values.length) {
+        values = Arrays.copyOf(values, values.length * 2);
+      }
+      values[size++] = document;
+      values[size++] = frequency;
+    }
+
+    int[] toArray() {
+      return Arrays.copyOf(values, size);
+    }
+  }
+}
@@ -0,0 +1,48 @@
+package org.bvnk.slackbot.util;
+
+/**
+ * Rate limit for calls to an API with a published per-minute quota. Allows short bursts up to the
+ * bucket size, then spaces calls out evenly. Callers wait for a token, but never past their
+ * deadline.
+ */
+public class TokenBucket {
+  private final double tokensPerMilli;
+  private final double capacity;
+  private double tokens;
+  private long lastRefillMillis;
+
+  public TokenBucket(int tokensPerMinute, int burst) {
+    this.tokensPerMilli = Math.max(1, tokensPerMinute) / 60_000.0;
+    this.capacity = Math.max(1, burst);
+    this.tokens = capacity;
+    this.lastRefillMillis = System.currentTimeMillis();
+  }
+
+  /**
+   * Take a token, waiting for one if needed. Returns false when none is free before the deadline
+   */
+  public boolean acquire(Deadline deadline) throws InterruptedException {
+    while (true) {
+      long waitMillis;
+      synchronized (this) {
+        refill();
+        if (tokens >= 1) {
+          tokens -= 1;
+          return true;
+        }
+        waitMillis = (long) Math.ceil((1 - tokens) / tokensPerMilli);
+      }
+
+      if (waitMillis >= deadline.remainingMillis()) {
+        return false;
+      }
+      Thread.sleep(waitMillis);
+    }
+  }
+
+  private void refill() {
+    long now = System.currentTimeMillis();
+    tokens = Math.min(capacity, tokens + (now - lastRefillMillis) * tokensPerMilli);
+    lastRefillMillis = now;
+  }
+}
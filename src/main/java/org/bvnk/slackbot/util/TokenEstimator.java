@@ -0,0 +1,18 @@
+package org.bvnk.slackbot.util;
+
+/**
+ * Cheap token count estimate for prompt budgeting. Claude averages roughly four characters per
+ * token on English chat text, which is close enough for budgeting without shipping a tokenizer.
+ */
+public final class TokenEstimator {
+  private static final int CHARS_PER_TOKEN = 4;
+
+  private TokenEstimator() {}
+
+  public static int estimate(String text) {
+    if (text == null || text.isEmpty()) {
+      return 0;
+    }
+    return (text.length() + CHARS_PER_TOKEN - 1) / CHARS_PER_TOKEN;
+  }
+}
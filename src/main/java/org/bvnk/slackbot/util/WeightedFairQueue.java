@@ -0,0 +1,110 @@
+package org.bvnk.slackbot.util;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import lombok.Value;
+
+/**
+ * Weighted fair queueing over two levels of flows: teams share the queue equally, and each team's
+ * share is split equally between its channels that have jobs queued. Each job is tagged with a
+ * virtual finish time when it is added, its cost divided by its channel's share past where the
+ * channel's previous job finished, and jobs are taken in tag order. A channel that queues many or
+ * expensive jobs only delays its own later jobs, while a cheap job in a quiet channel goes near the
+ * front. Virtual time is the tag of the last job taken (self-clocked fair queueing), so a channel
+ * that was idle starts level with the others instead of with credit saved up.
+ *
+ * <p>Not thread-safe. The state can be read with {@link #getEntries()} and friends and rebuilt with
+ * {@link #restore}, so it can be stored between invocations.
+ */
+public class WeightedFairQueue<T> {
+  private final PriorityQueue<Entry<T>> queue =
+      new PriorityQueue<>(
+          (a, b) ->
+              a.getFinish() != b.getFinish()
+                  ? Double.compare(a.getFinish(), b.getFinish())
+                  : Long.compare(a.getSequence(), b.getSequence()));
+  private final Map<String, Double> lastFinish = new HashMap<>();
+  private double virtualTime;
+  private long sequence;
+
+  public static <T> WeightedFairQueue<T> restore(
+      double virtualTime, long sequence, Map<String, Double> lastFinish, List<Entry<T>> entries) {
+    WeightedFairQueue<T> restored = new WeightedFairQueue<>();
+    restored.virtualTime = virtualTime;
+    restored.sequence = sequence;
+    restored.lastFinish.putAll(lastFinish);
+    restored.queue.addAll(entries);
+    return restored;
+  }
+
+  public Entry<T> add(String team, String channel, double cost, T item, long nowMillis) {
+    String flow = team + "/" + channel;
+    double start = Math.max(virtualTime, lastFinish.getOrDefault(flow, 0.0));
+    double finish = start + Math.max(cost, 0) * activeChannels(team, flow);
+
+    Entry<T> entry = new Entry<>(team, channel, finish, sequence++, nowMillis, item);
+    lastFinish.put(flow, finish);
+    queue.add(entry);
+    return entry;
+  }
+
+  /** Take the job with the earliest finish tag, or null when the queue is empty */
+  public Entry<T> poll() {
+    Entry<T> entry = queue.poll();
+    if (entry == null) {
+      return null;
+    }
+
+    virtualTime = Math.max(virtualTime, entry.getFinish());
+    // Flows that have caught up with virtual time would start there anyway
+    lastFinish.values().removeIf(finish -> finish <= virtualTime);
+    return entry;
+  }
+
+  public int size() {
+    return queue.size();
+  }
+
+  public double getVirtualTime() {
+    return virtualTime;
+  }
+
+  public long getSequence() {
+    return sequence;
+  }
+
+  public Map<String, Double> getLastFinish() {
+    return Map.copyOf(lastFinish);
+  }
+
+  public List<Entry<T>> getEntries() {
+    return new ArrayList<>(queue);
+  }
+
+  /** The number of the team's channels with jobs queued, counting {@code flow} */
+  private int activeChannels(String team, String flow) {
+    int channels = 1;
+    List<String> counted = new ArrayList<>();
+    for (Entry<T> entry : queue) {
+      String entryFlow = entry.getTeam() + "/" + entry.getChannel();
+      if (entry.getTeam().equals(team) && !entryFlow.equals(flow) && !counted.contains(entryFlow)) {
+        counted.add(entryFlow);
+        channels++;
+      }
+    }
+    return channels;
+  }
+
+  @Value
+  public static class Entry<T> {
+    String team;
+    String channel;
+    double finish;
+    long sequence;
+    long queuedAtMillis;
+    T item;
+  }
+}
@@ -0,0 +1,76 @@
+package org.bvnk.slackbot.model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+
+class MentionJobTest {
+  private static final ObjectMapper objectMapper = new ObjectMapper();
+
+  @Test
+  void readsBackTheJobItWasWrittenFrom() throws Exception {
+    MentionJob job =
+        MentionJob.builder()
+            .eventId("Ev1")
+            .teamId("T1")
+            .channel("C1")
+            .threadTs("1700000000.000100")
+            .ts("1700000001.000200")
+            .user("U1")
+            .text("<@UBOT> what happened?")
+            .eventTime(1_700_000_001L)
+            .attempt(2)
+            .notBefore(1_700_000_005_000L)
+            .cost(1.5)
+            .queued(true)
+            .handoffs(1)
+            .traceparent("00-0af7651916cd43dd8448eb211c80319c-b7ad6b7169203331-01")
+            .dispatchedAt(1_700_000_002_000L)
+            .build();
+
+    @SuppressWarnings("unchecked")
+    Map<String, Object> payload =
+        objectMapper.readValue(objectMapper.writeValueAsString(job), Map.class);
+
+    assertEquals(MentionJob.ACTION, payload.get("action"));
+    assertEquals(job, MentionJob.fromPayload(payload));
+  }
+
+  @Test
+  void takesNumbersOfAnyTypeTheRuntimeParsedThemAs() {
+    Map<String, Object> payload = new HashMap<>();
+    payload.put("v", 1L);
+    payload.put("event_time", 1_700_000_001);
+    payload.put("attempt", 3L);
+    payload.put("cost", 2);
+    payload.put("dispatched_at", 1.7e12);
+
+    MentionJob job = MentionJob.fromPayload(payload);
+
+    assertEquals(MentionJob.VERSION, job.getVersion());
+    assertEquals(1_700_000_001L, job.getEventTime());
+    assertEquals(3, job.getAttempt());
+    assertEquals(2.0, job.getCost());
+    assertEquals(1_700_000_000_000L, job.getDispatchedAt());
+  }
+
+  @Test
+  void leavesOutFieldsThatAreMissingOrOfTheWrongType() {
+    Map<String, Object> payload = new HashMap<>();
+    payload.put("event_id", 42);
+    payload.put("queued", "yes");
+    payload.put("cost", null);
+
+    MentionJob job = MentionJob.fromPayload(payload);
+
+    assertEquals(0, job.getVersion()); // dropped by the worker as another version
+    assertNull(job.getEventId());
+    assertNull(job.getQueued());
+    assertNull(job.getCost());
+    assertEquals(0, job.getAttempt());
+  }
+}
@@ -0,0 +1,86 @@
+package org.bvnk.slackbot.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import org.bvnk.slackbot.util.TokenEstimator;
+import org.junit.jupiter.api.Test;
+
+class ContextCompactorTest {
+  private final ContextCompactor compactor = new ContextCompactor();
+
+  @Test
+  void foldsExactRepeatsIntoTheirLastOccurrence() {
+    ContextCompactor.Result result =
+        compactor.compact(
+            List.of(
+                "Alice: is the deploy done?",
+                "Bob: not yet",
+                "Alice: is the deploy   done?",
+                "Alice: is the deploy done?"));
+
+    assertEquals(
+        List.of("Bob: not yet", "Alice: is the deploy done? _(also posted 2 times before)_"),
+        result.getMessages());
+    assertEquals(2, result.getFoldedMessages());
+  }
+
+  @Test
+  void keepsPeoplesMessagesThatOnlyLookAlike() {
+    ContextCompactor.Result result =
+        compactor.compact(List.of("Alice: ETA is 3pm", "Alice: ETA is 5pm"));
+
+    assertEquals(List.of("Alice: ETA is 3pm", "Alice: ETA is 5pm"), result.getMessages());
+    assertEquals(0, result.getFoldedMessages());
+  }
+
+  @Test
+  void foldsAlertsThatDifferOnlyInNumbersAndIds() {
+    ContextCompactor.Result result =
+        compactor.compact(
+            List.of(
+                "Monitor: Error rate 12% on payouts-api (trace 9f3ab2c1)",
+                "Alice: looking", "Monitor: Error rate 17% on payouts-api (trace 0be41d77)"),
+            List.of(true, false, true));
+
+    assertEquals(
+        List.of(
+            "Alice: looking",
+            "Monitor: Error rate 17% on payouts-api (trace 0be41d77)"
+                + " _(also posted 1 time before)_"),
+        result.getMessages());
+    assertEquals(1, result.getFoldedMessages());
+  }
+
+  @Test
+  void shortensLinksToTheirHost() {
+    ContextCompactor.Result result =
+        compactor.compact(
+            List.of(
+                "Alice: see <https://github.com/org/repo/pull/12|the PR> and"
+                    + " https://grafana.example.com/d/abc?from=now-1h"));
+
+    assertEquals(
+        List.of("Alice: see the PR (github.com) and grafana.example.com"), result.getMessages());
+  }
+
+  @Test
+  void dropsEmojiShortcodes() {
+    ContextCompactor.Result result = compactor.compact(List.of("Bob: done :tada: thanks :+1:"));
+
+    assertEquals(List.of("Bob: done thanks"), result.getMessages());
+  }
+
+  @Test
+  void countsTheTokensSaved() {
+    List<String> messages =
+        List.of("Alice: the build is red again", "Alice: the build is red again");
+
+    ContextCompactor.Result result = compactor.compact(messages);
+
+    assertEquals(1, result.getMessages().size());
+    assertEquals(2 * TokenEstimator.estimate(messages.get(0)), result.getTokensBefore());
+    assertTrue(result.getTokensAfter() < result.getTokensBefore());
+  }
+}
@@ -0,0 +1,80 @@
+package org.bvnk.slackbot.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class ConversationServiceTest {
+  private final ConversationService conversations =
+      new ConversationService(new InMemoryConversationStore());
+
+  @Test
+  void recordsTurnsInOrder() {
+    record("what failed?", "Payouts to EU accounts.");
+    record("since when?", "Since 9:00 UTC.");
+
+    ConversationService.Conversation conversation = conversations.get("C1", "1.0");
+
+    assertEquals("", conversation.getSummary());
+    assertEquals(
+        List.of(
+            new ConversationService.Turn("what failed?", "Payouts to EU accounts."),
+            new ConversationService.Turn("since when?", "Since 9:00 UTC.")),
+        conversation.getTurns());
+  }
+
+  @Test
+  void rollsTheOldestTurnsIntoTheSummaryBeyondTheMaximum() {
+    for (int i = 1; i <= 6; i++) {
+      record("question " + i, "answer " + i);
+    }
+
+    ConversationService.Conversation conversation = conversations.get("C1", "1.0");
+
+    assertEquals(4, conversation.getTurns().size());
+    assertEquals("question 3", conversation.getTurns().get(0).getQuestion());
+    assertEquals(
+        "- Asked \"question 1\", answered: answer 1\n- Asked \"question 2\", answered: answer 2",
+        conversation.getSummary());
+  }
+
+  @Test
+  void rollsTurnsOverTheTokenBudgetIntoTheSummaryButKeepsTheLatest() {
+    String longAnswer = "word ".repeat(3_000);
+    record("first", "short answer");
+    record("second", longAnswer);
+
+    ConversationService.Conversation conversation = conversations.get("C1", "1.0");
+
+    assertEquals(
+        List.of("second"),
+        conversation.getTurns().stream().map(turn -> turn.getQuestion()).toList());
+    assertEquals("- Asked \"first\", answered: short answer", conversation.getSummary());
+  }
+
+  @Test
+  void cutsLongAnswersInTheSummary() {
+    record("first", "x".repeat(1_000));
+    for (int i = 0; i < 4; i++) {
+      record("next " + i, "ok");
+    }
+
+    String summary = conversations.get("C1", "1.0").getSummary();
+
+    assertTrue(summary.endsWith("..."));
+    assertTrue(summary.length() < 300);
+  }
+
+  @Test
+  void ignoresBareMentions() {
+    record("", "A summary of the thread.");
+
+    assertTrue(conversations.get("C1", "1.0").isEmpty());
+  }
+
+  private void record(String question, String answer) {
+    conversations.record("C1", "1.0", conversations.get("C1", "1.0"), question, answer);
+  }
+}
@@ -0,0 +1,192 @@
+package org.bvnk.slackbot.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.bvnk.slackbot.model.MentionJob;
+import org.junit.jupiter.api.Test;
+
+class DynamoMentionSchedulerTest {
+  private final FakeMentionQueueStore store = new FakeMentionQueueStore();
+  private final DynamoMentionScheduler scheduler = new DynamoMentionScheduler(store);
+
+  @Test
+  void takesACheapJobAheadOfItsTeamsBacklogAndKeepsTheRestInOrder() {
+    scheduler.submit(job("e1", "T1", "C1", 5.0));
+    scheduler.submit(job("e2", "T1", "C1", 5.0));
+    scheduler.submit(job("e3", "T1", "C1", 5.0));
+    scheduler.submit(job("e4", "T1", "C2", 1.0));
+
+    // Each take after the first reads back the queue the previous one stored
+    assertEquals(List.of("e4", "e1", "e2", "e3"), takeAll());
+  }
+
+  @Test
+  void readsBackEveryFieldOfTheJob() {
+    MentionJob job =
+        MentionJob.builder()
+            .eventId("Ev1")
+            .teamId("T1")
+            .channel("C1")
+            .threadTs("1700000000.000100")
+            .ts("1700000001.000200")
+            .user("U1")
+            .text("<@UBOT> summarize")
+            .eventTime(1_700_000_001L)
+            .attempt(2)
+            .notBefore(1_700_000_005_000L)
+            .cost(3.5)
+            .queued(true)
+            .handoffs(1)
+            .traceparent("00-0af7651916cd43dd8448eb211c80319c-b7ad6b7169203331-01")
+            .dispatchedAt(1_700_000_002_000L)
+            .build();
+    scheduler.submit(job);
+
+    MentionScheduler.Scheduled scheduled = scheduler.next();
+
+    assertEquals(job, scheduled.getJob());
+    assertEquals(0, scheduled.getQueueDepth());
+  }
+
+  @Test
+  void mergesJobsSubmittedAfterTheQueueWasStored() {
+    scheduler.submit(job("e1", "T1", "C1", 1.0));
+    scheduler.submit(job("e2", "T1", "C1", 1.0));
+    assertEquals("e1", scheduler.next().getJob().getEventId());
+
+    scheduler.submit(job("e3", "T1", "C1", 1.0));
+
+    assertEquals(List.of("e2", "e3"), takeAll());
+  }
+
+  @Test
+  void aQuietTeamIsNotHeldUpByABusyOne() {
+    for (int i = 1; i <= 3; i++) {
+      scheduler.submit(job("busy" + i, "T1", "C1", 5.0));
+    }
+    scheduler.submit(job("quiet", "T2", "C9", 1.0));
+
+    List<String> taken = new ArrayList<>();
+    taken.add(scheduler.next().getJob().getEventId());
+    taken.add(scheduler.next().getJob().getEventId());
+
+    assertTrue(taken.contains("quiet"), taken.toString());
+  }
+
+  @Test
+  void dropsTeamsFromTheIndexOnceTheirJobsAreTaken() {
+    scheduler.submit(job("e1", "T1", "C1", 1.0));
+    scheduler.submit(job("e2", "T2", "C1", 1.0));
+
+    assertEquals(2, takeAll().size());
+    assertTrue(store.pending.isEmpty());
+    assertNull(scheduler.next());
+  }
+
+  private List<String> takeAll() {
+    List<String> taken = new ArrayList<>();
+    for (MentionScheduler.Scheduled scheduled = scheduler.next();
+        scheduled != null;
+        scheduled = scheduler.next()) {
+      taken.add(scheduled.getJob().getEventId());
+    }
+    return taken;
+  }
+
+  private static MentionJob job(String eventId, String team, String channel, double cost) {
+    return MentionJob.builder().eventId(eventId).teamId(team).channel(channel).cost(cost).build();
+  }
+
+  /** Keeps the index and queues in maps, with the same conditions as the table */
+  private static class FakeMentionQueueStore implements MentionQueueStore {
+    final Map<String, Long> pending = new HashMap<>();
+    final Map<String, Double> finish = new HashMap<>();
+    final Map<String, QueueItem> queues = new HashMap<>();
+    double virtualTime;
+
+    @Override
+    public void appendInbox(String queueKey, byte[] entry) {
+      QueueItem stored = queues.get(queueKey);
+      List<byte[]> inbox = new ArrayList<>(stored != null ? stored.getInbox() : List.of());
+      inbox.add(entry);
+      queues.put(
+          queueKey,
+          new QueueItem(
+              stored != null ? stored.getGeneration() : null,
+              stored != null ? stored.getState() : null,
+              inbox));
+    }
+
+    @Override
+    public QueueItem getQueue(String queueKey) {
+      return queues.get(queueKey);
+    }
+
+    @Override
+    public boolean putQueue(
+        String queueKey,
+        String generation,
+        byte[] state,
+        String expectedGeneration,
+        int inboxEntries) {
+      QueueItem stored = queues.get(queueKey);
+      String storedGeneration = stored != null ? stored.getGeneration() : null;
+      if (expectedGeneration == null
+          ? storedGeneration != null
+          : !expectedGeneration.equals(storedGeneration)) {
+        return false;
+      }
+      List<byte[]> inbox = stored != null ? stored.getInbox() : List.of();
+      queues.put(
+          queueKey,
+          new QueueItem(
+              generation, state, new ArrayList<>(inbox.subList(inboxEntries, inbox.size()))));
+      return true;
+    }
+
+    @Override
+    public void addPending(String indexKey, String team, long delta) {
+      pending.merge(team, delta, Long::sum);
+    }
+
+    @Override
+    public IndexItem getIndex(String indexKey) {
+      return pending.isEmpty() && finish.isEmpty()
+          ? null
+          : new IndexItem(virtualTime, Map.copyOf(pending), Map.copyOf(finish));
+    }
+
+    @Override
+    public long recordTake(String indexKey, String team, double virtualTime, double finish) {
+      this.virtualTime = Math.max(this.virtualTime, virtualTime);
+      this.finish.put(team, finish);
+      return pending.merge(team, -1L, Long::sum);
+    }
+
+    @Override
+    public boolean removeTeam(String indexKey, String team) {
+      if (pending.getOrDefault(team, 0L) > 0) {
+        return false;
+      }
+      pending.remove(team);
+      finish.remove(team);
+      return true;
+    }
+
+    @Override
+    public boolean resetTeam(String indexKey, String team, long pending) {
+      if (this.pending.getOrDefault(team, 0L) != pending) {
+        return false;
+      }
+      this.pending.remove(team);
+      finish.remove(team);
+      return true;
+    }
+  }
+}
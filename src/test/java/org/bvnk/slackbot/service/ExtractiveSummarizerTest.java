@@ -0,0 +1,81 @@
+package org.bvnk.slackbot.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import org.bvnk.slackbot.model.Command;
+import org.junit.jupiter.api.Test;
+
+class ExtractiveSummarizerTest {
+  private static final List<String> THREAD =
+      List.of(
+          "Alice: Payouts to EU accounts failed on a provider timeout since 9:00 UTC.",
+          "Bob: The retry change from yesterday doubled the calls to the provider.",
+          "Alice: I'll roll back the retry change and watch the error rate.",
+          "Dana: @Bob can you draft the incident report by Friday?",
+          "Bob: Rolled back, the error rate is down to normal levels again.",
+          "Emeka: Thanks everyone, that was quick.");
+
+  private final ExtractiveSummarizer summarizer = new ExtractiveSummarizer();
+
+  @Test
+  void answersKeyPointsAndActionItemsOfShortThreadsFast() {
+    assertTrue(summarizer.answersFast(Command.KEY_POINTS, THREAD.size()));
+    assertTrue(summarizer.answersFast(Command.ACTION_ITEMS, THREAD.size()));
+    assertFalse(summarizer.answersFast(Command.QUESTION, THREAD.size()));
+    assertFalse(summarizer.answersFast(Command.KEY_POINTS, 0));
+  }
+
+  @Test
+  void keyPointsStartWithTheThreadRootAndKeepThreadOrder() {
+    String answer = summarizer.answer(Command.KEY_POINTS, THREAD, null);
+
+    List<String> points = answer.lines().toList();
+    assertEquals(
+        "• *Alice*: Payouts to EU accounts failed on a provider timeout since 9:00 UTC.",
+        points.get(0));
+    assertTrue(points.size() <= 5);
+    for (int i = 1; i < points.size(); i++) {
+      assertTrue(position(points.get(i - 1)) < position(points.get(i)));
+    }
+  }
+
+  @Test
+  void actionItemsGoToTheAuthorOrTheUserTheyMention() {
+    String answer = summarizer.answer(Command.ACTION_ITEMS, THREAD, null);
+
+    assertEquals(
+        "1. I'll roll back the retry change and watch the error rate. (*Alice*)\n"
+            + "2. @Bob can you draft the incident report by Friday? (*Bob*)",
+        answer);
+  }
+
+  @Test
+  void answersQuestionsWithTheSentencesThatMatchThem() {
+    String answer =
+        summarizer.answer(Command.QUESTION, THREAD, "who is drafting the incident report?");
+
+    assertEquals("• *Dana*: @Bob can you draft the incident report by Friday?", answer);
+  }
+
+  @Test
+  void hasNoActionItemsWithoutCues() {
+    List<String> thread = List.of("Alice: The dashboard looks fine.", "Bob: Agreed, all green.");
+
+    assertNull(summarizer.answer(Command.ACTION_ITEMS, thread, null));
+    assertNull(summarizer.answer(Command.KEY_POINTS, List.of(), null));
+  }
+
+  private static int position(String point) {
+    String text = point.substring(point.indexOf("*: ") + 3);
+    for (int i = 0; i < THREAD.size(); i++) {
+      if (THREAD.get(i).endsWith(text)) {
+        return i;
+      }
+    }
+    throw new AssertionError("Not in the thread: " + point);
+  }
+}
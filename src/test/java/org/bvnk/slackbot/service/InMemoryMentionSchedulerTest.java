@@ -0,0 +1,43 @@
+package org.bvnk.slackbot.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.bvnk.slackbot.model.MentionJob;
+import org.junit.jupiter.api.Test;
+
+class InMemoryMentionSchedulerTest {
+  private final InMemoryMentionScheduler scheduler = new InMemoryMentionScheduler();
+
+  @Test
+  void takesTheCheapestJobOfABusyChannelsTeamFirst() {
+    MentionJob summary = job("e1", "C1", 5.0);
+    MentionJob question = job("e2", "C2", 1.0);
+    assertTrue(scheduler.submit(summary));
+    scheduler.submit(job("e3", "C1", 5.0));
+    scheduler.submit(question);
+
+    MentionScheduler.Scheduled first = scheduler.next();
+
+    assertSame(question, first.getJob());
+    assertEquals(2, first.getQueueDepth());
+    assertSame(summary, scheduler.next().getJob());
+  }
+
+  @Test
+  void weighsJobsWithoutACostAsOneQuestion() {
+    scheduler.submit(job("e1", "C1", 3.0));
+    scheduler.submit(job("e2", "C2", null));
+
+    assertEquals("e2", scheduler.next().getJob().getEventId());
+    assertEquals("e1", scheduler.next().getJob().getEventId());
+    assertNull(scheduler.next());
+    assertEquals(0, scheduler.size());
+  }
+
+  private static MentionJob job(String eventId, String channel, Double cost) {
+    return MentionJob.builder().eventId(eventId).teamId("T1").channel(channel).cost(cost).build();
+  }
+}
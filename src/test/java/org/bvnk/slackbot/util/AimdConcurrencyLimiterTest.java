@@ -0,0 +1,80 @@
+package org.bvnk.slackbot.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class AimdConcurrencyLimiterTest {
+
+  @Test
+  void rejectsCallsOverTheLimitOnceTheWaitIsOver() throws InterruptedException {
+    AimdConcurrencyLimiter limiter = new AimdConcurrencyLimiter(2, 1, 10);
+
+    assertTrue(limiter.tryAcquire(0));
+    assertTrue(limiter.tryAcquire(0));
+    assertFalse(limiter.tryAcquire(10));
+    assertEquals(2, limiter.getInFlight());
+  }
+
+  @Test
+  void growsByOnePerSuccessInSlowStart() throws InterruptedException {
+    AimdConcurrencyLimiter limiter = new AimdConcurrencyLimiter(2, 1, 10);
+
+    for (int i = 0; i < 3; i++) {
+      limiter.tryAcquire(0);
+      limiter.onSuccess();
+    }
+
+    assertEquals(5, limiter.getLimit());
+    assertEquals(0, limiter.getInFlight());
+  }
+
+  @Test
+  void halvesOnThrottleAndThenGrowsSlowly() throws InterruptedException {
+    AimdConcurrencyLimiter limiter = new AimdConcurrencyLimiter(8, 1, 10);
+
+    limiter.tryAcquire(0);
+    limiter.onThrottled();
+    assertEquals(4, limiter.getLimit());
+
+    // Out of slow start the limit grows by 1/limit per success: five successes from four to five
+    for (int i = 0; i < 4; i++) {
+      limiter.tryAcquire(0);
+      limiter.onSuccess();
+    }
+    assertEquals(4, limiter.getLimit());
+    limiter.tryAcquire(0);
+    limiter.onSuccess();
+    assertEquals(5, limiter.getLimit());
+  }
+
+  @Test
+  void staysWithinItsBounds() throws InterruptedException {
+    AimdConcurrencyLimiter limiter = new AimdConcurrencyLimiter(2, 2, 3);
+
+    for (int i = 0; i < 5; i++) {
+      limiter.tryAcquire(0);
+      limiter.onThrottled();
+    }
+    assertEquals(2, limiter.getLimit());
+
+    for (int i = 0; i < 50; i++) {
+      limiter.tryAcquire(0);
+      limiter.onSuccess();
+    }
+    assertEquals(3, limiter.getLimit());
+  }
+
+  @Test
+  void ignoredCallsFreeTheirSlotWithoutChangingTheLimit() throws InterruptedException {
+    AimdConcurrencyLimiter limiter = new AimdConcurrencyLimiter(1, 1, 10);
+
+    assertTrue(limiter.tryAcquire(0));
+    limiter.onIgnored();
+
+    assertEquals(1, limiter.getLimit());
+    assertTrue(limiter.tryAcquire(0));
+  }
+}
@@ -0,0 +1,53 @@
+package org.bvnk.slackbot.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class Bm25IndexTest {
+
+  @Test
+  void tokenizeDropsStopWordsAndSingleCharactersAndStems() {
+    assertEquals(
+        List.of("retry", "decid", "payout", "fail"),
+        Bm25Index.tokenize("The retries were decided: a payouts failed!"));
+  }
+
+  @Test
+  void tokenizeOfNullIsEmpty() {
+    assertTrue(Bm25Index.tokenize(null).isEmpty());
+  }
+
+  @Test
+  void ranksTheDocumentWithTheQueryTermsFirst() {
+    Bm25Index index =
+        new Bm25Index(
+            List.of(
+                "Lunch is at noon today",
+                "The payout provider timed out on EU payouts",
+                "Deploy of the ledger service is blocked"));
+
+    double[] scores = index.score("why did payouts time out?");
+
+    assertTrue(scores[1] > scores[0]);
+    assertTrue(scores[1] > scores[2]);
+    assertEquals(0, scores[0]);
+  }
+
+  @Test
+  void rarerTermsWeighMore() {
+    Bm25Index index =
+        new Bm25Index(List.of("deploy failed", "deploy rollback", "deploy done", "ledger"));
+
+    double[] scores = index.score("deploy ledger");
+
+    assertTrue(scores[3] > scores[0]);
+  }
+
+  @Test
+  void scoresOfAnEmptyIndexAreEmpty() {
+    assertEquals(0, new Bm25Index(List.of()).score("anything").length);
+  }
+}
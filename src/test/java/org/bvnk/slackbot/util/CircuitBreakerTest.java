@@ -0,0 +1,72 @@
+package org.bvnk.slackbot.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class CircuitBreakerTest {
+
+  @Test
+  void opensAfterTheThresholdOfConsecutiveFailures() {
+    CircuitBreaker breaker = new CircuitBreaker(3, 60_000);
+
+    breaker.onFailure();
+    breaker.onFailure();
+    assertTrue(breaker.allowRequest());
+    breaker.onFailure();
+
+    assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    assertFalse(breaker.allowRequest());
+  }
+
+  @Test
+  void aSuccessResetsTheRunOfFailures() {
+    CircuitBreaker breaker = new CircuitBreaker(2, 60_000);
+
+    breaker.onFailure();
+    breaker.onSuccess();
+    breaker.onFailure();
+
+    assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+  }
+
+  @Test
+  void letsOneTrialThroughOnceTheOpenPeriodHasPassed() {
+    CircuitBreaker breaker = new CircuitBreaker(1, 0);
+    breaker.onFailure();
+
+    assertTrue(breaker.allowRequest());
+    assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+    assertFalse(breaker.allowRequest());
+
+    breaker.onSuccess();
+    assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+  }
+
+  @Test
+  void aFailedTrialOpensItAgain() {
+    CircuitBreaker breaker = new CircuitBreaker(5, 0);
+    for (int i = 0; i < 5; i++) {
+      breaker.onFailure();
+    }
+
+    assertTrue(breaker.allowRequest());
+    breaker.onFailure();
+
+    // A single failure is enough in half-open, whatever the threshold
+    assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+  }
+
+  @Test
+  void anIgnoredTrialLetsTheNextCallBeTheTrial() {
+    CircuitBreaker breaker = new CircuitBreaker(1, 0);
+    breaker.onFailure();
+
+    assertTrue(breaker.allowRequest());
+    breaker.onIgnored();
+
+    assertTrue(breaker.allowRequest());
+  }
+}
@@ -0,0 +1,68 @@
+package org.bvnk.slackbot.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class MarkdownToMrkdwnTest {
+
+  @Test
+  void headingsBecomeBoldLines() {
+    assertEquals("*Next steps*", MarkdownToMrkdwn.convert("## Next steps ##"));
+    assertEquals("*Risks*", MarkdownToMrkdwn.convert("# **Risks**"));
+  }
+
+  @Test
+  void listMarkersBecomeBullets() {
+    assertEquals("• one\n  • two", MarkdownToMrkdwn.convert("- one\n  * two"));
+  }
+
+  @Test
+  void boldStrikeAndLinksAreConverted() {
+    assertEquals(
+        "*done* and ~dropped~, see <https://example.com/a|the doc>",
+        MarkdownToMrkdwn.convert("**done** and ~~dropped~~, see [the doc](https://example.com/a)"));
+  }
+
+  @Test
+  void singleAsterisksAreLeftAlone() {
+    assertEquals("already *bold* here", MarkdownToMrkdwn.convert("already *bold* here"));
+  }
+
+  @Test
+  void escapesSpecialCharactersButKeepsSlackTokens() {
+    assertEquals(
+        "a &lt; b &amp;&amp; c &gt; d, ask <@U123> in <#C42|ops> <!here>",
+        MarkdownToMrkdwn.convert("a < b && c > d, ask <@U123> in <#C42|ops> <!here>"));
+  }
+
+  @Test
+  void codeIsOnlyEscaped() {
+    assertEquals("`**x** &lt; 1`", MarkdownToMrkdwn.convert("`**x** < 1`"));
+    assertEquals(
+        "```\n- not a bullet\n**not bold**\n```\n• bullet",
+        MarkdownToMrkdwn.convert("```java\n- not a bullet\n**not bold**\n```\n- bullet"));
+  }
+
+  @Test
+  void keepsFenceStateBetweenLines() {
+    MarkdownToMrkdwn converter = new MarkdownToMrkdwn();
+
+    assertEquals("```", converter.convertLine("```sql"));
+    assertTrue(converter.isInCodeBlock());
+    assertEquals("# comment", converter.convertLine("# comment"));
+    assertEquals("```", converter.convertLine("```"));
+    assertFalse(converter.isInCodeBlock());
+    assertEquals("*Title*", converter.convertLine("# Title"));
+  }
+
+  @Test
+  void aFenceOpenedAndClosedOnOneLineDoesNotToggle() {
+    MarkdownToMrkdwn converter = new MarkdownToMrkdwn();
+
+    assertEquals("```x &lt; y```", converter.convertLine("```x < y```"));
+    assertFalse(converter.isInCodeBlock());
+  }
+}
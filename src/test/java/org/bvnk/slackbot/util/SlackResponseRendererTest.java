@@ -0,0 +1,96 @@
+package org.bvnk.slackbot.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class SlackResponseRendererTest {
+
+  @Test
+  void shortTextIsOneChunk() {
+    assertEquals(List.of("Hello\n\nWorld"), SlackResponseRenderer.split("Hello\n\nWorld"));
+  }
+
+  @Test
+  void blankTextHasNoChunks() {
+    assertTrue(SlackResponseRenderer.split("").isEmpty());
+    assertTrue(SlackResponseRenderer.split("\n \n").isEmpty());
+  }
+
+  @Test
+  void chunksFitInASectionAndKeepEveryLine() {
+    List<String> lines = new ArrayList<>();
+    for (int i = 0; i < 400; i++) {
+      lines.add("- item " + i + " with a few words to take up some room");
+    }
+    String text = String.join("\n", lines);
+
+    List<String> chunks = SlackResponseRenderer.split(text);
+
+    assertTrue(chunks.size() > 1);
+    for (String chunk : chunks) {
+      assertTrue(chunk.length() <= SlackResponseRenderer.SECTION_CHAR_LIMIT, chunk);
+    }
+    assertEquals(text, String.join("\n", chunks));
+  }
+
+  @Test
+  void prefersParagraphBreaks() {
+    String first = "a".repeat(1800);
+    String second = "b".repeat(1800);
+
+    List<String> chunks = SlackResponseRenderer.split(first + "\n\n" + second);
+
+    assertEquals(List.of(first, second), chunks);
+  }
+
+  @Test
+  void cutsLongLinesAfterASentence() {
+    String sentence = "This sentence is about forty characters. ";
+    String line = sentence.repeat(100).trim();
+
+    List<String> chunks = SlackResponseRenderer.split(line);
+
+    assertTrue(chunks.size() > 1);
+    for (String chunk : chunks.subList(0, chunks.size() - 1)) {
+      assertTrue(chunk.endsWith("."), chunk);
+    }
+  }
+
+  @Test
+  void reopensASplitCodeBlock() {
+    StringBuilder code = new StringBuilder("```\n");
+    for (int i = 0; i < 200; i++) {
+      code.append("line ").append(i).append(" of a long stack trace here\n");
+    }
+    code.append("```");
+
+    List<String> chunks = SlackResponseRenderer.split(code.toString());
+
+    assertTrue(chunks.size() > 1);
+    for (String chunk : chunks) {
+      assertTrue(chunk.startsWith("```\n") && chunk.endsWith("\n```"), chunk);
+    }
+  }
+
+  @Test
+  void streamedTextGivesTheSameChunks() {
+    String text = "## Summary\n\n" + "- **point** number one\n".repeat(300);
+    SlackResponseRenderer renderer =
+        new SlackResponseRenderer(SlackResponseRenderer.SECTION_CHAR_LIMIT, true);
+
+    List<String> streamed = new ArrayList<>();
+    for (int i = 0; i < text.length(); i += 37) {
+      streamed.addAll(renderer.append(text.substring(i, Math.min(text.length(), i + 37))));
+    }
+    streamed.addAll(renderer.finish());
+
+    assertEquals(
+        SlackResponseRenderer.render(text, SlackResponseRenderer.SECTION_CHAR_LIMIT, true),
+        streamed);
+    assertTrue(streamed.get(0).startsWith("*Summary*\n\n• *point* number one"));
+  }
+}
@@ -0,0 +1,89 @@
+package org.bvnk.slackbot.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.zip.DeflaterOutputStream;
+import org.junit.jupiter.api.Test;
+
+class SummaryIndexTest {
+  private static final SummaryIndex.Document PAYOUTS =
+      new SummaryIndex.Document(
+          "T1", "C1", "1.0", 1_000, "Payouts to EU accounts failed on a provider timeout");
+  private static final SummaryIndex.Document LEDGER =
+      new SummaryIndex.Document(
+          "T1", "C1", "2.0", 2_000, "The ledger deploy is blocked on the schema migration");
+  private static final SummaryIndex.Document OTHER_TEAM =
+      new SummaryIndex.Document("T2", "C9", "3.0", 3_000, "Payouts are delayed for the provider");
+
+  @Test
+  void findsTheDocumentsMatchingTheQueryBestFirst() {
+    SummaryIndex index = SummaryIndex.empty().with(List.of(PAYOUTS, LEDGER), 10);
+
+    List<SummaryIndex.Hit> hits = index.search("provider timeout", document -> true, 5);
+
+    assertEquals(1, hits.size());
+    assertEquals(PAYOUTS, hits.get(0).getDocument());
+    assertTrue(hits.get(0).getScore() > 0);
+  }
+
+  @Test
+  void leavesOutDocumentsTheFilterRejects() {
+    SummaryIndex index = SummaryIndex.empty().with(List.of(PAYOUTS, OTHER_TEAM), 10);
+
+    List<SummaryIndex.Hit> hits =
+        index.search("payouts provider", document -> document.getTeamId().equals("T2"), 5);
+
+    assertEquals(List.of(OTHER_TEAM), hits.stream().map(SummaryIndex.Hit::getDocument).toList());
+  }
+
+  @Test
+  void aNewerSummaryOfTheSameThreadReplacesTheOlderOne() {
+    SummaryIndex.Document updated =
+        new SummaryIndex.Document("T1", "C1", "1.0", 4_000, "Payouts recovered after a rollback");
+    SummaryIndex index =
+        SummaryIndex.empty().with(List.of(PAYOUTS, LEDGER), 10).with(List.of(updated), 10);
+
+    assertEquals(2, index.size());
+    assertTrue(index.search("timeout", document -> true, 5).isEmpty());
+    assertEquals(updated, index.search("rollback", document -> true, 5).get(0).getDocument());
+  }
+
+  @Test
+  void keepsOnlyTheNewestDocumentsBeyondTheLimit() {
+    SummaryIndex index = SummaryIndex.empty().with(List.of(PAYOUTS, LEDGER, OTHER_TEAM), 2);
+
+    assertEquals(2, index.size());
+    assertEquals(
+        List.of(OTHER_TEAM),
+        index.search("timeout delayed", document -> true, 5).stream()
+            .map(SummaryIndex.Hit::getDocument)
+            .toList());
+  }
+
+  @Test
+  void readsBackWhatItWrites() {
+    SummaryIndex index = SummaryIndex.empty().with(List.of(PAYOUTS, LEDGER, OTHER_TEAM), 10);
+
+    SummaryIndex read = SummaryIndex.read(index.write());
+
+    assertEquals(index.size(), read.size());
+    for (String query : List.of("provider", "ledger schema", "eu payouts timeout")) {
+      assertEquals(
+          index.search(query, document -> true, 5), read.search(query, document -> true, 5));
+    }
+  }
+
+  @Test
+  void readsAnEmptyIndexFromAnotherFormat() throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (DeflaterOutputStream out = new DeflaterOutputStream(bytes)) {
+      out.write(new byte[] {99, 1, 2, 3});
+    }
+
+    assertEquals(0, SummaryIndex.read(bytes.toByteArray()).size());
+  }
+}
@@ -0,0 +1,97 @@
+package org.bvnk.slackbot.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class WeightedFairQueueTest {
+
+  @Test
+  void takesJobsInFinishTagOrder() {
+    WeightedFairQueue<String> queue = new WeightedFairQueue<>();
+    queue.add("A", "c1", 5, "c1-1", 0);
+    queue.add("A", "c1", 5, "c1-2", 0);
+    queue.add("A", "c1", 5, "c1-3", 0);
+    // Shares the team with c1, so its cost counts double: finishes at 2, ahead of c1's 5
+    WeightedFairQueue.Entry<String> cheap = queue.add("A", "c2", 1, "c2-1", 0);
+
+    assertEquals(2.0, cheap.getFinish());
+    assertEquals(List.of("c2-1", "c1-1", "c1-2", "c1-3"), drain(queue));
+  }
+
+  @Test
+  void teamsShareTheQueueEqually() {
+    WeightedFairQueue<String> queue = new WeightedFairQueue<>();
+    for (int i = 1; i <= 3; i++) {
+      queue.add("busy", "c1", 1, "busy-" + i, 0);
+    }
+    queue.add("quiet", "c1", 1, "quiet-1", 0);
+
+    assertEquals(List.of("busy-1", "quiet-1", "busy-2", "busy-3"), drain(queue));
+  }
+
+  @Test
+  void anIdleChannelStartsAtVirtualTimeWithoutSavedUpCredit() {
+    WeightedFairQueue<String> queue = new WeightedFairQueue<>();
+    queue.add("A", "c1", 4, "c1-1", 0);
+    queue.add("A", "c1", 4, "c1-2", 0);
+    queue.poll();
+
+    WeightedFairQueue.Entry<String> late = queue.add("B", "c9", 1, "late", 0);
+
+    assertEquals(4.0, queue.getVirtualTime());
+    assertEquals(5.0, late.getFinish());
+    assertEquals(List.of("late", "c1-2"), drain(queue));
+  }
+
+  @Test
+  void equalTagsGoInTheOrderAdded() {
+    WeightedFairQueue<String> queue = new WeightedFairQueue<>();
+    queue.add("A", "c1", 1, "first", 0);
+    queue.add("B", "c1", 1, "second", 0);
+
+    assertEquals(List.of("first", "second"), drain(queue));
+  }
+
+  @Test
+  void restoresToTheSameState() {
+    WeightedFairQueue<String> queue = new WeightedFairQueue<>();
+    queue.add("A", "c1", 5, "c1-1", 10);
+    queue.add("A", "c1", 5, "c1-2", 20);
+    queue.add("A", "c2", 1, "c2-1", 30);
+    queue.poll();
+
+    WeightedFairQueue<String> restored =
+        WeightedFairQueue.restore(
+            queue.getVirtualTime(), queue.getSequence(), queue.getLastFinish(), queue.getEntries());
+    queue.add("A", "c3", 1, "c3-1", 40);
+    restored.add("A", "c3", 1, "c3-1", 40);
+
+    assertEquals(queue.getVirtualTime(), restored.getVirtualTime());
+    assertEquals(queue.getLastFinish(), restored.getLastFinish());
+    assertEquals(drainEntries(queue), drainEntries(restored));
+  }
+
+  private static List<String> drain(WeightedFairQueue<String> queue) {
+    List<String> items = new ArrayList<>();
+    for (WeightedFairQueue.Entry<String> entry : drainEntries(queue)) {
+      items.add(entry.getItem());
+    }
+    assertNull(queue.poll());
+    return items;
+  }
+
+  private static List<WeightedFairQueue.Entry<String>> drainEntries(
+      WeightedFairQueue<String> queue) {
+    List<WeightedFairQueue.Entry<String>> entries = new ArrayList<>();
+    for (WeightedFairQueue.Entry<String> entry = queue.poll();
+        entry != null;
+        entry = queue.poll()) {
+      entries.add(entry);
+    }
+    return entries;
+  }
+}